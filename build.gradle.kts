@@ -5,6 +5,7 @@ plugins {
     `maven-publish`
     id("com.gorylenko.gradle-git-properties") version "2.5.3"
     id("com.gradleup.shadow") version "9.0.0-beta4"
+    id("me.champeau.jmh") version "0.7.2"
     id("publish-conventions")
 }
 
@@ -62,6 +63,22 @@ tasks.javadoc {
     options.encoding = "UTF-8"
 }
 
+// Benchmarks live in src/jmh/java, run them with "./gradlew jmh"
+jmh {
+    jmhVersion = libs.versions.jmh.get()
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    // e.g. ./gradlew jmh -PjmhIncludes=TimingWheel
+    (properties["jmhIncludes"] as String?)?.let { includes = listOf(it) }
+    // e.g. ./gradlew jmh -PjmhProfilers=gc to measure the allocation rate
+    (properties["jmhProfilers"] as String?)?.let { profilers = listOf(it) }
+}
+
+tasks.named<JavaCompile>("compileJmhJava") {
+    options.encoding = "UTF-8"
+}
+
 gitProperties {
     keys = listOf(
         "git.commit.id",
@@ -0,0 +1,177 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import snw.jkook.JKook;
+import snw.jkook.config.file.YamlConfiguration;
+import snw.jkook.event.EventHandler;
+import snw.jkook.event.Listener;
+import snw.jkook.event.channel.ChannelMessageDeleteEvent;
+import snw.jkook.event.channel.ChannelMessageEvent;
+import snw.jkook.event.pm.PrivateMessageReceivedEvent;
+import snw.jkook.event.user.UserAddReactionEvent;
+import snw.jkook.event.user.UserClickButtonEvent;
+import snw.jkook.event.user.UserJoinGuildEvent;
+import snw.jkook.event.user.UserOnlineEvent;
+import snw.kookbc.impl.CoreImpl;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.network.JsonBody;
+import snw.kookbc.impl.network.NetworkClient;
+import snw.kookbc.interfaces.network.NetworkSystem;
+import snw.kookbc.util.JacksonUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 供各个基准测试共用的离线 {@link KBCClient}。
+ *
+ * <p>客户端不会连接 KOOK：网络系统为空实现，HTTP 请求由 {@link FixtureNetworkClient}
+ * 按路由从 {@code src/jmh/resources/fixtures/api} 中读取录制好的响应，因此测量结果不包含网络延迟。
+ */
+@State(Scope.Benchmark)
+public class BenchmarkClient {
+    public static final String TOKEN = "1/MTA=/benchmark==";
+
+    private KBCClient client;
+
+    @Setup
+    public void setUp() {
+        client = create(new CoreImpl());
+    }
+
+    // for the benchmarks that need a core with another logger
+    public static KBCClient create(CoreImpl core) {
+        if (JKook.getCore() == null) {
+            JKook.setCore(core);
+        }
+        final YamlConfiguration config = new YamlConfiguration();
+        config.set("mode", "websocket");
+        final KBCClient client = new KBCClient(core, config, null, TOKEN, null, c -> new FixtureNetworkClient(c), null, null, null, null,
+                c -> new OfflineNetworkSystem());
+        // createEvent skips the events nobody listens to, so subscribe all the benchmarked types
+        core.getEventManager().registerHandlers(client.getInternalPlugin(), new SubscribingListener());
+        // no start() here, nothing would release the events held during startup
+        client.getEventGate().open();
+        return client;
+    }
+
+    public KBCClient get() {
+        return client;
+    }
+
+    // reads src/jmh/resources/fixtures/<path>
+    public static String readFixture(String path) {
+        try (InputStream stream = BenchmarkClient.class.getResourceAsStream("/fixtures/" + path)) {
+            if (stream == null) {
+                throw new IllegalArgumentException("Unknown fixture: " + path);
+            }
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static JsonNode readFrame(String name) {
+        return JacksonUtil.parse(readFixture("events/" + name + ".json"));
+    }
+
+    // Serves GET requests from fixtures/api/<route>.json, e.g. "/v3/channel/view" -> channel-view.json
+    private static final class FixtureNetworkClient extends NetworkClient {
+        private final Map<String, String> responses = new ConcurrentHashMap<>();
+
+        FixtureNetworkClient(KBCClient client) {
+            super(client, TOKEN);
+        }
+
+        @Override
+        public <T> T call(Request request, ResponseReader<T> reader) {
+            if (!"GET".equals(request.method())) {
+                throw new UnsupportedOperationException("Only GET requests are recorded: " + request.url());
+            }
+            final String path = request.url().encodedPath();
+            final String route = path.substring(path.indexOf("/v3/") + "/v3/".length());
+            final String content = responses.computeIfAbsent(route,
+                    r -> readFixture("api/" + r.replace('/', '-') + ".json"));
+            try (ResponseBody body = ResponseBody.create(content, JsonBody.JSON)) {
+                return reader.read(body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static final class OfflineNetworkSystem implements NetworkSystem {
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    public static final class SubscribingListener implements Listener {
+
+        @EventHandler
+        public void onChannelMessage(ChannelMessageEvent event) {
+        }
+
+        @EventHandler
+        public void onPrivateMessage(PrivateMessageReceivedEvent event) {
+        }
+
+        @EventHandler
+        public void onAddReaction(UserAddReactionEvent event) {
+        }
+
+        @EventHandler
+        public void onClickButton(UserClickButtonEvent event) {
+        }
+
+        @EventHandler
+        public void onJoinGuild(UserJoinGuildEvent event) {
+        }
+
+        @EventHandler
+        public void onOnline(UserOnlineEvent event) {
+        }
+
+        @EventHandler
+        public void onMessageDelete(ChannelMessageDeleteEvent event) {
+        }
+    }
+}
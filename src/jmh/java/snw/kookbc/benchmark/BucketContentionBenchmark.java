@@ -0,0 +1,60 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snw.kookbc.impl.network.Bucket;
+import snw.kookbc.impl.network.HttpAPIRoute;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量 {@link Bucket#check()} 在单线程与多线程同时发送消息时的开销。
+ *
+ * <p>每轮开始前把剩余次数设为 {@link Integer#MAX_VALUE}，保证测量期间不会真正触发限速等待。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BucketContentionBenchmark {
+    private Bucket bucket;
+
+    @Setup
+    public void setUp(BenchmarkClient client) {
+        bucket = Bucket.get(client.get(), HttpAPIRoute.CHANNEL_MESSAGE_SEND);
+    }
+
+    @Setup(Level.Iteration)
+    public void refill() {
+        bucket.update(Integer.MAX_VALUE, 60);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void check() {
+        bucket.check();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void checkContended() {
+        bucket.check();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snw.kookbc.impl.entity.builder.CardBuilder;
+import snw.kookbc.util.JacksonCardUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量 {@link JacksonCardUtil#toJson(Object)} 序列化卡片消息的开销，这是每次发送卡片消息都会走的路径。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CardSerializationBenchmark {
+
+    @Param({"notice", "music-player"})
+    public String card;
+
+    private Object component;
+
+    @Setup
+    public void setUp() {
+        component = CardBuilder.buildCard(BenchmarkClient.readFixture("cards/" + card + ".json"));
+    }
+
+    @Benchmark
+    public String toJson() {
+        return JacksonCardUtil.toJson(component);
+    }
+}
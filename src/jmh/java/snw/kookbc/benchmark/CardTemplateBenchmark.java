@@ -0,0 +1,93 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snw.jkook.message.component.BaseComponent;
+import snw.jkook.message.component.card.CardBuilder;
+import snw.jkook.message.component.card.Size;
+import snw.jkook.message.component.card.Theme;
+import snw.jkook.message.component.card.element.ButtonElement;
+import snw.jkook.message.component.card.element.PlainTextElement;
+import snw.jkook.message.component.card.module.ActionGroupModule;
+import snw.jkook.message.component.card.module.DividerModule;
+import snw.jkook.message.component.card.module.HeaderModule;
+import snw.jkook.message.component.card.module.SectionModule;
+import snw.kookbc.util.CardTemplate;
+import snw.kookbc.util.JacksonCardUtil;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static snw.kookbc.util.CardTemplate.slot;
+
+/**
+ * 对比每次构建并序列化一张帮助卡片，与填充预编译的 {@link CardTemplate} 的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CardTemplateBenchmark {
+    private static final String[] LINES = {
+            "(/)help: 获取此帮助列表。",
+            "(/)plugins: 获取已安装到此 KookBC 实例的插件列表。",
+            "(/ .)status: 查看机器人的运行状态。",
+            "(/)metrics: 查看 \"运行指标\"。",
+            "(/)handlers: 查看已注册的事件处理器。"
+    };
+
+    private CardTemplate template;
+    private int page;
+
+    @Setup
+    public void setUp() {
+        template = CardTemplate.compile(build(slot("page"), slot("next"), slot("s0"), slot("s1"), slot("s2"), slot("s3"), slot("s4")));
+    }
+
+    @Benchmark
+    public String buildAndSerialize() {
+        final int current = ++page & 7;
+        return JacksonCardUtil.toJson(build(String.valueOf(current), String.valueOf(current + 1), LINES));
+    }
+
+    @Benchmark
+    public String render() {
+        final int current = ++page & 7;
+        // slots are in the order they appear in the card: page, s0 - s4, next
+        return template.render(String.valueOf(current), LINES[0], LINES[1], LINES[2], LINES[3], LINES[4], String.valueOf(current + 1))
+                .toJson();
+    }
+
+    private static BaseComponent build(String page, String next, String... lines) {
+        final CardBuilder builder = new CardBuilder()
+                .setTheme(Theme.SUCCESS)
+                .setSize(Size.LG)
+                .addModule(new HeaderModule("命令帮助 (" + page + "/8)"))
+                .addModule(DividerModule.INSTANCE);
+        for (String line : lines) {
+            builder.addModule(new SectionModule(line));
+        }
+        return builder.addModule(DividerModule.INSTANCE)
+                .addModule(new ActionGroupModule(Arrays.asList(
+                        new ButtonElement(Theme.PRIMARY, "{\"page\": " + next + "}",
+                                ButtonElement.EventType.RETURN_VAL, new PlainTextElement("下一页"))
+                )))
+                .build();
+    }
+}
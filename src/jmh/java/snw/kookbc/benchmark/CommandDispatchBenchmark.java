@@ -0,0 +1,85 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.*;
+import snw.jkook.command.CommandSender;
+import snw.jkook.command.JKookCommand;
+import snw.jkook.message.Message;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.command.CommandManagerImpl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量 {@link CommandManagerImpl#executeCommand(CommandSender, String, Message)} 的分发开销：
+ * 查找根命令、匹配子命令、解析参数并调用一个空的执行器。
+ *
+ * <p>{@code sender=user} 时使用录制的频道消息作为命令来源，并走带前缀的查找路径。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandDispatchBenchmark {
+
+    @Param({"console", "user"})
+    public String sender;
+
+    private CommandManagerImpl commandManager;
+    private CommandSender commandSender;
+    private Message message;
+    private String cmdLine;
+
+    @Setup
+    public void setUp(BenchmarkClient benchmarkClient) {
+        final KBCClient client = benchmarkClient.get();
+        commandManager = (CommandManagerImpl) client.getCore().getCommandManager();
+        if (commandManager.getCommand("bench") == null) { // the state is reused between params when running without forks
+            commandManager.registerCommand(client.getInternalPlugin(), new JKookCommand("bench")
+                    .addSubcommand(new JKookCommand("run")
+                            .addArgument(Integer.class)
+                            .addArgument(String.class)
+                            .executesUser((user, arguments, msg) -> {
+                            })
+                            .executesConsole((console, arguments) -> {
+                            })
+                    )
+            );
+        }
+        if ("user".equals(sender)) {
+            final JsonNode data = BenchmarkClient.readFrame("channel_message").get("d");
+            message = client.getMessageBuilder().buildChannelMessage(data);
+            commandSender = message.getSender();
+            cmdLine = "/bench run 42 hello";
+        } else {
+            commandSender = client.getCore().getConsoleCommandSender();
+            cmdLine = "bench run 42 hello";
+        }
+        if (!commandManager.executeCommand(commandSender, cmdLine, message)) {
+            throw new IllegalStateException("The benchmark command was not executed");
+        }
+    }
+
+    @Benchmark
+    public boolean dispatch() {
+        return commandManager.executeCommand(commandSender, cmdLine, message);
+    }
+}
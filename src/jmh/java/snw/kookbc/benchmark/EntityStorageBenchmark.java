@@ -0,0 +1,124 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+import snw.jkook.entity.CustomEmoji;
+import snw.jkook.entity.Guild;
+import snw.jkook.entity.User;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.entity.CustomEmojiImpl;
+import snw.kookbc.impl.entity.ReactionImpl;
+import snw.kookbc.impl.entity.RoleImpl;
+import snw.kookbc.impl.entity.channel.TextChannelImpl;
+import snw.kookbc.impl.storage.EntityStorage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量事件线程并发查询 {@link EntityStorage} 缓存的开销。
+ *
+ * <ul>
+ *     <li>{@code user}/{@code guild}/{@code channel}：缓存命中时的查找</li>
+ *     <li>{@code user-update}：事件携带用户数据时的 {@link EntityStorage#getUser(String, JsonNode)}，命中后还会刷新实体</li>
+ *     <li>{@code role}/{@code reaction}：以服务器 ID + 角色 ID 、消息 ID + 表情 ID + 用户 ID 为键的查找</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class EntityStorageBenchmark {
+
+    @Param({"user", "guild", "channel", "user-update", "role", "reaction"})
+    public String lookup;
+
+    @Param({"10000"})
+    public int entities;
+
+    private EntityStorage storage;
+    private String[] ids;
+    private JsonNode[] userData;
+    private Guild[] guilds;
+    private User[] users;
+    private CustomEmoji emoji;
+    private String msgId;
+    // guilds and channels are weakly referenced by the storage, keep them alive
+    private Object[] strongRefs;
+
+    @Setup
+    public void setUp(BenchmarkClient benchmarkClient) {
+        final KBCClient client = benchmarkClient.get();
+        storage = client.getStorage();
+        final JsonNode author = BenchmarkClient.readFrame("channel_message").get("d").get("extra").get("author");
+        ids = new String[entities];
+        userData = new JsonNode[entities];
+        guilds = new Guild[entities];
+        users = new User[entities];
+        strongRefs = new Object[entities * 3];
+        emoji = new CustomEmojiImpl(client, "2404367834562345/aX7c9kLm", null, "emoji");
+        msgId = "2f4c7e3a-9b1d-4c59-8a7e-1d3f5b6c7a80";
+        for (int i = 0; i < entities; i++) {
+            final String id = String.valueOf(1875634023L + i);
+            ids[i] = id;
+            userData[i] = ((ObjectNode) author.deepCopy()).put("id", id);
+            final TextChannelImpl channel = new TextChannelImpl(client, id);
+            storage.addChannel(channel);
+            strongRefs[i * 3] = users[i] = storage.getUser(id, userData[i]);
+            strongRefs[i * 3 + 1] = guilds[i] = storage.getGuild(id);
+            strongRefs[i * 3 + 2] = channel;
+            storage.addRole(guilds[i], new RoleImpl(client, guilds[i], i, 0, i, 0, false, false, "role"));
+            storage.addReaction(new ReactionImpl(client, msgId, emoji, users[i], 1727400000000L));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next(int bound) {
+            if (++next == bound) {
+                next = 0;
+            }
+            return next;
+        }
+    }
+
+    @Benchmark
+    public Object lookup(Cursor cursor) {
+        final int i = cursor.next(entities);
+        switch (lookup) {
+            case "user":
+                return storage.getUser(ids[i]);
+            case "guild":
+                return storage.getGuild(ids[i]);
+            case "channel":
+                return storage.getChannel(ids[i]);
+            case "role":
+                return storage.getRole(guilds[i], i);
+            case "reaction":
+                return storage.getReaction(msgId, emoji, users[i]);
+            default:
+                return storage.getUser(ids[i], userData[i]);
+        }
+    }
+}
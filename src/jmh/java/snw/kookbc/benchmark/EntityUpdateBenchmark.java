@@ -0,0 +1,83 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.entity.UserImpl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量事件线程刷新用户数据时，其他线程读取同一用户的开销。
+ *
+ * <p>{@code update} 线程不断用事件中的用户数据调用 {@link UserImpl#update(JsonNode)}，
+ * {@code read} 线程同时读取名称、头像等字段。
+ * {@code payload=same} 时数据与当前状态相同（同一用户频繁发消息的常见情况），
+ * {@code payload=changed} 时每次都切换 VIP 状态，强制发布新的状态快照。
+ *
+ * <p>使用 {@code ./gradlew jmh -PjmhIncludes=EntityUpdate} 单独运行。
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EntityUpdateBenchmark {
+
+    @Param({"same", "changed"})
+    public String payload;
+
+    private UserImpl user;
+    private JsonNode[] data;
+
+    @Setup
+    public void setUp(BenchmarkClient benchmarkClient) {
+        final KBCClient client = benchmarkClient.get();
+        final JsonNode author = BenchmarkClient.readFrame("channel_message").get("d").get("extra").get("author");
+        final JsonNode other = "same".equals(payload)
+                ? author
+                : ((ObjectNode) author.deepCopy()).put("is_vip", !author.path("is_vip").asBoolean());
+        data = new JsonNode[]{author, other};
+        user = (UserImpl) client.getStorage().getUser(author.get("id").asText(), author);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Benchmark
+    @Group("readWhileUpdating")
+    @GroupThreads(1)
+    public void update(Cursor cursor) {
+        user.update(data[cursor.next++ & 1]);
+    }
+
+    @Benchmark
+    @Group("readWhileUpdating")
+    @GroupThreads(3)
+    public void read(Blackhole bh) {
+        // the user was built from the payload, so the getters do not go to the network
+        bh.consume(user.getName());
+        bh.consume(user.getAvatarUrl(false));
+        bh.consume(user.isVip());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.*;
+import snw.jkook.event.Event;
+import snw.kookbc.impl.event.EventFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按事件类型测量 {@link EventFactory#createEvent(JsonNode)} 的开销。
+ *
+ * <p>每个 {@link #event} 对应 {@code fixtures/events} 下的一个录制帧，
+ * 需要查询的频道、用户等实体由 {@link BenchmarkClient} 的离线 HTTP 响应提供。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventCreationBenchmark {
+
+    @Param({"channel_message", "card_message", "private_message", "added_reaction",
+            "message_btn_click", "joined_guild", "guild_member_online", "deleted_message"})
+    public String event;
+
+    private EventFactory factory;
+    private JsonNode data;
+
+    @Setup
+    public void setUp(BenchmarkClient client) {
+        factory = client.get().getEventFactory();
+        data = BenchmarkClient.readFrame(event).get("d");
+        // createEvent logs and returns null on failure, we don't want to measure that path by accident
+        if (factory.createEvent(data) == null) {
+            throw new IllegalStateException("Unable to create event from fixture: " + event);
+        }
+    }
+
+    @Benchmark
+    public Event createEvent() {
+        return factory.createEvent(data);
+    }
+}
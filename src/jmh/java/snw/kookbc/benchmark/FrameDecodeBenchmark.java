@@ -0,0 +1,126 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.benchmark;
+
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okio.ByteString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.*;
+import snw.kookbc.impl.network.Frame;
+import snw.kookbc.impl.network.ws.WebSocketMessageProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * 测量 {@link WebSocketMessageProcessor} 把一条 WebSocket 消息解码为 {@link Frame} 的开销。
+ *
+ * <p>{@code compressed=true} 时走 KOOK 默认的 deflate 压缩分支（先解压再解析）。
+ * 解码出的 Frame 不会进入事件分发，只交给一个空的 FrameHandler。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameDecodeBenchmark {
+    private static final WebSocket NO_SOCKET = new NoSocket();
+
+    @Param({"channel_message", "card_message", "added_reaction"})
+    public String fixture;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    private WebSocketMessageProcessor processor;
+    private String text;
+    private ByteString bytes;
+    private Frame last;
+
+    @Setup
+    public void setUp(BenchmarkClient client) {
+        processor = new WebSocketMessageProcessor(client.get(), null, frame -> last = frame);
+        text = BenchmarkClient.readFixture("events/" + fixture + ".json");
+        bytes = ByteString.of(deflate(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public Frame decode() {
+        if (compressed) {
+            processor.onMessage(NO_SOCKET, bytes);
+        } else {
+            processor.onMessage(NO_SOCKET, text);
+        }
+        return last;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream(data.length)) {
+            byte[] buf = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.toByteArray();
+        } catch (java.io.IOException e) {
+            throw new RuntimeException(e); // never happens with ByteArrayOutputStream
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // WebSocketListener is written in Kotlin and rejects a null socket
+    private static final class NoSocket implements WebSocket {
+
+        @NotNull
+        @Override
+        public Request request() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long queueSize() {
+            return 0;
+        }
+
+        @Override
+        public boolean send(@NotNull String text) {
+            return false;
+        }
+
+        @Override
+        public boolean send(@NotNull ByteString bytes) {
+            return false;
+        }
+
+        @Override
+        public boolean close(int code, @Nullable String reason) {
+            return false;
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import snw.kookbc.impl.CoreImpl;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.network.Frame;
+import snw.kookbc.impl.network.ListenerImpl;
+import snw.kookbc.util.JacksonUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 与 {@link MessageEventDecodeBenchmark} 相同的两种解码方式，但从收到的字节开始经过 {@link ListenerImpl#handle(Frame)} ，
+ * 在当前线程中完成 SN 检查、事件创建与派发。
+ *
+ * <p>客户端使用真实的日志记录器及 {@code log4j2.xml} 的默认配置（根级别 DEBUG ，{@code debug.log} 启用），
+ * 因此每个帧的调试日志也计入耗时，日志会被写入工作目录下的 {@code logs} 目录。
+ *
+ * <p>使用 {@code ./gradlew jmh -PjmhIncludes=FrameHandle -PjmhProfilers=gc} 运行以查看内存分配速率。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameHandleBenchmark {
+
+    @Param({"channel_message", "private_message"})
+    public String event;
+
+    @Param({"tree", "streaming"})
+    public String decoder;
+
+    private KBCClient client;
+    private ListenerImpl listener;
+    private byte[] frame;
+    private boolean streaming;
+
+    @Setup
+    public void setUp() {
+        client = BenchmarkClient.create(new CoreImpl(LoggerFactory.getLogger("KookBC")));
+        listener = new ListenerImpl(client, null);
+        listener.setProcessEventsInline(true);
+        frame = BenchmarkClient.readFixture("events/" + event + ".json").getBytes(StandardCharsets.UTF_8);
+        streaming = "streaming".equals(decoder);
+    }
+
+    @Benchmark
+    public void handle() throws IOException {
+        final Frame decoded;
+        if (streaming) {
+            decoded = Frame.decode(frame);
+        } else {
+            final JsonNode node = JacksonUtil.getMapper().readTree(frame);
+            decoded = new Frame(node.get("s").asInt(), node.get("sn").asInt(), node.get("d"));
+        }
+        // the fixture is handed over again and again, let the listener expect its SN every time
+        client.getSession().getSN().set(decoded.getSN() - 1);
+        listener.handle(decoded);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import snw.kookbc.impl.CoreImpl;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.network.Frame;
+import snw.kookbc.impl.network.ListenerImpl;
+import snw.kookbc.impl.network.MessageType;
+import snw.kookbc.impl.network.Session;
+import snw.kookbc.impl.plugin.PrefixLogger;
+import snw.kookbc.util.AsyncLogging;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量日志输出对事件吞吐量的影响：每次调用把一个 EVENT 帧交给 {@link ListenerImpl#handle(Frame)} ，
+ * 并在当前线程中完成事件创建与派发。
+ *
+ * <p>与其他基准测试不同，客户端使用真实的日志记录器及 {@code log4j2.xml} 中的 Appender ，
+ * 日志会被写入工作目录下的 {@code logs} 目录。{@link #level} 为根日志记录器的级别，
+ * {@code DEBUG} 时每个事件的调试日志都会写入 {@code debug.log} （控制台仍为 INFO）。
+ * {@link #mode} 对应 kbc.yml 中的 {@code logging-mode} 。
+ *
+ * <p>{@link #pluginLog()} 通过插件使用的 {@link PrefixLogger} 输出 DEBUG 日志。开始前先输出一批只出现一次的启动日志，
+ * 以检验之后反复出现的日志模式仍能占用前缀缓存，而不是每次重新拼接。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoggingBenchmark {
+
+    @Param({"sync", "async"})
+    public String mode;
+
+    @Param({"INFO", "DEBUG"})
+    public String level;
+
+    private KBCClient client;
+    private ListenerImpl listener;
+    private JsonNode data;
+    private PrefixLogger pluginLogger;
+    private int next;
+
+    private static final String[] HOT_PATTERNS = {
+            "收到来自 {} 的消息: {}",
+            "已处理命令 {}，耗时 {} ms",
+            "用户 {} 点击了按钮 {}",
+            "正在更新消息 {}，内容长度 {}",
+            "频道 {} 的缓存已刷新，共 {} 条",
+            "定时任务 {} 已执行 {} 次",
+            "用户 {} 加入了服务器 {}",
+            "已向 {} 发送 {} 个卡片"
+    };
+
+    @Setup
+    public void setUp() {
+        // every param combination runs in its own fork, so the logging configuration is not shared
+        if ("async".equals(mode) && !AsyncLogging.enable(8192)) {
+            throw new IllegalStateException("Unable to enable async logging");
+        }
+        Configurator.setRootLevel(Level.valueOf(level));
+        client = BenchmarkClient.create(new CoreImpl(LoggerFactory.getLogger("KookBC")));
+        listener = new ListenerImpl(client, null);
+        listener.setProcessEventsInline(true);
+        data = BenchmarkClient.readFrame("channel_message").get("d");
+        pluginLogger = new PrefixLogger("Benchmark", LoggerFactory.getLogger("Benchmark"));
+        for (int i = 0; i < 2048; i++) {
+            // one-off startup messages, each a distinct string like the ones built while enabling plugins
+            pluginLogger.debug("正在加载配置项 startup.option." + i);
+        }
+    }
+
+    @Benchmark
+    public void pluginLog() {
+        pluginLogger.debug(HOT_PATTERNS[next++ & (HOT_PATTERNS.length - 1)], "benchmark", 42);
+    }
+
+    @Benchmark
+    public void handleEvent() {
+        final int sn = Session.UPDATE_FUNC.applyAsInt(client.getSession().getSN().get());
+        listener.handle(new Frame(MessageType.EVENT.getType(), sn, data));
+    }
+}
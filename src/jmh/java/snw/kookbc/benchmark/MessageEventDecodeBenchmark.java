@@ -0,0 +1,74 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.*;
+import snw.jkook.event.Event;
+import snw.kookbc.impl.event.EventFactory;
+import snw.kookbc.impl.network.Frame;
+import snw.kookbc.util.JacksonUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比消息事件的两种解码方式，从收到的字节开始计时。
+ *
+ * <ul>
+ *     <li>{@code tree}: 整帧解析为 {@link JsonNode} 后调用 {@link EventFactory#createEvent(JsonNode)}</li>
+ *     <li>{@code streaming}: {@link Frame#decode(byte[])} 后调用 {@link EventFactory#createEvent(Frame)}</li>
+ * </ul>
+ *
+ * <p>使用 {@code ./gradlew jmh -PjmhIncludes=MessageEventDecode -PjmhProfilers=gc} 运行以查看内存分配速率。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageEventDecodeBenchmark {
+
+    @Param({"channel_message", "private_message"})
+    public String event;
+
+    @Param({"tree", "streaming"})
+    public String decoder;
+
+    private EventFactory factory;
+    private byte[] frame;
+    private boolean streaming;
+
+    @Setup
+    public void setUp(BenchmarkClient client) throws IOException {
+        factory = client.get().getEventFactory();
+        frame = BenchmarkClient.readFixture("events/" + event + ".json").getBytes(StandardCharsets.UTF_8);
+        streaming = "streaming".equals(decoder);
+        if (decode() == null) {
+            throw new IllegalStateException("Unable to create event from fixture: " + event);
+        }
+    }
+
+    @Benchmark
+    public Event decode() throws IOException {
+        if (streaming) {
+            return factory.createEvent(Frame.decode(frame));
+        }
+        return factory.createEvent(JacksonUtil.getMapper().readTree(frame).get("d"));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snw.jkook.event.channel.ChannelMessageEvent;
+import snw.jkook.message.Message;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.entity.builder.MessageBuilder;
+import snw.kookbc.impl.storage.OffHeapMessageStore;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量 {@link OffHeapMessageStore} 的开销。
+ *
+ * <ul>
+ *     <li>{@code store}：编码、压缩并写入一条消息，即每条消息事件在 {@code addMessage} 中额外付出的开销</li>
+ *     <li>{@code rehydrate}：读取、解压并还原一条消息，即堆上已没有该消息对象时 {@code getMessage} 的开销</li>
+ * </ul>
+ *
+ * <p>压缩率与占用可以在运行后通过 {@code kookbc_message_store_*} 指标查看。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageStoreBenchmark {
+
+    @Param({"channel_message", "card_message"})
+    public String fixture;
+
+    private MessageBuilder builder;
+    private OffHeapMessageStore store;
+    private Message message;
+
+    @Setup
+    public void setUp(BenchmarkClient benchmarkClient) {
+        final KBCClient client = benchmarkClient.get();
+        builder = client.getMessageBuilder();
+        store = new OffHeapMessageStore(64L << 20, MessageBuilder.RECORD_DICTIONARY);
+        message = ((ChannelMessageEvent) client.getEventFactory()
+                .createEvent(BenchmarkClient.readFrame(fixture).get("d"))).getMessage();
+        if (!put(message.getId())) {
+            throw new IllegalStateException("Unable to store the message of fixture: " + fixture);
+        }
+    }
+
+    private boolean put(String id) {
+        final byte[] record = builder.encodeRecord(message);
+        return record != null && store.put(id, record);
+    }
+
+    @Benchmark
+    public boolean store() {
+        return put(message.getId());
+    }
+
+    @Benchmark
+    public Message rehydrate() throws IOException {
+        return builder.decodeRecord(store.get(message.getId()));
+    }
+}
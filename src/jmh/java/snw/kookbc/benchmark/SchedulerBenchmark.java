@@ -0,0 +1,91 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import snw.kookbc.impl.scheduler.TimingWheel;
+import snw.kookbc.util.VirtualThreadUtil;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比 SchedulerImpl 的两种延迟任务后端在大量待执行定时器下的调度与取消开销。
+ *
+ * <p>每轮测试前预先放入 {@link #pendingTimers} 个一小时后才到期的定时器（模拟每个用户的冷却时间），
+ * 然后测量再调度一个随机延迟的任务并立即取消它的耗时。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class SchedulerBenchmark {
+    private static final Runnable NOOP = () -> {
+    };
+
+    @Param({"executor", "timing-wheel"})
+    public String backend;
+
+    @Param({"1000000"})
+    public int pendingTimers;
+
+    private ScheduledExecutorService pool;
+    private ExecutorService dispatcher;
+    private TimingWheel wheel;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("timing-wheel".equals(backend)) {
+            dispatcher = VirtualThreadUtil.newVirtualThreadExecutor("Benchmark-Task-");
+            wheel = new TimingWheel("Benchmark-Timing-Wheel", 10, TimeUnit.MILLISECONDS, 512, dispatcher);
+        } else {
+            // same as SchedulerImpl(KBCClient)
+            pool = VirtualThreadUtil.newVirtualThreadScheduledExecutor("Benchmark-Scheduler-");
+        }
+        for (int i = 0; i < pendingTimers; i++) {
+            schedule(TimeUnit.HOURS.toMillis(1) + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (wheel != null) {
+            wheel.close();
+            dispatcher.shutdownNow();
+        } else {
+            pool.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public void scheduleAndCancel(Blackhole blackhole) {
+        Future<?> future = schedule(ThreadLocalRandom.current().nextLong(1_000, 600_000));
+        blackhole.consume(future.cancel(false));
+    }
+
+    private Future<?> schedule(long delayMillis) {
+        return wheel != null
+                ? wheel.schedule(NOOP, delayMillis, TimeUnit.MILLISECONDS)
+                : pool.schedule(NOOP, delayMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snw.jkook.entity.User;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.entity.UserImpl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量缓存大量用户时每个 {@link UserImpl} 占用的堆内存。
+ *
+ * <p>每次迭代构建 {@link #users} 个用户，结果中的 {@code bytesPerUser} 是 GC 后堆占用的增量除以用户数，
+ * 包含用户 ID 字符串，名称与头像等字符串在用户间共享，与实际从事件中解码的情况相比偏小。
+ * {@code permissionsUsed=true} 时，每个用户都查询过一次权限，以对比权限状态被分配后的占用。
+ *
+ * <p>使用 {@code ./gradlew jmh -PjmhIncludes=UserFootprint} 单独运行。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class UserFootprintBenchmark {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    @Param({"1000000"})
+    public int users;
+
+    @Param({"false", "true"})
+    public boolean permissionsUsed;
+
+    private KBCClient client;
+    private User[] cached;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long bytesPerUser;
+    }
+
+    @Setup
+    public void setUp(BenchmarkClient benchmarkClient) {
+        client = benchmarkClient.get();
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        cached = null;
+    }
+
+    @Benchmark
+    public User[] build(Footprint footprint) {
+        final long before = usedHeap();
+        final User[] result = new User[users];
+        for (int i = 0; i < users; i++) {
+            final User user = new UserImpl(client, String.valueOf(1875634023L + i), false, "测试用户", 4421,
+                    false, false, "https://img.kookapp.cn/avatars/2023-03/aX7c9kLm.png", "");
+            if (permissionsUsed) {
+                user.hasPermission(null, "kookbc.benchmark");
+            }
+            result[i] = user;
+        }
+        cached = result;
+        footprint.bytesPerUser = (usedHeap() - before) / users;
+        return result;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        System.gc();
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+}
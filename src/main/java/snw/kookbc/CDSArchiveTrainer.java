@@ -0,0 +1,186 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AppCDS（应用类数据共享）归档的训练与使用。
+ * <p>
+ * KookBC 启动时要加载大量的类（Jackson、OkHttp、Log4j2、Caffeine、LiteCommands 等），这是冷启动的主要开销。
+ * 指定 {@code --cds-train} 启动时，当前进程不会启动 Bot ，而是以相同的参数启动两个子进程：
+ * <ul>
+ *     <li>训练运行：带 {@code -XX:ArchiveClassesAtExit} 启动，完成启动（包括加载并启用插件、连接网络）后立即退出，
+ *     JVM 在退出时把加载过的类写入动态归档</li>
+ *     <li>验证运行：带 {@code -XX:SharedArchiveFile} 启动，同样在启动完成后退出</li>
+ * </ul>
+ * 之后输出两次运行的启动耗时对比，并生成一个 JVM 参数文件，使用 {@code java @kookbc-cds.args ...} 启动即可使用归档。
+ * 参数文件中包含 {@code -XX:+AutoCreateSharedArchive}，当 jar 或 JDK 变化导致归档失效时，JVM 会在退出时自动重新生成。
+ * <p>
+ * 训练运行需要能够完成启动，若不希望连接 KOOK ，可以通过 {@code api-base-url} 指向本地替身服务器
+ * （参见 {@code snw.kookbc.test.LocalKookServer}）。
+ */
+public final class CDSArchiveTrainer {
+    private static final Logger logger = LoggerFactory.getLogger(CDSArchiveTrainer.class);
+    // set on the child processes, the value is the file to write the startup time to
+    static final String TRAINING_PROPERTY = "kookbc.cds.training";
+    static final String TRAIN_OPTION = "--cds-train";
+    private static final File ARCHIVE = new File(System.getProperty("kookbc.cds.archive", "kookbc.jsa"));
+    private static final File ARGS_FILE = new File("kookbc-cds.args");
+    private static final String DEFAULT_MAIN_CLASS = "snw.kookbc.LaunchMain";
+
+    // returns the exit code
+    static int train(String[] args) {
+        final List<String> childArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (!TRAIN_OPTION.equals(arg)) {
+                childArgs.add(arg);
+            }
+        }
+        // the JVM creates the archive as read-only
+        if (ARCHIVE.exists() && !(ARCHIVE.setWritable(true) && ARCHIVE.delete())) {
+            logger.error("无法删除旧的 CDS 归档 {}", ARCHIVE.getAbsolutePath());
+            return 1;
+        }
+
+        try {
+            logger.info("正在进行 CDS 训练运行，归档将写入 {}", ARCHIVE.getAbsolutePath());
+            final long baseline = runChild(childArgs, "-XX:ArchiveClassesAtExit=" + ARCHIVE.getPath());
+            if (!ARCHIVE.isFile()) {
+                logger.error("训练运行结束，但没有生成 CDS 归档，请检查上方的日志");
+                return 1;
+            }
+            logger.info("正在使用新的 CDS 归档进行验证运行");
+            final long archived = runChild(childArgs, "-XX:SharedArchiveFile=" + ARCHIVE.getPath());
+
+            Files.writeString(ARGS_FILE.toPath(),
+                    "-XX:SharedArchiveFile=" + ARCHIVE.getPath() + System.lineSeparator()
+                            + "-XX:+AutoCreateSharedArchive" + System.lineSeparator(),
+                    StandardCharsets.UTF_8);
+
+            logger.info("CDS 归档已生成: {} ({} KB)", ARCHIVE.getAbsolutePath(), ARCHIVE.length() / 1024);
+            if (baseline > 0 && archived > 0) {
+                logger.info("启动耗时: 未使用归档 {} ms, 使用归档 {} ms, 减少 {}%",
+                        baseline, archived, Math.round((baseline - archived) * 100.0 / baseline));
+            } else {
+                logger.warn("至少有一次运行未能完成启动，无法比较启动耗时");
+            }
+            logger.info("之后请在 java 命令中加入 @{} 以使用此归档，例如: java @{} -jar kookbc.jar",
+                    ARGS_FILE.getPath(), ARGS_FILE.getPath());
+            return 0;
+        } catch (IOException e) {
+            logger.error("CDS 训练失败", e);
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    static boolean isTrainingRun() {
+        return System.getProperty(TRAINING_PROPERTY) != null;
+    }
+
+    // called by the child processes once the client has started
+    static void finishTrainingRun() {
+        final long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        logger.info("CDS 训练: 启动完成，用时 {} ms，即将退出", uptime);
+        try {
+            Files.writeString(new File(System.getProperty(TRAINING_PROPERTY)).toPath(), Long.toString(uptime), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("无法写入启动耗时", e);
+        }
+    }
+
+    // tells the user about the archive if it exists but this JVM does not use it
+    static void checkArchive() {
+        if (isTrainingRun() || !ARCHIVE.isFile()) {
+            return;
+        }
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (arg.startsWith("-XX:SharedArchiveFile=")) {
+                logger.debug("正在使用 CDS 归档 {}", arg.substring("-XX:SharedArchiveFile=".length()));
+                return;
+            }
+        }
+        logger.info("找到 CDS 归档 {}，但当前 JVM 没有使用它。在 java 命令中加入 @{} 可以加快启动", ARCHIVE.getPath(), ARGS_FILE.getPath());
+    }
+
+    // returns the startup time of the child in milliseconds, or -1 if it did not finish starting
+    private static long runChild(List<String> args, String vmOption) throws IOException, InterruptedException {
+        final File report = File.createTempFile("kookbc-cds", ".txt");
+        try {
+            final List<String> command = new ArrayList<>();
+            command.add(ProcessHandle.current().info().command()
+                    .orElse(new File(System.getProperty("java.home"), "bin/java").getPath()));
+            for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+                if (!isArchiveOption(arg)) {
+                    command.add(arg);
+                }
+            }
+            command.add(vmOption);
+            command.add("-D" + TRAINING_PROPERTY + "=" + report.getAbsolutePath());
+            command.addAll(launchTarget());
+            command.addAll(args);
+
+            final int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+            final String content = Files.readString(report.toPath(), StandardCharsets.UTF_8).trim();
+            if (exitCode != 0 || content.isEmpty()) {
+                logger.warn("子进程以代码 {} 退出", exitCode);
+                return -1;
+            }
+            return Long.parseLong(content);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            report.delete();
+        }
+    }
+
+    // the jar or the main class this JVM was started with
+    private static List<String> launchTarget() {
+        final String classPath = System.getProperty("java.class.path");
+        final String command = System.getProperty("sun.java.command", "");
+        if (classPath.endsWith(".jar") && !classPath.contains(File.pathSeparator) && command.startsWith(classPath)) {
+            return List.of("-jar", classPath);
+        }
+        final int space = command.indexOf(' ');
+        final String mainClass = space == -1 ? command : command.substring(0, space);
+        return List.of("-cp", classPath, mainClass.isEmpty() ? DEFAULT_MAIN_CLASS : mainClass);
+    }
+
+    private static boolean isArchiveOption(String arg) {
+        return arg.startsWith("-XX:SharedArchiveFile=")
+                || arg.startsWith("-XX:ArchiveClassesAtExit=")
+                || arg.contains("AutoCreateSharedArchive")
+                || arg.startsWith("-D" + TRAINING_PROPERTY + "=");
+    }
+
+    private CDSArchiveTrainer() {
+    }
+}
@@ -44,6 +44,7 @@ import snw.kookbc.impl.CoreImpl;
 import snw.kookbc.impl.KBCClient;
 import snw.kookbc.impl.command.CommandManagerImpl;
 import snw.kookbc.launcher.Launcher;
+import snw.kookbc.util.AsyncLogging;
 import uk.org.lidalia.sysoutslf4j.context.SysOutOverSLF4J;
 
 public class Main extends Launcher {
@@ -78,10 +79,12 @@ public class Main extends Launcher {
         // KBC accepts following arguments:
         // --token <tokenValue>   --  Use the tokenValue as the token
         // --help                 --  Get help and exit
+        // --cds-train            --  Do a training run to create the AppCDS archive and exit
 
         OptionParser parser = new OptionParser();
         OptionSpec<String> tokenOption = parser.accepts("token", "将要使用的 token。（不安全，建议将 token 写入 kbc.yml）").withOptionalArg();
         OptionSpec<Void> helpOption = parser.accepts("help", "获取帮助并退出");
+        OptionSpec<Void> cdsTrainOption = parser.accepts("cds-train", "进行一次训练运行以生成 AppCDS 归档，用于加快之后的启动，完成后退出");
 
         OptionSet options;
         try {
@@ -105,6 +108,11 @@ public class Main extends Launcher {
             return 0;
         }
 
+        if (options.has(cdsTrainOption)) {
+            return CDSArchiveTrainer.train(args);
+        }
+        CDSArchiveTrainer.checkArchive();
+
         String token = options.valueOf(tokenOption);
 
         saveKBCConfig();
@@ -123,6 +131,12 @@ public class Main extends Launcher {
             logger.error("无法加载 kbc.yml 配置文件", e);
         }
 
+        if ("async".equalsIgnoreCase(config.getString("logging-mode", "sync"))) {
+            if (AsyncLogging.enable(Math.max(1, config.getInt("async-logging-buffer-size", 8192)))) {
+                logger.debug("已启用异步日志");
+            }
+        }
+
         String configToken = config.getString("token");
         if (configToken != null && !configToken.isEmpty()) {
             logger.debug("在 kbc.yml 中找到有效的 token。");
@@ -182,6 +196,13 @@ public class Main extends Launcher {
             return 1;
         }
 
+        if (CDSArchiveTrainer.isTrainingRun()) {
+            // the archive is written when the JVM exits
+            CDSArchiveTrainer.finishTrainingRun();
+            client.shutdown();
+            return 0;
+        }
+
         try {
             client.loop();
             client.waitUntilShutdown();
@@ -18,6 +18,7 @@
 
 package snw.kookbc.impl;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import snw.jkook.Core;
@@ -33,23 +34,36 @@ import snw.jkook.util.Validate;
 import snw.kookbc.SharedConstants;
 import snw.kookbc.impl.command.CommandManagerImpl;
 import snw.kookbc.impl.command.litecommands.LiteKookFactory;
+import snw.kookbc.impl.command.litecommands.internal.HandlersCommand;
+import snw.kookbc.impl.command.litecommands.internal.HelpCards;
 import snw.kookbc.impl.command.litecommands.internal.HelpCommand;
+import snw.kookbc.impl.command.litecommands.internal.MetricsCommand;
 import snw.kookbc.impl.command.litecommands.internal.PluginsCommand;
 import snw.kookbc.impl.command.litecommands.internal.StopCommand;
 import snw.kookbc.impl.command.litecommands.result.ResultTypes;
 import snw.kookbc.impl.console.Console;
 import snw.kookbc.impl.entity.builder.EntityBuilder;
 import snw.kookbc.impl.entity.builder.MessageBuilder;
+import snw.kookbc.impl.entity.builder.StreamingDecoder;
 import snw.kookbc.impl.event.EventFactory;
 import snw.kookbc.impl.event.internal.InternalListener;
 import snw.kookbc.impl.event.internal.UserClickButtonListener;
+import snw.kookbc.impl.launch.LaunchClassLoader;
+import snw.kookbc.impl.launch.TransformedClassCache;
+import snw.kookbc.impl.metrics.MetricsHttpServer;
+import snw.kookbc.impl.metrics.MetricsRegistry;
 import snw.kookbc.impl.network.HttpAPIRoute;
+import snw.kookbc.impl.network.MessageEditCoalescer;
 import snw.kookbc.impl.network.NetworkClient;
+import snw.kookbc.impl.network.OutboundMessageQueue;
 import snw.kookbc.impl.network.Session;
+import snw.kookbc.impl.network.StartupEventGate;
 import snw.kookbc.impl.network.webhook.JLHttpWebhookNetworkSystem;
+import snw.kookbc.impl.network.replay.ReplayNetworkSystem;
 import snw.kookbc.impl.network.ws.OkhttpWebSocketNetworkSystem;
 import snw.kookbc.impl.permissions.UserPermissionSaved;
 import snw.kookbc.impl.plugin.InternalPlugin;
+import snw.kookbc.impl.plugin.PluginStartupTimeline;
 import snw.kookbc.impl.plugin.SimplePluginManager;
 import snw.kookbc.impl.scheduler.SchedulerImpl;
 import snw.kookbc.impl.storage.EntityStorage;
@@ -57,7 +71,10 @@ import snw.kookbc.impl.tasks.StopSignalListener;
 import snw.kookbc.impl.tasks.UpdateChecker;
 import snw.kookbc.interfaces.network.NetworkSystem;
 import snw.kookbc.util.DependencyListBasedPluginComparator;
+import snw.kookbc.util.JsonCacheManager;
+import snw.kookbc.util.PluginDependencyLayers;
 import snw.kookbc.util.ReturnNotNullFunction;
+import snw.kookbc.util.VirtualThreadUtil;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -65,14 +82,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import static snw.kookbc.util.Util.closeLoaderIfPossible;
+import static snw.kookbc.util.Util.join;
 import static snw.kookbc.util.VirtualThreadUtil.newVirtualThreadExecutor;
+import static snw.kookbc.util.VirtualThreadUtil.startVirtualThread;
 
 // The client representation.
 public class KBCClient {
@@ -83,6 +104,7 @@ public class KBCClient {
     private final EntityStorage storage;
     private final EntityBuilder entityBuilder;
     private final MessageBuilder msgBuilder;
+    private final StreamingDecoder streamingDecoder;
     private final EventFactory eventFactory;
     private final ConfigurationSection config;
     private final File pluginsFolder;
@@ -91,6 +113,15 @@ public class KBCClient {
     private final ReentrantLock shutdownLock;
     private final Condition shutdownCondition;
     private final Thread mainThread = Thread.currentThread();
+    private final SharedClientResources sharedResources;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final PluginStartupTimeline pluginTimeline = new PluginStartupTimeline();
+    private MetricsHttpServer metricsServer;
+    private final StartupEventGate eventGate = new StartupEventGate();
+    private final OutboundMessageQueue outboundQueue;
+    private final MessageEditCoalescer editCoalescer;
+    private final HelpCards helpCards;
+    private volatile JsonNode startupSelfData; // the USER_ME response got on startup, null after the network is started
 
     protected final ExecutorService eventExecutor;
     protected final NetworkSystem networkSystem;
@@ -121,20 +152,47 @@ public class KBCClient {
     public KBCClient(CoreImpl core, ConfigurationSection config, File pluginsFolder, String token,
             /* Customizable components are following: */
                      @Nullable ReturnNotNullFunction<KBCClient, CommandManager> commandManager, @Nullable ReturnNotNullFunction<KBCClient, NetworkClient> networkClient, @Nullable ReturnNotNullFunction<KBCClient, EntityStorage> storage, @Nullable ReturnNotNullFunction<KBCClient, EntityBuilder> entityBuilder, @Nullable ReturnNotNullFunction<KBCClient, MessageBuilder> msgBuilder, @Nullable ReturnNotNullFunction<KBCClient, EventFactory> eventFactory, @Nullable ReturnNotNullFunction<KBCClient, NetworkSystem> networkSystem) {
+        this(core, config, pluginsFolder, token, commandManager, networkClient, storage, entityBuilder, msgBuilder, eventFactory, networkSystem, null);
+    }
+
+    // Provide the sharedResources if many clients are running in the same JVM,
+    //  then the HTTP connections, heartbeat timer, scheduler threads and event threads will be shared.
+    // The caller owns the resources, close them after all the clients stopped.
+    public KBCClient(CoreImpl core, ConfigurationSection config, File pluginsFolder, String token,
+            /* Customizable components are following: */
+                     @Nullable ReturnNotNullFunction<KBCClient, CommandManager> commandManager, @Nullable ReturnNotNullFunction<KBCClient, NetworkClient> networkClient, @Nullable ReturnNotNullFunction<KBCClient, EntityStorage> storage, @Nullable ReturnNotNullFunction<KBCClient, EntityBuilder> entityBuilder, @Nullable ReturnNotNullFunction<KBCClient, MessageBuilder> msgBuilder, @Nullable ReturnNotNullFunction<KBCClient, EventFactory> eventFactory, @Nullable ReturnNotNullFunction<KBCClient, NetworkSystem> networkSystem,
+                     @Nullable SharedClientResources sharedResources) {
         if (pluginsFolder != null) {
             Validate.isTrue(pluginsFolder.isDirectory(), "The provided pluginsFolder object is not a directory.");
         }
         this.core = core;
         this.config = config;
         this.pluginsFolder = pluginsFolder;
+        final String apiBaseURL = config.getString("api-base-url", "");
+        if (apiBaseURL != null && !apiBaseURL.isEmpty()) {
+            HttpAPIRoute.setBaseURL(apiBaseURL); // process-wide
+        }
+        this.sharedResources = sharedResources;
         this.internalPlugin = new InternalPlugin(this);
-        this.core.init(this);
+        if (sharedResources != null) {
+            this.core.init(this, null, null, new SchedulerImpl(this, sharedResources.getSchedulerPool()), null, null);
+        } else {
+            this.core.init(this);
+        }
         this.commandManager = Optional.ofNullable(commandManager).orElseGet(() -> CommandManagerImpl::new).apply(this);
-        this.networkClient = Optional.ofNullable(networkClient).orElseGet(() -> c -> new NetworkClient(c, token)).apply(this);
+        this.networkClient = Optional.ofNullable(networkClient).orElseGet(() -> c -> new NetworkClient(c, token, sharedResources != null ? sharedResources.getHttpClient() : null)).apply(this);
         this.storage = Optional.ofNullable(storage).orElseGet(() -> EntityStorage::new).apply(this);
         this.entityBuilder = Optional.ofNullable(entityBuilder).orElseGet(() -> EntityBuilder::new).apply(this);
         this.msgBuilder = Optional.ofNullable(msgBuilder).orElseGet(() -> MessageBuilder::new).apply(this);
-        this.eventExecutor = newVirtualThreadExecutor("Event-Executor");
+        this.streamingDecoder = new StreamingDecoder(this);
+        this.outboundQueue = new OutboundMessageQueue(this);
+        this.editCoalescer = new MessageEditCoalescer(this);
+        this.helpCards = new HelpCards(this);
+        if (sharedResources != null) {
+            this.eventExecutor = sharedResources.getEventExecutors().newLane("Event-Executor-" + Integer.toHexString(System.identityHashCode(this)));
+        } else {
+            this.eventExecutor = newVirtualThreadExecutor("Event-Executor");
+        }
         this.shutdownLock = new ReentrantLock();
         this.shutdownCondition = this.shutdownLock.newCondition();
         this.eventFactory = Optional.ofNullable(eventFactory).orElseGet(() -> EventFactory::new).apply(this);
@@ -144,6 +202,8 @@ public class KBCClient {
                 this.networkSystem = new OkhttpWebSocketNetworkSystem(this);
             } else if ("webhook".equals(mode)) {
                 this.networkSystem = new JLHttpWebhookNetworkSystem(this, null);
+            } else if ("replay".equals(mode)) {
+                this.networkSystem = new ReplayNetworkSystem(this);
             } else {
                 getCore().getLogger().warn("***********************************");
                 getCore().getLogger().warn("无法识别的网络模式: " + mode);
@@ -257,16 +317,36 @@ public class KBCClient {
         }
 
         core.getLogger().debug("正在获取 Bot 用户对象");
-        User botUser = getEntityBuilder().buildUser(getNetworkClient().get(HttpAPIRoute.USER_ME.toFullURL()));
+        final JsonNode selfData = getNetworkClient().get(HttpAPIRoute.USER_ME.toFullURL());
+        startupSelfData = selfData;
+        User botUser = getEntityBuilder().buildUser(selfData);
         getStorage().addUser(botUser);
         core.setUser(botUser);
-        registerInternal();
-        getCore().getLogger().debug("正在启用插件");
-        enablePlugins();
-        getCore().getLogger().info("正在运行延迟初始化任务");
-        ((SchedulerImpl) core.getScheduler()).runAfterPluginInitTasks();
-        getCore().getLogger().debug("正在启动网络");
-        startNetwork();
+        // the events received before the plugins are ready are held by the event gate
+        final CompletableFuture<Void> network = startNetworkEarly();
+        final int heldEvents;
+        try {
+            registerInternal();
+            getCore().getLogger().debug("正在启用插件");
+            enablePlugins();
+            getCore().getLogger().info("正在运行延迟初始化任务");
+            ((SchedulerImpl) core.getScheduler()).runAfterPluginInitTasks();
+            heldEvents = eventGate.open();
+        } catch (Throwable e) {
+            abortEarlyNetwork(network);
+            throw e;
+        }
+        if (heldEvents > 0) {
+            getCore().getLogger().debug("已派发启动期间暂存的 {} 个事件", heldEvents);
+        }
+        if (network != null) {
+            join(network);
+        } else {
+            getCore().getLogger().debug("正在启动网络");
+            startNetwork();
+        }
+        startupSelfData = null;
+        startMetricsServer();
         finishStart();
         getCore().getLogger().info("完成！输入 \"help\" 获取帮助。");
 
@@ -342,6 +422,7 @@ public class KBCClient {
             }
             before = after;
         } while (shouldContinue);
+        pluginTimeline.report(getCore().getLogger());
     }
 
     private void enablePlugins(@Nullable List<Plugin> plugins) {
@@ -350,49 +431,110 @@ public class KBCClient {
             // the loadPlugins method is protected, NOT private, so it is possible to be empty!
             return;
         }
+        if (getConfig().getBoolean("parallel-plugin-enable", false)) {
+            enablePluginsInLayers(plugins);
+            return;
+        }
 
         // we must call onLoad() first.
+        plugins.removeIf(plugin -> !callOnLoad(plugin, -1));
+
         for (Iterator<Plugin> iterator = plugins.iterator(); iterator.hasNext(); ) {
             Plugin plugin = iterator.next();
-
-            // onLoad
-            PluginDescription description = plugin.getDescription();
-            plugin.getLogger().info("正在加载 {} 版本 {}", description.getName(), description.getVersion());
-            try {
-                plugin.onLoad();
-            } catch (Throwable e) {
-                plugin.getLogger().error("无法加载此插件", e);
+            if (enableLoadedPlugin(plugin, -1)) {
+                // Add the plugin into the known list to ensure the dependency system will work correctly
+                getCore().getPluginManager().addPlugin(plugin);
+            } else {
                 iterator.remove();
             }
-            // end onLoad
         }
+    }
 
-        for (Iterator<Plugin> iterator = plugins.iterator(); iterator.hasNext(); ) {
-            Plugin plugin = iterator.next();
+    // Plugins in the same layer don't depend on each other, so each layer is loaded and enabled concurrently.
+    // The next layer starts after the previous one has finished.
+    private void enablePluginsInLayers(List<Plugin> plugins) {
+        final List<List<Plugin>> layers = PluginDependencyLayers.compute(plugins);
+        getCore().getLogger().debug("插件依赖层: {}", layers);
+
+        // we must call onLoad() first.
+        for (int i = 0; i < layers.size(); i++) {
+            final int layer = i;
+            final List<Plugin> failed = runConcurrently(layers.get(layer), plugin -> callOnLoad(plugin, layer));
+            plugins.removeAll(failed);
+            layers.get(layer).removeAll(failed);
+        }
+
+        for (int i = 0; i < layers.size(); i++) {
+            final int layer = i;
+            final List<Plugin> failed = runConcurrently(layers.get(layer), plugin -> enableLoadedPlugin(plugin, layer));
+            plugins.removeAll(failed);
+            for (Plugin plugin : layers.get(layer)) {
+                if (!failed.contains(plugin)) {
+                    // the next layer checks its dependencies against the known list
+                    getCore().getPluginManager().addPlugin(plugin);
+                }
+            }
+        }
+    }
+
+    // returns the plugins for which the action returned false
+    private List<Plugin> runConcurrently(List<Plugin> plugins, Predicate<Plugin> action) {
+        if (plugins.size() == 1) {
+            return action.test(plugins.get(0)) ? Collections.emptyList() : new ArrayList<>(plugins);
+        }
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>(plugins.size());
+        for (Plugin plugin : plugins) {
+            futures.add(CompletableFuture.supplyAsync(() -> action.test(plugin), VirtualThreadUtil.getPluginExecutor()));
+        }
+        final List<Plugin> failed = new ArrayList<>();
+        for (int i = 0; i < plugins.size(); i++) {
+            if (!futures.get(i).join()) {
+                failed.add(plugins.get(i));
+            }
+        }
+        return failed;
+    }
+
+    // calls onLoad, returns false if it failed
+    private boolean callOnLoad(Plugin plugin, int layer) {
+        PluginDescription description = plugin.getDescription();
+        plugin.getLogger().info("正在加载 {} 版本 {}", description.getName(), description.getVersion());
+        final long start = pluginTimeline.start();
+        try {
+            plugin.onLoad();
+            return true;
+        } catch (Throwable e) {
+            plugin.getLogger().error("无法加载此插件", e);
+            return false;
+        } finally {
+            pluginTimeline.loaded(plugin, layer, start);
+        }
+    }
 
+    // loads the configuration and calls onEnable, returns false if the plugin is not enabled
+    private boolean enableLoadedPlugin(Plugin plugin, int layer) {
+        final long start = pluginTimeline.start();
+        try {
             try {
                 plugin.reloadConfig(); // ensure the default configuration will be loaded
             } catch (Exception e) {
                 plugin.getLogger().error("无法加载配置", e);
             }
 
-            // onEnable
             try {
                 getCore().getPluginManager().enablePlugin(plugin);
             } catch (UnknownDependencyException e) {
                 getCore().getLogger().error("无法启用插件 {}，检测到未知的依赖项", plugin.getDescription().getName(), e);
                 closeLoaderIfPossible(plugin);
-                iterator.remove();
-                continue;
+                return false;
             }
             if (!plugin.isEnabled()) {
                 closeLoaderIfPossible(plugin);
-                iterator.remove();
-            } else {
-                // Add the plugin into the known list to ensure the dependency system will work correctly
-                getCore().getPluginManager().addPlugin(plugin);
+                return false;
             }
-            // end onEnable
+            return true;
+        } finally {
+            pluginTimeline.enabled(plugin, layer, start);
         }
     }
 
@@ -400,10 +542,62 @@ public class KBCClient {
         networkSystem.start();
     }
 
+    // The start failed before the event gate was opened, so nobody will open it.
+    // Drop the held events instead of queueing the gateway traffic forever, and disconnect once connected.
+    private void abortEarlyNetwork(@Nullable CompletableFuture<Void> network) {
+        final int dropped = eventGate.discard();
+        if (dropped > 0) {
+            getCore().getLogger().warn("启动失败，已丢弃启动期间暂存的 {} 个事件", dropped);
+        }
+        if (network != null) {
+            network.whenComplete((ignored, e) -> shutdownNetwork());
+        }
+    }
+
+    // The WebSocket gateway does not depend on the plugins, so it is connected while they are being enabled.
+    // Returns null if the network should be started after the plugins, as the other network systems serve
+    //  the plugins (e.g. webhook) or replay the events at once.
+    private @Nullable CompletableFuture<Void> startNetworkEarly() {
+        if (!(networkSystem instanceof OkhttpWebSocketNetworkSystem)
+                || getClass() != KBCClient.class // subclasses may override startNetwork() and expect the old order
+                || !getConfig().getBoolean("early-network-start", true)) {
+            return null;
+        }
+        getCore().getLogger().debug("正在启动网络（与插件启用同时进行）");
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        startVirtualThread(() -> {
+            try {
+                startNetwork();
+                result.complete(null);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, "Network Startup");
+        return result;
+    }
+
+    // The USER_ME response got by start(), so the network system can skip fetching it again.
+    // Null if the client is not starting.
+    public @Nullable JsonNode getStartupSelfData() {
+        return startupSelfData;
+    }
+
+    public StartupEventGate getEventGate() {
+        return eventGate;
+    }
+
     protected void shutdownNetwork() {
         networkSystem.stop();
     }
 
+    protected void startMetricsServer() {
+        metrics.gauge("kookbc_json_cache_hit_ratio", "Hit ratio of the JSON parse cache", JsonCacheManager::getCacheHitRate);
+        if (getConfig().getBoolean("metrics-endpoint", false)) {
+            metricsServer = new MetricsHttpServer(this);
+            metricsServer.start();
+        }
+    }
+
     protected void finishStart() {
         // region BotMarket support part - 2022/7/28
         String rawBotMarketUUID = getConfig().getString("botmarket-uuid");
@@ -422,6 +616,23 @@ public class KBCClient {
             }
         }
         // endregion
+        reportTransformCache();
+    }
+
+    // Launch mode only, the transformed class cache saves time on the next startup
+    private void reportTransformCache() {
+        if (!(getClass().getClassLoader() instanceof LaunchClassLoader)) {
+            return;
+        }
+        final TransformedClassCache cache = ((LaunchClassLoader) getClass().getClassLoader()).getTransformCache();
+        if (cache == null) {
+            return;
+        }
+        metrics.counter("kookbc_launch_class_cache_hits_total", "Classes loaded from the transformed class cache", cache::getHitCount);
+        metrics.counter("kookbc_launch_class_cache_misses_total", "Classes transformed and written to the transformed class cache", cache::getMissCount);
+        metrics.gauge("kookbc_launch_class_cache_transform_seconds", "Time spent transforming the classes that missed the transformed class cache", () -> cache.getTransformNanos() / 1e9);
+        metrics.gauge("kookbc_launch_class_cache_saved_seconds", "Estimated transform time saved by the transformed class cache", () -> cache.getSavedNanos() / 1e9);
+        cache.finishStartup();
     }
 
     // If you need console (normally you won't need it), call this
@@ -458,7 +669,11 @@ public class KBCClient {
         getCore().getPluginManager().clearPlugins();
 
         shutdownNetwork();
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
         eventExecutor.shutdown();
+        editCoalescer.shutdown();
         getCore().getLogger().info("正在停止核心");
         getCore().getLogger().info("正在停止调度器（如果应用程序陷入无限循环，请终止此进程！）");
         ((SchedulerImpl) getCore().getScheduler()).shutdown();
@@ -508,6 +723,10 @@ public class KBCClient {
         return msgBuilder;
     }
 
+    public StreamingDecoder getStreamingDecoder() {
+        return streamingDecoder;
+    }
+
     public NetworkClient getNetworkClient() {
         return networkClient;
     }
@@ -528,6 +747,28 @@ public class KBCClient {
         return networkSystem;
     }
 
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public OutboundMessageQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    public MessageEditCoalescer getEditCoalescer() {
+        return editCoalescer;
+    }
+
+    public HelpCards getHelpCards() {
+        return helpCards;
+    }
+
+    // null if this client does not share its resources with other clients
+    @Nullable
+    public SharedClientResources getSharedResources() {
+        return sharedResources;
+    }
+
     public boolean isPrimaryThread() {
         return Thread.currentThread() == mainThread;
     }
@@ -549,6 +790,12 @@ public class KBCClient {
         if (commandConfig.getBoolean("plugins", true)) {
             commands.add(PluginsCommand.class);
         }
+        if (commandConfig.getBoolean("metrics", true)) {
+            commands.add(MetricsCommand.class);
+        }
+        if (commandConfig.getBoolean("handlers", true)) {
+            commands.add(HandlersCommand.class);
+        }
         registerCommands(commands);
     }
 
@@ -0,0 +1,111 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.impl;
+
+import okhttp3.OkHttpClient;
+import snw.kookbc.impl.network.NetworkClient;
+import snw.kookbc.util.FairExecutorGroup;
+import snw.kookbc.util.VirtualThreadUtil;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多个 {@link KBCClient} 在同一 JVM 中运行时共享的资源
+ *
+ * <ul>
+ *   <li>一个 OkHttpClient (连接池与调度器)</li>
+ *   <li>一个心跳定时器，代替每个连接各自的 PING 线程</li>
+ *   <li>一个按需创建线程的重连执行器，代替每个连接各自的重连线程</li>
+ *   <li>一个插件调度器线程池</li>
+ *   <li>一个事件执行器组，每个客户端一条有并发上限的 Lane</li>
+ * </ul>
+ *
+ * <p>速率限制状态不共享，每个客户端独立维护。
+ * 资源由创建者负责关闭，请在所有客户端停止后调用 {@link #close()}。
+ */
+public class SharedClientResources implements AutoCloseable {
+    private final OkHttpClient httpClient;
+    private final ScheduledExecutorService heartbeatTimer;
+    private final ExecutorService reconnectExecutor;
+    private final ScheduledExecutorService schedulerPool;
+    private final FairExecutorGroup eventExecutors;
+
+    /**
+     * @param schedulerThreads       插件调度器的平台线程数
+     * @param eventConcurrencyPerBot 每个客户端同时运行的事件任务上限
+     */
+    public SharedClientResources(int schedulerThreads, int eventConcurrencyPerBot) {
+        this.httpClient = NetworkClient.newDefaultBuilder().build();
+        this.heartbeatTimer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("Shared-Heartbeat-Timer").daemon().factory()
+        );
+        this.reconnectExecutor = Executors.newCachedThreadPool(
+                Thread.ofPlatform().name("Shared-Reconnect-Thread-", 0).daemon().factory()
+        );
+        this.schedulerPool = VirtualThreadUtil.newVirtualThreadScheduledExecutor(
+                Math.max(1, schedulerThreads), "Shared-Scheduler-Thread-"
+        );
+        this.eventExecutors = new FairExecutorGroup(
+                VirtualThreadUtil.newVirtualThreadExecutor("Shared-Event-Executor-"), eventConcurrencyPerBot
+        );
+    }
+
+    public SharedClientResources() {
+        this(4, 64);
+    }
+
+    public OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public ScheduledExecutorService getHeartbeatTimer() {
+        return heartbeatTimer;
+    }
+
+    public ExecutorService getReconnectExecutor() {
+        return reconnectExecutor;
+    }
+
+    public ScheduledExecutorService getSchedulerPool() {
+        return schedulerPool;
+    }
+
+    public FairExecutorGroup getEventExecutors() {
+        return eventExecutors;
+    }
+
+    @Override
+    public void close() {
+        heartbeatTimer.shutdownNow();
+        reconnectExecutor.shutdownNow();
+        schedulerPool.shutdown();
+        eventExecutors.shutdown();
+        try {
+            schedulerPool.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        httpClient.dispatcher().cancelAll();
+        httpClient.connectionPool().evictAll();
+    }
+}
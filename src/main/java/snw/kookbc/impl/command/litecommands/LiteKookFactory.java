@@ -53,6 +53,7 @@ import snw.kookbc.impl.command.litecommands.result.ResultTypeValidator;
 import snw.kookbc.impl.command.litecommands.tools.KookMessageContextual;
 import snw.kookbc.impl.command.litecommands.tools.KookOnlyConsoleContextual;
 import snw.kookbc.impl.command.litecommands.tools.KookOnlyUserContextual;
+import snw.kookbc.util.CardTemplate;
 
 public class LiteKookFactory {
     private LiteKookFactory() {
@@ -107,6 +108,7 @@ public class LiteKookFactory {
                         .result(String.class, new ReplyResultHandler<>())
                         .result(CardComponent.class, new ReplyResultHandler<>())
                         .result(MultipleCardComponent.class, new ReplyResultHandler<>())
+                        .result(CardTemplate.Rendered.class, new ReplyResultHandler<>())
                         .result(MarkdownComponent.class, new ReplyResultHandler<>())
                         .result(TemplateMessage.class, new ReplyResultHandler<>())
                         .result(FileComponent.class, new ReplyResultHandler<>())
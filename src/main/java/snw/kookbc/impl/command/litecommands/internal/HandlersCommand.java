@@ -0,0 +1,94 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.command.litecommands.internal;
+
+import dev.rollczi.litecommands.annotations.argument.Arg;
+import dev.rollczi.litecommands.annotations.command.Command;
+import dev.rollczi.litecommands.annotations.context.Context;
+import dev.rollczi.litecommands.annotations.context.Sender;
+import dev.rollczi.litecommands.annotations.description.Description;
+import dev.rollczi.litecommands.annotations.execute.Execute;
+import dev.rollczi.litecommands.annotations.inject.Inject;
+import snw.jkook.command.CommandSender;
+import snw.jkook.entity.User;
+import snw.jkook.message.Message;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.event.EventManagerImpl;
+import snw.kookbc.impl.event.HandlerProfiler;
+import snw.kookbc.impl.metrics.LatencyHistogram;
+
+import java.util.List;
+
+@Command(name = "handlers")
+public class HandlersCommand {
+    private static final int DEFAULT_LIMIT = 10;
+    private final KBCClient client;
+
+    @Inject
+    public HandlersCommand(KBCClient client) {
+        this.client = client;
+    }
+
+    @Execute
+    @Description("列出最慢的事件处理器，可以附加要显示的数量。")
+    public Object executeHandlers(@Sender CommandSender sender, @Context Message message, @Arg("limit") String[] args) {
+        if (sender instanceof User) {
+            if (client.getConfig().getBoolean("ignore-remote-call-invisible-internal-command", true)) {
+                return null;
+            }
+            if (message != null) {
+                return "你不能这样做，因为你正在尝试执行仅后台可用的命令。";
+            }
+            return null;
+        }
+        final HandlerProfiler profiler = ((EventManagerImpl) client.getCore().getEventManager()).getProfiler();
+        if (profiler == null) {
+            client.getCore().getLogger().info("事件处理器性能分析未启用，请在 kbc.yml 中将 event-handler-profiling 设为 true");
+            return null;
+        }
+        int limit = DEFAULT_LIMIT;
+        if (args.length > 0) {
+            try {
+                limit = Math.max(1, Integer.parseInt(args[0]));
+            } catch (NumberFormatException e) {
+                client.getCore().getLogger().info("无效的数量: {}", args[0]);
+                return null;
+            }
+        }
+        final List<HandlerProfiler.Handler> handlers = profiler.getSlowest(limit);
+        if (handlers.isEmpty()) {
+            client.getCore().getLogger().info("还没有事件处理器被调用过");
+            return null;
+        }
+        StringBuilder builder = new StringBuilder("最慢的事件处理器 (按 P99 排序):\n");
+        for (HandlerProfiler.Handler handler : handlers) {
+            final LatencyHistogram latency = handler.getLatency();
+            builder.append(String.format("[%s] %s - 调用 %d 次, 平均 %.2f ms, P99 %.2f ms, 最大 %.2f ms, 超时 %d 次%n",
+                    handler.getPluginName(),
+                    handler.getName(),
+                    latency.getCount(),
+                    latency.getSumSeconds() / latency.getCount() * 1000,
+                    latency.getQuantileSeconds(0.99) * 1000,
+                    latency.getMaxSeconds() * 1000,
+                    handler.getSlowCount()));
+        }
+        client.getCore().getLogger().info(builder.toString());
+        return null;
+    }
+}
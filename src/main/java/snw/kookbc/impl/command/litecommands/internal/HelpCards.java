@@ -0,0 +1,148 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.command.litecommands.internal;
+
+import snw.jkook.message.component.card.CardBuilder;
+import snw.jkook.message.component.card.Size;
+import snw.jkook.message.component.card.Theme;
+import snw.jkook.message.component.card.element.ButtonElement;
+import snw.jkook.message.component.card.element.MarkdownElement;
+import snw.jkook.message.component.card.element.PlainTextElement;
+import snw.jkook.message.component.card.module.*;
+import snw.kookbc.SharedConstants;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.util.CardTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static snw.kookbc.impl.command.litecommands.internal.HelpCommand.EMPTY_PLAIN_TEXT_ELEMENT;
+import static snw.kookbc.impl.command.litecommands.internal.HelpCommand.HELP_VALUE_HEADER;
+import static snw.kookbc.util.CardTemplate.slot;
+
+/**
+ * 分页命令帮助卡片。
+ *
+ * <p>每次翻页都会生成新的帮助卡片，但这些卡片的结构只取决于本页的条目数、翻页按钮是否可用等少数几个条件，
+ * 因此每种结构只会被编译为一个 {@link CardTemplate} ，之后只需填入页码与本页的条目。
+ */
+public final class HelpCards {
+    private static final int PAGE_SIZE = 5;
+
+    private final KBCClient client;
+    private final Map<Integer, CardTemplate> templates = new ConcurrentHashMap<>();
+
+    public HelpCards(KBCClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 生成命令帮助的某一页。
+     *
+     * @param content     命令帮助条目，来自 {@link snw.kookbc.util.Util#listCommandsHelp(KBCClient)}，此方法会修改它
+     * @param page        页码，从 1 开始
+     * @param messageType 帮助所在的消息类型，{@code PM} 或 {@code CM}
+     * @return 帮助卡片
+     */
+    public CardTemplate.Rendered page(List<String> content, int page, String messageType) {
+        // the total is counted before the stop command is hidden, as it always was
+        final int totalPages = content.size() % PAGE_SIZE == 0 ? content.size() / PAGE_SIZE : content.size() / PAGE_SIZE + 1;
+        content.removeIf(IT -> IT.startsWith("(/)stop:"));
+        final boolean paged = content.size() > PAGE_SIZE;
+        final int from = paged ? Math.min(PAGE_SIZE * Math.max(page - 1, 0), content.size()) : 0;
+        final int sections = paged ? Math.min(PAGE_SIZE, content.size() - from) : content.size();
+        final boolean prev = paged && page > 1;
+        final boolean next = paged && PAGE_SIZE * page < content.size();
+        final boolean ad = client.getConfig().getBoolean("allow-help-ad", true);
+
+        final Map<String, String> values = new HashMap<>();
+        values.put("page", String.valueOf(page));
+        values.put("total", String.valueOf(totalPages));
+        values.put("prevPage", String.valueOf(page - 1));
+        values.put("nextPage", String.valueOf(page + 1));
+        values.put("messageType", messageType);
+        for (int i = 0; i < sections; i++) {
+            values.put("s" + i, content.get(from + i));
+        }
+
+        final int key = sections | (paged ? 1 << 8 : 0) | (prev ? 1 << 9 : 0) | (next ? 1 << 10 : 0) | (ad ? 1 << 11 : 0);
+        final CardTemplate template = templates.computeIfAbsent(key, k -> compile(sections, paged, prev, next, ad));
+        // render(Map) rejects missing values only, the unused ones are fine
+        return template.render(values);
+    }
+
+    private CardTemplate compile(int sections, boolean paged, boolean prev, boolean next, boolean ad) {
+        final CardBuilder builder = new CardBuilder()
+                .setTheme(Theme.SUCCESS)
+                .setSize(Size.LG)
+                .addModule(new HeaderModule("命令帮助 (" + slot("page") + "/" + slot("total") + ")"))
+                .addModule(DividerModule.INSTANCE);
+        for (int i = 0; i < sections; i++) {
+            builder.addModule(new SectionModule(slot("s" + i)));
+        }
+        if (paged) {
+            builder.addModule(DividerModule.INSTANCE)
+                    .addModule(new ActionGroupModule(
+                            Arrays.asList(
+                                    new ButtonElement(
+                                            Theme.PRIMARY,
+                                            buttonValue("prevPage"), // Placeholder
+                                            prev ? ButtonElement.EventType.RETURN_VAL : ButtonElement.EventType.NO_ACTION,
+                                            new PlainTextElement("上一页")
+                                    ),
+                                    new ButtonElement(Theme.SECONDARY, "", EMPTY_PLAIN_TEXT_ELEMENT), // Placeholder
+                                    new ButtonElement(Theme.SECONDARY, "", EMPTY_PLAIN_TEXT_ELEMENT), // Placeholder
+                                    new ButtonElement(
+                                            Theme.PRIMARY,
+                                            buttonValue("nextPage"),
+                                            next ? ButtonElement.EventType.RETURN_VAL : ButtonElement.EventType.NO_ACTION,
+                                            new PlainTextElement("下一页")
+                                    )
+                            )
+                    ));
+        }
+        if (ad) {
+            builder.addModule(DividerModule.INSTANCE)
+                    .addModule(new ContextModule(
+                            Collections.singletonList(
+                                    new MarkdownElement(
+                                            String.format(
+                                                    "由 [%s](%s) v%s 驱动 - %s API %s",
+                                                    SharedConstants.IMPL_NAME,
+                                                    SharedConstants.REPO_URL,
+                                                    SharedConstants.IMPL_VERSION,
+                                                    SharedConstants.SPEC_NAME,
+                                                    client.getCore().getAPIVersion()
+                                            )
+                                    )
+                            )
+                    ));
+        }
+        return CardTemplate.compile(builder.build());
+    }
+
+    private static String buttonValue(String targetSlot) {
+        return HELP_VALUE_HEADER + "{\"page\": " + slot(targetSlot) + ", \"current\": " + slot("page")
+                + ", \"messageType\": " + slot("messageType") + "}";
+    }
+}
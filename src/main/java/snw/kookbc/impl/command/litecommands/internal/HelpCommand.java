@@ -15,7 +15,6 @@ import snw.jkook.message.PrivateMessage;
 import snw.jkook.message.component.card.CardBuilder;
 import snw.jkook.message.component.card.Size;
 import snw.jkook.message.component.card.Theme;
-import snw.jkook.message.component.card.element.ButtonElement;
 import snw.jkook.message.component.card.element.MarkdownElement;
 import snw.jkook.message.component.card.element.PlainTextElement;
 import snw.jkook.message.component.card.module.*;
@@ -25,7 +24,6 @@ import snw.kookbc.impl.command.CommandManagerImpl;
 import snw.kookbc.impl.command.WrappedCommand;
 import snw.kookbc.util.Util;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -100,44 +98,7 @@ public class HelpCommand {
                     )));
                 }
             } else {
-                int totalPages = content.size() % 5 == 0 ? content.size() / 5 : content.size() / 5 + 1;
-                CardBuilder builder = new CardBuilder()
-                        .setTheme(Theme.SUCCESS)
-                        .setSize(Size.LG)
-                        .addModule(new HeaderModule(String.format("命令帮助 (1/%d)", totalPages)))
-                        .addModule(DividerModule.INSTANCE);
-                content.removeIf(IT -> IT.startsWith("(/)stop:"));
-                if (content.size() <= 5) {
-                    content.stream()
-                            .map(SectionModule::new)
-                            .forEachOrdered(builder::addModule);
-                } else {
-                    content.stream()
-                            .limit(5L)
-                            .map(SectionModule::new)
-                            .forEachOrdered(builder::addModule);
-                    builder.addModule(DividerModule.INSTANCE)
-                            .addModule(new ActionGroupModule(
-                                    Arrays.asList(
-                                            new ButtonElement(
-                                                    Theme.PRIMARY,
-                                                    HELP_VALUE_HEADER + "{\"page\": 0, \"current\": 1, \"messageType\": " + messageType + "}", // Placeholder
-                                                    ButtonElement.EventType.NO_ACTION,
-                                                    new PlainTextElement("上一页")
-                                            ),
-                                            new ButtonElement(Theme.SECONDARY, "", EMPTY_PLAIN_TEXT_ELEMENT), // Placeholder
-                                            new ButtonElement(Theme.SECONDARY, "", EMPTY_PLAIN_TEXT_ELEMENT), // Placeholder
-                                            new ButtonElement(
-                                                    Theme.PRIMARY,
-                                                    HELP_VALUE_HEADER + "{\"page\": 2, \"current\": 1, \"messageType\": " + messageType + "}",
-                                                    ButtonElement.EventType.RETURN_VAL,
-                                                    new PlainTextElement("下一页")
-                                            )
-                                    )
-
-                            ));
-                }
-                finalBuilder = builder;
+                return client.getHelpCards().page(content, 1, messageType);
             }
             if (client.getConfig().getBoolean("allow-help-ad", true)) {
                 finalBuilder.addModule(DividerModule.INSTANCE)
@@ -0,0 +1,57 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.command.litecommands.internal;
+
+import dev.rollczi.litecommands.annotations.argument.Arg;
+import dev.rollczi.litecommands.annotations.command.Command;
+import dev.rollczi.litecommands.annotations.context.Context;
+import dev.rollczi.litecommands.annotations.context.Sender;
+import dev.rollczi.litecommands.annotations.description.Description;
+import dev.rollczi.litecommands.annotations.execute.Execute;
+import dev.rollczi.litecommands.annotations.inject.Inject;
+import snw.jkook.command.CommandSender;
+import snw.jkook.entity.User;
+import snw.jkook.message.Message;
+import snw.kookbc.impl.KBCClient;
+
+@Command(name = "metrics")
+public class MetricsCommand {
+    private final KBCClient client;
+
+    @Inject
+    public MetricsCommand(KBCClient client) {
+        this.client = client;
+    }
+
+    @Execute
+    @Description("查看运行指标，可以附加一个名称过滤字符串。")
+    public Object executeMetrics(@Sender CommandSender sender, @Context Message message, @Arg("filter") String[] filter) {
+        if (sender instanceof User) {
+            if (client.getConfig().getBoolean("ignore-remote-call-invisible-internal-command", true)) {
+                return null;
+            }
+            if (message != null) {
+                return "你不能这样做，因为你正在尝试执行仅后台可用的命令。";
+            }
+            return null;
+        }
+        client.getCore().getLogger().info(client.getMetrics().getReport(filter.length > 0 ? filter[0] : null));
+        return null;
+    }
+}
@@ -19,7 +19,6 @@
 package snw.kookbc.impl.entity;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -37,6 +36,7 @@ import snw.kookbc.impl.KBCClient;
 import snw.kookbc.impl.entity.mute.MuteDataImpl;
 import snw.kookbc.impl.entity.mute.MuteResultImpl;
 import snw.kookbc.impl.network.HttpAPIRoute;
+import snw.kookbc.impl.network.NetworkClient;
 import snw.kookbc.impl.pageiter.*;
 import snw.kookbc.interfaces.LazyLoadable;
 import snw.kookbc.interfaces.Updatable;
@@ -44,6 +44,7 @@ import snw.kookbc.util.MapBuilder;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
@@ -51,15 +52,13 @@ import static snw.jkook.util.Validate.isTrue;
 import static snw.kookbc.util.JacksonUtil.*;
 
 public class GuildImpl implements Guild, Updatable, LazyLoadable {
+    private static final AtomicReferenceFieldUpdater<GuildImpl, State> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(GuildImpl.class, State.class, "state");
+
     private final KBCClient client;
     private final String id;
-    private NotifyType notifyType;
-    private User master;
-    private String name;
-    private boolean public_; // I know Guild owner can turn this to false, but I don't have internal events
-    // to listen for that!
-    private String region;
-    private String avatarUrl; // no vipAvatar here!
+    // see Snapshots
+    private volatile State state = State.EMPTY;
     private boolean completed;
 
     public GuildImpl(KBCClient client, String id) {
@@ -70,12 +69,7 @@ public class GuildImpl implements Guild, Updatable, LazyLoadable {
     public GuildImpl(KBCClient client, String id, NotifyType notifyType, User master, String name, boolean public_,
                      String region, String avatarUrl) {
         this(client, id);
-        this.notifyType = notifyType;
-        this.master = master;
-        this.name = name;
-        this.public_ = public_;
-        this.region = region;
-        this.avatarUrl = avatarUrl;
+        this.state = new State(notifyType, master, name, public_, region, avatarUrl);
     }
 
     @Override
@@ -109,7 +103,7 @@ public class GuildImpl implements Guild, Updatable, LazyLoadable {
     @Override
     public String getVoiceChannelServerRegion() {
         initIfNeeded();
-        return region;
+        return state.region;
     }
 
     @Override
@@ -134,11 +128,11 @@ public class GuildImpl implements Guild, Updatable, LazyLoadable {
     @Override
     public boolean isPublic() {
         initIfNeeded();
-        return public_;
+        return state.public_;
     }
 
     public void setPublic(boolean value) {
-        this.public_ = value;
+        Snapshots.update(STATE, this, s -> s.withPublic(value));
     }
 
     @Override
@@ -269,7 +263,7 @@ public class GuildImpl implements Guild, Updatable, LazyLoadable {
                 .addFormDataPart(
                         "emoji",
                         "114514",
-                        RequestBody.create(content, MediaType.parse(type)));
+                        RequestBody.create(content, NetworkClient.mediaType(type)));
         if (name != null) {
             if (name.length() < 2) {
                 throw new IllegalArgumentException("The emoji name should be greater or equals 2.");
@@ -296,14 +290,14 @@ public class GuildImpl implements Guild, Updatable, LazyLoadable {
     @Override
     public NotifyType getNotifyType() {
         initIfNeeded();
-        return notifyType;
+        return state.notifyType;
     }
 
     @Override
     public @Nullable String getAvatarUrl(boolean b) {
         Validate.isTrue(!b, "KOOK official does not provide \"vip_avatar\" field for Guild.");
         initIfNeeded();
-        return avatarUrl;
+        return state.avatarUrl;
     }
 
     @Override
@@ -344,39 +338,45 @@ public class GuildImpl implements Guild, Updatable, LazyLoadable {
     @Override
     public User getMaster() {
         initIfNeeded();
-        return master;
+        return state.master;
     }
 
     @Override
     public String getName() {
         initIfNeeded();
-        return name;
+        return state.name;
     }
 
     public void setName(String name) {
-        this.name = name;
+        Snapshots.update(STATE, this, s -> s.withName(name));
     }
 
     public void setRegion(String region) {
-        this.region = region;
+        Snapshots.update(STATE, this, s -> s.withRegion(region));
     }
 
     public void setAvatar(String avatarUrl) {
-        this.avatarUrl = avatarUrl;
+        Snapshots.update(STATE, this, s -> s.withAvatarUrl(avatarUrl));
     }
 
     @Override
-    public synchronized void update(JsonNode data) {
+    public void update(JsonNode data) {
         final String id = data.get("id").asText();
         final int notifyTypeId = data.get("notify_type").asInt();
         final Supplier<String> notifyErr = () -> "Unexpected NotifyType, got " + notifyTypeId;
         isTrue(Objects.equals(getId(), id), "You can't update guild by using different data");
-        this.name = data.get("name").asText();
-        this.public_ = data.get("enable_open").asBoolean();
-        this.region = data.get("region").asText();
-        this.notifyType = requireNonNull(NotifyType.value(notifyTypeId), notifyErr);
-        this.avatarUrl = data.get("icon").asText();
-        this.master = new UserImpl(client, data.get("user_id").asText());
+        final String name = data.get("name").asText();
+        final boolean public_ = data.get("enable_open").asBoolean();
+        final String region = data.get("region").asText();
+        final NotifyType notifyType = requireNonNull(NotifyType.value(notifyTypeId), notifyErr);
+        final String avatarUrl = data.get("icon").asText();
+        final String masterId = data.get("user_id").asText();
+        Snapshots.update(STATE, this, s -> {
+            // keep the current master object if the owner did not change
+            final User master = s.master != null && masterId.equals(s.master.getId())
+                    ? s.master : new UserImpl(client, masterId);
+            return new State(notifyType, master, name, public_, region, avatarUrl);
+        });
     }
 
     @Override
@@ -391,6 +391,59 @@ public class GuildImpl implements Guild, Updatable, LazyLoadable {
         update(data);
         completed = true;
     }
+
+    private static final class State {
+        static final State EMPTY = new State(null, null, null, false, null, null);
+
+        final NotifyType notifyType;
+        final User master;
+        final String name;
+        final boolean public_; // I know Guild owner can turn this to false, but I don't have internal events
+        // to listen for that!
+        final String region;
+        final String avatarUrl; // no vipAvatar here!
+
+        State(NotifyType notifyType, User master, String name, boolean public_, String region, String avatarUrl) {
+            this.notifyType = notifyType;
+            this.master = master;
+            this.name = name;
+            this.public_ = public_;
+            this.region = region;
+            this.avatarUrl = avatarUrl;
+        }
+
+        State withName(String name) {
+            return new State(notifyType, master, name, public_, region, avatarUrl);
+        }
+
+        State withPublic(boolean public_) {
+            return new State(notifyType, master, name, public_, region, avatarUrl);
+        }
+
+        State withRegion(String region) {
+            return new State(notifyType, master, name, public_, region, avatarUrl);
+        }
+
+        State withAvatarUrl(String avatarUrl) {
+            return new State(notifyType, master, name, public_, region, avatarUrl);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return public_ == other.public_ && notifyType == other.notifyType && master == other.master
+                    && Objects.equals(name, other.name)
+                    && Objects.equals(region, other.region)
+                    && Objects.equals(avatarUrl, other.avatarUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(notifyType, master, name, public_, region, avatarUrl);
+        }
+    }
 }
 
 // Just a JavaBean that contains the boost information.
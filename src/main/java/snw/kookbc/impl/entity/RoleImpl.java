@@ -28,6 +28,8 @@ import snw.kookbc.interfaces.Updatable;
 import snw.kookbc.util.MapBuilder;
 
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import static snw.jkook.util.Validate.isTrue;
 import static snw.kookbc.util.JacksonUtil.getAsInt;
@@ -37,27 +39,21 @@ import static snw.kookbc.util.JacksonUtil.getIntOrDefault;
 import static snw.kookbc.util.JacksonUtil.getStringOrDefault;
 
 public class RoleImpl implements Role, Updatable {
+    private static final AtomicReferenceFieldUpdater<RoleImpl, State> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(RoleImpl.class, State.class, "state");
+
     private final KBCClient client;
     private final Guild guild;
     private final int id;
-    private int color;
-    private int position;
-    private int permSum;
-    private boolean mentionable;
-    private boolean hoist;
-    private String name;
+    // see Snapshots
+    private volatile State state;
 
     public RoleImpl(KBCClient client, Guild guild, int id, int color, int position, int permSum, boolean mentionable,
                     boolean hoist, String name) {
         this.client = client;
         this.guild = guild;
         this.id = id;
-        this.color = color;
-        this.position = position;
-        this.permSum = permSum;
-        this.mentionable = mentionable;
-        this.hoist = hoist;
-        this.name = name;
+        this.state = new State(color, position, permSum, mentionable, hoist, name);
     }
 
     @Override
@@ -67,30 +63,30 @@ public class RoleImpl implements Role, Updatable {
 
     @Override
     public int getColor() {
-        return color;
+        return state.color;
     }
 
     public void setColor(int color) {
-        this.color = color;
+        Snapshots.update(STATE, this, s -> s.withColor(color));
     }
 
     @Override
     public int getPosition() {
-        return position;
+        return state.position;
     }
 
     public void setPosition(int position) {
-        this.position = position;
+        Snapshots.update(STATE, this, s -> s.withPosition(position));
     }
 
     @Override
     public boolean isPermissionSet(Permission permission) {
-        return Permission.hasPermission(permission, permSum);
+        return Permission.hasPermission(permission, state.permSum);
     }
 
     @Override
     public boolean isMentionable() {
-        return mentionable;
+        return state.mentionable;
     }
 
     @Override
@@ -101,12 +97,12 @@ public class RoleImpl implements Role, Updatable {
                 .put("mentionable", (value ? 1 : 0))
                 .build();
         client.getNetworkClient().post(HttpAPIRoute.ROLE_UPDATE.toFullURL(), body);
-        this.mentionable = value;
+        setMentionable0(value);
     }
 
     @Override
     public boolean isHoist() {
-        return hoist;
+        return state.hoist;
     }
 
     @Override
@@ -117,7 +113,7 @@ public class RoleImpl implements Role, Updatable {
                 .put("hoist", (value ? 1 : 0))
                 .build();
         client.getNetworkClient().post(HttpAPIRoute.ROLE_UPDATE.toFullURL(), body);
-        this.hoist = value;
+        setHoist0(value);
     }
 
     @Override
@@ -128,7 +124,7 @@ public class RoleImpl implements Role, Updatable {
                 .put("permissions", permValueSum)
                 .build();
         client.getNetworkClient().post(HttpAPIRoute.ROLE_UPDATE.toFullURL(), body);
-        this.permSum = permValueSum;
+        setPermSum(permValueSum);
     }
 
     @Override
@@ -143,11 +139,11 @@ public class RoleImpl implements Role, Updatable {
 
     @Override
     public String getName() {
-        return name;
+        return state.name;
     }
 
     public void setName(String name) {
-        this.name = name;
+        Snapshots.update(STATE, this, s -> s.withName(name));
     }
 
     public Guild getGuild() {
@@ -155,25 +151,85 @@ public class RoleImpl implements Role, Updatable {
     }
 
     public void setPermSum(int permSum) {
-        this.permSum = permSum;
+        Snapshots.update(STATE, this, s -> s.withPermSum(permSum));
     }
 
     public void setHoist0(boolean hoist) {
-        this.hoist = hoist;
+        Snapshots.update(STATE, this, s -> s.withHoist(hoist));
     }
 
     public void setMentionable0(boolean mentionable) {
-        this.mentionable = mentionable;
+        Snapshots.update(STATE, this, s -> s.withMentionable(mentionable));
     }
 
     @Override
-    public synchronized void update(JsonNode data) {
+    public void update(JsonNode data) {
         isTrue(getId() == getRequiredInt(data, "role_id"), "You can't update the role by using different data");
-        this.color = getIntOrDefault(data, "color", 0);
-        this.position = getIntOrDefault(data, "position", 0);
-        this.permSum = getIntOrDefault(data, "permissions", 0);
-        this.mentionable = getIntOrDefault(data, "mentionable", 0) == 1;
-        this.hoist = getIntOrDefault(data, "hoist", 0) == 1;
-        this.name = getStringOrDefault(data, "name", "Unknown Role");
+        final State next = new State(
+                getIntOrDefault(data, "color", 0),
+                getIntOrDefault(data, "position", 0),
+                getIntOrDefault(data, "permissions", 0),
+                getIntOrDefault(data, "mentionable", 0) == 1,
+                getIntOrDefault(data, "hoist", 0) == 1,
+                getStringOrDefault(data, "name", "Unknown Role")
+        );
+        Snapshots.update(STATE, this, s -> next);
+    }
+
+    private static final class State {
+        final int color;
+        final int position;
+        final int permSum;
+        final boolean mentionable;
+        final boolean hoist;
+        final String name;
+
+        State(int color, int position, int permSum, boolean mentionable, boolean hoist, String name) {
+            this.color = color;
+            this.position = position;
+            this.permSum = permSum;
+            this.mentionable = mentionable;
+            this.hoist = hoist;
+            this.name = name;
+        }
+
+        State withColor(int color) {
+            return new State(color, position, permSum, mentionable, hoist, name);
+        }
+
+        State withPosition(int position) {
+            return new State(color, position, permSum, mentionable, hoist, name);
+        }
+
+        State withPermSum(int permSum) {
+            return new State(color, position, permSum, mentionable, hoist, name);
+        }
+
+        State withMentionable(boolean mentionable) {
+            return new State(color, position, permSum, mentionable, hoist, name);
+        }
+
+        State withHoist(boolean hoist) {
+            return new State(color, position, permSum, mentionable, hoist, name);
+        }
+
+        State withName(String name) {
+            return new State(color, position, permSum, mentionable, hoist, name);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return color == other.color && position == other.position && permSum == other.permSum
+                    && mentionable == other.mentionable && hoist == other.hoist
+                    && Objects.equals(name, other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(color, position, permSum, mentionable, hoist, name);
+        }
     }
 }
@@ -0,0 +1,60 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.entity;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.UnaryOperator;
+
+/**
+ * 实体状态快照的更新工具。
+ *
+ * <p>用户、服务器、角色与频道把可变字段放在一个不可变的状态对象中，由 {@code volatile} 字段持有。
+ * 读取方只读取一次该字段，因此总能看到某次更新的完整结果，且不需要加锁；
+ * 更新方通过本类构建新状态并以 CAS 替换，不使用 {@code synchronized} ，不会固定虚拟线程。
+ */
+public final class Snapshots {
+
+    private Snapshots() {
+    } // cannot call constructor
+
+    /**
+     * 将给定的修改应用于当前状态，并替换为修改结果。
+     *
+     * <p>若另一线程先完成了替换，则基于新的状态重试，因此 {@code change} 可能被调用多次，不应有副作用。
+     * 修改结果与当前状态相等 ({@link Object#equals(Object)}) 时不会替换：
+     * 缓存中的实体会被每个携带它的事件刷新，而数据通常没有变化，此时保留原状态，不产生写入。
+     *
+     * @param updater 状态字段的更新器
+     * @param owner   持有状态的实体
+     * @param change  修改，接收当前状态，返回新状态
+     * @param <T>     实体类型
+     * @param <S>     状态类型
+     */
+    public static <T, S> void update(AtomicReferenceFieldUpdater<T, S> updater, T owner, UnaryOperator<S> change) {
+        S current;
+        S next;
+        do {
+            current = updater.get(owner);
+            next = change.apply(current);
+            if (next.equals(current)) {
+                return;
+            }
+        } while (!updater.compareAndSet(owner, current, next));
+    }
+}
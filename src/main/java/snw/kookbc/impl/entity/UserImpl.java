@@ -30,11 +30,9 @@ import snw.jkook.entity.User;
 import snw.jkook.entity.channel.Channel;
 import snw.jkook.entity.channel.VoiceChannel;
 import snw.jkook.exceptions.BadResponseException;
-import snw.jkook.message.Message;
 import snw.jkook.message.PrivateMessage;
 import snw.jkook.message.component.BaseComponent;
 import snw.jkook.message.component.MarkdownComponent;
-import snw.jkook.message.component.TemplateMessage;
 import snw.jkook.permissions.PermissionAttachment;
 import snw.jkook.permissions.PermissionAttachmentInfo;
 import snw.jkook.permissions.PermissionNode;
@@ -42,56 +40,51 @@ import snw.jkook.plugin.Plugin;
 import snw.jkook.util.PageIterator;
 import snw.jkook.util.Validate;
 import snw.kookbc.impl.KBCClient;
-import snw.kookbc.impl.entity.builder.MessageBuilder;
+import snw.kookbc.impl.entity.builder.StreamingDecoder;
 import snw.kookbc.impl.network.HttpAPIRoute;
+import snw.kookbc.impl.network.MessageBody;
 import snw.kookbc.impl.pageiter.UserJoinedVoiceChannelIterator;
 import snw.kookbc.impl.permissions.SimplePermsImpl;
 import snw.kookbc.impl.permissions.UserPermissionSaved;
 import snw.kookbc.interfaces.LazyLoadable;
 import snw.kookbc.interfaces.Updatable;
 import snw.kookbc.util.MapBuilder;
+import snw.kookbc.util.Util;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
 import static snw.kookbc.util.JacksonUtil.get;
 
 public class UserImpl implements User, Updatable, LazyLoadable {
+    private static final AtomicReferenceFieldUpdater<UserImpl, State> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(UserImpl.class, State.class, "state");
+
     private final KBCClient client;
     private final String id;
-    private boolean bot;
-    private String name;
-    private int identify;
-    private boolean ban;
-    private boolean vip;
-    private String avatarUrl;
-    private String vipAvatarUrl;
+    // see Snapshots
+    private volatile State state = State.EMPTY;
     private boolean completed;
 
-    private final SimplePermsImpl perms;
-    private final Cache<String, Collection<Integer>> cacheRoleIds = Caffeine.newBuilder()
-            .weakKeys()
-            .expireAfterAccess(20, TimeUnit.SECONDS).build();
+    // Most users are only seen as message authors or list entries, and never asked for permissions.
+    // So the permission state and the role cache are allocated on first use, see perms() and roleIds().
+    private volatile SimplePermsImpl perms;
+    private SimplePermsImpl loadingPerms; // guarded by this, only set while perms() is loading the saved permissions
+    private volatile Cache<String, Collection<Integer>> cacheRoleIds;
 
     public UserImpl(KBCClient client, String id) {
         this.client = requireNonNull(client);
         this.id = requireNonNull(id);
-        this.perms = new SimplePermsImpl(this.client, this);
-        this.perms.load();
     }
 
     public UserImpl(KBCClient client, String id, boolean bot, String name, int identify, boolean ban, boolean vip,
                     String avatarUrl, String vipAvatarUrl) {
         this(client, id);
-        this.bot = bot;
-        this.name = name;
-        this.identify = identify;
-        this.ban = ban;
-        this.vip = vip;
-        this.avatarUrl = avatarUrl;
-        this.vipAvatarUrl = vipAvatarUrl;
+        this.state = new State(bot, name, identify, ban, vip, avatarUrl, vipAvatarUrl);
         this.completed = true;
     }
 
@@ -126,23 +119,23 @@ public class UserImpl implements User, Updatable, LazyLoadable {
     @Override
     public int getIdentifyNumber() {
         initIfNeeded();
-        return identify;
+        return state.identify;
     }
 
     @Override
     public boolean isVip() {
         initIfNeeded();
-        return vip;
+        return state.vip;
     }
 
     public void setVip(boolean vip) {
-        this.vip = vip;
+        Snapshots.update(STATE, this, s -> s.withVip(vip));
     }
 
     @Override
     public boolean isBot() {
         initIfNeeded();
-        return bot;
+        return state.bot;
     }
 
     @Override
@@ -154,7 +147,7 @@ public class UserImpl implements User, Updatable, LazyLoadable {
     @Override
     public boolean isBanned() {
         initIfNeeded();
-        return ban;
+        return state.ban;
     }
 
     @Override
@@ -189,18 +182,14 @@ public class UserImpl implements User, Updatable, LazyLoadable {
 
     @Override
     public String sendPrivateMessage(BaseComponent component, PrivateMessage quote) {
-        Object[] serialize = MessageBuilder.serialize(component);
-        int type = (int) serialize[0];
-        String json = (String) serialize[1];
-        Map<String, Object> body = new MapBuilder()
-                .put("type", type)
-                .put("target_id", getId())
-                .put("content", json)
-                .putIfInstance("template_id", component, TemplateMessage.class, TemplateMessage::getId)
-                .putIfNotNull("quote", quote, Message::getId)
-                .build();
-        return client.getNetworkClient().post(HttpAPIRoute.USER_CHAT_MESSAGE_CREATE.toFullURL(), body).get("msg_id")
-                .asText();
+        return Util.join(sendPrivateMessageAsync(component, quote));
+    }
+
+    // Messages sent to this user are queued, so they are sent in the order of the calls
+    //  and the caller does not have to wait for the HTTP request.
+    public CompletableFuture<String> sendPrivateMessageAsync(BaseComponent component, @Nullable PrivateMessage quote) {
+        final MessageBody body = MessageBody.create(getId(), component, quote != null ? quote.getId() : null, null);
+        return client.getOutboundQueue().send(HttpAPIRoute.USER_CHAT_MESSAGE_CREATE, getId(), body);
     }
 
     @Override
@@ -315,63 +304,104 @@ public class UserImpl implements User, Updatable, LazyLoadable {
     @Override
     public @Nullable String getAvatarUrl(boolean b) {
         initIfNeeded();
-        return b ? vipAvatarUrl : avatarUrl;
+        final State state = this.state;
+        return b ? state.vipAvatarUrl : state.avatarUrl;
     }
 
     @Override
     public String getName() {
         initIfNeeded();
-        return name;
+        return state.name;
     }
 
     public void setName(String name) {
-        this.name = name;
+        Snapshots.update(STATE, this, s -> s.withName(name));
     }
 
     public void setIdentify(int identify) {
-        this.identify = identify;
+        Snapshots.update(STATE, this, s -> s.withIdentify(identify));
     }
 
     public void setBan(boolean ban) {
-        this.ban = ban;
+        Snapshots.update(STATE, this, s -> s.withBan(ban));
     }
 
     public void setAvatarUrl(String avatarUrl) {
-        this.avatarUrl = avatarUrl;
+        Snapshots.update(STATE, this, s -> s.withAvatarUrl(avatarUrl));
     }
 
     public void setVipAvatarUrl(String vipAvatarUrl) {
-        this.vipAvatarUrl = vipAvatarUrl;
+        Snapshots.update(STATE, this, s -> s.withVipAvatarUrl(vipAvatarUrl));
     }
 
     @Override
-    public synchronized void update(JsonNode data) {
+    public void update(JsonNode data) {
         Validate.isTrue(Objects.equals(getId(), data.get("id").asText()),
                 "You can't update user by using different data");
 
         // 安全获取字段，某些 API 返回的用户数据可能不完整
-        // 注意: 方法已经是 synchronized，无需内部再加锁
-        if (data.has("username")) {
-            name = data.get("username").asText();
-        }
-        if (data.has("bot")) {
-            bot = data.get("bot").asBoolean();
-        }
-        if (data.has("avatar")) {
-            avatarUrl = data.get("avatar").asText();
-        }
-        if (data.has("vip_avatar")) {
-            vipAvatarUrl = data.get("vip_avatar").asText();
-        }
-        if (data.has("identify_num")) {
-            identify = data.get("identify_num").asInt();
-        }
-        if (data.has("status")) {
-            ban = data.get("status").asInt() == 10;
+        Snapshots.update(STATE, this, s -> new State(
+                data.has("bot") ? data.get("bot").asBoolean() : s.bot,
+                data.has("username") ? data.get("username").asText() : s.name,
+                data.has("identify_num") ? data.get("identify_num").asInt() : s.identify,
+                data.has("status") ? data.get("status").asInt() == 10 : s.ban,
+                data.has("is_vip") ? data.get("is_vip").asBoolean() : s.vip,
+                data.has("avatar") ? data.get("avatar").asText() : s.avatarUrl,
+                data.has("vip_avatar") ? data.get("vip_avatar").asText() : s.vipAvatarUrl
+        ));
+    }
+
+    // only the fields present in the data are updated, like update(JsonNode)
+    public void update(StreamingDecoder.UserFields data) {
+        Validate.isTrue(Objects.equals(getId(), data.getId()),
+                "You can't update user by using different data");
+        Snapshots.update(STATE, this, s -> new State(
+                data.has(StreamingDecoder.UserFields.BOT) ? data.isBot() : s.bot,
+                data.has(StreamingDecoder.UserFields.NAME) ? data.getName() : s.name,
+                data.has(StreamingDecoder.UserFields.IDENTIFY) ? data.getIdentify() : s.identify,
+                data.has(StreamingDecoder.UserFields.STATUS) ? data.isBanned() : s.ban,
+                data.has(StreamingDecoder.UserFields.VIP) ? data.isVip() : s.vip,
+                data.has(StreamingDecoder.UserFields.AVATAR) ? data.getAvatar() : s.avatarUrl,
+                data.has(StreamingDecoder.UserFields.VIP_AVATAR) ? data.getVipAvatar() : s.vipAvatarUrl
+        ));
+    }
+
+    private SimplePermsImpl perms() {
+        SimplePermsImpl result = perms;
+        if (result == null) {
+            synchronized (this) {
+                result = perms;
+                if (result == null) {
+                    if (loadingPerms != null) {
+                        // load() adds the saved attachments, which call back into recalculatePermissions()
+                        return loadingPerms;
+                    }
+                    result = loadingPerms = new SimplePermsImpl(client, this);
+                    try {
+                        result.load();
+                    } finally {
+                        loadingPerms = null;
+                    }
+                    perms = result;
+                }
+            }
         }
-        if (data.has("is_vip")) {
-            vip = data.get("is_vip").asBoolean();
+        return result;
+    }
+
+    private Cache<String, Collection<Integer>> roleIds() {
+        Cache<String, Collection<Integer>> result = cacheRoleIds;
+        if (result == null) {
+            synchronized (this) {
+                result = cacheRoleIds;
+                if (result == null) {
+                    cacheRoleIds = result = Caffeine.newBuilder()
+                            .weakKeys()
+                            .expireAfterAccess(20, TimeUnit.SECONDS).build();
+                }
+            }
         }
+        return result;
     }
 
     @Override
@@ -389,35 +419,37 @@ public class UserImpl implements User, Updatable, LazyLoadable {
 
     @Override
     public boolean hasPermission(@Nullable Channel context, @Nullable String permission) {
-        return this.perms.hasPermission(context, permission);
+        return perms().hasPermission(context, permission);
     }
 
     @Override
     public boolean hasPermission(@Nullable Channel context, @NotNull PermissionNode perm) {
-        return this.perms.hasPermission(context, perm);
+        return perms().hasPermission(context, perm);
     }
 
     @Override
     public boolean isPermissionSet(@Nullable Channel context, @NotNull String name) {
-        return this.perms.isPermissionSet(context, name);
+        return perms().isPermissionSet(context, name);
     }
 
     @Override
     public boolean isPermissionSet(@Nullable Channel context, @NotNull PermissionNode perm) {
-        return this.perms.isPermissionSet(context, perm);
+        return perms().isPermissionSet(context, perm);
     }
 
     @Override
     public void recalculatePermissions() {
-        this.perms.recalculatePermissions();
-        if (this.perms.isLoading()) {
+        final SimplePermsImpl perms = perms();
+        perms.recalculatePermissions();
+        if (perms.isLoading()) {
             return;
         }
-        client.getUserPermissions().put(getId(), new UserPermissionSaved(getId(), this.perms.getEffectivePermissions(null)));
+        client.getUserPermissions().put(getId(), new UserPermissionSaved(getId(), perms.getEffectivePermissions(null)));
         client.savePermissions();
     }
 
     public Map<Permission, Boolean> calculateChannel(Channel channel) {
+        final Cache<String, Collection<Integer>> cacheRoleIds = roleIds();
         Collection<Integer> cached = cacheRoleIds.asMap().get(id);
         if (cached == null) {
             cacheRoleIds.put(id, cached = getRoles(channel.getGuild()));
@@ -497,17 +529,79 @@ public class UserImpl implements User, Updatable, LazyLoadable {
 
     @Override
     public void removeAttachment(PermissionAttachment permissionAttachment) {
-        this.perms.removeAttachment(permissionAttachment);
+        perms().removeAttachment(permissionAttachment);
     }
 
     @Override
     public @NotNull PermissionAttachment addAttachment(@Nullable Channel context, @NotNull Plugin plugin, @NotNull String name, boolean value) {
-        return this.perms.addAttachment(context, plugin, name, value);
+        return perms().addAttachment(context, plugin, name, value);
     }
 
     @Override
     public @NotNull Set<PermissionAttachmentInfo> getEffectivePermissions(@Nullable Channel channel) {
-        return this.perms.getEffectivePermissions(channel);
+        return perms().getEffectivePermissions(channel);
+    }
+
+    private static final class State {
+        static final State EMPTY = new State(false, null, 0, false, false, null, null);
+
+        final boolean bot;
+        final String name;
+        final int identify;
+        final boolean ban;
+        final boolean vip;
+        final String avatarUrl;
+        final String vipAvatarUrl;
+
+        State(boolean bot, String name, int identify, boolean ban, boolean vip, String avatarUrl, String vipAvatarUrl) {
+            this.bot = bot;
+            this.name = name;
+            this.identify = identify;
+            this.ban = ban;
+            this.vip = vip;
+            this.avatarUrl = avatarUrl;
+            this.vipAvatarUrl = vipAvatarUrl;
+        }
+
+        State withName(String name) {
+            return new State(bot, name, identify, ban, vip, avatarUrl, vipAvatarUrl);
+        }
+
+        State withIdentify(int identify) {
+            return new State(bot, name, identify, ban, vip, avatarUrl, vipAvatarUrl);
+        }
+
+        State withBan(boolean ban) {
+            return new State(bot, name, identify, ban, vip, avatarUrl, vipAvatarUrl);
+        }
+
+        State withVip(boolean vip) {
+            return new State(bot, name, identify, ban, vip, avatarUrl, vipAvatarUrl);
+        }
+
+        State withAvatarUrl(String avatarUrl) {
+            return new State(bot, name, identify, ban, vip, avatarUrl, vipAvatarUrl);
+        }
+
+        State withVipAvatarUrl(String vipAvatarUrl) {
+            return new State(bot, name, identify, ban, vip, avatarUrl, vipAvatarUrl);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return bot == other.bot && identify == other.identify && ban == other.ban && vip == other.vip
+                    && Objects.equals(name, other.name)
+                    && Objects.equals(avatarUrl, other.avatarUrl)
+                    && Objects.equals(vipAvatarUrl, other.vipAvatarUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bot, name, identify, ban, vip, avatarUrl, vipAvatarUrl);
+        }
     }
 }
 
@@ -85,6 +85,20 @@ public class EntityBuilder {
         return new UserImpl(client, id, bot, name, identify, ban, vip, avatarUrl, vipAvatarUrl);
     }
 
+    /**
+     * 构建User对象 (流式解码版本)，缺少的字段使用与 {@link #buildUser(JsonNode)} 相同的默认值
+     */
+    public User buildUser(StreamingDecoder.UserFields fields) {
+        return new UserImpl(client, fields.getId(),
+                fields.has(StreamingDecoder.UserFields.BOT) && fields.isBot(),
+                fields.has(StreamingDecoder.UserFields.NAME) ? fields.getName() : "Unknown User",
+                fields.has(StreamingDecoder.UserFields.IDENTIFY) ? fields.getIdentify() : 0,
+                fields.has(StreamingDecoder.UserFields.STATUS) && fields.isBanned(),
+                fields.has(StreamingDecoder.UserFields.VIP) && fields.isVip(),
+                fields.has(StreamingDecoder.UserFields.AVATAR) ? fields.getAvatar() : "",
+                fields.has(StreamingDecoder.UserFields.VIP_AVATAR) ? fields.getVipAvatar() : "");
+    }
+
     /**
      * 构建Guild对象 (Jackson版本，安全处理不完整JSON)
      * 处理Kook可能发送不完整JSON的情况
@@ -18,10 +18,17 @@
 
 package snw.kookbc.impl.entity.builder;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import com.fasterxml.jackson.databind.JsonNode;
+import org.jetbrains.annotations.Nullable;
+import snw.kookbc.util.CardTemplate;
 import snw.kookbc.util.JacksonUtil;
 import snw.kookbc.util.JacksonCardUtil;
 import snw.jkook.entity.User;
+import snw.jkook.entity.channel.NonCategoryChannel;
 import snw.jkook.entity.channel.TextChannel;
 import snw.jkook.entity.channel.VoiceChannel;
 import snw.jkook.message.ChannelMessage;
@@ -39,6 +46,10 @@ import snw.kookbc.impl.entity.channel.TextChannelImpl;
 import snw.kookbc.impl.entity.channel.VoiceChannelImpl;
 import snw.kookbc.impl.message.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.NoSuchElementException;
 
 import static snw.kookbc.util.JacksonUtil.*;
@@ -63,6 +74,8 @@ public class MessageBuilder {
             return new Object[] { 10, JacksonCardUtil.toJson(component) };
         } else if (component instanceof MultipleCardComponent) {
             return new Object[]{10, JacksonCardUtil.toJson(component)};
+        } else if (component instanceof CardTemplate.Rendered) {
+            return new Object[]{10, ((CardTemplate.Rendered) component).toJson()};
         } else if (component instanceof TemplateMessage) {
             return new Object[]{ ((TemplateMessage) component).getType(), JacksonCardUtil.toJson(component) };
         } else if (component instanceof FileComponent) {
@@ -87,7 +100,7 @@ public class MessageBuilder {
         throw new RuntimeException("Unsupported component");
     }
 
-    private ChannelMessageImpl buildMessage(String id, User author, BaseComponent component, long timeStamp,
+    ChannelMessageImpl buildMessage(String id, User author, BaseComponent component, long timeStamp,
             Message message, String targetId, int channelType) {
         if (channelType == CHANNEL_TYPE_TEXT) {
             final TextChannel channel = new TextChannelImpl(client, targetId);
@@ -133,7 +146,15 @@ public class MessageBuilder {
             if (quoteNode == null || quoteNode.isNull()) {
                 return null;
             }
-            final String quoteId = quoteNode.get("rong_id").asText();
+            return resolveQuote(quoteNode.get("rong_id").asText());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // null if the quoted message cannot be found
+    Message resolveQuote(String quoteId) {
+        try {
             Message quote = client.getStorage().getMessage(quoteId);
             if (quote == null) {
                 quote = client.getCore().getHttpAPI().getChannelMessage(quoteId);
@@ -146,8 +167,14 @@ public class MessageBuilder {
 
     public BaseComponent buildComponent(JsonNode node) {
         // we use text channel message format
-        String content = JacksonUtil.get(node, "content").asText();
-        switch (JacksonUtil.get(node, "type").asInt()) {
+        final JsonNode extra = node.get("extra");
+        return buildComponent(JacksonUtil.get(node, "type").asInt(), JacksonUtil.get(node, "content").asText(),
+                extra != null ? extra.get("attachments") : null);
+    }
+
+    // attachment is null for quote objects, the content is the URL of the file then
+    BaseComponent buildComponent(int componentType, String content, @Nullable JsonNode attachment) {
+        switch (componentType) {
             case 9:
                 return new MarkdownComponent(content);
             case 10:
@@ -170,8 +197,7 @@ public class MessageBuilder {
                 String title = "";
                 int size = -1;
                 FileComponent.Type type = FileComponent.Type.FILE;
-                if (node.has("extra")) { // standard component format
-                    JsonNode attachment = node.get("extra").get("attachments");
+                if (attachment != null) { // standard component format
                     url = attachment.get("url").asText();
                     title = attachment.get("name").asText();
                     // -1 for image files, because Kook does not provide size for image files.
@@ -218,4 +244,194 @@ public class MessageBuilder {
         final User author = client.getStorage().getUser(rawUser.get("id").asText(), rawUser); // 直接使用Jackson版本
         return new QuoteImpl(component, id, author, timeStamp);
     }
+
+    // ===== 消息记录 =====
+
+    /**
+     * 消息记录的压缩字典，包含记录中常见的片段，越常见的越靠后。
+     */
+    public static final byte[] RECORD_DICTIONARY = recordDictionary();
+
+    private static byte[] recordDictionary() {
+        final String card = "[{\"type\":\"card\",\"theme\":\"secondary\",\"size\":\"lg\",\"modules\":["
+                + "{\"type\":\"header\",\"text\":{\"type\":\"plain-text\",\"content\":\"\"}},{\"type\":\"divider\"},"
+                + "{\"type\":\"action-group\",\"elements\":[{\"type\":\"button\",\"theme\":\"primary\",\"value\":\"\","
+                + "\"click\":\"return-val\",\"text\":{\"type\":\"plain-text\",\"content\":\"\"}}]},"
+                + "{\"type\":\"context\",\"elements\":[{\"type\":\"image\",\"src\":\"https://img.kookapp.cn/assets/\"}]},"
+                + "{\"type\":\"section\",\"text\":{\"type\":\"kmarkdown\",\"content\":\"\"}}]}]";
+        final String record = "\"file\":{\"url\":\"https://img.kookapp.cn/attachments/\",\"name\":\"\",\"size\":,\"type\":\"file\"}"
+                + "{\"id\":\"-4-\",\"author\":\"\",\"ts\":17,\"quote\":\"\",\"target\":\"\","
+                + "\"channel_type\":1,\"type\":9,\"content\":\"";
+        // cards are stored in "content" as escaped JSON strings
+        return (new String(JsonStringEncoder.getInstance().quoteAsString(card)) + record).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final int RECORD_PRIVATE = 0; // "channel_type" of private messages
+
+    /**
+     * 将消息编码为可以由 {@link #decodeRecord(byte[])} 还原的紧凑 JSON 记录。
+     *
+     * <p>记录中只保存作者、引用与频道的 ID ，还原时重新从缓存获取或延迟加载。
+     *
+     * @param message 消息
+     * @return 记录，消息尚未加载完成，或其组件、频道无法还原（如模板消息）时返回 {@code null}
+     */
+    @Nullable
+    public byte[] encodeRecord(Message message) {
+        if (!(message instanceof MessageImpl) || !((MessageImpl) message).isCompleted()) {
+            return null; // don't trigger loading
+        }
+        final int channelType;
+        String target = null;
+        if (message instanceof PrivateMessage) {
+            channelType = RECORD_PRIVATE;
+        } else if (message instanceof ChannelMessage) {
+            final NonCategoryChannel channel = ((ChannelMessage) message).getChannel();
+            if (channel instanceof TextChannel) {
+                channelType = CHANNEL_TYPE_TEXT;
+            } else if (channel instanceof VoiceChannel) {
+                channelType = CHANNEL_TYPE_VOICE;
+            } else {
+                return null;
+            }
+            target = channel.getId();
+        } else {
+            return null;
+        }
+
+        final BaseComponent component = message.getComponent();
+        final int type;
+        final String content;
+        FileComponent file = null;
+        if (component instanceof FileComponent) {
+            file = (FileComponent) component;
+            type = file.getType() == FileComponent.Type.IMAGE ? 2 : file.getType() == FileComponent.Type.VIDEO ? 3 : 4;
+            content = file.getUrl();
+        } else if (component instanceof MarkdownComponent || component instanceof TextComponent
+                || component instanceof CardComponent || component instanceof MultipleCardComponent
+                || component instanceof CardTemplate.Rendered) {
+            final Object[] serialized = serialize(component);
+            type = (int) serialized[0];
+            content = (String) serialized[1];
+        } else {
+            return null;
+        }
+
+        final Message quote = message.getQuote();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(content.length() + 128);
+        try (JsonGenerator generator = JacksonUtil.getMapper().getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("id", message.getId());
+            generator.writeStringField("author", message.getSender().getId());
+            generator.writeNumberField("ts", message.getTimeStamp());
+            if (quote != null) {
+                generator.writeStringField("quote", quote.getId());
+            }
+            if (target != null) {
+                generator.writeStringField("target", target);
+            }
+            generator.writeNumberField("channel_type", channelType);
+            generator.writeNumberField("type", type);
+            generator.writeStringField("content", content);
+            if (file != null) {
+                // same format as the attachments of message events
+                generator.writeObjectFieldStart("file");
+                generator.writeStringField("url", file.getUrl());
+                generator.writeStringField("name", file.getTitle());
+                if (file.getSize() >= 0) {
+                    generator.writeNumberField("size", file.getSize());
+                }
+                switch (file.getType()) {
+                    case IMAGE:
+                        generator.writeStringField("type", "image");
+                        break;
+                    case VIDEO:
+                        generator.writeStringField("type", "video");
+                        break;
+                    case AUDIO:
+                        generator.writeStringField("type", "audio");
+                        generator.writeStringField("file_type", "audio");
+                        break;
+                    default:
+                        generator.writeStringField("type", "file");
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // not possible, we are writing to memory
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 从 {@link #encodeRecord(Message)} 生成的记录还原消息。
+     *
+     * @param record 记录
+     * @return 消息
+     * @throws IOException 记录不是合法的 JSON 时抛出
+     */
+    public Message decodeRecord(byte[] record) throws IOException {
+        String id = null;
+        String author = null;
+        long timeStamp = 0;
+        String quoteId = null;
+        String target = null;
+        int channelType = RECORD_PRIVATE;
+        int type = 9;
+        String content = null;
+        JsonNode file = null;
+        try (JsonParser parser = JacksonUtil.getMapper().getFactory().createParser(record)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("The message record is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "id":
+                        id = parser.getValueAsString();
+                        break;
+                    case "author":
+                        author = parser.getValueAsString();
+                        break;
+                    case "ts":
+                        timeStamp = parser.getValueAsLong();
+                        break;
+                    case "quote":
+                        quoteId = parser.getValueAsString();
+                        break;
+                    case "target":
+                        target = parser.getValueAsString();
+                        break;
+                    case "channel_type":
+                        channelType = parser.getValueAsInt();
+                        break;
+                    case "type":
+                        type = parser.getValueAsInt();
+                        break;
+                    case "content":
+                        content = parser.getValueAsString();
+                        break;
+                    case "file":
+                        file = JacksonUtil.getMapper().readTree(parser);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        if (id == null || author == null || content == null) {
+            throw new IOException("Incomplete message record");
+        }
+
+        final User sender = client.getStorage().getUser(author);
+        final BaseComponent component = buildComponent(type, content, file);
+        if (channelType == RECORD_PRIVATE) {
+            final Message quote = quoteId != null ? client.getCore().getHttpAPI().getPrivateMessage(sender, quoteId) : null;
+            return new PrivateMessageImpl(client, id, sender, component, timeStamp, quote);
+        }
+        final Message quote = quoteId != null ? resolveQuote(quoteId) : null;
+        return buildMessage(id, sender, component, timeStamp, quote, target, channelType);
+    }
 }
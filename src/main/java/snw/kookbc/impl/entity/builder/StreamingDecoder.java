@@ -0,0 +1,338 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.entity.builder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jetbrains.annotations.Nullable;
+import snw.jkook.config.ConfigurationSection;
+import snw.jkook.entity.User;
+import snw.jkook.event.Event;
+import snw.jkook.event.channel.ChannelMessageEvent;
+import snw.jkook.event.pm.PrivateMessageReceivedEvent;
+import snw.jkook.message.Message;
+import snw.jkook.message.component.BaseComponent;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.message.ChannelMessageImpl;
+import snw.kookbc.impl.message.PrivateMessageImpl;
+import snw.kookbc.util.JacksonUtil;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 不构建 {@link JsonNode} 树，直接从 {@link JsonParser} 的词法单元解码最常见的数据。
+ *
+ * <p>目前支持:
+ * <ul>
+ *     <li>用户对象，见 {@link #readUser(JsonParser)}</li>
+ *     <li>频道消息与私信事件，见 {@link #decodeMessageEvent(JsonParser)}</li>
+ * </ul>
+ *
+ * <p>遇到无法处理的数据时，解码方法返回 {@code null} ，调用者应回退到基于树的 {@link EntityBuilder} 与 {@link MessageBuilder}，
+ * 以保证行为（包括错误处理）与原来一致。
+ */
+public class StreamingDecoder {
+    public static final List<String> DEFAULT_EVENTS = Arrays.asList("ChannelMessageEvent", "PrivateMessageReceivedEvent");
+
+    private final KBCClient client;
+    private final boolean channelMessages;
+    private final boolean privateMessages;
+
+    public StreamingDecoder(KBCClient client) {
+        this.client = client;
+        final ConfigurationSection config = client.getConfig();
+        final List<String> events = config.isList("streaming-decode-events")
+                ? config.getStringList("streaming-decode-events") : DEFAULT_EVENTS;
+        this.channelMessages = events.contains("ChannelMessageEvent");
+        this.privateMessages = events.contains("PrivateMessageReceivedEvent");
+    }
+
+    public boolean isEnabled() {
+        return channelMessages || privateMessages;
+    }
+
+    /**
+     * 解码消息事件。
+     *
+     * @param parser 位于事件数据 ({@code d}) 开头的解析器
+     * @return 事件，如果数据不是已启用的消息事件，或者缺少必需的字段，返回 {@code null}
+     * @throws IOException 数据不是合法的 JSON 时抛出
+     */
+    @Nullable
+    public Event decodeMessageEvent(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        String channelType = null;
+        int type = -1;
+        String targetId = null;
+        String content = null;
+        String msgId = null;
+        long timeStamp = -1;
+        MessageExtra extra = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            final JsonToken token = parser.nextToken();
+            switch (name) {
+                case "channel_type":
+                    channelType = parser.getValueAsString();
+                    break;
+                case "type":
+                    type = parser.getValueAsInt(-1);
+                    if (type == 255) {
+                        return null; // system events are not messages
+                    }
+                    break;
+                case "target_id":
+                    targetId = parser.getValueAsString();
+                    break;
+                case "content":
+                    content = parser.getValueAsString();
+                    break;
+                case "msg_id":
+                    msgId = parser.getValueAsString();
+                    break;
+                case "msg_timestamp":
+                    timeStamp = token == JsonToken.VALUE_NULL ? -1 : parser.getValueAsLong(-1);
+                    break;
+                case "extra":
+                    if (token != JsonToken.START_OBJECT) {
+                        return null;
+                    }
+                    extra = readMessageExtra(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (extra == null || extra.author == null || msgId == null || content == null || timeStamp < 0) {
+            return null;
+        }
+        if (!isMessageType(extra.type) || !isMessageType(type)) {
+            return null; // let the tree-based path report unknown types
+        }
+        final boolean isPrivate = "PERSON".equals(channelType);
+        if (isPrivate ? !privateMessages : !channelMessages) {
+            return null;
+        }
+        if (!isPrivate && (targetId == null || extra.channelType < 0)) {
+            return null;
+        }
+
+        // nothing is changed before this line, so returning null above is always safe
+        final MessageBuilder builder = client.getMessageBuilder();
+        final User author = client.getStorage().getUser(extra.author.id, extra.author);
+        final Message quote = extra.quoteId != null ? builder.resolveQuote(extra.quoteId) : null;
+        final BaseComponent component = builder.buildComponent(type, content, extra.attachment);
+        if (isPrivate) {
+            final PrivateMessageImpl message = new PrivateMessageImpl(client, msgId, author, component, timeStamp, quote);
+            client.getStorage().addMessage(message);
+            return new PrivateMessageReceivedEvent(timeStamp, author, message);
+        } else {
+            final ChannelMessageImpl message = builder.buildMessage(msgId, author, component, timeStamp, quote, targetId, extra.channelType);
+            client.getStorage().addMessage(message);
+            return new ChannelMessageEvent(timeStamp, message.getChannel(), message);
+        }
+    }
+
+    // same as MessageBuilder#buildComponent(JsonNode), other types are rejected there
+    private static boolean isMessageType(int type) {
+        return (type >= 1 && type <= 4) || type == 9 || type == 10;
+    }
+
+    private MessageExtra readMessageExtra(JsonParser parser) throws IOException {
+        final MessageExtra extra = new MessageExtra();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            final JsonToken token = parser.nextToken();
+            switch (name) {
+                case "type":
+                    extra.type = parser.getValueAsInt(-1);
+                    break;
+                case "channel_type":
+                    extra.channelType = token == JsonToken.VALUE_NULL ? -1 : parser.getValueAsInt(-1);
+                    break;
+                case "author":
+                    if (token == JsonToken.START_OBJECT) {
+                        extra.author = readUser(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "quote":
+                    if (token == JsonToken.START_OBJECT) {
+                        extra.quoteId = readQuoteId(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "attachments":
+                    // only present in file messages, not worth a dedicated decoder
+                    final JsonNode attachment = JacksonUtil.getMapper().readTree(parser);
+                    extra.attachment = attachment.isObject() ? attachment : null;
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return extra;
+    }
+
+    private static String readQuoteId(JsonParser parser) throws IOException {
+        String id = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            parser.nextToken();
+            if ("rong_id".equals(name)) {
+                id = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return id;
+    }
+
+    /**
+     * 读取一个用户对象。
+     *
+     * @param parser 位于用户对象的 {@link JsonToken#START_OBJECT} 的解析器，返回时位于对应的 {@link JsonToken#END_OBJECT}
+     * @return 用户对象的字段，对象中没有 {@code id} 时返回 {@code null}
+     * @throws IOException 数据不是合法的 JSON 时抛出
+     */
+    @Nullable
+    public static UserFields readUser(JsonParser parser) throws IOException {
+        final UserFields user = new UserFields();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            final JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue; // treated as absent, like JacksonUtil.get*OrDefault does
+            }
+            switch (name) {
+                case "id":
+                    user.id = parser.getValueAsString();
+                    break;
+                case "username":
+                    user.name = parser.getValueAsString();
+                    user.present |= UserFields.NAME;
+                    break;
+                case "bot":
+                    user.bot = parser.getValueAsBoolean();
+                    user.present |= UserFields.BOT;
+                    break;
+                case "identify_num":
+                    user.identify = parser.getValueAsInt();
+                    user.present |= UserFields.IDENTIFY;
+                    break;
+                case "status":
+                    user.status = parser.getValueAsInt();
+                    user.present |= UserFields.STATUS;
+                    break;
+                case "is_vip":
+                    user.vip = parser.getValueAsBoolean();
+                    user.present |= UserFields.VIP;
+                    break;
+                case "avatar":
+                    user.avatar = parser.getValueAsString();
+                    user.present |= UserFields.AVATAR;
+                    break;
+                case "vip_avatar":
+                    user.vipAvatar = parser.getValueAsString();
+                    user.present |= UserFields.VIP_AVATAR;
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return user.id != null ? user : null;
+    }
+
+    /**
+     * 用户对象中 KookBC 关心的字段。
+     *
+     * <p>{@link #has(int)} 用于区分字段是否出现在数据中，未出现的字段不应覆盖已有的值。
+     */
+    public static final class UserFields {
+        public static final int BOT = 1;
+        public static final int NAME = 1 << 1;
+        public static final int IDENTIFY = 1 << 2;
+        public static final int STATUS = 1 << 3;
+        public static final int VIP = 1 << 4;
+        public static final int AVATAR = 1 << 5;
+        public static final int VIP_AVATAR = 1 << 6;
+
+        String id;
+        int present;
+        boolean bot;
+        String name;
+        int identify;
+        int status;
+        boolean vip;
+        String avatar;
+        String vipAvatar;
+
+        public String getId() {
+            return id;
+        }
+
+        public boolean has(int field) {
+            return (present & field) != 0;
+        }
+
+        public boolean isBot() {
+            return bot;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getIdentify() {
+            return identify;
+        }
+
+        public boolean isBanned() {
+            return status == 10;
+        }
+
+        public boolean isVip() {
+            return vip;
+        }
+
+        public String getAvatar() {
+            return avatar;
+        }
+
+        public String getVipAvatar() {
+            return vipAvatar;
+        }
+    }
+
+    private static final class MessageExtra {
+        private int type = -1;
+        private int channelType = -1;
+        private UserFields author;
+        private String quoteId;
+        private JsonNode attachment;
+    }
+}
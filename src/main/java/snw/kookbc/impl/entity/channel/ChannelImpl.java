@@ -24,18 +24,24 @@ import snw.jkook.Permission;
 import snw.jkook.entity.Guild;
 import snw.jkook.entity.Role;
 import snw.jkook.entity.User;
+import snw.jkook.entity.channel.Category;
 import snw.jkook.entity.channel.Channel;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.entity.Snapshots;
 import snw.kookbc.impl.network.HttpAPIRoute;
 import snw.kookbc.interfaces.LazyLoadable;
 import snw.kookbc.interfaces.Updatable;
 import snw.kookbc.util.JacksonUtil;
 import snw.kookbc.util.MapBuilder;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.UnaryOperator;
 
 import static snw.jkook.util.Validate.isTrue;
 import static snw.kookbc.impl.entity.builder.EntityBuildUtil.parseRPO;
@@ -44,15 +50,13 @@ import static snw.kookbc.util.JacksonUtil.getAsInt;
 import static snw.kookbc.util.JacksonUtil.getAsString;
 
 public abstract class ChannelImpl implements Channel, Updatable, LazyLoadable {
+    private static final AtomicReferenceFieldUpdater<ChannelImpl, State> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(ChannelImpl.class, State.class, "state");
+
     protected final KBCClient client;
     private final String id;
-    private User master;
-    private Guild guild;
-    private Collection<RolePermissionOverwrite> rpo;
-    private Collection<UserPermissionOverwrite> upo;
-    private boolean permSync;
-    private String name;
-    private int level;
+    // See Snapshots. The fields of the subclasses are in the same snapshot, so one update swaps them all at once.
+    private volatile State state = State.EMPTY;
     protected boolean completed;
 
     public ChannelImpl(KBCClient client, String id) {
@@ -64,13 +68,8 @@ public abstract class ChannelImpl implements Channel, Updatable, LazyLoadable {
                        Collection<RolePermissionOverwrite> rpo, Collection<UserPermissionOverwrite> upo, int level) {
         this.client = client;
         this.id = id;
-        this.master = master;
-        this.guild = guild;
-        this.permSync = permSync;
-        this.name = name;
-        this.rpo = rpo;
-        this.upo = upo;
-        this.level = level;
+        this.state = new State(master, guild, permSync, name, List.copyOf(rpo), List.copyOf(upo), level,
+                null, 0, null);
     }
 
     @Override
@@ -81,17 +80,17 @@ public abstract class ChannelImpl implements Channel, Updatable, LazyLoadable {
     @Override
     public Guild getGuild() {
         initIfNeeded();
-        return guild;
+        return state.guild;
     }
 
     @Override
     public boolean isPermissionSync() {
         initIfNeeded();
-        return permSync;
+        return state.permSync;
     }
 
     public void setPermissionSync(boolean permSync) {
-        this.permSync = permSync;
+        updateState(s -> s.withPermSync(permSync));
     }
 
     @Override
@@ -103,7 +102,7 @@ public abstract class ChannelImpl implements Channel, Updatable, LazyLoadable {
     @Override
     public int getLevel() {
         initIfNeeded();
-        return level;
+        return state.level;
     }
 
     @Override
@@ -113,7 +112,7 @@ public abstract class ChannelImpl implements Channel, Updatable, LazyLoadable {
                 .put("level", level)
                 .build();
         client.getNetworkClient().post(HttpAPIRoute.CHANNEL_UPDATE.toFullURL(), body);
-        this.level = level;
+        updateState(s -> s.withLevel(level));
     }
 
     @Override
@@ -273,7 +272,7 @@ public abstract class ChannelImpl implements Channel, Updatable, LazyLoadable {
     @Override
     public String getName() {
         initIfNeeded();
-        return name;
+        return state.name;
     }
 
     @Override
@@ -287,46 +286,55 @@ public abstract class ChannelImpl implements Channel, Updatable, LazyLoadable {
     }
 
     public void setName0(String name) {
-        this.name = name;
+        updateState(s -> s.withName(name));
     }
 
     @Override
     public Collection<RolePermissionOverwrite> getOverwrittenRolePermissions() {
         initIfNeeded();
-        return Collections.unmodifiableCollection(rpo);
+        return state.rpo;
     }
 
     public void setOverwrittenRolePermissions(Collection<RolePermissionOverwrite> rpo) {
-        this.rpo = rpo;
+        final List<RolePermissionOverwrite> copy = List.copyOf(rpo);
+        updateState(s -> s.withRpo(copy));
     }
 
     @Override
     public Collection<UserPermissionOverwrite> getOverwrittenUserPermissions() {
         initIfNeeded();
-        return Collections.unmodifiableCollection(upo);
+        return state.upo;
     }
 
-    public Collection<UserPermissionOverwrite> getOverwrittenUserPermissions0() {
-        return upo;
+    public void setOverwrittenUserPermissions(Collection<UserPermissionOverwrite> upo) {
+        final List<UserPermissionOverwrite> copy = List.copyOf(upo);
+        updateState(s -> s.withUpo(copy));
     }
 
-    public void setOverwrittenUserPermissions(Collection<UserPermissionOverwrite> upo) {
-        this.upo = upo;
+    // Called when the user leaves the guild of this channel.
+    public void removeUserPermissionOverwrite(User user) {
+        updateState(s -> {
+            final List<UserPermissionOverwrite> upo = new ArrayList<>(s.upo);
+            return upo.removeIf(o -> o.getUser() == user) ? s.withUpo(List.copyOf(upo)) : s;
+        });
     }
 
     @Override
     public User getMaster() {
         initIfNeeded();
-        return master;
+        return state.master;
     }
 
-    public synchronized void update(JsonNode data) {
+    public void update(JsonNode data) {
         isTrue(Objects.equals(getId(), JacksonUtil.get(data, "id").asText()), "You can't update channel by using different data");
-        this.name = JacksonUtil.get(data, "name").asText();
-        this.permSync = JacksonUtil.get(data, "permission_sync").asInt() != 0;
-        this.guild = client.getStorage().getGuild(JacksonUtil.get(data, "guild_id").asText());
-        this.rpo = parseRPO(data);
-        this.upo = parseUPO(client, data);
+        final String name = JacksonUtil.get(data, "name").asText();
+        final boolean permSync = JacksonUtil.get(data, "permission_sync").asInt() != 0;
+        final Guild guild = client.getStorage().getGuild(JacksonUtil.get(data, "guild_id").asText());
+        final List<RolePermissionOverwrite> rpo = List.copyOf(parseRPO(data));
+        final List<UserPermissionOverwrite> upo = List.copyOf(parseUPO(client, data));
+        // the master and the level are not part of the channel payload, keep them
+        updateState(s -> readState(new State(s.master, guild, permSync, name, rpo, upo, s.level,
+                s.parent, s.chatLimitTime, s.extension), data));
 
         // Why we delay the add operation?
         // We may construct the channel object at any time,
@@ -349,4 +357,127 @@ public abstract class ChannelImpl implements Channel, Updatable, LazyLoadable {
         update(data);
         completed = true;
     }
+
+    // Reads the fields only known by the subclass, they are swapped in together with the common fields.
+    // It may be called more than once for one update, see Snapshots.
+    State readState(State state, JsonNode data) {
+        return state;
+    }
+
+    // the current snapshot, without loading the channel
+    final State state() {
+        return state;
+    }
+
+    final void updateState(UnaryOperator<State> change) {
+        Snapshots.update(STATE, this, change);
+    }
+
+    // Also holds the fields of the subclasses, so they are updated with the common fields in one swap.
+    // The parent and the chat limit time are used by NonCategoryChannelImpl,
+    //  the extension is an immutable object defined by the channel type, e.g. the topic of a text channel.
+    static final class State {
+        static final State EMPTY = new State(null, null, false, null, List.of(), List.of(), 0, null, 0, null);
+
+        final User master;
+        final Guild guild;
+        final boolean permSync;
+        final String name;
+        final List<RolePermissionOverwrite> rpo; // immutable
+        final List<UserPermissionOverwrite> upo; // immutable
+        final int level;
+        final @Nullable Category parent;
+        final int chatLimitTime;
+        final @Nullable Object extension;
+
+        State(User master, Guild guild, boolean permSync, String name, List<RolePermissionOverwrite> rpo,
+              List<UserPermissionOverwrite> upo, int level, @Nullable Category parent, int chatLimitTime,
+              @Nullable Object extension) {
+            this.master = master;
+            this.guild = guild;
+            this.permSync = permSync;
+            this.name = name;
+            this.rpo = rpo;
+            this.upo = upo;
+            this.level = level;
+            this.parent = parent;
+            this.chatLimitTime = chatLimitTime;
+            this.extension = extension;
+        }
+
+        State withPermSync(boolean permSync) {
+            return new State(master, guild, permSync, name, rpo, upo, level, parent, chatLimitTime, extension);
+        }
+
+        State withName(String name) {
+            return new State(master, guild, permSync, name, rpo, upo, level, parent, chatLimitTime, extension);
+        }
+
+        State withRpo(List<RolePermissionOverwrite> rpo) {
+            return new State(master, guild, permSync, name, rpo, upo, level, parent, chatLimitTime, extension);
+        }
+
+        State withUpo(List<UserPermissionOverwrite> upo) {
+            return new State(master, guild, permSync, name, rpo, upo, level, parent, chatLimitTime, extension);
+        }
+
+        State withLevel(int level) {
+            return new State(master, guild, permSync, name, rpo, upo, level, parent, chatLimitTime, extension);
+        }
+
+        State withParent(@Nullable Category parent) {
+            return new State(master, guild, permSync, name, rpo, upo, level, parent, chatLimitTime, extension);
+        }
+
+        State withChatLimitTime(int chatLimitTime) {
+            return new State(master, guild, permSync, name, rpo, upo, level, parent, chatLimitTime, extension);
+        }
+
+        State withExtension(@Nullable Object extension) {
+            return new State(master, guild, permSync, name, rpo, upo, level, parent, chatLimitTime, extension);
+        }
+
+        // The overwrite classes come from the API and have no equals(), so they are compared by value here.
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return permSync == other.permSync && level == other.level && chatLimitTime == other.chatLimitTime
+                    && master == other.master && guild == other.guild && parent == other.parent
+                    && Objects.equals(name, other.name)
+                    && Objects.equals(extension, other.extension)
+                    && sameRpo(rpo, other.rpo) && sameUpo(upo, other.upo);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(master, guild, permSync, name, level, parent, chatLimitTime, extension);
+        }
+
+        private static boolean sameRpo(List<RolePermissionOverwrite> a, List<RolePermissionOverwrite> b) {
+            if (a.size() != b.size()) return false;
+            for (int i = 0; i < a.size(); i++) {
+                final RolePermissionOverwrite x = a.get(i);
+                final RolePermissionOverwrite y = b.get(i);
+                if (x.getRoleId() != y.getRoleId() || x.getRawAllow() != y.getRawAllow() || x.getRawDeny() != y.getRawDeny()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean sameUpo(List<UserPermissionOverwrite> a, List<UserPermissionOverwrite> b) {
+            if (a.size() != b.size()) return false;
+            for (int i = 0; i < a.size(); i++) {
+                final UserPermissionOverwrite x = a.get(i);
+                final UserPermissionOverwrite y = b.get(i);
+                if (!Objects.equals(x.getUser().getId(), y.getUser().getId())
+                        || x.getRawAllow() != y.getRawAllow() || x.getRawDeny() != y.getRawDeny()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -27,30 +27,28 @@ import snw.jkook.entity.channel.Category;
 import snw.jkook.entity.channel.NonCategoryChannel;
 import snw.jkook.exceptions.BadResponseException;
 import snw.jkook.message.ChannelMessage;
-import snw.jkook.message.Message;
 import snw.jkook.message.component.BaseComponent;
 import snw.jkook.message.component.MarkdownComponent;
-import snw.jkook.message.component.TemplateMessage;
 import snw.jkook.util.PageIterator;
 import snw.kookbc.impl.KBCClient;
-import snw.kookbc.impl.entity.builder.MessageBuilder;
 import snw.kookbc.impl.network.HttpAPIRoute;
+import snw.kookbc.impl.network.MessageBody;
 import snw.kookbc.impl.pageiter.ChannelInvitationIterator;
 import snw.kookbc.util.MapBuilder;
+import snw.kookbc.util.Util;
 
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static snw.kookbc.util.JacksonUtil.get;
 import static snw.kookbc.util.JacksonUtil.getAsString;
+import static snw.kookbc.util.JacksonUtil.getIntOrDefault;
 import static snw.kookbc.util.JacksonUtil.getStringOrDefault;
 
 public abstract class NonCategoryChannelImpl extends ChannelImpl implements NonCategoryChannel {
 
-    private Category parent;
-    private int chatLimitTime;
-
     protected NonCategoryChannelImpl(KBCClient client, String id) {
         super(client, id);
     }
@@ -59,8 +57,7 @@ public abstract class NonCategoryChannelImpl extends ChannelImpl implements NonC
             Category parent, String name, Collection<RolePermissionOverwrite> rpo,
             Collection<UserPermissionOverwrite> upo, int level, int chatLimitTime) {
         super(client, id, master, guild, permSync, name, rpo, upo, level);
-        this.chatLimitTime = chatLimitTime;
-        this.parent = parent;
+        updateState(s -> s.withParent(parent).withChatLimitTime(chatLimitTime));
     }
 
     @Override
@@ -77,7 +74,7 @@ public abstract class NonCategoryChannelImpl extends ChannelImpl implements NonC
     @Override
     public @Nullable Category getParent() {
         initIfNeeded();
-        return parent;
+        return state().parent;
     }
 
     @Override
@@ -87,7 +84,7 @@ public abstract class NonCategoryChannelImpl extends ChannelImpl implements NonC
                 .put("parent_id", (parent == null) ? 0 : parent.getId())
                 .build();
         client.getNetworkClient().post(HttpAPIRoute.CHANNEL_UPDATE.toFullURL(), body);
-        this.parent = parent;
+        updateState(s -> s.withParent(parent));
     }
 
     @Override
@@ -112,33 +109,34 @@ public abstract class NonCategoryChannelImpl extends ChannelImpl implements NonC
 
     @Override
     public String sendComponent(BaseComponent component, @Nullable ChannelMessage quote, @Nullable User tempTarget) {
-        Object[] result = MessageBuilder.serialize(component);
-        Map<String, Object> body = new MapBuilder()
-                .put("target_id", getId())
-                .put("type", result[0])
-                .put("content", result[1])
-                .putIfInstance("template_id", component, TemplateMessage.class, TemplateMessage::getId)
-                .putIfNotNull("quote", quote, Message::getId)
-                .putIfNotNull("temp_target_id", tempTarget, User::getId)
-                .build();
-        try {
-            return client.getNetworkClient().post(HttpAPIRoute.CHANNEL_MESSAGE_SEND.toFullURL(), body).get("msg_id")
-                    .asText();
-        } catch (BadResponseException e) {
-            if ("资源不存在".equals(e.getRawMessage())) {
+        return Util.join(sendComponentAsync(component, quote, tempTarget));
+    }
+
+    // Messages sent to this channel are queued, so they are sent in the order of the calls
+    //  and the caller does not have to wait for the HTTP request.
+    public CompletableFuture<String> sendComponentAsync(BaseComponent component, @Nullable ChannelMessage quote, @Nullable User tempTarget) {
+        final MessageBody body = MessageBody.create(getId(), component,
+                quote != null ? quote.getId() : null, tempTarget != null ? tempTarget.getId() : null);
+        final CompletableFuture<String> sent = client.getOutboundQueue().send(HttpAPIRoute.CHANNEL_MESSAGE_SEND, getId(), body);
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        sent.whenComplete((id, e) -> {
+            if (e instanceof BadResponseException && "资源不存在".equals(((BadResponseException) e).getRawMessage())) {
                 // 2023/1/17: special case for the resources that aren't created by Bots.
                 // Thanks: Edint386@Github
-                throw new IllegalArgumentException("Unable to send component. Is the resource created by Bot?", e);
+                result.completeExceptionally(new IllegalArgumentException("Unable to send component. Is the resource created by Bot?", e));
+            } else if (e != null) {
+                result.completeExceptionally(e);
             } else {
-                throw e;
+                result.complete(id);
             }
-        }
+        });
+        return result;
     }
 
     @Override
     public int getChatLimitTime() {
         initIfNeeded();
-        return chatLimitTime;
+        return state().chatLimitTime;
     }
 
     @Override
@@ -148,15 +146,23 @@ public abstract class NonCategoryChannelImpl extends ChannelImpl implements NonC
                 .put("slow_mode", chatLimitTime)
                 .build();
         client.getNetworkClient().post(HttpAPIRoute.CHANNEL_UPDATE.toFullURL(), body);
-        this.chatLimitTime = chatLimitTime;
+        updateState(s -> s.withChatLimitTime(chatLimitTime));
     }
 
     @Override
-    public synchronized void update(JsonNode data) {
-        super.update(data);
+    State readState(State state, JsonNode data) {
         final String parentId = getStringOrDefault(data, "parent_id", "");
         final Boolean needParent = "".equals(parentId) || "0".equals(parentId);
-        this.parent = needParent ? null : new CategoryImpl(client, parentId);
+        final Category parent;
+        if (needParent) {
+            parent = null;
+        } else if (state.parent != null && parentId.equals(state.parent.getId())) {
+            parent = state.parent; // keep the same object, so an unchanged payload gives an equal state
+        } else {
+            parent = new CategoryImpl(client, parentId);
+        }
+        return super.readState(state.withParent(parent)
+                .withChatLimitTime(getIntOrDefault(data, "slow_mode", 0)), data);
     }
 
 }
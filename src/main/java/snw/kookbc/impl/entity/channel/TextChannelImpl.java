@@ -20,7 +20,6 @@ package snw.kookbc.impl.entity.channel;
 
 import static snw.kookbc.util.JacksonUtil.getAsInt;
 import static snw.kookbc.util.JacksonUtil.getAsString;
-import static snw.kookbc.util.JacksonUtil.getIntOrDefault;
 import static snw.kookbc.util.JacksonUtil.getStringOrDefault;
 
 import java.util.Collection;
@@ -43,9 +42,8 @@ import snw.kookbc.impl.network.HttpAPIRoute;
 import snw.kookbc.impl.pageiter.ChannelMessageIterator;
 import snw.kookbc.util.MapBuilder;
 
+// The extension of the state is the topic.
 public class TextChannelImpl extends NonCategoryChannelImpl implements TextChannel {
-    private int chatLimitTime;
-    private String topic;
 
     public TextChannelImpl(KBCClient client, String id) {
         super(client, id);
@@ -55,15 +53,14 @@ public class TextChannelImpl extends NonCategoryChannelImpl implements TextChann
             String name, Collection<RolePermissionOverwrite> rpo, Collection<UserPermissionOverwrite> upo, int level,
             int chatLimitTime, String topic) {
         super(client, id, master, guild, permSync, parent, name, rpo, upo, level, chatLimitTime);
-        this.chatLimitTime = chatLimitTime;
-        this.topic = topic;
+        updateState(s -> s.withExtension(topic));
         this.completed = true;
     }
 
     @Override
     public String getTopic() {
         initIfNeeded();
-        return topic;
+        return (String) state().extension;
     }
 
     @Override
@@ -73,15 +70,15 @@ public class TextChannelImpl extends NonCategoryChannelImpl implements TextChann
                 .put("topic", topic)
                 .build();
         client.getNetworkClient().post(HttpAPIRoute.CHANNEL_UPDATE.toFullURL(), body);
-        this.topic = topic;
+        updateState(s -> s.withExtension(topic));
     }
 
     public int getChatLimitTime() {
-        return chatLimitTime;
+        return state().chatLimitTime;
     }
 
     public void setChatLimitTime(int chatLimitTime) {
-        this.chatLimitTime = chatLimitTime;
+        updateState(s -> s.withChatLimitTime(chatLimitTime));
     }
 
     @Override
@@ -93,9 +90,7 @@ public class TextChannelImpl extends NonCategoryChannelImpl implements TextChann
     }
 
     @Override
-    public synchronized void update(JsonNode data) {
-        super.update(data);
-        this.chatLimitTime = getIntOrDefault(data, "slow_mode", 0);
-        this.topic = getStringOrDefault(data, "topic", "");
+    State readState(State state, JsonNode data) {
+        return super.readState(state, data).withExtension(getStringOrDefault(data, "topic", ""));
     }
 }
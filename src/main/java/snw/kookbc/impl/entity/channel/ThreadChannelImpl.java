@@ -18,8 +18,6 @@
 
 package snw.kookbc.impl.entity.channel;
 
-import static snw.kookbc.util.JacksonUtil.getIntOrDefault;
-
 import java.util.Collection;
 import java.util.Map;
 
@@ -63,11 +61,6 @@ import snw.kookbc.util.MapBuilder;
  */
 public class ThreadChannelImpl extends NonCategoryChannelImpl implements ThreadChannel {
 
-    /**
-     * 慢速模式时间限制 (秒)
-     */
-    private int chatLimitTime;
-
     /**
      * 构造一个未完全初始化的帖子频道对象
      *
@@ -97,7 +90,6 @@ public class ThreadChannelImpl extends NonCategoryChannelImpl implements ThreadC
             String name, Collection<RolePermissionOverwrite> rpo, Collection<UserPermissionOverwrite> upo, int level,
             int chatLimitTime) {
         super(client, id, master, guild, permSync, parent, name, rpo, upo, level, chatLimitTime);
-        this.chatLimitTime = chatLimitTime;
         this.completed = true;
     }
 
@@ -190,7 +182,7 @@ public class ThreadChannelImpl extends NonCategoryChannelImpl implements ThreadC
      */
     public int getChatLimitTime() {
         initIfNeeded();
-        return chatLimitTime;
+        return state().chatLimitTime;
     }
 
     /**
@@ -199,23 +191,7 @@ public class ThreadChannelImpl extends NonCategoryChannelImpl implements ThreadC
      * @param chatLimitTime 时间限制(秒)
      */
     public void setChatLimitTime(int chatLimitTime) {
-        this.chatLimitTime = chatLimitTime;
-    }
-
-    /**
-     * 从 Jackson JsonNode 更新频道信息
-     *
-     * <p>此方法会安全地提取以下字段:
-     * <ul>
-     *   <li>slow_mode - 慢速模式时间限制</li>
-     * </ul>
-     *
-     * @param data JSON 数据节点
-     */
-    @Override
-    public synchronized void update(JsonNode data) {
-        super.update(data);
-        this.chatLimitTime = getIntOrDefault(data, "slow_mode", 0);
+        updateState(s -> s.withChatLimitTime(chatLimitTime));
     }
 
     /**
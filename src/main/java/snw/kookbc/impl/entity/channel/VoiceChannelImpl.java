@@ -26,6 +26,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.jetbrains.annotations.NotNull;
@@ -42,15 +43,9 @@ import snw.jkook.entity.channel.VoiceChannel;
 import snw.kookbc.impl.KBCClient;
 import snw.kookbc.impl.network.HttpAPIRoute;
 import snw.kookbc.util.MapBuilder;
-import snw.kookbc.util.JacksonUtil;
 
+// The extension of the state is a VoiceState.
 public class VoiceChannelImpl extends NonCategoryChannelImpl implements VoiceChannel {
-    private boolean passwordProtected;
-    private int maxSize;
-    @SuppressWarnings("unused")
-    private int quality;
-    @SuppressWarnings("unused")
-    private int chatLimitTime;
 
     public VoiceChannelImpl(KBCClient client, String id) {
         super(client, id);
@@ -60,10 +55,7 @@ public class VoiceChannelImpl extends NonCategoryChannelImpl implements VoiceCha
             String name, Collection<RolePermissionOverwrite> rpo, Collection<UserPermissionOverwrite> upo, int level,
             boolean passwordProtected, int maxSize, int quality, int chatLimitTime) {
         super(client, id, master, guild, permSync, parent, name, rpo, upo, level, chatLimitTime);
-        this.passwordProtected = passwordProtected;
-        this.maxSize = maxSize;
-        this.quality = quality;
-        this.chatLimitTime = chatLimitTime;
+        updateState(s -> s.withExtension(new VoiceState(passwordProtected, maxSize, quality)));
         this.completed = true;
     }
 
@@ -81,7 +73,7 @@ public class VoiceChannelImpl extends NonCategoryChannelImpl implements VoiceCha
     @Override
     public boolean hasPassword() {
         initIfNeeded();
-        return passwordProtected;
+        return voice(state()).passwordProtected;
     }
 
     @Override
@@ -91,17 +83,17 @@ public class VoiceChannelImpl extends NonCategoryChannelImpl implements VoiceCha
                 .put("password", password)
                 .build();
         client.getNetworkClient().post(HttpAPIRoute.CHANNEL_UPDATE.toFullURL(), body);
-        this.passwordProtected = !password.isEmpty();
+        setPasswordProtected(!password.isEmpty());
     }
 
     @Override
     public int getMaxSize() {
         initIfNeeded();
-        return maxSize;
+        return voice(state()).maxSize;
     }
 
     public void setMaxSize(int maxSize) {
-        this.maxSize = maxSize;
+        updateState(s -> s.withExtension(voice(s).withMaxSize(maxSize)));
     }
 
     @Override
@@ -128,15 +120,13 @@ public class VoiceChannelImpl extends NonCategoryChannelImpl implements VoiceCha
                 .put("voice_quality", i)
                 .build();
         client.getNetworkClient().post(HttpAPIRoute.CHANNEL_UPDATE.toFullURL(), body);
-        this.quality = i;
+        updateState(s -> s.withExtension(voice(s).withQuality(i)));
     }
 
     @Override
     public Collection<User> getUsers() {
-        String rawContent = client.getNetworkClient()
-                .getRawContent(HttpAPIRoute.CHANNEL_USER_LIST.toFullURL() + "?channel_id=" + getId());
-        JsonNode rootNode = JacksonUtil.parse(rawContent);
-        JsonNode array = JacksonUtil.get(rootNode, "data");
+        JsonNode array = client.getNetworkClient()
+                .get(HttpAPIRoute.CHANNEL_USER_LIST.toFullURL() + "?channel_id=" + getId());
         Set<User> users = new HashSet<>();
         for (JsonNode element : array) {
             users.add(client.getStorage().getUser(element.get("id").asText(), element));
@@ -154,17 +144,20 @@ public class VoiceChannelImpl extends NonCategoryChannelImpl implements VoiceCha
     }
 
     public void setPasswordProtected(boolean passwordProtected) {
-        this.passwordProtected = passwordProtected;
+        updateState(s -> s.withExtension(voice(s).withPasswordProtected(passwordProtected)));
     }
 
     @Override
-    public synchronized void update(JsonNode data) {
-        super.update(data);
+    State readState(State state, JsonNode data) {
         boolean hasPassword = data.has("has_password") && data.get("has_password").asBoolean();
         int size = data.has("limit_amount") ? data.get("limit_amount").asInt() : 0;
         // KOOK does not provide voice quality value here!
-        this.passwordProtected = hasPassword;
-        this.maxSize = size;
+        final int quality = voice(state).quality;
+        return super.readState(state, data).withExtension(new VoiceState(hasPassword, size, quality));
+    }
+
+    private static VoiceState voice(State state) {
+        return state.extension != null ? (VoiceState) state.extension : VoiceState.EMPTY;
     }
 
     @Override
@@ -222,6 +215,47 @@ public class VoiceChannelImpl extends NonCategoryChannelImpl implements VoiceCha
         client.getNetworkClient().postContent(HttpAPIRoute.VOICE_LEAVE.toFullURL(), body);
     }
 
+    // the quality is only known if it was given when constructing or set by this client, see getQuality()
+    private static final class VoiceState {
+        static final VoiceState EMPTY = new VoiceState(false, 0, 0);
+
+        final boolean passwordProtected;
+        final int maxSize;
+        final int quality;
+
+        VoiceState(boolean passwordProtected, int maxSize, int quality) {
+            this.passwordProtected = passwordProtected;
+            this.maxSize = maxSize;
+            this.quality = quality;
+        }
+
+        VoiceState withPasswordProtected(boolean passwordProtected) {
+            return new VoiceState(passwordProtected, maxSize, quality);
+        }
+
+        VoiceState withMaxSize(int maxSize) {
+            return new VoiceState(passwordProtected, maxSize, quality);
+        }
+
+        VoiceState withQuality(int quality) {
+            return new VoiceState(passwordProtected, maxSize, quality);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VoiceState)) return false;
+            VoiceState other = (VoiceState) o;
+            return passwordProtected == other.passwordProtected && maxSize == other.maxSize
+                    && quality == other.quality;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(passwordProtected, maxSize, quality);
+        }
+    }
+
     public static final class StreamingInfoImpl implements StreamingInfo {
 
         private final String ip;
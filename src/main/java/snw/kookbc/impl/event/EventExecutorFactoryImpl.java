@@ -29,9 +29,11 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
 public final class EventExecutorFactoryImpl implements EventExecutor.Factory<Event, Listener> {
-    public static final EventExecutorFactoryImpl INSTANCE = new EventExecutorFactoryImpl();
+    public static final EventExecutorFactoryImpl INSTANCE = new EventExecutorFactoryImpl(null);
+    private final HandlerProfiler profiler; // null if profiling is disabled
 
-    private EventExecutorFactoryImpl() {
+    EventExecutorFactoryImpl(HandlerProfiler profiler) {
+        this.profiler = profiler;
     }
 
     @Override
@@ -42,10 +44,24 @@ public final class EventExecutorFactoryImpl implements EventExecutor.Factory<Eve
             throw new IllegalArgumentException("You cannot create listener for an abstract event type.");
         }
         final MethodHandle handle = MethodHandles.lookup().unreflect(method).bindTo(object);
+        if (profiler == null) {
+            return (listener, event) -> {
+                if (!actualEventType.isInstance(event))
+                    return;
+                handle.invoke(event);
+            };
+        }
+        final HandlerProfiler.Handler handler = profiler.create(object, method);
         return (listener, event) -> {
             if (!actualEventType.isInstance(event))
                 return;
-            handle.invoke(event);
+            final long begin = System.nanoTime();
+            final HandlerProfiler.Invocation invocation = profiler.enter(handler, begin);
+            try {
+                handle.invoke(event);
+            } finally {
+                profiler.exit(handler, invocation, begin);
+            }
         };
     }
 
@@ -18,6 +18,7 @@
 
 package snw.kookbc.impl.event;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import snw.jkook.event.Event;
@@ -32,8 +33,12 @@ import snw.jkook.event.role.RoleDeleteEvent;
 import snw.jkook.event.role.RoleInfoUpdateEvent;
 import snw.jkook.event.user.*;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.entity.builder.StreamingDecoder;
+import snw.kookbc.impl.network.Frame;
 import snw.kookbc.impl.serializer.event.jackson.JKookEventModule;
 
+import java.io.IOException;
+
 import static snw.kookbc.util.JacksonUtil.get;
 import static snw.kookbc.util.JacksonUtil.has;
 
@@ -53,6 +58,32 @@ public class EventFactory {
         this.jacksonMapper = createJacksonMapper();
     }
 
+    /**
+     * 从数据帧创建事件对象
+     *
+     * <p>如果启用了 {@link StreamingDecoder} ，消息事件直接从帧的原始字节解码，不构建 {@link JsonNode} 树。
+     * 其他事件，或流式解码无法处理的数据，回退到 {@link #createEvent(JsonNode)} 。
+     *
+     * @param frame 事件数据帧
+     * @return 事件对象,如果无法解析则返回 null
+     */
+    public Event createEvent(Frame frame) {
+        final StreamingDecoder decoder = client.getStreamingDecoder();
+        if (decoder.isEnabled()) {
+            try (JsonParser parser = frame.createDataParser()) {
+                if (parser != null) {
+                    final Event result = decoder.decodeMessageEvent(parser);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            } catch (IOException e) {
+                client.getCore().getLogger().debug("流式解码事件失败，回退到树解析", e);
+            }
+        }
+        return createEvent(frame.getData());
+    }
+
     /**
      * 从 Jackson JsonNode 创建事件对象
      *
@@ -78,7 +109,7 @@ public class EventFactory {
             if (has(get(get(object, "extra"), "body"), "my_nickname")) {
                 // 修正事件类型为 GuildUserNickNameUpdateEvent
                 try {
-                    return jacksonMapper.readValue(object.toString(), GuildUserNickNameUpdateEvent.class);
+                    return jacksonMapper.treeToValue(object, GuildUserNickNameUpdateEvent.class);
                 } catch (Exception e) {
                     client.getCore().getLogger().warn("使用 Jackson 解析 GuildUserNickNameUpdateEvent 失败", e);
                     return null;
@@ -88,7 +119,7 @@ public class EventFactory {
 
         // 使用 Jackson 反序列化事件对象
         try {
-            Event result = jacksonMapper.readValue(object.toString(), eventType);
+            Event result = jacksonMapper.treeToValue(object, eventType);
             if (result != null) {
                 return result;
             }
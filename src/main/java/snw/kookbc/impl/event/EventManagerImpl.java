@@ -42,6 +42,7 @@ public class EventManagerImpl implements EventManager {
     private final EventBus<Event> bus;
     private final MethodSubscriptionAdapter<Listener> msa;
     private final Map<Plugin, List<Listener>> listeners = new ConcurrentHashMap<>();
+    private final HandlerProfiler profiler; // null if profiling is disabled
 
     // 优化的并行事件处理
     private final ExecutorService eventExecutor;
@@ -50,7 +51,10 @@ public class EventManagerImpl implements EventManager {
     public EventManagerImpl(KBCClient client) {
         this.client = client;
         this.bus = new SimpleEventBus<>(Event.class);
-        this.msa = new SimpleMethodSubscriptionAdapter<>(bus, EventExecutorFactoryImpl.INSTANCE, MethodScannerImpl.INSTANCE);
+        this.profiler = client.getConfig().getBoolean("event-handler-profiling", true) ? new HandlerProfiler(client) : null;
+        this.msa = new SimpleMethodSubscriptionAdapter<>(bus,
+                profiler != null ? new EventExecutorFactoryImpl(profiler) : EventExecutorFactoryImpl.INSTANCE,
+                MethodScannerImpl.INSTANCE);
 
         // 从配置读取是否启用并行事件处理
         this.parallelEventProcessing = client.getConfig().getBoolean("enable-parallel-event-processing", true);
@@ -133,10 +137,13 @@ public class EventManagerImpl implements EventManager {
     @Override
     public void registerHandlers(Plugin plugin, Listener listener) {
         ensurePluginEnabled(plugin);
+        if (profiler != null) {
+            profiler.bind(listener, plugin);
+        }
         try {
             msa.register(listener);
         } catch (SimpleMethodSubscriptionAdapter.SubscriberGenerationException e) {
-            msa.unregister(listener); // rollback
+            unregisterHandlers(listener); // rollback
             throw e; // rethrow
         }
         getListeners(plugin).add(listener);
@@ -154,6 +161,14 @@ public class EventManagerImpl implements EventManager {
     @Override
     public void unregisterHandlers(Listener listener) {
         msa.unregister(listener);
+        if (profiler != null) {
+            profiler.unbind(listener);
+        }
+    }
+
+    // null if event-handler-profiling is disabled
+    public HandlerProfiler getProfiler() {
+        return profiler;
     }
 
     public boolean isSubscribed(Class<? extends Event> type) {
@@ -166,6 +181,9 @@ public class EventManagerImpl implements EventManager {
      */
     public void shutdown() {
         client.getCore().getLogger().info("正在关闭事件管理器...");
+        if (profiler != null) {
+            profiler.shutdown();
+        }
 
 
         // 关闭事件执行器
@@ -0,0 +1,224 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.event;
+
+import snw.jkook.event.Listener;
+import snw.jkook.plugin.Plugin;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.metrics.LatencyHistogram;
+import snw.kookbc.impl.metrics.MetricsRegistry;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 事件处理器性能分析器。
+ *
+ * <p>为每个注册的事件处理方法记录调用次数与延迟分布（导出为
+ * {@code kookbc_event_handler_seconds{plugin, handler}}），并由看门狗线程定期检查正在执行的处理器，
+ * 运行时间超过 {@code slow-handler-threshold} 毫秒时抓取其线程堆栈并输出警告，每次调用只报告一次。
+ */
+public class HandlerProfiler {
+    private static final String METRIC_NAME = "kookbc_event_handler_seconds";
+    private final KBCClient client;
+    private final MetricsRegistry metrics;
+    // the owner of the listeners that are being registered, see EventManagerImpl#registerHandlers
+    private final Map<Listener, Plugin> owners = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final List<Handler> handlers = new CopyOnWriteArrayList<>();
+    private final Set<Invocation> running = ConcurrentHashMap.newKeySet();
+    private final long thresholdNanos;
+    private final ScheduledExecutorService watchdog; // null if disabled
+
+    public HandlerProfiler(KBCClient client) {
+        this.client = client;
+        this.metrics = client.getMetrics();
+        final long thresholdMillis = client.getConfig().getLong("slow-handler-threshold", 500L);
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        if (thresholdMillis > 0) {
+            watchdog = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("Slow-Handler-Watchdog").daemon().factory()
+            );
+            final long period = Math.max(10L, thresholdMillis / 2);
+            watchdog.scheduleWithFixedDelay(this::check, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            watchdog = null;
+        }
+    }
+
+    void bind(Listener listener, Plugin plugin) {
+        owners.put(listener, plugin);
+    }
+
+    // forget the handlers of the listener, so the profiles of unloaded plugins won't stay forever
+    // several listener instances of the same class share a series, it is only removed with the last of them
+    synchronized void unbind(Listener listener) {
+        owners.remove(listener);
+        for (Handler handler : handlers) {
+            if (handler.listener == listener) {
+                handlers.remove(handler);
+                if (!isShared(handler)) {
+                    metrics.remove(METRIC_NAME, "plugin", handler.pluginName, "handler", handler.name);
+                }
+            }
+        }
+    }
+
+    // synchronized with unbind, so a new handler never records into a series that is being removed
+    synchronized Handler create(Object listener, Method method) {
+        final Plugin plugin = owners.get(listener);
+        final String pluginName = plugin != null ? plugin.getDescription().getName() : "unknown";
+        final String name = method.getDeclaringClass().getName() + '#' + method.getName();
+        final Handler handler = new Handler(listener, pluginName, name,
+                metrics.histogram(METRIC_NAME, "Time spent in each event handler", "plugin", pluginName, "handler", name));
+        handlers.add(handler);
+        return handler;
+    }
+
+    private boolean isShared(Handler removed) {
+        for (Handler handler : handlers) {
+            if (handler.latency == removed.latency) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // returns null if the watchdog is disabled
+    Invocation enter(Handler handler, long begin) {
+        if (watchdog == null) {
+            return null;
+        }
+        final Invocation invocation = new Invocation(handler, Thread.currentThread(), begin);
+        running.add(invocation);
+        return invocation;
+    }
+
+    void exit(Handler handler, Invocation invocation, long begin) {
+        handler.latency.recordSince(begin);
+        if (invocation != null) {
+            running.remove(invocation);
+        }
+    }
+
+    private void check() {
+        if (!client.isRunning()) {
+            watchdog.shutdown();
+            return;
+        }
+        final long now = System.nanoTime();
+        for (Invocation invocation : running) {
+            if (invocation.reported || now - invocation.begin < thresholdNanos) {
+                continue;
+            }
+            invocation.reported = true;
+            final Handler handler = invocation.handler;
+            handler.slowCount.increment();
+            final StringBuilder stack = new StringBuilder();
+            for (StackTraceElement element : invocation.thread.getStackTrace()) {
+                stack.append("\n\tat ").append(element);
+            }
+            handler.lastSlowStack = stack.toString();
+            client.getCore().getLogger().warn("插件 {} 的事件处理器 {} 已运行 {} ms，超过阈值，线程 {} 当前堆栈:{}",
+                    handler.pluginName, handler.name, TimeUnit.NANOSECONDS.toMillis(now - invocation.begin),
+                    invocation.thread.getName(), stack);
+        }
+    }
+
+    /**
+     * 获取最慢的事件处理器。
+     *
+     * @param limit 最多返回的数量
+     * @return 按 P99 延迟从高到低排序的处理器
+     */
+    public List<Handler> getSlowest(int limit) {
+        List<Handler> result = new ArrayList<>(handlers);
+        result.removeIf(h -> h.latency.getCount() == 0);
+        result.sort(Comparator.comparingDouble((Handler h) -> h.latency.getQuantileSeconds(0.99)).reversed());
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    public void shutdown() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+    }
+
+    public static final class Handler {
+        private final Object listener;
+        private final String pluginName;
+        private final String name;
+        private final LatencyHistogram latency;
+        private final LongAdder slowCount = new LongAdder();
+        private volatile String lastSlowStack;
+
+        private Handler(Object listener, String pluginName, String name, LatencyHistogram latency) {
+            this.listener = listener;
+            this.pluginName = pluginName;
+            this.name = name;
+            this.latency = latency;
+        }
+
+        public String getPluginName() {
+            return pluginName;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        // how many times the watchdog caught this handler running too long
+        public long getSlowCount() {
+            return slowCount.sum();
+        }
+
+        // null if never caught
+        public String getLastSlowStack() {
+            return lastSlowStack;
+        }
+    }
+
+    static final class Invocation {
+        private final Handler handler;
+        private final Thread thread;
+        private final long begin;
+        private volatile boolean reported;
+
+        private Invocation(Handler handler, Thread thread, long begin) {
+            this.handler = handler;
+            this.thread = thread;
+            this.begin = begin;
+        }
+    }
+}
@@ -15,17 +15,18 @@ import java.net.URLClassLoader;
 import java.net.URLConnection;
 import java.security.CodeSigner;
 import java.security.CodeSource;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.JarEntry;
@@ -39,16 +40,22 @@ public class LaunchClassLoader extends URLClassLoader implements AccessClassLoad
     private final LinkedHashSet<URL> sources;
     private final ClassLoader parent = getClass().getClassLoader();
 
-    private final List<IClassTransformer> transformers = new ArrayList<>(2);
+    private final List<IClassTransformer> transformers = new CopyOnWriteArrayList<>();
     private final Map<String, Class<?>> cachedClasses = new ConcurrentHashMap<>();
-    private final Set<String> invalidClasses = new HashSet<>(1000);
+    private final Set<String> invalidClasses = Collections.newSetFromMap(new ConcurrentHashMap<>(1000));
 
-    private final Set<String> classLoaderExceptions = new HashSet<>();
-    private final Set<String> transformerExceptions = new HashSet<>();
+    // the sets are kept for reflective readers, lookups go through the tries
+    private final Set<String> classLoaderExceptions = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Set<String> transformerExceptions = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final PrefixTrie classLoaderExclusions = new PrefixTrie();
+    private final PrefixTrie transformerExclusions = new PrefixTrie();
     private final Map<String, byte[]> resourceCache = new ConcurrentHashMap<>(1000);
     private final Set<String> negativeResourceCache = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
-    private IClassNameTransformer renameTransformer;
+    private volatile IClassNameTransformer renameTransformer;
+
+    // null if disabled, transforming is traced with mixin.debug so the cache stays out of the way then
+    private final TransformedClassCache transformCache = DEBUG ? null : TransformedClassCache.create(this::getSources, this::getTransformers);
 
     private final ThreadLocal<byte[]> loadBuffer = new ThreadLocal<>();
 
@@ -62,6 +69,10 @@ public class LaunchClassLoader extends URLClassLoader implements AccessClassLoad
 
     private static final boolean DEBUG = Boolean.parseBoolean(System.getProperty("mixin.debug", "false"));
 
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
     static {
         if (JavaVersion.current() >= JavaVersion.JAVA_9) {
             try {
@@ -130,6 +141,9 @@ public class LaunchClassLoader extends URLClassLoader implements AccessClassLoad
         try {
             IClassTransformer transformer = (IClassTransformer) loadClass(transformerClassName).getConstructor().newInstance();
             transformers.add(transformer);
+            if (transformCache != null) {
+                transformCache.invalidateFingerprint();
+            }
             if (transformer instanceof IClassNameTransformer && renameTransformer == null) {
                 renameTransformer = (IClassNameTransformer) transformer;
             }
@@ -138,44 +152,53 @@ public class LaunchClassLoader extends URLClassLoader implements AccessClassLoad
         }
     }
 
-    @SuppressWarnings("UnusedAssignment")
     @Override
     public Class<?> findClass(final String name) throws ClassNotFoundException {
         if (invalidClasses.contains(name)) {
             throw new ClassNotFoundException(name);
         }
 
-        for (final String exception : classLoaderExceptions) {
-            if (name.startsWith(exception)) {
-                try {
-                    return parent.loadClass(name);
-                } catch (ClassNotFoundException e) { // parent failed, let us try?
-                    break;
-                }
+        if (classLoaderExclusions.matches(name)) {
+            try {
+                return parent.loadClass(name);
+            } catch (ClassNotFoundException e) { // parent failed, let us try?
             }
         }
 
-        if (cachedClasses.containsKey(name)) {
-            return cachedClasses.get(name);
+        final Class<?> cached = cachedClasses.get(name);
+        if (cached != null) {
+            return cached;
         }
 
-        for (final String exception : transformerExceptions) {
-            if (name.startsWith(exception)) {
-                try {
-                    final Class<?> clazz = super.findClass(name);
-                    cachedClasses.put(name, clazz);
-                    return clazz;
-                } catch (ClassNotFoundException e) {
-                    invalidClasses.add(name);
-                    throw e;
-                }
+        // findClass is also called directly by other loaders, so it must take the lock by itself
+        synchronized (getClassLoadingLock(name)) {
+            return findClass1(name);
+        }
+    }
+
+    @SuppressWarnings("UnusedAssignment")
+    private Class<?> findClass1(final String name) throws ClassNotFoundException {
+        final Class<?> cached = cachedClasses.get(name);
+        if (cached != null) {
+            return cached; // defined by another thread while we were waiting for the lock
+        }
+
+        if (transformerExclusions.matches(name)) {
+            try {
+                final Class<?> clazz = super.findClass(name);
+                cachedClasses.put(name, clazz);
+                return clazz;
+            } catch (ClassNotFoundException e) {
+                invalidClasses.add(name);
+                throw e;
             }
         }
 
         try {
             final String transformedName = transformName(name);
-            if (cachedClasses.containsKey(transformedName)) {
-                return cachedClasses.get(transformedName);
+            final Class<?> cachedTransformed = cachedClasses.get(transformedName);
+            if (cachedTransformed != null) {
+                return cachedTransformed;
             }
 
             final String untransformedName = untransformName(name);
@@ -204,7 +227,7 @@ public class LaunchClassLoader extends URLClassLoader implements AccessClassLoad
                         Package pkg = getPackage0(packageName);
                         signers = entry.getCodeSigners();
                         if (pkg == null) {
-                            pkg = definePackage(packageName, manifest, jarURLConnection.getJarFileURL());
+                            definePackage0(packageName, manifest, jarURLConnection.getJarFileURL());
                         } else {
                             if (pkg.isSealed() && !pkg.isSealed(jarURLConnection.getJarFileURL())) {
                                 LogWrapper.LOGGER.warn("The jar file {} is trying to seal already secured path {}", jarFile.getName(), packageName);
@@ -216,17 +239,26 @@ public class LaunchClassLoader extends URLClassLoader implements AccessClassLoad
                 } else {
                     Package pkg = getPackage0(packageName);
                     if (pkg == null) {
-                        pkg = definePackage(packageName, null, null, null, null, null, null, null);
+                        definePackage0(packageName, null, null);
                     } else if (pkg.isSealed()) {
                         LogWrapper.LOGGER.warn("URL {} 正在为密封路径 {} 定义元素", urlConnection == null ? "null" : urlConnection.getURL(), packageName);
                     }
                 }
             }
 
-            byte[] transformedClass = runTransformers(untransformedName, transformedName, classBytes);
+            final String cacheKey = transformCache == null ? null : transformCache.key(transformedName, classBytes);
+            byte[] transformedClass = cacheKey == null ? null : transformCache.get(cacheKey);
             if (transformedClass == null) {
-                LogWrapper.LOGGER.error(untransformedName + " fail#runTransformers");
-                transformedClass = classBytes;
+                final long transformStart = System.nanoTime();
+                transformedClass = runTransformers(untransformedName, transformedName, classBytes);
+                if (transformedClass == null) {
+                    LogWrapper.LOGGER.error(untransformedName + " fail#runTransformers");
+                    transformedClass = classBytes;
+                } else if (cacheKey != null) {
+                    transformCache.put(cacheKey, transformedClass, System.nanoTime() - transformStart);
+                } else if (transformCache != null) {
+                    transformCache.transformed();
+                }
             }
 
             final CodeSource codeSource = urlConnection == null ? null : new CodeSource(urlConnection.getURL(), signers);
@@ -261,6 +293,21 @@ public class LaunchClassLoader extends URLClassLoader implements AccessClassLoad
         return packageProvider.apply(name);
     }
 
+    // classes of the same package may be loaded in parallel, the loser of the race just uses the defined one
+    private void definePackage0(String name, Manifest manifest, URL url) {
+        try {
+            if (manifest != null) {
+                definePackage(name, manifest, url);
+            } else {
+                definePackage(name, null, null, null, null, null, null, null);
+            }
+        } catch (IllegalArgumentException e) {
+            if (getPackage0(name) == null) {
+                throw e;
+            }
+        }
+    }
+
     private String untransformName(final String name) {
         if (renameTransformer != null) {
             return renameTransformer.unmapClassName(name);
@@ -328,6 +375,9 @@ public class LaunchClassLoader extends URLClassLoader implements AccessClassLoad
     public void addURL(final URL url) {
         if (sources.add(url)) {
             super.addURL(url);
+            if (transformCache != null) {
+                transformCache.invalidateFingerprint();
+            }
         }
     }
 
@@ -370,16 +420,39 @@ public class LaunchClassLoader extends URLClassLoader implements AccessClassLoad
         return buffer;
     }
 
+    // null if the transformed class cache is disabled
+    public TransformedClassCache getTransformCache() {
+        return transformCache;
+    }
+
+    // the state is part of the transformed class cache key, the cache is not used before it is set
+    // only the classes accepted by cacheable are cached, the others are always transformed
+    public void setTransformerState(Supplier<String> state, Predicate<String> cacheable) {
+        if (transformCache != null) {
+            transformCache.setState(state, cacheable);
+        }
+    }
+
     public List<IClassTransformer> getTransformers() {
         return Collections.unmodifiableList(transformers);
     }
 
     public void addClassLoaderExclusion(String toExclude) {
         classLoaderExceptions.add(toExclude);
+        classLoaderExclusions.add(toExclude);
     }
 
     public void addTransformerExclusion(String toExclude) {
         transformerExceptions.add(toExclude);
+        transformerExclusions.add(toExclude);
+    }
+
+    public boolean isClassLoaderExcluded(String name) {
+        return classLoaderExclusions.matches(name);
+    }
+
+    public boolean isTransformerExcluded(String name) {
+        return transformerExclusions.matches(name);
     }
 
     public byte[] getClassBytes(String name) throws IOException {
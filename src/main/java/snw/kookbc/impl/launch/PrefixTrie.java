@@ -0,0 +1,113 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.impl.launch;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 前缀字典树，用于判断类名是否命中排除列表。
+ * <p>
+ * 查询只需沿类名逐字符向下走一次，与前缀的数量无关，也不需要加锁；
+ * 添加前缀时会重建整棵树并整体替换，因此只适合前缀很少变化的场景（排除列表在启动阶段之后基本不变）。
+ */
+final class PrefixTrie {
+    private final Set<String> prefixes = new LinkedHashSet<>();
+    private volatile Node root = new Node();
+
+    /**
+     * @return 前缀是否为新添加的
+     */
+    synchronized boolean add(String prefix) {
+        if (!prefixes.add(prefix)) {
+            return false;
+        }
+        final Node newRoot = new Node();
+        for (String p : prefixes) {
+            newRoot.insert(p);
+        }
+        root = newRoot; // nodes are never modified after this
+        return true;
+    }
+
+    /**
+     * @return 是否存在某个前缀是 {@code name} 的前缀
+     */
+    boolean matches(String name) {
+        Node node = root;
+        if (node.terminal) {
+            return true; // the empty prefix
+        }
+        for (int i = 0, len = name.length(); i < len; i++) {
+            node = node.child(name.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        // sorted, so lookups can use binary search
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private boolean terminal;
+
+        Node child(char c) {
+            final int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        void insert(String prefix) {
+            Node node = this;
+            for (int i = 0, len = prefix.length(); i < len; i++) {
+                node = node.childOrCreate(prefix.charAt(i));
+            }
+            node.terminal = true;
+        }
+
+        private Node childOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+            final Node created = new Node();
+            final char[] newKeys = new char[keys.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newKeys[index] = c;
+            newChildren[index] = created;
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            keys = newKeys;
+            children = newChildren;
+            return created;
+        }
+    }
+}
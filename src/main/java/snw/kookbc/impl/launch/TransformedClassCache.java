@@ -0,0 +1,412 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.impl.launch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * {@link LaunchClassLoader} 的持久化转换类缓存。
+ * <p>
+ * Launch 模式下每次启动都要对每个类运行全部 {@link IClassTransformer}（主要是 Mixin），
+ * 本类把转换后的字节码写入磁盘，下次启动时在运行转换器之前直接读取。
+ * <p>
+ * 缓存键是以下内容的 SHA-256：
+ * <ul>
+ *     <li>环境指纹：转换器状态（Mixin 阶段与已注册的 Mixin 配置）、已注册转换器的类名与顺序、类路径上每个来源的摘要
+ *     （jar 取路径、大小与修改时间，目录取其中每个文件的相对路径与内容校验和）</li>
+ *     <li>类名</li>
+ *     <li>原始字节码</li>
+ * </ul>
+ * 任何一项变化都会得到新的键，因此旧条目不会被误用；长期未被命中的条目会在启动完成时清理。
+ * <p>
+ * 只有在转换器状态被设置（即 Mixin 进入 DEFAULT 阶段）之后才会使用缓存，
+ * 并且在该状态下至少执行过一次真实转换后才开始读取，以保证 Mixin 在首次转换时完成配置的选择与初始化。
+ * 转换器状态变化（例如新的 Mixin 配置被注册）后同样要先执行一次真实转换。
+ * <p>
+ * 只有 {@link #setState(Supplier, Predicate)} 接受的类才会被缓存。Mixin 不修改的类转换很快，
+ * 计算摘要并读取磁盘反而更慢；命中缓存的类完全不经过转换器，{@code IMixinConfigPlugin} 的
+ * {@code preApply}/{@code postApply} 等回调也不会执行。因此只缓存被没有插件的 Mixin 配置作为目标的类。
+ * <p>
+ * 可通过以下 JVM 参数调整：
+ * <ul>
+ *     <li>{@code kookbc.launch.class-cache}: 是否启用，默认 {@code true}</li>
+ *     <li>{@code kookbc.launch.class-cache-dir}: 缓存目录，默认 {@code cache/transformed-classes}</li>
+ *     <li>{@code kookbc.launch.class-cache-max-age}: 条目未被使用多少天后清理，默认 {@code 7}</li>
+ * </ul>
+ */
+public final class TransformedClassCache {
+    private static final int MAGIC = 0x4B424343; // "KBCC"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // only bump the modification time of a hit entry once in a while
+    private static final long TOUCH_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    private final File directory;
+    private final long maxAgeMillis;
+    private final Supplier<? extends Collection<URL>> sources;
+    private final Supplier<? extends List<IClassTransformer>> transformers;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    private volatile Supplier<String> state;
+    private volatile Predicate<String> cacheable = name -> false;
+    private volatile String lastState;
+    private volatile Fingerprint fingerprint; // null means it must be computed again
+    private volatile boolean primed;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder transformNanos = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+
+    public TransformedClassCache(File directory, long maxAgeMillis,
+                                 Supplier<? extends Collection<URL>> sources,
+                                 Supplier<? extends List<IClassTransformer>> transformers) {
+        this.directory = directory;
+        this.maxAgeMillis = maxAgeMillis;
+        this.sources = sources;
+        this.transformers = transformers;
+    }
+
+    // returns null if the cache is disabled by system properties
+    static TransformedClassCache create(Supplier<? extends Collection<URL>> sources,
+                                        Supplier<? extends List<IClassTransformer>> transformers) {
+        if (!Boolean.parseBoolean(System.getProperty("kookbc.launch.class-cache", "true"))) {
+            return null;
+        }
+        final File directory = new File(System.getProperty("kookbc.launch.class-cache-dir", "cache/transformed-classes"));
+        final long maxAgeDays = Long.getLong("kookbc.launch.class-cache-max-age", 7L);
+        return new TransformedClassCache(directory, TimeUnit.DAYS.toMillis(maxAgeDays), sources, transformers);
+    }
+
+    /**
+     * 设置转换器状态。状态会计入环境指纹，设置之前不会使用缓存。
+     *
+     * @param state     转换器状态的提供者，例如 Mixin 的当前阶段与已注册的配置，为 {@code null} 时停用缓存。
+     *                  每个类加载时都会调用，状态不变时应返回同一个实例
+     * @param cacheable 可以缓存的类，例如被 Mixin 修改且没有配置插件的类
+     */
+    public void setState(Supplier<String> state, Predicate<String> cacheable) {
+        this.cacheable = cacheable;
+        this.state = state;
+        this.lastState = null;
+        this.primed = false;
+        invalidateFingerprint();
+    }
+
+    // called when a transformer is registered or a source is added
+    void invalidateFingerprint() {
+        fingerprint = null;
+    }
+
+    /**
+     * 计算类的缓存键。
+     *
+     * @return 缓存键，缓存当前不可用时返回 {@code null}
+     */
+    String key(String name, byte[] basicClass) {
+        final Supplier<String> supplier = state;
+        if (supplier == null || transformers.get().isEmpty()) {
+            return null;
+        }
+        final String current = supplier.get();
+        if (current != lastState) {
+            // e.g. a mixin config was added, it is only selected by the next real transform
+            lastState = current;
+            primed = false;
+        }
+        if (!cacheable.test(name)) {
+            return null;
+        }
+        final MessageDigest digest = sha256();
+        digest.update(fingerprint(current));
+        update(digest, name);
+        digest.update(basicClass);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 读取缓存的转换结果。
+     *
+     * @return 转换后的字节码，未命中时返回 {@code null}
+     */
+    byte[] get(String key) {
+        if (!primed) {
+            return null;
+        }
+        final long start = System.nanoTime();
+        final File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                failures.increment();
+                return null; // will be overwritten by put
+            }
+            final long cost = in.readLong();
+            final byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+
+            final long now = System.currentTimeMillis();
+            if (now - file.lastModified() > TOUCH_INTERVAL) {
+                //noinspection ResultOfMethodCallIgnored
+                file.setLastModified(now);
+            }
+            final long elapsed = System.nanoTime() - start;
+            hits.increment();
+            readNanos.add(elapsed);
+            savedNanos.add(cost - elapsed);
+            return data;
+        } catch (IOException e) {
+            failures.increment();
+            LogWrapper.LOGGER.debug("读取转换类缓存 {} 失败", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * 在不缓存的类完成一次真实转换后调用，此后才开始读取缓存，见 {@link #put(String, byte[], long)}。
+     */
+    void transformed() {
+        if (state != null) {
+            primed = true;
+        }
+    }
+
+    /**
+     * 写入一次真实转换的结果。
+     *
+     * @param cost 运行转换器所花费的纳秒数，用于估算以后命中时节省的时间
+     */
+    void put(String key, byte[] transformedClass, long cost) {
+        misses.increment();
+        transformNanos.add(cost);
+        primed = true;
+
+        final File file = fileFor(key);
+        final File parent = file.getParentFile();
+        final File temp = new File(parent, key + "." + Thread.currentThread().threadId() + TEMP_SUFFIX);
+        try {
+            Files.createDirectories(parent.toPath());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(cost);
+                out.writeInt(transformedClass.length);
+                out.write(transformedClass);
+            }
+            // readers must never observe a half-written entry
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            failures.increment();
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            LogWrapper.LOGGER.debug("写入转换类缓存 {} 失败", file, e);
+        }
+    }
+
+    /**
+     * 在启动完成时调用。输出本次启动的缓存统计，并清理过期条目。只有第一次调用有效。
+     */
+    public void finishStartup() {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        LogWrapper.LOGGER.info(
+                "转换类缓存: 命中 {} 个类, 转换 {} 个类, 读取耗时 {} ms, 转换耗时 {} ms, 估计节省 {} ms",
+                getHitCount(),
+                getMissCount(),
+                TimeUnit.NANOSECONDS.toMillis(readNanos.sum()),
+                TimeUnit.NANOSECONDS.toMillis(transformNanos.sum()),
+                TimeUnit.NANOSECONDS.toMillis(getSavedNanos())
+        );
+        if (failures.sum() > 0) {
+            LogWrapper.LOGGER.warn("转换类缓存: {} 次读写失败，启用 DEBUG 日志以查看详情", failures.sum());
+        }
+        prune();
+    }
+
+    private void prune() {
+        if (!directory.isDirectory()) {
+            return;
+        }
+        final long deadline = System.currentTimeMillis() - maxAgeMillis;
+        int removed = 0;
+        try (Stream<Path> stream = Files.walk(directory.toPath(), 2)) {
+            for (Path path : (Iterable<Path>) stream::iterator) {
+                final File file = path.toFile();
+                final String name = file.getName();
+                if (file.isFile() && (name.endsWith(SUFFIX) || name.endsWith(TEMP_SUFFIX)) && file.lastModified() < deadline) {
+                    if (file.delete()) {
+                        removed++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LogWrapper.LOGGER.warn("清理转换类缓存失败", e);
+            return;
+        }
+        if (removed > 0) {
+            LogWrapper.LOGGER.info("转换类缓存: 已清理 {} 个过期条目", removed);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    // time spent in the transformers for the cached classes that missed
+    public long getTransformNanos() {
+        return transformNanos.sum();
+    }
+
+    // estimated time saved by hits, may be negative if reading is slower than transforming
+    public long getSavedNanos() {
+        return savedNanos.sum();
+    }
+
+    private File fileFor(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key + SUFFIX);
+    }
+
+    private byte[] fingerprint(String state) {
+        final Fingerprint current = fingerprint;
+        if (current != null && current.state.equals(state)) {
+            return current.digest;
+        }
+        final MessageDigest digest = sha256();
+        update(digest, "state:" + state);
+        for (IClassTransformer transformer : transformers.get()) {
+            update(digest, "transformer:" + transformer.getClass().getName());
+        }
+        for (URL source : new ArrayList<>(sources.get())) {
+            update(digest, "source:" + describe(source));
+        }
+        final byte[] result = digest.digest();
+        fingerprint = new Fingerprint(state, result);
+        return result;
+    }
+
+    private static final class Fingerprint {
+        final String state;
+        final byte[] digest;
+
+        Fingerprint(String state, byte[] digest) {
+            this.state = state;
+            this.digest = digest;
+        }
+    }
+
+    private static String describe(URL source) {
+        if (!"file".equals(source.getProtocol())) {
+            return source.toExternalForm();
+        }
+        final File file;
+        try {
+            file = new File(source.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return source.toExternalForm();
+        }
+        if (file.isFile()) {
+            // hashing every jar on each startup would cost most of what we save,
+            // and the class bytes themselves are part of the key anyway
+            return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+        }
+        if (file.isDirectory()) {
+            // directories may be recreated on each startup (e.g. the Mixin config folder),
+            // so only their content counts
+            return "dir|" + digestDirectory(file.toPath());
+        }
+        return file.getAbsolutePath() + "|missing";
+    }
+
+    private static String digestDirectory(Path root) {
+        final MessageDigest digest = sha256();
+        try (Stream<Path> stream = Files.walk(root)) {
+            final List<Path> files = stream.filter(Files::isRegularFile).sorted().toList();
+            final CRC32 crc = new CRC32();
+            final byte[] buffer = new byte[LaunchClassLoader.BUFFER_SIZE];
+            for (Path file : files) {
+                crc.reset();
+                try (InputStream in = Files.newInputStream(file)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        crc.update(buffer, 0, read);
+                    }
+                }
+                update(digest, root.relativize(file) + "|" + crc.getValue());
+            }
+        } catch (IOException e) {
+            update(digest, "unreadable|" + System.nanoTime()); // never match
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error("SHA-256 is not available", e);
+        }
+    }
+}
@@ -8,11 +8,11 @@ import snw.jkook.message.ChannelMessage;
 import snw.jkook.message.Message;
 import snw.jkook.message.component.BaseComponent;
 import snw.jkook.message.component.MarkdownComponent;
-import snw.jkook.message.component.TemplateMessage;
 import snw.kookbc.impl.KBCClient;
-import snw.kookbc.impl.entity.builder.MessageBuilder;
 import snw.kookbc.impl.network.HttpAPIRoute;
+import snw.kookbc.impl.network.MessageBody;
 import snw.kookbc.util.MapBuilder;
+import snw.kookbc.util.Util;
 
 import java.util.Collections;
 import java.util.Map;
@@ -89,16 +89,9 @@ public class ChannelMessageImpl extends MessageImpl implements ChannelMessage {
     @Override
     public void setComponentTemp(User user, BaseComponent component) {
         checkCompatibleComponentType(component);
-        Object content = MessageBuilder.serialize(component)[1];
-        Map<String, Object> body = new MapBuilder()
-                .put("msg_id", getId())
-                .put("content", content)
-                .put("temp_target_id", user.getId())
-                .putIfInstance("template_id", component, TemplateMessage.class, TemplateMessage::getId)
-                .build();
-        client.getNetworkClient().post(
-                HttpAPIRoute.CHANNEL_MESSAGE_UPDATE.toFullURL(),
-                body);
+        final MessageBody body = MessageBody.update(getId(), component, user.getId());
+        // the temporary content of each user is a separate state
+        Util.join(client.getEditCoalescer().update(HttpAPIRoute.CHANNEL_MESSAGE_UPDATE, getId() + '/' + user.getId(), body));
     }
 
     @Override
@@ -33,9 +33,10 @@ import snw.jkook.message.component.card.MultipleCardComponent;
 import snw.kookbc.impl.KBCClient;
 import snw.kookbc.impl.entity.builder.MessageBuilder;
 import snw.kookbc.impl.network.HttpAPIRoute;
+import snw.kookbc.impl.network.MessageBody;
 import snw.kookbc.interfaces.LazyLoadable;
-import snw.kookbc.util.JacksonUtil;
-import snw.kookbc.util.MapBuilder;
+import snw.kookbc.util.CardTemplate;
+import snw.kookbc.util.Util;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
@@ -43,7 +44,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static java.util.Objects.requireNonNull;
 
@@ -108,7 +109,7 @@ public abstract class MessageImpl implements Message, LazyLoadable {
     public Collection<User> getUserByReaction(CustomEmoji customEmoji) {
         JsonNode array;
         try {
-            String rawStr = client.getNetworkClient().getRawContent(
+            array = client.getNetworkClient().get(
                     String.format(
                             "%s?msg_id=%s&emoji=%s",
                             ((this instanceof ChannelMessage) ? HttpAPIRoute.CHANNEL_MESSAGE_REACTION_LIST
@@ -116,8 +117,6 @@ public abstract class MessageImpl implements Message, LazyLoadable {
                                     .toFullURL(),
                             getId(),
                             URLEncoder.encode(customEmoji.getId(), StandardCharsets.UTF_8.name())));
-            JsonNode root = JacksonUtil.parse(rawStr);
-            array = root.get("data");
         } catch (BadResponseException e) {
             if (e.getCode() == 40300) { // 40300, so we should throw IllegalStateException
                 throw new IllegalStateException(e);
@@ -137,16 +136,18 @@ public abstract class MessageImpl implements Message, LazyLoadable {
 
     @Override
     public void setComponent(BaseComponent component) {
+        Util.join(setComponentAsync(component));
+    }
+
+    // Updates of the same message are coalesced, only the latest one is sent if they are submitted faster
+    //  than they can be applied. Completed once the final content is applied.
+    public CompletableFuture<Void> setComponentAsync(BaseComponent component) {
         checkCompatibleComponentType(component);
-        Object content = MessageBuilder.serialize(component)[1];
-        Map<String, Object> body = new MapBuilder()
-                .put("msg_id", getId())
-                .put("content", content)
-                .putIfInstance("template_id", component, TemplateMessage.class, TemplateMessage::getId)
-                .build();
-        client.getNetworkClient().post(
-                ((this instanceof ChannelMessage) ? HttpAPIRoute.CHANNEL_MESSAGE_UPDATE
-                        : HttpAPIRoute.USER_CHAT_MESSAGE_UPDATE).toFullURL(),
+        final MessageBody body = MessageBody.update(getId(), component, null);
+        return client.getEditCoalescer().update(
+                (this instanceof ChannelMessage) ? HttpAPIRoute.CHANNEL_MESSAGE_UPDATE
+                        : HttpAPIRoute.USER_CHAT_MESSAGE_UPDATE,
+                getId(),
                 body);
     }
 
@@ -180,17 +181,18 @@ public abstract class MessageImpl implements Message, LazyLoadable {
         final Class<? extends BaseComponent> aClass = a.getClass();
         final Class<? extends BaseComponent> bClass = b.getClass();
         if (!aClass.isAssignableFrom(bClass)) {
-            if (CardComponent.class.isAssignableFrom(aClass)) {
-                return MultipleCardComponent.class.isAssignableFrom(bClass);
-            } else if (CardComponent.class.isAssignableFrom(bClass)) {
-                return MultipleCardComponent.class.isAssignableFrom(aClass);
-            } else {
-                return false;
-            }
+            // single cards, multiple cards and cards rendered from a template can replace each other
+            return isCard(aClass) && isCard(bClass);
         }
         return true;
     }
 
+    private static boolean isCard(Class<? extends BaseComponent> type) {
+        return CardTemplate.Rendered.class.isAssignableFrom(type)
+                || CardComponent.class.isAssignableFrom(type)
+                || MultipleCardComponent.class.isAssignableFrom(type);
+    }
+
     @Override
     public boolean isCompleted() {
         return completed;
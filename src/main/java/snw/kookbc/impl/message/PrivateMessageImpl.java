@@ -128,7 +128,7 @@ public class PrivateMessageImpl extends MessageImpl implements PrivateMessage {
         this.timeStamp = timeStamp;
         this.quote = quote;
 
-        client.getStorage().addMessage(this);
         this.completed = true;
+        client.getStorage().addMessage(this);
     }
 }
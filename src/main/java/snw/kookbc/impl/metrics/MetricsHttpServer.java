@@ -0,0 +1,82 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.metrics;
+
+import net.freeutils.httpserver.HTTPServer;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.network.webhook.JLHttpWebhookNetworkSystem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static snw.kookbc.util.VirtualThreadUtil.newVirtualThreadExecutor;
+
+/**
+ * 通过 HTTP 以 Prometheus 文本格式暴露 {@link MetricsRegistry}。
+ *
+ * <p>Webhook 模式下，如果 {@code metrics-port} 与 {@code webhook-port} 相同，
+ * 直接挂载到已有的 Webhook 服务器上；否则单独启动一个 JLHttp 服务器。
+ */
+public class MetricsHttpServer implements HTTPServer.ContextHandler {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private final KBCClient client;
+    private HTTPServer server; // null if we are using the webhook server
+
+    public MetricsHttpServer(KBCClient client) {
+        this.client = client;
+    }
+
+    public void start() {
+        final int port = client.getConfig().getInt("metrics-port", 9464);
+        final String route = '/' + client.getConfig().getString("metrics-route", "metrics");
+        if (client.getNetworkSystem() instanceof JLHttpWebhookNetworkSystem
+                && port == client.getConfig().getInt("webhook-port")) {
+            ((JLHttpWebhookNetworkSystem) client.getNetworkSystem()).getServer().addContext(route, this, "GET");
+            client.getCore().getLogger().info("指标已挂载到 Webhook 服务器，路径: {}", route);
+            return;
+        }
+        server = new HTTPServer(port);
+        server.setExecutor(newVirtualThreadExecutor("Metrics-Thread"));
+        server.getVirtualHost(null).addContext(route, this, "GET");
+        try {
+            server.start();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to start metrics server", e);
+        }
+        client.getCore().getLogger().info("指标服务器正在监听端口 {}，路径: {}", port, route);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Override
+    public int serve(HTTPServer.Request request, HTTPServer.Response response) throws IOException {
+        byte[] content = client.getMetrics().toPrometheusText().getBytes(StandardCharsets.UTF_8);
+        response.sendHeaders(200, content.length, -1L, null, CONTENT_TYPE, null);
+        OutputStream out = response.getBody();
+        if (out != null) {
+            out.write(content);
+        }
+        return 0;
+    }
+}
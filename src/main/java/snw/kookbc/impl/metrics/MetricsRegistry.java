@@ -0,0 +1,208 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.metrics;
+
+import snw.jkook.util.Validate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * 轻量级指标注册表。
+ *
+ * <p>支持三种指标：
+ * <ul>
+ *     <li>计数器 - {@link #counter}，或由已有统计提供数值的 {@link #counter(String, String, LongSupplier, String...)}</li>
+ *     <li>仪表 - {@link #gauge}，读取时才计算</li>
+ *     <li>延迟直方图 - {@link #histogram}，以 Prometheus summary 的形式导出分位数</li>
+ * </ul>
+ *
+ * <p>标签以 "键, 值, 键, 值" 的形式传入。同名同标签的指标只会创建一次，
+ * 热路径上的调用方应缓存返回的 {@link Counter} 或 {@link LatencyHistogram}，避免每次拼接查找键。
+ */
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    // sorted, so the output is stable
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).metrics.computeIfAbsent(formatLabels(labels), k -> new Counter());
+    }
+
+    // register a counter backed by an existing statistic, replaces the old one with same labels
+    public void counter(String name, String help, LongSupplier supplier, String... labels) {
+        family(name, help, Type.COUNTER).metrics.put(formatLabels(labels), supplier);
+    }
+
+    // register a gauge, replaces the old one with same labels
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        family(name, help, Type.GAUGE).metrics.put(formatLabels(labels), supplier);
+    }
+
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, help, Type.SUMMARY).metrics.computeIfAbsent(formatLabels(labels), k -> new LatencyHistogram());
+    }
+
+    // remove the metric with exactly these labels, e.g. when its owner is unloaded
+    public void remove(String name, String... labels) {
+        final Family family = families.get(name);
+        if (family != null) {
+            family.metrics.remove(formatLabels(labels));
+        }
+    }
+
+    /**
+     * 以 Prometheus 文本格式 (0.0.4) 导出所有指标。
+     *
+     * @return 导出结果
+     */
+    public String toPrometheusText() {
+        StringBuilder builder = new StringBuilder(4096);
+        for (Family family : families.values()) {
+            builder.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            builder.append("# TYPE ").append(family.name).append(' ').append(family.type.exposedName).append('\n');
+            for (Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+                final String labels = entry.getKey();
+                final Object metric = entry.getValue();
+                if (metric instanceof LatencyHistogram) {
+                    final LatencyHistogram histogram = (LatencyHistogram) metric;
+                    for (double quantile : QUANTILES) {
+                        builder.append(family.name)
+                                .append(withLabel(labels, "quantile", String.valueOf(quantile)))
+                                .append(' ').append(histogram.getQuantileSeconds(quantile)).append('\n');
+                    }
+                    builder.append(family.name).append("_sum").append(labels).append(' ').append(histogram.getSumSeconds()).append('\n');
+                    builder.append(family.name).append("_count").append(labels).append(' ').append(histogram.getCount()).append('\n');
+                } else {
+                    builder.append(family.name).append(labels).append(' ').append(valueOf(metric)).append('\n');
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 生成适合在控制台阅读的报告。
+     *
+     * @param filter 只包含名称含有此字符串的指标，传入 null 或空字符串表示全部
+     * @return 报告
+     */
+    public String getReport(String filter) {
+        StringBuilder builder = new StringBuilder("=== KookBC 指标 ===\n");
+        for (Family family : families.values()) {
+            if (filter != null && !filter.isEmpty() && !family.name.contains(filter)) {
+                continue;
+            }
+            for (Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+                final Object metric = entry.getValue();
+                builder.append(family.name).append(entry.getKey()).append(' ');
+                if (metric instanceof LatencyHistogram) {
+                    final LatencyHistogram histogram = (LatencyHistogram) metric;
+                    builder.append(String.format("count=%d p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                            histogram.getCount(),
+                            histogram.getQuantileSeconds(0.5) * 1000,
+                            histogram.getQuantileSeconds(0.9) * 1000,
+                            histogram.getQuantileSeconds(0.99) * 1000,
+                            histogram.getMaxSeconds() * 1000));
+                } else {
+                    builder.append(valueOf(metric));
+                }
+                builder.append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, k -> new Family(name, help, type));
+        Validate.isTrue(family.type == type, "Metric " + name + " is already registered with another type");
+        return family;
+    }
+
+    private static String valueOf(Object metric) {
+        if (metric instanceof Counter) {
+            return String.valueOf(((Counter) metric).get());
+        } else if (metric instanceof LongSupplier) {
+            return String.valueOf(((LongSupplier) metric).getAsLong());
+        } else {
+            double value = ((DoubleSupplier) metric).getAsDouble();
+            return Double.isNaN(value) ? "NaN" : String.valueOf(value);
+        }
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        Validate.isTrue(labels.length % 2 == 0, "Labels must be key-value pairs");
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return builder.append('}').toString();
+    }
+
+    private static String withLabel(String labels, String key, String value) {
+        String label = key + "=\"" + value + '"';
+        if (labels.isEmpty()) {
+            return '{' + label + '}';
+        }
+        return labels.substring(0, labels.length() - 1) + ',' + label + '}';
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private enum Type {
+        COUNTER("counter"),
+        GAUGE("gauge"),
+        SUMMARY("summary");
+
+        private final String exposedName;
+
+        Type(String exposedName) {
+            this.exposedName = exposedName;
+        }
+    }
+
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final Type type;
+        private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -27,17 +27,23 @@ package snw.kookbc.impl.mixin;
 import org.spongepowered.asm.launch.MixinBootstrap;
 import org.spongepowered.asm.mixin.MixinEnvironment;
 import org.spongepowered.asm.mixin.MixinEnvironment.Phase;
+import org.spongepowered.asm.mixin.Mixins;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfig;
+import org.spongepowered.asm.mixin.transformer.Config;
 import snw.kookbc.impl.launch.ITweaker;
 import snw.kookbc.impl.launch.LaunchClassLoader;
 import uk.org.lidalia.sysoutslf4j.common.ReflectionUtils;
 
 import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Tweaker used to notify the environment when we transition from preinit to
  * default
  */
 public class EnvironmentStateTweaker implements ITweaker {
+    private LaunchClassLoader classLoader;
 
     @Override
     public void acceptOptions(List<String> args) {
@@ -45,6 +51,7 @@ public class EnvironmentStateTweaker implements ITweaker {
 
     @Override
     public void injectIntoClassLoader(LaunchClassLoader classLoader) {
+        this.classLoader = classLoader;
         MixinBootstrap.getPlatform().inject();
     }
 
@@ -56,7 +63,49 @@ public class EnvironmentStateTweaker implements ITweaker {
     @Override
     public String[] getLaunchArguments() {
         ReflectionUtils.invokeStaticMethod("gotoPhase", MixinEnvironment.class, Phase.class, Phase.DEFAULT);
+        if (classLoader != null) {
+            // transformed classes may be cached from now on, mixin configs are selected in this phase
+            classLoader.setTransformerState(new ConfigState(), EnvironmentStateTweaker::isCacheable);
+        }
         return new String[0];
     }
 
+    // Only the classes mixin changes are worth hashing and reading from disk.
+    // A cache hit skips mixin entirely, so the targets of configs with a plugin are never cached,
+    //  as its preApply/postApply callbacks must still run.
+    private static boolean isCacheable(String className) {
+        boolean targeted = false;
+        for (Config config : Mixins.getConfigs()) {
+            final IMixinConfig mixinConfig = config.getConfig();
+            if (mixinConfig.getTargets().contains(className)) {
+                if (mixinConfig.getPlugin() != null) {
+                    return false;
+                }
+                targeted = true;
+            }
+        }
+        return targeted;
+    }
+
+    // Config contents and plugin classes are covered by the class path sources, the names tell when one is added.
+    // Configs are never removed, so the description is only built again when their count changes.
+    private static final class ConfigState implements Supplier<String> {
+        private int count = -1;
+        private String description;
+
+        @Override
+        public synchronized String get() {
+            final Set<Config> configs = Mixins.getConfigs();
+            if (configs.size() != count) {
+                final StringBuilder builder = new StringBuilder("mixin:").append(Phase.DEFAULT);
+                for (Config config : configs) {
+                    builder.append('|').append(config.getName());
+                }
+                count = configs.size();
+                description = builder.toString();
+            }
+            return description;
+        }
+    }
+
 }
@@ -28,7 +28,6 @@ import org.spongepowered.asm.service.IClassTracker;
 import snw.kookbc.impl.launch.LaunchClassLoader;
 
 import java.lang.reflect.Field;
-import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
@@ -42,8 +41,6 @@ final class LaunchClassLoaderUtil implements IClassTracker {
 
     private static final String CACHED_CLASSES_FIELD = "cachedClasses";
     private static final String INVALID_CLASSES_FIELD = "invalidClasses";
-    private static final String CLASS_LOADER_EXCEPTIONS_FIELD = "classLoaderExceptions";
-    private static final String TRANSFORMER_EXCEPTIONS_FIELD = "transformerExceptions";
 
     /**
      * ClassLoader for this util
@@ -53,8 +50,6 @@ final class LaunchClassLoaderUtil implements IClassTracker {
     // Reflected fields
     private final Map<String, Class<?>> cachedClasses;
     private final Set<String> invalidClasses;
-    private final Set<String> classLoaderExceptions;
-    private final Set<String> transformerExceptions;
 
     /**
      * Singleton, use factory to get an instance
@@ -65,8 +60,6 @@ final class LaunchClassLoaderUtil implements IClassTracker {
         this.classLoader = classLoader;
         this.cachedClasses = LaunchClassLoaderUtil.getField(classLoader, LaunchClassLoaderUtil.CACHED_CLASSES_FIELD);
         this.invalidClasses = LaunchClassLoaderUtil.getField(classLoader, LaunchClassLoaderUtil.INVALID_CLASSES_FIELD);
-        this.classLoaderExceptions = LaunchClassLoaderUtil.getField(classLoader, LaunchClassLoaderUtil.CLASS_LOADER_EXCEPTIONS_FIELD);
-        this.transformerExceptions = LaunchClassLoaderUtil.getField(classLoader, LaunchClassLoaderUtil.TRANSFORMER_EXCEPTIONS_FIELD);
     }
 
     /**
@@ -127,13 +120,8 @@ final class LaunchClassLoaderUtil implements IClassTracker {
      * names
      */
     boolean isClassClassLoaderExcluded(String name, String transformedName) {
-        for (final String exception : this.getClassLoaderExceptions()) {
-            if ((transformedName != null && transformedName.startsWith(exception)) || name.startsWith(exception)) {
-                return true;
-            }
-        }
-
-        return false;
+        return (transformedName != null && this.classLoader.isClassLoaderExcluded(transformedName))
+                || this.classLoader.isClassLoaderExcluded(name);
     }
 
     /**
@@ -146,13 +134,8 @@ final class LaunchClassLoaderUtil implements IClassTracker {
      * names
      */
     boolean isClassTransformerExcluded(String name, String transformedName) {
-        for (final String exception : this.getTransformerExceptions()) {
-            if ((transformedName != null && transformedName.startsWith(exception)) || name.startsWith(exception)) {
-                return true;
-            }
-        }
-
-        return false;
+        return (transformedName != null && this.classLoader.isTransformerExcluded(transformedName))
+                || this.classLoader.isTransformerExcluded(name);
     }
 
     /**
@@ -169,26 +152,6 @@ final class LaunchClassLoaderUtil implements IClassTracker {
         }
     }
 
-    /**
-     * Get the classloader exclusions from the target classloader
-     */
-    Set<String> getClassLoaderExceptions() {
-        if (this.classLoaderExceptions != null) {
-            return this.classLoaderExceptions;
-        }
-        return Collections.emptySet();
-    }
-
-    /**
-     * Get the transformer exclusions from the target classloader
-     */
-    Set<String> getTransformerExceptions() {
-        if (this.transformerExceptions != null) {
-            return this.transformerExceptions;
-        }
-        return Collections.emptySet();
-    }
-
     @SuppressWarnings("unchecked")
     private static <T> T getField(LaunchClassLoader classLoader, String fieldName) {
         try {
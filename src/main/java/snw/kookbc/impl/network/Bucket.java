@@ -21,24 +21,26 @@ package snw.kookbc.impl.network;
 import snw.jkook.util.Validate;
 import snw.kookbc.SharedConstants;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.metrics.LatencyHistogram;
 import snw.kookbc.interfaces.network.policy.RateLimitPolicy;
 
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 // Represents the Bucket of Rate Limit.
 // Not single instance. Created when network call requested.
-// Cached.
+// Cached per client (in its NetworkClient), so the clients in the same JVM never share the rate limit state.
 public class Bucket {
+    // the requests are delayed when the remaining times reach this value, see check()
+    public static final int RESERVED_TIMES = 10;
     private static final Map<HttpAPIRoute, String> bucketNameMap = new EnumMap<>(HttpAPIRoute.class);
-    private static final Map<String, Bucket> map = new ConcurrentHashMap<>();
     private final KBCClient client;
     private final String name; // defined by response header
     private final AtomicInteger availableTimes = new AtomicInteger(Integer.MIN_VALUE);
     private final AtomicInteger resetTime = new AtomicInteger();
+    private final LatencyHistogram waitTime; // time spent in RateLimitPolicy
     // private volatile boolean scheduledToUpdate;
 
     // Use get(KBCClient, String) method instead.
@@ -47,6 +49,7 @@ public class Bucket {
         Validate.notNull(name);
         this.client = client;
         this.name = name;
+        this.waitTime = client.getMetrics().histogram("kookbc_bucket_wait_seconds", "Time spent waiting for the rate limit", "bucket", name);
     }
 
     public synchronized void update(int availableTimes, int resetTime) {
@@ -61,19 +64,29 @@ public class Bucket {
             // We should set the time after got response
             return;
         }
-        if (availableTimes.get() <= 10) { // why not 0? Giving the server more time is better than real over limit
+        if (availableTimes.get() <= RESERVED_TIMES) { // why not 0? Giving the server more time is better than real over limit
             final int resetTime = this.resetTime.get();
             if (Objects.equals(client.getConfig().getString("over-limit-warning-log-level"), "INFO")) {
                 client.getCore().getLogger().info("路由 '{}' 超出限制！当前重置时间: {}", name, resetTime);
             } else {
                 client.getCore().getLogger().debug("路由 '{}' 超出限制！当前重置时间: {}", name, resetTime);
             }
-            RateLimitPolicy.getDefault().perform(client, name, resetTime);
+            final long begin = System.nanoTime();
+            try {
+                RateLimitPolicy.getDefault().perform(client, name, resetTime);
+            } finally {
+                waitTime.recordSince(begin);
+            }
             return;
         }
         availableTimes.decrementAndGet();
     }
 
+    // Integer.MIN_VALUE if unknown (no response received yet)
+    public int getAvailableTimes() {
+        return availableTimes.get();
+    }
+
     @Override
     public String toString() {
         return "Bucket{" +
@@ -89,7 +102,7 @@ public class Bucket {
             // Or new API is published.
             throw new IllegalArgumentException("The bucket name of the provided route (" + route + ") is unknown. Report to " + SharedConstants.IMPL_NAME + " authors if you saw this!");
         }
-        return map.computeIfAbsent(client.hashCode() + "#" + bucketName, r -> new Bucket(client, bucketName));
+        return client.getNetworkClient().buckets.computeIfAbsent(bucketName, r -> new Bucket(client, bucketName));
     }
 
     static {
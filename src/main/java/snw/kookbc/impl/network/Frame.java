@@ -18,20 +18,81 @@
 
 package snw.kookbc.impl.network;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
+import org.jetbrains.annotations.Nullable;
+import snw.kookbc.util.JacksonUtil;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 // represents a message using KOOK standard event format.
 public class Frame {
     private final MessageType type;
     private final int sn;
-    private final JsonNode d;
+    private volatile JsonNode d;
+    // the encoded "d" if this frame is decoded by decode(byte[]), d is parsed from it on demand
+    private final byte[] raw;
+    private final int rawOffset;
+    private final int rawLength;
 
     public Frame(int s, int sn, JsonNode d) {
         this.type = Objects.requireNonNull(MessageType.valueOf(s));
         this.sn = sn;
         this.d = d;
+        this.raw = null;
+        this.rawOffset = 0;
+        this.rawLength = 0;
+    }
+
+    private Frame(int s, int sn, byte[] raw, int rawOffset, int rawLength) {
+        this.type = Objects.requireNonNull(MessageType.valueOf(s));
+        this.sn = sn;
+        this.raw = raw;
+        this.rawOffset = rawOffset;
+        this.rawLength = rawLength;
+    }
+
+    // Reads "s" and "sn" of the encoded frame, "d" is only located and skipped.
+    // So consumers that decode "d" from the bytes themselves never build the tree.
+    public static Frame decode(byte[] json) throws IOException {
+        try (JsonParser parser = JacksonUtil.getMapper().getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("The frame is not a JSON object");
+            }
+            int s = -1;
+            int sn = -1;
+            int dStart = -1;
+            int dEnd = -1;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.currentName();
+                final JsonToken token = parser.nextToken();
+                switch (name) {
+                    case "s":
+                        s = parser.getValueAsInt(-1);
+                        break;
+                    case "sn":
+                        sn = parser.getValueAsInt(-1);
+                        break;
+                    case "d":
+                        if (token != JsonToken.VALUE_NULL) {
+                            dStart = (int) parser.currentTokenLocation().getByteOffset();
+                            parser.skipChildren();
+                            dEnd = (int) parser.currentLocation().getByteOffset();
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (dStart < 0) {
+                return new Frame(s, sn, null);
+            }
+            return new Frame(s, sn, json, dStart, dEnd - dStart);
+        }
     }
 
     public MessageType getType() {
@@ -43,15 +104,40 @@ public class Frame {
     }
 
     public JsonNode getData() {
-        return d;
+        JsonNode result = d;
+        if (result == null && raw != null) {
+            try {
+                // racing threads may parse it twice, but they get equal trees
+                d = result = JacksonUtil.getMapper().readTree(raw, rawOffset, rawLength);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 创建读取 {@code d} 的解析器，用于跳过 {@link #getData()} 的树直接解码。
+     *
+     * @return 解析器，如果此帧不是由 {@link #decode(byte[])} 创建的，返回 {@code null}
+     * @throws IOException 创建解析器失败时抛出
+     */
+    @Nullable
+    public JsonParser createDataParser() throws IOException {
+        if (raw == null) {
+            return null;
+        }
+        return JacksonUtil.getMapper().getFactory().createParser(raw, rawOffset, rawLength);
     }
 
+    // Logged for every frame at DEBUG, so it must not build the tree that streaming consumers skip.
     @Override
     public String toString() {
+        final JsonNode data = d;
         return "Frame{" +
                 "type=" + type +
                 ", sn=" + sn +
-                ", d=" + d +
+                ", d=" + (data == null && raw != null ? new String(raw, rawOffset, rawLength, StandardCharsets.UTF_8) : data) +
                 '}';
     }
 }
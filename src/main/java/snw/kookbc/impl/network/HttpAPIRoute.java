@@ -176,8 +176,12 @@ public enum HttpAPIRoute {
     THREAD_POST_LIST("/v3/thread/post");
 
     private static final Map<String, HttpAPIRoute> map = new HashMap<>();
+    // The actual address of BASE_URL, e.g. a local stand-in server for load testing.
+    // It is process-wide, all the clients in the same JVM talk to the same server.
+    private static volatile String baseURL;
 
     static {
+        baseURL = normalize(System.getProperty("kookbc.api-base-url", BASE_URL.route));
         for (HttpAPIRoute value : values()) {
             map.put(value.getRoute(), value);
         }
@@ -190,11 +194,24 @@ public enum HttpAPIRoute {
     }
 
     public String getRoute() {
-        return route;
+        return this == BASE_URL ? baseURL : route;
     }
 
     public String toFullURL() {
-        return (this == BASE_URL ? "" : BASE_URL.getRoute()) + this.getRoute();
+        return (this == BASE_URL ? "" : baseURL) + this.getRoute();
+    }
+
+    public static String getBaseURL() {
+        return baseURL;
+    }
+
+    // e.g. "http://127.0.0.1:8090/api", the routes are appended to it
+    public static void setBaseURL(String url) {
+        baseURL = normalize(url);
+    }
+
+    private static String normalize(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
     }
 
     public static HttpAPIRoute value(String route) {
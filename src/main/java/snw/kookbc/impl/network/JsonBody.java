@@ -0,0 +1,84 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+import snw.kookbc.util.JacksonUtil;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 直接写入 HTTP 连接的 JSON 请求体。
+ *
+ * <p>请求体由 {@link #write(JsonGenerator)} 在发送时写出，不会先被序列化为字符串再编码为字节。
+ * 请求失败重试时可能被多次写出，因此实现必须是无状态的。
+ */
+public abstract class JsonBody extends RequestBody {
+    public static final MediaType JSON = MediaType.get("application/json");
+
+    /**
+     * 将请求体写入给定的生成器。
+     *
+     * @param generator 生成器
+     * @throws IOException 写出失败时抛出
+     */
+    protected abstract void write(JsonGenerator generator) throws IOException;
+
+    /**
+     * 包装一个由 {@link snw.kookbc.util.MapBuilder} 等方式构建的 Map 。
+     *
+     * @param body 请求体
+     * @return 请求体
+     */
+    public static JsonBody of(Map<?, ?> body) {
+        return new JsonBody() {
+            @Override
+            protected void write(JsonGenerator generator) throws IOException {
+                JacksonUtil.getMapper().writeValue(generator, body);
+            }
+        };
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        try (JsonGenerator generator = JacksonUtil.getMapper().getFactory()
+                .createGenerator(sink.outputStream(), JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            write(generator);
+        }
+    }
+
+    // Logged for every POST, so it must not serialize the body.
+    // The length is unknown until the body is written, so contentLength() stays -1 and the body is sent chunked.
+    @Override
+    public String toString() {
+        return "JsonBody";
+    }
+}
@@ -20,11 +20,10 @@ package snw.kookbc.impl.network;
 
 import static snw.kookbc.util.JacksonUtil.get;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -45,6 +44,8 @@ import snw.kookbc.SharedConstants;
 import snw.kookbc.impl.KBCClient;
 import snw.kookbc.impl.command.CommandManagerImpl;
 import snw.kookbc.impl.command.WrappedCommand;
+import snw.kookbc.impl.metrics.Counter;
+import snw.kookbc.impl.metrics.LatencyHistogram;
 import snw.kookbc.impl.network.ws.Connector;
 import snw.kookbc.interfaces.network.FrameHandler;
 import snw.kookbc.interfaces.network.webhook.WebhookNetworkSystem;
@@ -53,10 +54,22 @@ public class ListenerImpl implements FrameHandler {
     protected final KBCClient client;
     protected final Connector connector;
     protected final Object lck = new Object();
+    private volatile boolean processEventsInline = false;
+    // [decode, dispatch] latency per event type
+    private final Map<Class<?>, LatencyHistogram[]> eventMetrics = new ConcurrentHashMap<>();
+    private final Counter decodeFailures;
 
     public ListenerImpl(KBCClient client, Connector connector) {
         this.client = client;
         this.connector = connector;
+        this.decodeFailures = client.getMetrics().counter("kookbc_event_decode_failures_total", "Event payloads that could not be decoded");
+    }
+
+    // If true, EVENT frames are processed on the thread calling handle(Frame) instead of the event executor.
+    // Only useful if the caller already delivers the frames in order from a dedicated thread,
+    //  so the queue in front of this listener applies backpressure.
+    public void setProcessEventsInline(boolean processEventsInline) {
+        this.processEventsInline = processEventsInline;
     }
 
     @Override
@@ -70,7 +83,12 @@ public class ListenerImpl implements FrameHandler {
         }
         switch (frame.getType()) {
             case EVENT:
-                client.getEventExecutor().execute(() -> event(frame));
+                final Runnable dispatch = processEventsInline
+                        ? () -> event(frame)
+                        : () -> client.getEventExecutor().execute(() -> event(frame));
+                if (!client.getEventGate().hold(dispatch)) { // plugins are still being enabled if held
+                    dispatch.run();
+                }
                 break;
             case HELLO:
                 hello(frame);
@@ -143,11 +161,11 @@ public class ListenerImpl implements FrameHandler {
 
     protected void event0(Frame frame) {
         Event event;
+        final long begin = System.nanoTime();
         try {
-            // 直接使用 Jackson JsonNode 进行事件创建
-            JsonNode jacksonData = frame.getData();
-            event = client.getEventFactory().createEvent(jacksonData);
+            event = client.getEventFactory().createEvent(frame);
         } catch (Exception e) {
+            decodeFailures.inc();
             client.getCore().getLogger().error("无法从载荷创建事件");
             client.getCore().getLogger().error("事件载荷: {}", frame);
             e.printStackTrace();
@@ -156,25 +174,29 @@ public class ListenerImpl implements FrameHandler {
         if (event == null) {
             return;
         }
-        if (!executeCommand(event)) {
-            client.getCore().getEventManager().callEvent(event);
+        final long decoded = System.nanoTime();
+        final LatencyHistogram[] metrics = eventMetrics.computeIfAbsent(event.getClass(), this::createEventMetrics);
+        metrics[0].record(decoded - begin);
+        try {
+            if (!executeCommand(event)) {
+                client.getCore().getEventManager().callEvent(event);
+            }
+        } finally {
+            metrics[1].recordSince(decoded);
         }
     }
 
+    private LatencyHistogram[] createEventMetrics(Class<?> type) {
+        final String name = type.getSimpleName();
+        return new LatencyHistogram[]{
+                client.getMetrics().histogram("kookbc_event_decode_seconds", "Time spent creating events from payloads", "type", name),
+                client.getMetrics().histogram("kookbc_event_dispatch_seconds", "Time spent executing commands and event handlers", "type", name)
+        };
+    }
+
     protected void saveSN() {
         if (client.getNetworkSystem() instanceof WebhookNetworkSystem) {
-            File snfile = new File(client.getPluginsFolder(), "sn");
-            try {
-                if (!snfile.exists()) {
-                    // noinspection ResultOfMethodCallIgnored
-                    snfile.createNewFile();
-                }
-                FileWriter writer = new FileWriter(snfile, false);
-                writer.write(String.valueOf(client.getSession().getSN().get()));
-                writer.close();
-            } catch (IOException e) {
-                client.getCore().getLogger().warn("无法将 SN 写入本地", e);
-            }
+            ((WebhookNetworkSystem) client.getNetworkSystem()).saveSN(client.getSession().getSN().get());
         }
     }
 
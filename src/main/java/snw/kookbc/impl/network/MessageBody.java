@@ -0,0 +1,106 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.jetbrains.annotations.Nullable;
+import snw.jkook.message.component.BaseComponent;
+import snw.jkook.message.component.TemplateMessage;
+import snw.kookbc.impl.entity.builder.MessageBuilder;
+
+import java.io.IOException;
+
+/**
+ * 发送与更新消息的请求体。
+ *
+ * <p>消息组件在构造时就被序列化，之后每次写出只是按固定顺序写入各个字段，
+ * 卡片 JSON 作为字符串字段直接转义写入连接。
+ */
+public final class MessageBody extends JsonBody {
+    private final String idKey;
+    private final String id;
+    private final int type; // 0 for updates, they do not carry a type
+    private final String content;
+    private final @Nullable Object templateId;
+    private final @Nullable String quote;
+    private final @Nullable String tempTarget;
+
+    private MessageBody(String idKey, String id, BaseComponent component,
+                        boolean withType, @Nullable String quote, @Nullable String tempTarget) {
+        final Object[] serialized = MessageBuilder.serialize(component);
+        this.idKey = idKey;
+        this.id = id;
+        this.type = withType ? (int) serialized[0] : 0;
+        this.content = (String) serialized[1];
+        this.templateId = component instanceof TemplateMessage ? ((TemplateMessage) component).getId() : null;
+        this.quote = quote;
+        this.tempTarget = tempTarget;
+    }
+
+    /**
+     * 发送消息，用于 {@link HttpAPIRoute#CHANNEL_MESSAGE_SEND} 与 {@link HttpAPIRoute#USER_CHAT_MESSAGE_CREATE} 。
+     *
+     * @param targetId   频道或用户的 ID
+     * @param component  消息组件
+     * @param quote      回复的消息 ID
+     * @param tempTarget 临时消息的目标用户 ID ，仅频道消息可用
+     * @return 请求体
+     */
+    public static MessageBody create(String targetId, BaseComponent component,
+                                     @Nullable String quote, @Nullable String tempTarget) {
+        return new MessageBody("target_id", targetId, component, true, quote, tempTarget);
+    }
+
+    /**
+     * 更新消息，用于 {@link HttpAPIRoute#CHANNEL_MESSAGE_UPDATE} 与 {@link HttpAPIRoute#USER_CHAT_MESSAGE_UPDATE} 。
+     *
+     * @param msgId      消息 ID
+     * @param component  新的消息组件
+     * @param tempTarget 临时消息的目标用户 ID ，仅频道消息可用
+     * @return 请求体
+     */
+    public static MessageBody update(String msgId, BaseComponent component, @Nullable String tempTarget) {
+        return new MessageBody("msg_id", msgId, component, false, null, tempTarget);
+    }
+
+    @Override
+    protected void write(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField(idKey, id);
+        if (type != 0) {
+            generator.writeNumberField("type", type);
+        }
+        generator.writeStringField("content", content);
+        if (templateId != null) {
+            generator.writeObjectField("template_id", templateId);
+        }
+        if (quote != null) {
+            generator.writeStringField("quote", quote);
+        }
+        if (tempTarget != null) {
+            generator.writeStringField("temp_target_id", tempTarget);
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public String toString() {
+        return "MessageBody{" + idKey + "=" + id + ", content=" + content.length() + " chars}";
+    }
+}
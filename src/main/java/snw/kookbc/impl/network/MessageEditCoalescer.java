@@ -0,0 +1,233 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.metrics.Counter;
+import snw.kookbc.util.VirtualThreadUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static snw.kookbc.util.VirtualThreadUtil.newVirtualThreadScheduledExecutor;
+
+/**
+ * 按消息合并更新请求。
+ *
+ * <p>同一条消息同时只有一个更新请求在进行中。在此期间提交的更新只保留最新的一个，
+ * 被取代的更新不会再发出，若被取代的更新已经发出，其结果会被忽略。
+ * 所有调用者的结果都在最终的内容更新完成后一起完成，或以该次请求的异常完成。
+ *
+ * <p>若配置项 {@code message-edit-max-rate} 大于 0 ，同一条消息每秒最多发出这么多个更新请求，
+ * 多出的更新会被延后并合并。
+ *
+ * <p>{@link #shutdown()} 之后提交的更新，以及关闭时仍在等待的更新，会立即发出，不再受速率限制。
+ */
+public class MessageEditCoalescer {
+    private final KBCClient client;
+    private final Executor executor;
+    private final long minIntervalNanos; // 0 if not limited
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+    private final boolean ownsScheduler;
+    private volatile ScheduledExecutorService scheduler; // created on demand if the rate is limited
+    private volatile boolean closed;
+
+    public MessageEditCoalescer(KBCClient client) {
+        this.client = client;
+        this.executor = VirtualThreadUtil.getHttpExecutor();
+        final double maxRate = client.getConfig().getDouble("message-edit-max-rate", 0);
+        this.minIntervalNanos = maxRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxRate) : 0;
+        this.coalesced = client.getMetrics().counter("kookbc_message_edits_coalesced_total", "Message updates replaced by a later one before being applied");
+        if (client.getSharedResources() != null) {
+            this.scheduler = client.getSharedResources().getHeartbeatTimer();
+            this.ownsScheduler = false;
+        } else {
+            this.ownsScheduler = true;
+        }
+    }
+
+    /**
+     * 提交一个消息更新请求。
+     *
+     * @param route 更新消息所用的路由
+     * @param key   合并的依据，通常为消息 ID
+     * @param body  请求体
+     * @return 在此消息最终的内容被更新后完成
+     */
+    public CompletableFuture<Void> update(HttpAPIRoute route, String key, JsonBody body) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        while (true) {
+            final Entry entry = entries.computeIfAbsent(key, k -> new Entry());
+            synchronized (entry) {
+                if (entry.removed) {
+                    continue; // became idle and removed just now, use a new one
+                }
+                if (entry.body != null) {
+                    coalesced.inc();
+                }
+                entry.route = route;
+                entry.body = body;
+                entry.waiters.add(future);
+                if (entry.inFlight) {
+                    // the edit being sent is superseded, its callers wait for this one instead
+                    entry.waiters.addAll(entry.sending);
+                    entry.sending.clear();
+                } else if (!entry.scheduled) {
+                    entry.scheduled = true;
+                    schedule(key, entry);
+                }
+            }
+            return future;
+        }
+    }
+
+    public void shutdown() {
+        closed = true;
+        final ScheduledExecutorService scheduler = this.scheduler;
+        if (ownsScheduler && scheduler != null) {
+            scheduler.shutdownNow();
+            // the delayed edits were dropped with the scheduler, send them now
+            entries.forEach((key, entry) -> {
+                synchronized (entry) {
+                    if (entry.scheduled) {
+                        execute(() -> flush(key, entry));
+                    }
+                }
+            });
+        }
+    }
+
+    // guarded by entry
+    private void schedule(String key, Entry entry) {
+        final Runnable flush = () -> flush(key, entry);
+        final long delay = entry.lastSent + minIntervalNanos - System.nanoTime();
+        if (closed || minIntervalNanos == 0 || entry.lastSent == 0 || delay <= 0) {
+            execute(flush);
+            return;
+        }
+        try {
+            getScheduler().schedule(() -> execute(flush), delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            execute(flush); // shut down just now
+        }
+    }
+
+    // never throws, the callers hold the entry lock and would leave it stuck as scheduled
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Thread.ofVirtual().name("Message-Edit-Flush").start(task);
+        }
+    }
+
+    private void flush(String key, Entry entry) {
+        final HttpAPIRoute route;
+        final JsonBody body;
+        synchronized (entry) {
+            if (entry.body == null || entry.inFlight) {
+                return; // flushed twice around shutdown, or the request in flight will schedule the rest
+            }
+            route = entry.route;
+            body = entry.body;
+            entry.body = null;
+            entry.sending.addAll(entry.waiters);
+            entry.waiters.clear();
+            entry.scheduled = false;
+            entry.inFlight = true;
+            entry.lastSent = System.nanoTime();
+        }
+        Throwable error = null;
+        try {
+            client.getNetworkClient().post(route.toFullURL(), body);
+        } catch (Throwable e) {
+            error = e;
+        }
+        final List<CompletableFuture<Void>> done;
+        synchronized (entry) {
+            entry.inFlight = false;
+            // empty if superseded, the result of this request doesn't matter then
+            done = new ArrayList<>(entry.sending);
+            entry.sending.clear();
+            if (entry.body != null) {
+                entry.scheduled = true;
+                schedule(key, entry);
+            } else if (minIntervalNanos == 0 || closed) {
+                entry.removed = true;
+                entries.remove(key, entry);
+            } else {
+                // keep the time of the last request for a while, so the next update still respects the rate
+                try {
+                    getScheduler().schedule(() -> removeIfIdle(key, entry), minIntervalNanos, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    entry.removed = true;
+                    entries.remove(key, entry);
+                }
+            }
+        }
+        for (CompletableFuture<Void> future : done) {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(null);
+            }
+        }
+    }
+
+    private void removeIfIdle(String key, Entry entry) {
+        synchronized (entry) {
+            if (!entry.inFlight && !entry.scheduled && entry.body == null) {
+                entry.removed = true;
+                entries.remove(key, entry);
+            }
+        }
+    }
+
+    private ScheduledExecutorService getScheduler() {
+        ScheduledExecutorService result = scheduler;
+        if (result == null) {
+            synchronized (this) {
+                result = scheduler;
+                if (result == null) {
+                    scheduler = result = newVirtualThreadScheduledExecutor(1, "Message-Edit-Scheduler-");
+                }
+            }
+        }
+        return result;
+    }
+
+    private static final class Entry {
+        private final List<CompletableFuture<Void>> waiters = new ArrayList<>(); // for the pending body
+        private final List<CompletableFuture<Void>> sending = new ArrayList<>(); // for the request in flight
+        private HttpAPIRoute route;
+        private JsonBody body; // the latest update not sent yet, null if none
+        private boolean inFlight;
+        private boolean scheduled;
+        private boolean removed;
+        private long lastSent;
+    }
+}
@@ -19,14 +19,14 @@
 package snw.kookbc.impl.network;
 
 import static snw.kookbc.CLIOptions.NO_BUCKET;
-import static snw.kookbc.util.JacksonUtil.parse;
-import static snw.kookbc.util.JacksonUtil.toJson;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.Duration;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.concurrent.TimeUnit;
@@ -35,6 +35,8 @@ import java.util.Arrays;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import snw.kookbc.util.JacksonUtil;
 import snw.kookbc.util.VirtualThreadUtil;
@@ -44,6 +46,7 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
 import okhttp3.ConnectionPool;
@@ -51,20 +54,65 @@ import okhttp3.Dispatcher;
 import okhttp3.Protocol;
 import snw.jkook.exceptions.BadResponseException;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.metrics.Counter;
+import snw.kookbc.impl.metrics.LatencyHistogram;
+import snw.kookbc.impl.metrics.MetricsRegistry;
 
 // provide the basic HTTP/WebSocket call feature. Authenticated with Bot Token.
 public class NetworkClient {
+    private static final Map<String, MediaType> MEDIA_TYPES = new ConcurrentHashMap<>();
+    private static final DataReader<JsonNode> TREE_READER = parser -> JacksonUtil.getMapper().readTree(parser);
     private final KBCClient kbcClient;
     private final String tokenWithPrefix;
     private final OkHttpClient client;
     private final ConnectionPool connectionPool;
+    // Rate limit state of this client, see Bucket#get(KBCClient, HttpAPIRoute)
+    final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Map<HttpAPIRoute, RouteMetrics> routeMetrics = new ConcurrentHashMap<>();
+    private final RouteMetrics unknownRouteMetrics;
 
     public NetworkClient(KBCClient kbcClient, String token) {
+        this(kbcClient, token, null);
+    }
+
+    // If sharedClient is provided, the connection pool and the dispatcher of it will be reused.
+    // Used when many clients are running in the same JVM.
+    public NetworkClient(KBCClient kbcClient, String token, @Nullable OkHttpClient sharedClient) {
         this.kbcClient = kbcClient;
         tokenWithPrefix = "Bot " + token;
 
+        final OkHttpClient.Builder builder;
+        if (sharedClient != null) {
+            builder = sharedClient.newBuilder();
+        } else {
+            builder = newDefaultBuilder();
+        }
+
+        if (kbcClient.getConfig().getBoolean("ignore-ssl")) {
+            kbcClient.getCore().getLogger().warn("网络请求忽略 SSL 验证！！！");
+            builder.sslSocketFactory(IgnoreSSLHelper.getSSLSocketFactory(), IgnoreSSLHelper.TRUST_MANAGER)
+                    .hostnameVerifier(IgnoreSSLHelper.getHostnameVerifier());
+        }
+        client = builder.build();
+        this.connectionPool = client.connectionPool();
+
+        final MetricsRegistry metrics = kbcClient.getMetrics();
+        this.unknownRouteMetrics = new RouteMetrics(metrics, "unknown");
+        metrics.gauge("kookbc_http_connections", "Connections in the HTTP connection pool", this::getIdleConnectionCount, "state", "idle");
+        metrics.gauge("kookbc_http_connections", "Connections in the HTTP connection pool", this::getActiveConnectionCount, "state", "active");
+    }
+
+    /**
+     * 创建默认配置的 OkHttpClient 构建器
+     *
+     * <p>每次调用都会创建新的连接池与调度器，需要在多个客户端间共享时，
+     * 应只构建一次，然后将结果传给 {@link #NetworkClient(KBCClient, String, OkHttpClient)}。
+     *
+     * @return 构建器
+     */
+    public static OkHttpClient.Builder newDefaultBuilder() {
         // 高性能连接池配置 - 适应高并发场景
-        this.connectionPool = new ConnectionPool(
+        ConnectionPool connectionPool = new ConnectionPool(
             50,                     // 最大空闲连接数（大幅提升以支持更高并发）
             15,                     // 连接存活时间（15分钟，减少频繁重连）
             TimeUnit.MINUTES
@@ -75,7 +123,7 @@ public class NetworkClient {
         dispatcher.setMaxRequests(200);                    // 最大并发请求数（提升至200）
         dispatcher.setMaxRequestsPerHost(50);              // 每个主机最大并发请求数（提升至50）
 
-        final OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        return new OkHttpClient.Builder()
                 .connectionPool(connectionPool)
                 .dispatcher(dispatcher)
                 .connectTimeout(Duration.ofSeconds(10))    // 连接超时（优化为10秒）
@@ -86,13 +134,6 @@ public class NetworkClient {
                 .followRedirects(true)                     // 自动跟随重定向
                 .followSslRedirects(true)                  // 自动跟随SSL重定向
                 .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)); // HTTP/2 优先，HTTP/1.1 兼容
-
-        if (kbcClient.getConfig().getBoolean("ignore-ssl")) {
-            kbcClient.getCore().getLogger().warn("网络请求忽略 SSL 验证！！！");
-            builder.sslSocketFactory(IgnoreSSLHelper.getSSLSocketFactory(), IgnoreSSLHelper.TRUST_MANAGER)
-                    .hostnameVerifier(IgnoreSSLHelper.getHostnameVerifier());
-        }
-        client = builder.build();
     }
 
     public OkHttpClient getOkHttpClient() {
@@ -151,40 +192,91 @@ public class NetworkClient {
     }
 
     // Jackson API - 高性能JSON处理
+    // The response is parsed from the byte stream of the body, only the "data" is built into a tree
     public JsonNode get(String fullUrl) {
-        return checkResponseJackson(parse(getRawContent(fullUrl))).get("data");
+        return call(getRequest(fullUrl), NetworkClient::readData);
+    }
+
+    /**
+     * 发送 GET 请求，并使用给定的读取器直接从响应体的字节流中解码 {@code data} 字段，不构建树。
+     *
+     * @param fullUrl 完整 URL
+     * @param reader  {@code data} 读取器
+     * @param <T>     读取结果类型
+     * @return 读取结果，响应中没有 {@code data} 时为 {@code null}
+     */
+    public <T> T get(String fullUrl, DataReader<T> reader) {
+        return call(getRequest(fullUrl), body -> readData(body.byteStream(), reader));
     }
 
     public JsonNode post(String fullUrl, Map<?, ?> body) {
-        return checkResponseJackson(parse(postContent(fullUrl, body)))
-                .get("data");
+        return post(fullUrl, JsonBody.of(body));
+    }
+
+    public JsonNode post(String fullUrl, JsonBody body) {
+        return call(postRequest(fullUrl, body), NetworkClient::readData);
     }
 
     public String getRawContent(String fullUrl) {
+        return call(getRequest(fullUrl));
+    }
+
+    public String postContent(String fullUrl, Map<?, ?> body) {
+        return postContent(fullUrl, JsonBody.of(body));
+    }
+
+    public String postContent(String fullUrl, String body, String mediaType) {
+        return postContent(fullUrl, RequestBody.create(body, mediaType(mediaType)));
+    }
+
+    // The body is written to the connection when the request is sent, see JsonBody
+    public String postContent(String fullUrl, RequestBody body) {
+        return call(postRequest(fullUrl, body));
+    }
+
+    private Request getRequest(String fullUrl) {
         logRequest("GET", fullUrl, null);
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .get()
                 .url(fullUrl)
                 .addHeader("Authorization", tokenWithPrefix)
                 .build();
-        return call(request);
-    }
-
-    public String postContent(String fullUrl, Map<?, ?> body) {
-        return postContent(fullUrl, toJson(body), "application/json");
     }
 
-    public String postContent(String fullUrl, String body, String mediaType) {
+    private Request postRequest(String fullUrl, RequestBody body) {
         logRequest("POST", fullUrl, body);
-        Request request = new Request.Builder()
-                .post(RequestBody.create(body, MediaType.parse(mediaType)))
+        return new Request.Builder()
+                .post(body)
                 .url(fullUrl)
                 .addHeader("Authorization", tokenWithPrefix)
                 .build();
-        return call(request);
+    }
+
+    // MediaType.parse is not cheap, and only a few media types are used
+    @Nullable
+    public static MediaType mediaType(String mediaType) {
+        return MEDIA_TYPES.computeIfAbsent(mediaType, MediaType::parse); // not cached if invalid
     }
 
     public String call(Request request) {
+        return call(request, ResponseBody::string);
+    }
+
+    /**
+     * 发送请求，并使用给定的读取器读取成功响应的响应体。
+     *
+     * <p>失败响应 (非 2xx) 的响应体总是被完整读取为字符串，作为 {@link BadResponseException} 的信息抛出。
+     *
+     * <p>{@link #get(String)}、{@link #post(String, JsonBody)}、{@link #getRawContent(String)}、
+     * {@link #postContent(String, RequestBody)} 等所有 HTTP API 请求都经过此方法，
+     * 需要替换请求的发送方式 (例如离线测试) 时，子类应覆盖此方法，而不是上述方法。
+     *
+     * @param request 请求
+     * @param reader  响应体读取器
+     * @param <T>     读取结果类型
+     * @return 读取结果
+     */
+    public <T> T call(Request request, ResponseReader<T> reader) {
         Bucket bucket;
         if (!NO_BUCKET) {
             bucket = getBucket(request);
@@ -192,6 +284,9 @@ public class NetworkClient {
         } else {
             bucket = null;
         }
+        final RouteMetrics metrics = getRouteMetrics(request);
+        final long begin = System.nanoTime();
+        boolean success = false;
         try (Response response = client.newCall(request).execute()) {
             // region Bucket process
             int remaining = Integer.parseInt(Objects.requireNonNull(response.header("X-Rate-Limit-Remaining")));
@@ -201,15 +296,117 @@ public class NetworkClient {
             }
             // endregion
 
-            final String body = Objects.requireNonNull(response.body()).string();
+            final ResponseBody body = Objects.requireNonNull(response.body());
             if (!response.isSuccessful()) {
                 kbcClient.getCore().getLogger().debug("请求失败，完整响应对象: {}", response);
-                throw new BadResponseException(response.code(), body);
+                throw new BadResponseException(response.code(), body.string());
             }
-            return body;
+            final T result = reader.read(body);
+            success = true;
+            return result;
         } catch (IOException e) {
             throw new RuntimeException("Unexpected IOException when we attempting to call request.", e);
+        } finally {
+            metrics.latency.recordSince(begin);
+            if (!success) {
+                metrics.failures.inc();
+            }
+        }
+    }
+
+    private static JsonNode readData(ResponseBody body) throws IOException {
+        return readData(body.byteStream());
+    }
+
+    /**
+     * 从 HTTP API 响应的字节流中读取 {@code data} 字段。
+     *
+     * <p>{@code code} 与 {@code message} 等外层字段只被流式读取，不会构建树。
+     * {@code code} 不为 0 时抛出 {@link BadResponseException} ，此时 {@code data} 会被跳过。
+     *
+     * @param in 响应体字节流
+     * @return {@code data} 字段，不存在时为 {@code null}
+     * @throws IOException 读取失败或响应不是 JSON 对象时抛出
+     */
+    public static JsonNode readData(InputStream in) throws IOException {
+        return readData(in, TREE_READER);
+    }
+
+    /**
+     * 从 HTTP API 响应的字节流中读取 {@code data} 字段，并交给给定的读取器解码。
+     *
+     * @param in     响应体字节流
+     * @param reader {@code data} 读取器
+     * @param <T>    读取结果类型
+     * @return 读取结果，{@code data} 不存在时为 {@code null}
+     * @throws IOException 读取失败或响应不是 JSON 对象时抛出
+     * @see #readData(InputStream)
+     */
+    public static <T> T readData(InputStream in, DataReader<T> reader) throws IOException {
+        try (JsonParser parser = JacksonUtil.getMapper().getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected response, expected a JSON object");
+            }
+            int code = 0;
+            String message = null;
+            T data = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "code":
+                        code = parser.getValueAsInt();
+                        break;
+                    case "message":
+                        message = parser.getValueAsString();
+                        break;
+                    case "data":
+                        if (code == 0) { // "code" comes first in practice, so failed responses skip this
+                            data = reader.read(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (code != 0) {
+                throw new BadResponseException(code, message);
+            }
+            return data;
+        }
+    }
+
+    /**
+     * 响应体读取器。
+     *
+     * @param <T> 读取结果类型
+     */
+    @FunctionalInterface
+    public interface ResponseReader<T> {
+        T read(ResponseBody body) throws IOException;
+    }
+
+    /**
+     * {@code data} 字段读取器。
+     *
+     * <p>调用时解析器位于 {@code data} 的第一个词法单元，返回时应位于 {@code data} 的最后一个词法单元。
+     *
+     * @param <T> 读取结果类型
+     */
+    @FunctionalInterface
+    public interface DataReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    private RouteMetrics getRouteMetrics(Request request) {
+        final String path = request.url().encodedPath();
+        final HttpAPIRoute route = HttpAPIRoute.value(path.startsWith("/api") ? path.substring(4) : path);
+        if (route == null) {
+            return unknownRouteMetrics;
         }
+        return routeMetrics.computeIfAbsent(route, r -> new RouteMetrics(kbcClient.getMetrics(), r.getRoute()));
     }
 
     @NotNull
@@ -226,9 +423,23 @@ public class NetworkClient {
         return Bucket.get(kbcClient, HttpAPIRoute.value(path));
     }
 
-    protected void logRequest(String method, String fullUrl, @Nullable String postBodyJson) {
+    // Only a summary of the body is logged, the debug log is written by default and the body may be large.
+    protected void logRequest(String method, String fullUrl, @Nullable RequestBody body) {
         kbcClient.getCore().getLogger().debug("正在发送 HTTP API 请求: 方法 {}, URL: {}, 请求体 (仅 POST): {}",
-                method, fullUrl, postBodyJson);
+                method, fullUrl, describe(body));
+    }
+
+    @Nullable
+    private static Object describe(@Nullable RequestBody body) {
+        if (body == null || body instanceof JsonBody) {
+            return body; // JsonBody#toString does not serialize the body
+        }
+        try {
+            final long length = body.contentLength();
+            return length < 0 ? body.contentType() : body.contentType() + ", " + length + " bytes";
+        } catch (IOException e) {
+            return body.contentType();
+        }
     }
 
     // ===== 虚拟线程异步 API =====
@@ -337,4 +548,13 @@ public class NetworkClient {
         return response;
     }
 
+    private static final class RouteMetrics {
+        private final LatencyHistogram latency;
+        private final Counter failures;
+
+        private RouteMetrics(MetricsRegistry metrics, String route) {
+            this.latency = metrics.histogram("kookbc_http_request_seconds", "HTTP API request latency", "route", route);
+            this.failures = metrics.counter("kookbc_http_failures_total", "Failed HTTP API requests", "route", route);
+        }
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.metrics.LatencyHistogram;
+import snw.kookbc.util.VirtualThreadUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static snw.kookbc.CLIOptions.NO_BUCKET;
+
+/**
+ * 按发送目标（频道或用户）排队的消息发送队列。
+ *
+ * <p>发往同一目标的消息按调用 {@link #send} 的顺序发出，即使它们来自不同的线程；
+ * 发往不同目标的消息互不等待。每个目标默认同时只有一个请求在进行中，
+ * 若配置项 {@code message-queue-pipeline-depth} 大于 1 ，且对应路由的限速桶中剩余次数充足，
+ * 则最多可同时进行这么多个请求，此时返回的 {@link CompletableFuture} 仍按提交顺序完成
+ * （先返回的结果会等待之前的请求完成），但服务端的处理顺序不再保证。
+ *
+ * <p>指标：
+ * <ul>
+ *     <li>{@code kookbc_outbound_backlog{target=...}} - 每个目标中尚未完成的消息数，目标空闲后移除</li>
+ *     <li>{@code kookbc_outbound_backlog_total} - 所有目标中尚未完成的消息数</li>
+ *     <li>{@code kookbc_outbound_queue_seconds} - 消息从入队到开始发送的等待时间</li>
+ * </ul>
+ */
+public class OutboundMessageQueue {
+    private static final String BACKLOG = "kookbc_outbound_backlog";
+    private final KBCClient client;
+    private final Executor executor;
+    private final int pipelineDepth;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final LatencyHistogram queueTime;
+
+    public OutboundMessageQueue(KBCClient client) {
+        this(client, VirtualThreadUtil.getHttpExecutor());
+    }
+
+    public OutboundMessageQueue(KBCClient client, Executor executor) {
+        this.client = client;
+        this.executor = executor;
+        this.pipelineDepth = Math.max(1, client.getConfig().getInt("message-queue-pipeline-depth", 1));
+        this.queueTime = client.getMetrics().histogram("kookbc_outbound_queue_seconds", "Time spent by messages waiting in the outbound queue");
+        client.getMetrics().gauge(BACKLOG + "_total", "Messages not yet sent in all the outbound queues", backlog::get);
+    }
+
+    /**
+     * 将一个消息发送请求加入目标的队列。
+     *
+     * @param route  发送消息所用的路由，如 {@link HttpAPIRoute#CHANNEL_MESSAGE_SEND}
+     * @param target 目标 ID ，决定请求排在哪个队列中
+     * @param body   请求体
+     * @return 完成时得到新消息的 ID ；请求失败时以相应的异常完成
+     */
+    public CompletableFuture<String> send(HttpAPIRoute route, String target, JsonBody body) {
+        final Pending pending = new Pending(route, body);
+        backlog.incrementAndGet();
+        final List<Pending> ready = new ArrayList<>(1);
+        lanes.compute(target, (key, existing) -> {
+            final Lane lane = existing != null ? existing : newLane(key);
+            lane.queue.add(pending);
+            lane.poll(allowedInFlight(route), ready);
+            return lane;
+        });
+        dispatch(target, ready);
+        return pending.future;
+    }
+
+    private Lane newLane(String target) {
+        final Lane lane = new Lane();
+        client.getMetrics().gauge(BACKLOG, "Messages not yet sent in the outbound queue of a channel or user",
+                lane::size, "target", target);
+        return lane;
+    }
+
+    // The number of messages waiting for the given target, including the ones being sent.
+    public int getBacklog(String target) {
+        final Lane lane = lanes.get(target);
+        return lane != null ? lane.size() : 0;
+    }
+
+    public int getBacklog() {
+        return backlog.get();
+    }
+
+    private void dispatch(String target, List<Pending> ready) {
+        for (Pending pending : ready) {
+            executor.execute(() -> run(target, pending));
+        }
+    }
+
+    private void run(String target, Pending pending) {
+        queueTime.recordSince(pending.createdAt);
+        String result = null;
+        Throwable error = null;
+        try {
+            result = client.getNetworkClient().post(pending.route.toFullURL(), pending.body).get("msg_id").asText();
+        } catch (Throwable e) {
+            error = e;
+        }
+        final String finalResult = result;
+        final Throwable finalError = error;
+        // start the next one first, the callbacks of the futures may take a while
+        final List<Pending> ready = new ArrayList<>(1);
+        final List<Pending> done = new ArrayList<>(1);
+        lanes.computeIfPresent(target, (key, lane) -> {
+            pending.result = finalResult;
+            pending.error = finalError;
+            pending.done = true;
+            lane.inFlight--;
+            lane.release(done);
+            lane.poll(allowedInFlight(pending.route), ready);
+            if (lane.size() == 0) {
+                client.getMetrics().remove(BACKLOG, "target", key);
+                return null;
+            }
+            return lane;
+        });
+        dispatch(target, ready);
+        // in submission order, empty if an earlier request of this target is still in flight
+        for (Pending completed : done) {
+            backlog.decrementAndGet();
+            if (completed.error != null) {
+                completed.future.completeExceptionally(completed.error);
+            } else {
+                completed.future.complete(completed.result);
+            }
+        }
+    }
+
+    private int allowedInFlight(HttpAPIRoute route) {
+        if (pipelineDepth == 1 || NO_BUCKET) {
+            return 1;
+        }
+        final int available = Bucket.get(client, route).getAvailableTimes();
+        // unknown before the first response, or close to the limit, so the requests would wait anyway
+        if (available == Integer.MIN_VALUE || available <= Bucket.RESERVED_TIMES + pipelineDepth) {
+            return 1;
+        }
+        return pipelineDepth;
+    }
+
+    // guarded by the bin lock of the lanes map
+    private static final class Lane {
+        private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+        // dispatched, in submission order, until their futures are completed
+        private final ArrayDeque<Pending> sending = new ArrayDeque<>();
+        private volatile int waiting;
+        private int inFlight;
+
+        private void poll(int allowed, List<Pending> ready) {
+            while (inFlight < allowed && !queue.isEmpty()) {
+                final Pending next = queue.poll();
+                ready.add(next);
+                sending.add(next);
+                inFlight++;
+            }
+            waiting = queue.size() + sending.size();
+        }
+
+        // the finished requests that no earlier request is waited for
+        private void release(List<Pending> done) {
+            while (!sending.isEmpty() && sending.peek().done) {
+                done.add(sending.poll());
+            }
+            waiting = queue.size() + sending.size();
+        }
+
+        private int size() {
+            return waiting;
+        }
+    }
+
+    private static final class Pending {
+        private final HttpAPIRoute route;
+        private final JsonBody body;
+        private final long createdAt = System.nanoTime();
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        // guarded by the bin lock of the lanes map, like Lane
+        private boolean done;
+        private String result;
+        private Throwable error;
+
+        private Pending(HttpAPIRoute route, JsonBody body) {
+            this.route = route;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * 启动期间的事件闸门。
+ *
+ * <p>网络可能在插件启用完成前就已连接，此期间收到的事件会按到达顺序暂存在这里，
+ * 直到 {@link #open()} 被调用后再依次派发，以保证插件不会错过也不会提前收到事件。</p>
+ *
+ * <p>若启动失败，闸门不会再被打开，此时应调用 {@link #discard()} 丢弃暂存的事件，之后收到的事件也会被直接丢弃。</p>
+ */
+public final class StartupEventGate {
+    private final Queue<Runnable> held = new ArrayDeque<>();
+    private volatile boolean open;
+    private boolean discarded; // guarded by held
+
+    /**
+     * 若闸门尚未打开，暂存给定的派发任务。
+     *
+     * @param dispatch 派发事件的任务
+     * @return 若任务已被暂存则返回 {@code true} ，此时调用者不应再执行它
+     */
+    public boolean hold(Runnable dispatch) {
+        if (open) {
+            return false;
+        }
+        synchronized (held) {
+            if (open) {
+                return false;
+            }
+            if (!discarded) {
+                held.add(dispatch);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 打开闸门，并在当前线程中按顺序执行所有暂存的派发任务。
+     *
+     * @return 暂存的任务数量
+     */
+    public int open() {
+        int count = 0;
+        while (true) {
+            final Runnable next;
+            synchronized (held) {
+                next = held.poll();
+                if (next == null) {
+                    // only open once the queue is drained, so frames received meanwhile keep their order
+                    open = true;
+                    return count;
+                }
+            }
+            next.run();
+            count++;
+        }
+    }
+
+    /**
+     * 丢弃所有暂存的派发任务，闸门保持关闭，之后传入 {@link #hold(Runnable)} 的任务也会被丢弃。
+     *
+     * @return 被丢弃的任务数量
+     */
+    public int discard() {
+        synchronized (held) {
+            discarded = true;
+            final int count = held.size();
+            held.clear();
+            return count;
+        }
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.impl.network.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+// Reads the records written by GatewayRecorder in order.
+// A torn record at the end of the file (e.g. the recording process was killed) is ignored.
+final class GatewayRecordReader implements AutoCloseable {
+    private final DataInputStream in;
+    private long arrivalNanos;
+    private boolean compressed;
+    private byte[] payload;
+
+    GatewayRecordReader(File file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+    }
+
+    // returns false if there is no complete record left
+    boolean next() throws IOException {
+        try {
+            final long arrival = in.readLong();
+            final byte flags = in.readByte();
+            final int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Corrupted gateway recording, negative record length: " + length);
+            }
+            final byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            arrivalNanos = arrival;
+            compressed = (flags & GatewayRecorder.FLAG_COMPRESSED) != 0;
+            payload = bytes;
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    // epoch nanoseconds
+    long getArrivalNanos() {
+        return arrivalNanos;
+    }
+
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    byte[] getPayload() {
+        return payload;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.impl.network.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把收到的原始网关消息追加写入文件，供 {@link ReplayNetworkSystem} 回放。
+ *
+ * <p>每条记录的格式为 {@code [long 到达时间(纪元纳秒)][byte 标志][int 长度][原始字节]}，
+ * 压缩消息保存压缩后的字节，因此回放时解压与解析的开销与线上一致。
+ * 到达时间以打开文件时的墙钟时间为基准，再叠加 {@link System#nanoTime()} 的增量，
+ * 同一次运行内的间隔不受系统时钟调整影响。
+ *
+ * <p>文件只会被追加，多次运行的记录会依次排列。
+ */
+public final class GatewayRecorder implements AutoCloseable {
+    static final byte FLAG_COMPRESSED = 1;
+
+    private final File file;
+    private final DataOutputStream out;
+    private final long baseEpochNanos;
+    private final long baseNanoTime;
+    private long records;
+
+    public GatewayRecorder(File file) throws IOException {
+        this.file = file;
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024));
+        this.baseEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        this.baseNanoTime = System.nanoTime();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    // called from the WebSocket reader thread, the record is flushed immediately so a crash loses nothing
+    public synchronized void record(byte[] payload, boolean compressed) throws IOException {
+        out.writeLong(baseEpochNanos + (System.nanoTime() - baseNanoTime));
+        out.writeByte(compressed ? FLAG_COMPRESSED : 0);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+        records++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.impl.network.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import snw.jkook.util.Validate;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.metrics.LatencyHistogram;
+import snw.kookbc.impl.network.Frame;
+import snw.kookbc.impl.network.ListenerImpl;
+import snw.kookbc.impl.network.MessageType;
+import snw.kookbc.impl.network.Session;
+import snw.kookbc.interfaces.network.NetworkSystem;
+import snw.kookbc.util.JacksonUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static snw.kookbc.util.Util.decompressDeflate;
+
+/**
+ * 回放 {@link GatewayRecorder} 录制的网关流量的网络系统，不需要连接 KOOK 网关。
+ *
+ * <p>录制中的 EVENT 帧会按原始到达间隔（除以回放速度）交给 {@link ListenerImpl}，
+ * 与线上一样经过解压、解析、事件执行器、命令系统与插件的事件处理器。其他类型的帧（HELLO、PONG 等）会被跳过。
+ * 回放速度为 0 时不等待，尽可能快地回放。
+ *
+ * <p>端到端延迟从帧的预定到达时刻算起，到命令与事件处理器执行完毕为止，
+ * 因此回放线程或事件执行器跟不上时，排队的时间也会计入延迟。回放结束后会输出吞吐量与延迟分位数。
+ *
+ * <p>注意：HTTP API 请求仍然发往 {@code HttpAPIRoute.BASE_URL}，启动时获取 Bot 自身信息也需要它可用，
+ * 可以用 {@code api-base-url} 指向 {@link snw.kookbc.test.LocalKookServer}。
+ */
+public class ReplayNetworkSystem implements NetworkSystem {
+    // idle gaps longer than this (e.g. between two recording runs) are shortened to it
+    private static final long MAX_GAP_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // how long to wait for the queued events after the last frame was handed over
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    protected final KBCClient client;
+    private final File file;
+    private final double speed;
+    private final ReplayListener listener;
+    private final LatencyHistogram latency;
+    private final LongAdder completed = new LongAdder(); // processed by the event handlers
+    private final LongAdder settled = new LongAdder(); // seen by the listener, processed, buffered or dropped
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile Thread thread;
+    private volatile String report;
+
+    public ReplayNetworkSystem(KBCClient client) {
+        this(client,
+                new File(client.getConfig().getString("replay-file", "gateway.rec")),
+                client.getConfig().getDouble("replay-speed", 1.0));
+    }
+
+    public ReplayNetworkSystem(KBCClient client, File file, double speed) {
+        Validate.isTrue(speed >= 0, "The replay speed must not be negative");
+        this.client = client;
+        this.file = file;
+        this.speed = speed;
+        this.latency = client.getMetrics().histogram("kookbc_replay_latency_seconds", "End-to-end latency of replayed gateway events");
+        this.listener = new ReplayListener(client);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        Validate.isTrue(file.isFile(), "The gateway recording does not exist: " + file.getAbsolutePath());
+        thread = Thread.ofPlatform().name("Gateway-Replay").daemon().start(this::replay);
+    }
+
+    @Override
+    public void stop() {
+        final Thread thread = this.thread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        final Thread thread = this.thread;
+        return thread != null && thread.isAlive();
+    }
+
+    public boolean awaitFinish(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    // null until the replay finished
+    public String getReport() {
+        return report;
+    }
+
+    private void replay() {
+        client.getCore().getLogger().info("开始回放网关录制: {} (速度: {})", file, speed == 0 ? "最快" : speed + "x");
+        final Session session = client.getSession();
+        final long begin = System.nanoTime();
+        long handed = 0;
+        long skipped = 0;
+        long lastArrival = Long.MIN_VALUE;
+        long elapsed = 0; // recording time since the first frame, with long gaps shortened
+        int lastSN = -1;
+        boolean drained = false;
+        try (GatewayRecordReader reader = new GatewayRecordReader(file)) {
+            while (reader.next()) {
+                final long arrival = reader.getArrivalNanos();
+                if (lastArrival != Long.MIN_VALUE) {
+                    elapsed += Math.max(0, Math.min(arrival - lastArrival, MAX_GAP_NANOS));
+                }
+                lastArrival = arrival;
+
+                final long arrivedAt;
+                if (speed > 0) {
+                    arrivedAt = begin + (long) (elapsed / speed);
+                    final long delay = arrivedAt - System.nanoTime();
+                    if (delay > 0) {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    }
+                } else {
+                    arrivedAt = System.nanoTime();
+                }
+
+                final ReplayFrame frame = decode(reader, arrivedAt);
+                if (frame == null || frame.getType() != MessageType.EVENT) {
+                    skipped++;
+                    continue;
+                }
+                if (lastSN < 0 || frame.getSN() <= lastSN) {
+                    // the recording starts here, or the gateway session was restarted (reconnect, another run),
+                    //  let the listener expect this SN after the previous frames are processed
+                    drain(handed, DRAIN_TIMEOUT_NANOS);
+                    session.getBuffer().clear();
+                    session.getSN().set(frame.getSN() - 1);
+                }
+                lastSN = frame.getSN();
+                listener.handle(frame);
+                handed++;
+            }
+            drained = drain(handed, DRAIN_TIMEOUT_NANOS);
+        } catch (InterruptedException e) {
+            client.getCore().getLogger().info("网关回放已中断");
+        } catch (IOException e) {
+            client.getCore().getLogger().error("读取网关录制文件时发生异常", e);
+        } finally {
+            final double seconds = (System.nanoTime() - begin) / 1e9;
+            final long events = completed.sum();
+            final long seen = settled.sum();
+            report = String.format(
+                    "回放了 %d 个事件 (跳过 %d 个非事件帧, 丢弃 %d 个 SN 重复或不连续的事件)%s, 用时 %.2f 秒, %.1f 事件/秒; 端到端延迟 p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, 最大 %.2f ms",
+                    events, skipped, seen - events, drained ? "" : String.format(" (另有 %d 个未处理完)", handed - seen),
+                    seconds, events / seconds,
+                    latency.getQuantileSeconds(0.5) * 1000, latency.getQuantileSeconds(0.9) * 1000,
+                    latency.getQuantileSeconds(0.99) * 1000, latency.getMaxSeconds() * 1000
+            );
+            client.getCore().getLogger().info(report);
+            finished.countDown();
+        }
+    }
+
+    // returns false if the listener did not see the expected number of frames in time
+    // frames dropped by the listener (old SN) or buffered forever (missing SN) count as seen, so they don't stall the replay
+    private boolean drain(long expected, long timeoutNanos) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeoutNanos;
+        while (settled.sum() < expected) {
+            if (System.nanoTime() - deadline > 0) {
+                client.getCore().getLogger().warn("等待回放的事件处理完成超时，已处理 {} 个，共 {} 个", settled.sum(), expected);
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        return true;
+    }
+
+    // same as WebSocketMessageProcessor
+    private ReplayFrame decode(GatewayRecordReader reader, long arrivedAt) {
+        try {
+            final byte[] payload = reader.getPayload();
+            final String text = new String(reader.isCompressed() ? decompressDeflate(payload) : payload, StandardCharsets.UTF_8);
+            final JsonNode object = JacksonUtil.parse(text);
+            final JsonNode snNode = object.get("sn");
+            return new ReplayFrame(object.get("s").asInt(), snNode != null ? snNode.asInt() : -1, object.get("d"), arrivedAt);
+        } catch (Exception e) {
+            client.getCore().getLogger().warn("无法解析录制的网关消息，已跳过", e);
+            return null;
+        }
+    }
+
+    private static final class ReplayFrame extends Frame {
+        private final long arrivedAt; // System.nanoTime()
+
+        ReplayFrame(int s, int sn, JsonNode d, long arrivedAt) {
+            super(s, sn, d);
+            this.arrivedAt = arrivedAt;
+        }
+    }
+
+    // ListenerImpl only needs the connector for the frames other than EVENT, which are not replayed
+    private final class ReplayListener extends ListenerImpl {
+
+        ReplayListener(KBCClient client) {
+            super(client, null);
+        }
+
+        @Override
+        protected void event(Frame frame) {
+            try {
+                super.event(frame);
+            } finally {
+                settled.increment();
+            }
+        }
+
+        @Override
+        protected void event0(Frame frame) {
+            try {
+                super.event0(frame);
+            } finally {
+                latency.recordSince(((ReplayFrame) frame).arrivedAt);
+                completed.increment();
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ package snw.kookbc.impl.network.webhook;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jetbrains.annotations.Nullable;
 import snw.kookbc.util.JacksonUtil;
 import snw.kookbc.impl.KBCClient;
 import snw.kookbc.impl.network.Frame;
@@ -32,10 +33,18 @@ import static snw.kookbc.util.JacksonUtil.*;
 public class JLHttpRequestHandler implements RequestHandler<JsonNode> {
     private final String ourToken;
     private final FrameHandler handler;
+    private final WebhookEventQueue queue;
 
     public JLHttpRequestHandler(KBCClient client, FrameHandler handler) {
+        this(client, handler, null);
+    }
+
+    // If the queue is provided, valid frames are enqueued and acknowledged immediately,
+    //  instead of being passed to the handler on the HTTP thread.
+    public JLHttpRequestHandler(KBCClient client, FrameHandler handler, @Nullable WebhookEventQueue queue) {
         this.ourToken = client.getConfig().getString("webhook-verify-token", "");
         this.handler = handler;
+        this.queue = queue;
         if (this.ourToken.isEmpty()) {
             throw new IllegalArgumentException("Webhook verify token is not specified");
         }
@@ -84,6 +93,17 @@ public class JLHttpRequestHandler implements RequestHandler<JsonNode> {
                 // end challenge part
             }
         }
-        handler.handle(frame);
+        if (queue == null) {
+            handler.handle(frame);
+            return;
+        }
+        if (queue.offer(frame) == WebhookEventQueue.OfferResult.REJECTED) {
+            request.reply(503, ""); // KOOK will retry later
+        }
+    }
+
+    @Nullable
+    public WebhookEventQueue getQueue() {
+        return queue;
     }
 }
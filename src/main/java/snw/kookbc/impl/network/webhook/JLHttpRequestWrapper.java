@@ -36,6 +36,7 @@ public class JLHttpRequestWrapper implements HTTPServer.ContextHandler {
 
     @Override
     public int serve(HTTPServer.Request request, HTTPServer.Response response) throws IOException {
+        final long begin = System.nanoTime();
         final JLHttpRequest wrapped = new JLHttpRequest(client, request, response);
         final String body = wrapped.getRawBody();
         if (body.isEmpty()) {
@@ -50,6 +51,12 @@ public class JLHttpRequestWrapper implements HTTPServer.ContextHandler {
         if (!wrapped.isReplyPresent()) {
             wrapped.reply(200, "");
         }
+        if (handler instanceof JLHttpRequestHandler) {
+            final WebhookEventQueue queue = ((JLHttpRequestHandler) handler).getQueue();
+            if (queue != null) {
+                queue.recordAck(System.nanoTime() - begin);
+            }
+        }
         return 0;
     }
 }
@@ -22,18 +22,19 @@ import org.jetbrains.annotations.Nullable;
 import snw.kookbc.impl.KBCClient;
 import snw.kookbc.impl.network.Listener;
 import snw.kookbc.impl.network.ListenerFactory;
+import snw.kookbc.impl.network.ListenerImpl;
 import snw.kookbc.interfaces.network.FrameHandler;
 import snw.kookbc.interfaces.network.webhook.WebhookNetworkSystem;
 
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.List;
+import java.io.IOException;
 
 public class JLHttpWebhookNetworkSystem implements WebhookNetworkSystem {
     private final KBCClient client;
     private final JLHttpWebhookServer server;
+    private final WebhookEventQueue queue;
     private final int port;
+    private volatile SNCheckpoint checkpoint;
 
     public JLHttpWebhookNetworkSystem(KBCClient client, @Nullable FrameHandler handler) {
         final int port = client.getConfig().getInt("webhook-port");
@@ -44,29 +45,35 @@ public class JLHttpWebhookNetworkSystem implements WebhookNetworkSystem {
         if (handler == null) {
             @SuppressWarnings("deprecation")
             final Listener listener = ListenerFactory.getListener(client, null);
+            if (listener instanceof ListenerImpl) {
+                // the queue consumer is already a dedicated, ordered thread
+                ((ListenerImpl) listener).setProcessEventsInline(true);
+            }
             handler = listener::executeEvent;
         }
         this.client = client;
-        this.server = new JLHttpWebhookServer(client,route, port, handler);
+        this.queue = new WebhookEventQueue(client, handler);
+        this.server = new JLHttpWebhookServer(client, route, port, handler, queue);
         this.port = port;
     }
 
     @Override
     public void start() {
+        client.getCore().getLogger().debug("正在从本地文件初始化 SN");
+        File snfile = new File(client.getPluginsFolder(), "sn");
         try {
-            client.getCore().getLogger().debug("正在从本地文件初始化 SN");
-            int initSN = 0;
-            File snfile = new File(client.getPluginsFolder(), "sn");
-            if (snfile.exists()) {
-                List<String> lines = Files.readAllLines(Paths.get(snfile.toURI()));
-                if (!lines.isEmpty()) {
-                    initSN = Integer.parseInt(lines.get(0));
-                }
-            }
-            client.getSession().getSN().set(initSN);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            checkpoint = SNCheckpoint.open(
+                    snfile,
+                    client.getCore().getLogger(),
+                    client.getConfig().getInt("webhook-sn-flush-events", 64),
+                    client.getConfig().getLong("webhook-sn-flush-interval", 1000L)
+            );
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to open the SN checkpoint file", e);
         }
+        client.getSession().getSN().set(checkpoint.getRecoveredSN());
+        client.getCore().getLogger().debug("已从本地文件恢复 SN: {}", checkpoint.getRecoveredSN());
+        queue.start();
         server.start();
         client.getCore().getLogger().info("Webhook HTTP 服务器正在监听端口 " + port);
     }
@@ -75,5 +82,26 @@ public class JLHttpWebhookNetworkSystem implements WebhookNetworkSystem {
     public void stop() {
         client.getCore().getLogger().info("正在停止 Webhook HTTP 服务器");
         server.stop();
+        queue.stop();
+        final SNCheckpoint checkpoint = this.checkpoint;
+        if (checkpoint != null) {
+            checkpoint.close();
+        }
+    }
+
+    public JLHttpWebhookServer getServer() {
+        return server;
+    }
+
+    public WebhookEventQueue getQueue() {
+        return queue;
+    }
+
+    @Override
+    public void saveSN(int sn) {
+        final SNCheckpoint checkpoint = this.checkpoint;
+        if (checkpoint != null) {
+            checkpoint.update(sn);
+        }
     }
 }
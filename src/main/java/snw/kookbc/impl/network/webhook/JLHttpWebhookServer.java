@@ -20,6 +20,7 @@ package snw.kookbc.impl.network.webhook;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import net.freeutils.httpserver.HTTPServer;
+import org.jetbrains.annotations.Nullable;
 import snw.kookbc.impl.KBCClient;
 import snw.kookbc.interfaces.network.FrameHandler;
 import snw.kookbc.interfaces.network.webhook.RequestHandler;
@@ -35,11 +36,15 @@ public class JLHttpWebhookServer implements WebhookServer {
     private String route;
 
     public JLHttpWebhookServer(KBCClient client, String route, int port, FrameHandler listener) {
+        this(client, route, port, listener, null);
+    }
+
+    public JLHttpWebhookServer(KBCClient client, String route, int port, FrameHandler listener, @Nullable WebhookEventQueue queue) {
         this.client = client;
         this.route = route;
         this.server = new HTTPServer(port);
         this.server.setExecutor(newVirtualThreadExecutor("Webhook-Thread"));
-        this.setHandler(new JLHttpRequestHandler(client, listener));
+        this.setHandler(new JLHttpRequestHandler(client, listener, queue));
     }
 
     @Override
@@ -64,6 +69,11 @@ public class JLHttpWebhookServer implements WebhookServer {
         }
     }
 
+    // mount another handler on this server, e.g. the metrics endpoint
+    public void addContext(String path, HTTPServer.ContextHandler handler, String... methods) {
+        server.getVirtualHost(null).addContext(path, handler, methods);
+    }
+
     @Override
     public void setEndpoint(String path) {
         this.route = path;
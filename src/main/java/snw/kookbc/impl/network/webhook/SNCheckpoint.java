@@ -0,0 +1,221 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.impl.network.webhook;
+
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Webhook 模式下的 SN 检查点
+ *
+ * <p>SN 保存在一个预分配的内存映射槽位中，每次更新只是一次内存写入，
+ * 进程崩溃时已写入的值仍由操作系统落盘。
+ * 每累计 N 个事件或每隔 T 毫秒执行一次 {@code force} (组提交)，关闭时强制同步一次。
+ *
+ * <p>槽位布局 (大端序): {@code [magic][sn][~sn][reserved]}，共 16 字节。
+ * 旧版本写入的纯文本 SN 文件在恢复时仍可识别。
+ */
+public class SNCheckpoint implements AutoCloseable {
+    private static final int MAGIC = 0x4B42534E; // "KBSN"
+    private static final int SLOT_SIZE = 16;
+
+    private final File file;
+    private final Logger logger;
+    private final int flushEvents;
+    private final FileChannel channel;
+    private final MappedByteBuffer slot;
+    private final ScheduledExecutorService flusher;
+    private final int recoveredSN;
+    private int pendingEvents;
+    private volatile boolean dirty;
+    private volatile boolean closed;
+
+    private SNCheckpoint(File file, Logger logger, int flushEvents, long flushIntervalMillis,
+                         FileChannel channel, MappedByteBuffer slot, int recoveredSN) {
+        this.file = file;
+        this.logger = logger;
+        this.flushEvents = Math.max(1, flushEvents);
+        this.channel = channel;
+        this.slot = slot;
+        this.recoveredSN = recoveredSN;
+        if (flushIntervalMillis > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("SN-Checkpoint-Flusher").daemon().factory()
+            );
+            this.flusher.scheduleWithFixedDelay(this::flushIfDirty, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * 打开 (必要时创建) 检查点文件，并恢复其中保存的 SN
+     *
+     * @param file                检查点文件
+     * @param logger              日志
+     * @param flushEvents         每累计多少个事件同步一次
+     * @param flushIntervalMillis 同步间隔 (毫秒)，不大于 0 则只按事件数同步
+     * @return 已恢复的检查点
+     */
+    public static SNCheckpoint open(File file, Logger logger, int flushEvents, long flushIntervalMillis) throws IOException {
+        final int recovered = recover(file, logger);
+        if (file.length() != SLOT_SIZE) {
+            // missing, legacy text or damaged, replace it with the current layout atomically
+            rewrite(file, recovered);
+        }
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final MappedByteBuffer slot = channel.map(FileChannel.MapMode.READ_WRITE, 0, SLOT_SIZE);
+            return new SNCheckpoint(file, logger, flushEvents, flushIntervalMillis, channel, slot, recovered);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void rewrite(File file, int sn) throws IOException {
+        final Path target = file.toPath();
+        final Path temp = target.resolveSibling(file.getName() + ".tmp");
+        final ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+        buffer.putInt(0, MAGIC).putInt(4, sn).putInt(8, ~sn);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(buffer, 0);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return 打开时从文件中恢复的 SN，文件不存在或已损坏时为 0
+     */
+    public int getRecoveredSN() {
+        return recoveredSN;
+    }
+
+    // Reads the SN stored in the provided file, never throws on damaged content.
+    static int recover(File file, Logger logger) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        if (bytes.length == SLOT_SIZE) {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (buffer.getInt(0) == MAGIC) {
+                final int sn = buffer.getInt(4);
+                if (~sn == buffer.getInt(8)) {
+                    return sn;
+                }
+                logger.warn("SN 检查点文件 {} 已损坏，将从 0 开始", file);
+                return 0;
+            }
+        }
+        // written by older versions: the SN in plain text
+        final String text = new String(bytes, StandardCharsets.UTF_8).trim();
+        if (text.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            logger.warn("无法识别 SN 文件 {} 的内容，将从 0 开始", file);
+            return 0;
+        }
+    }
+
+    /**
+     * 记录最新的 SN，仅在累计事件数达到阈值时同步到磁盘
+     *
+     * @param sn 最新已处理的 SN
+     */
+    public synchronized void update(int sn) {
+        if (closed) {
+            return;
+        }
+        write(sn);
+        dirty = true;
+        if (++pendingEvents >= flushEvents) {
+            flush();
+        }
+    }
+
+    private void write(int sn) {
+        slot.putInt(4, sn);
+        slot.putInt(8, ~sn);
+        slot.putInt(0, MAGIC);
+    }
+
+    private void flushIfDirty() {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty && !closed) {
+                    flush();
+                }
+            }
+        }
+    }
+
+    // must be called while holding the monitor of this object
+    private void flush() {
+        try {
+            slot.force();
+        } catch (RuntimeException e) { // UncheckedIOException on some platforms
+            logger.warn("无法将 SN 同步到文件 {}", file, e);
+        }
+        pendingEvents = 0;
+        dirty = false;
+    }
+
+    /**
+     * 停止定时同步并将最新的 SN 同步到磁盘
+     */
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+            try {
+                channel.force(true);
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("关闭 SN 文件 {} 时发生异常", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.impl.network.webhook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.jetbrains.annotations.Nullable;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.metrics.LatencyHistogram;
+import snw.kookbc.impl.metrics.MetricsRegistry;
+import snw.kookbc.impl.network.Frame;
+import snw.kookbc.impl.network.MessageType;
+import snw.kookbc.interfaces.network.FrameHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static snw.kookbc.util.VirtualThreadUtil.startVirtualThread;
+
+/**
+ * Webhook 事件接收队列
+ *
+ * <p>HTTP 线程只负责校验与入队，随后立即向 KOOK 返回 200，
+ * 事件由单个消费线程按接收顺序交给 {@link FrameHandler} 处理。
+ * 这样插件处理缓慢时不会导致 KOOK 的 Webhook 请求超时重试。
+ *
+ * <ul>
+ *   <li><b>去重</b>: 按 {@code msg_id} (没有时按 SN) 记住最近的事件，KOOK 的重试请求直接丢弃</li>
+ *   <li><b>溢出</b>: 内存队列已满时，可选择写入磁盘文件，否则返回 503 让 KOOK 稍后重试</li>
+ *   <li><b>统计</b>: 应答延迟、队列深度、去重与溢出计数</li>
+ * </ul>
+ */
+public class WebhookEventQueue {
+
+    public enum OfferResult {
+        ACCEPTED,
+        DUPLICATE,
+        REJECTED
+    }
+
+    private final KBCClient client;
+    private final FrameHandler handler;
+    private final int capacity;
+    private final ArrayDeque<Frame> memory;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Cache<Object, Boolean> recentEvents;
+    private final File spillFile;
+    private WebhookSpillFile spill;
+    private volatile boolean running;
+    private Thread consumer;
+
+    // ===== 统计 =====
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final LatencyHistogram ackLatency;
+    private volatile int maxDepth;
+
+    public WebhookEventQueue(KBCClient client, FrameHandler handler) {
+        this.client = client;
+        this.handler = handler;
+        this.capacity = Math.max(1, client.getConfig().getInt("webhook-queue-capacity", 4096));
+        this.memory = new ArrayDeque<>(Math.min(capacity, 1024));
+        this.recentEvents = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, client.getConfig().getInt("webhook-dedup-size", 8192)))
+                .expireAfterWrite(Duration.ofMinutes(30))
+                .build();
+        this.spillFile = client.getConfig().getBoolean("webhook-queue-spill", false)
+                ? new File(client.getPluginsFolder(), "webhook-spill.dat")
+                : null;
+
+        final MetricsRegistry metrics = client.getMetrics();
+        this.ackLatency = metrics.histogram("kookbc_webhook_ack_seconds", "Time from receiving a webhook request to acknowledging it");
+        final String help = "Webhook events by queue outcome";
+        metrics.counter("kookbc_webhook_events_total", help, accepted::get, "result", "accepted");
+        metrics.counter("kookbc_webhook_events_total", help, duplicates::get, "result", "duplicate");
+        metrics.counter("kookbc_webhook_events_total", help, rejected::get, "result", "rejected");
+        metrics.counter("kookbc_webhook_events_total", help, spilled::get, "result", "spilled");
+        metrics.counter("kookbc_webhook_events_total", help, processed::get, "result", "processed");
+        metrics.gauge("kookbc_webhook_queue_depth", "Webhook events waiting to be processed", this::getDepth);
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        if (spillFile != null) {
+            try {
+                spill = new WebhookSpillFile(spillFile);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to open the webhook spill file", e);
+            }
+            if (!spill.isEmpty()) {
+                client.getCore().getLogger().info("发现 {} 个上次未处理的 Webhook 事件，将优先处理", spill.size());
+            }
+        }
+        running = true;
+        consumer = startVirtualThread(this::consume, "Webhook-Event-Consumer");
+    }
+
+    /**
+     * 停止接收新事件，并等待已入队的事件处理完成
+     *
+     * <p>溢出到磁盘的事件会保留到下次启动时处理。
+     * 若启用了溢出文件，等待超时后仍在内存队列中的事件也会按接收顺序写入溢出文件，否则这些事件会丢失。
+     * 从溢出文件取出但尚未处理完的事件同样会在下次启动时重新处理。
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            if (!memory.isEmpty() && spill != null) {
+                // they were acknowledged already, KOOK won't send them again
+                try {
+                    if (spill.hasUnacked()) {
+                        // memory only fills up once the file is drained, so these came after the spilled frame being processed
+                        for (Frame frame : memory) {
+                            spill.append(frame);
+                        }
+                    } else {
+                        spill.prepend(memory); // the spilled ones came after the ones in memory
+                    }
+                    client.getCore().getLogger().info("已将 {} 个未处理的 Webhook 事件写入溢出文件，将在下次启动时处理", memory.size());
+                    memory.clear();
+                } catch (IOException e) {
+                    client.getCore().getLogger().error("无法将未处理的 Webhook 事件写入溢出文件", e);
+                }
+            }
+            if (!memory.isEmpty()) {
+                client.getCore().getLogger().warn("Webhook 队列中仍有 {} 个事件未处理，这些事件将丢失", memory.size());
+            }
+            if (spill != null) {
+                try {
+                    spill.close();
+                } catch (IOException e) {
+                    client.getCore().getLogger().warn("关闭 Webhook 溢出文件时发生异常", e);
+                }
+                spill = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        client.getCore().getLogger().debug(getStatisticsReport());
+    }
+
+    /**
+     * 提交一个已通过校验的帧
+     *
+     * @param frame 帧
+     * @return 入队结果，{@link OfferResult#REJECTED} 表示应让 KOOK 稍后重试
+     */
+    public OfferResult offer(Frame frame) {
+        final Object key = frame.getType() == MessageType.EVENT ? dedupKey(frame) : null;
+        if (key != null && recentEvents.asMap().putIfAbsent(key, Boolean.TRUE) != null) {
+            duplicates.incrementAndGet();
+            client.getCore().getLogger().debug("丢弃重复的 Webhook 事件: {}", key);
+            return OfferResult.DUPLICATE;
+        }
+        lock.lock();
+        try {
+            if (!running) {
+                return reject(key);
+            }
+            if (memory.size() < capacity && (spill == null || spill.isEmpty())) {
+                memory.addLast(frame);
+                if (memory.size() > maxDepth) {
+                    maxDepth = memory.size();
+                }
+            } else if (spill != null) {
+                try {
+                    spill.append(frame);
+                } catch (IOException e) {
+                    client.getCore().getLogger().error("无法将 Webhook 事件写入溢出文件", e);
+                    return reject(key);
+                }
+                spilled.incrementAndGet();
+            } else {
+                client.getCore().getLogger().warn("Webhook 事件队列已满 ({})，已拒绝事件", capacity);
+                return reject(key);
+            }
+            accepted.incrementAndGet();
+            notEmpty.signal();
+            return OfferResult.ACCEPTED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private OfferResult reject(@Nullable Object key) {
+        if (key != null) {
+            recentEvents.invalidate(key); // so the retry from KOOK can be accepted later
+        }
+        rejected.incrementAndGet();
+        return OfferResult.REJECTED;
+    }
+
+    @Nullable
+    private static Object dedupKey(Frame frame) {
+        final JsonNode data = frame.getData();
+        if (data != null) {
+            final JsonNode msgId = data.get("msg_id");
+            if (msgId != null && !msgId.isNull() && !msgId.asText().isEmpty()) {
+                return msgId.asText();
+            }
+        }
+        return frame.getSN() >= 0 ? frame.getSN() : null;
+    }
+
+    private void consume() {
+        while (true) {
+            final Frame frame;
+            try {
+                frame = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (frame == null) {
+                return; // stopped and drained
+            }
+            try {
+                handler.handle(frame);
+            } catch (Exception e) {
+                client.getCore().getLogger().error("处理 Webhook 事件时发生异常", e);
+            }
+            processed.incrementAndGet();
+            ack();
+        }
+    }
+
+    // the frame taken from the spill file is processed, it is removed from the file only now
+    //  so it is replayed on the next start if the process crashes while processing it
+    private void ack() {
+        lock.lock();
+        try {
+            if (spill != null && spill.hasUnacked()) {
+                spill.ack();
+            }
+        } catch (IOException e) {
+            client.getCore().getLogger().error("无法更新 Webhook 溢出文件的读取位置", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // returns null if the queue is stopped and there is nothing in memory
+    @Nullable
+    private Frame take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                Frame frame = memory.pollFirst();
+                if (frame != null) {
+                    return frame;
+                }
+                if (spill != null && !spill.isEmpty()) {
+                    try {
+                        frame = spill.poll();
+                    } catch (IOException e) {
+                        client.getCore().getLogger().error("无法从溢出文件读取 Webhook 事件", e);
+                    }
+                    if (frame != null) {
+                        return frame;
+                    }
+                }
+                if (!running) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录一次 Webhook 请求的应答延迟
+     *
+     * @param nanos 从收到请求到发出应答的纳秒数
+     */
+    public void recordAck(long nanos) {
+        ackLatency.record(nanos);
+    }
+
+    public int getDepth() {
+        lock.lock();
+        try {
+            return memory.size() + (spill != null ? spill.size() : 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public double getAverageAckMillis() {
+        final long count = ackLatency.getCount();
+        return count == 0 ? 0 : ackLatency.getSumSeconds() / count * 1000.0;
+    }
+
+    public double getMaxAckMillis() {
+        return ackLatency.getMaxSeconds() * 1000.0;
+    }
+
+    public String getStatisticsReport() {
+        return String.format(
+            """
+            Webhook 队列统计报告:
+            ===========================================
+            当前深度: %d (容量 %d, 峰值 %d)
+            已接收: %d
+            已处理: %d
+            重复丢弃: %d
+            已拒绝: %d
+            溢出到磁盘: %d
+            应答延迟: 平均 %.3f ms, P99 %.3f ms, 最大 %.3f ms (共 %d 次)
+            """,
+            getDepth(),
+            capacity,
+            maxDepth,
+            getAcceptedCount(),
+            getProcessedCount(),
+            getDuplicateCount(),
+            getRejectedCount(),
+            getSpilledCount(),
+            getAverageAckMillis(),
+            ackLatency.getQuantileSeconds(0.99) * 1000.0,
+            getMaxAckMillis(),
+            ackLatency.getCount()
+        );
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.webhook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import snw.kookbc.impl.network.Frame;
+import snw.kookbc.util.JacksonUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// An append-only FIFO of frames on disk, used when the in-memory webhook queue is full.
+// The file starts with [long read position], followed by records of [int length][UTF-8 JSON of {s, sn, d}].
+// The read position is only written by ack(), after the consumer has processed the polled frame,
+//  so a frame being processed when the process crashes is replayed on the next start.
+// Rewriting the records (prepend, compaction on close) goes through a temp file and an atomic rename,
+//  so a crash meanwhile leaves either the old or the new file.
+// Not thread-safe, the owner (WebhookEventQueue) guards it with its lock.
+class WebhookSpillFile implements AutoCloseable {
+    private static final int HEADER_SIZE = Long.BYTES;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private final File file;
+    private FileChannel channel;
+    private long ackedPosition; // the one in the header
+    private long readPosition; // after the polled frames
+    private long writePosition;
+    private int size; // not polled yet
+    private int unacked; // polled, not acknowledged yet
+
+    WebhookSpillFile(File file) throws IOException {
+        this.file = file;
+        this.channel = open(file);
+        this.writePosition = channel.size();
+        if (writePosition < HEADER_SIZE) {
+            writePosition = HEADER_SIZE; // new file, or torn before the header was complete
+            channel.truncate(0);
+        } else {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header, 0);
+            readPosition = header.getLong(0);
+        }
+        if (readPosition < HEADER_SIZE || readPosition > writePosition) {
+            readPosition = HEADER_SIZE;
+        }
+        ackedPosition = readPosition;
+        // count the records left by the last run, they are acknowledged but not processed yet
+        long position = readPosition;
+        final ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+        while (position + Integer.BYTES <= writePosition) {
+            lengthBuffer.clear();
+            readFully(lengthBuffer, position);
+            final int length = lengthBuffer.getInt(0);
+            if (length < 0 || position + Integer.BYTES + length > writePosition) {
+                break; // torn tail, drop it
+            }
+            position += Integer.BYTES + length;
+            size++;
+        }
+        if (position != writePosition) {
+            channel.truncate(position);
+            writePosition = position;
+        }
+        writeHeader();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    // true if a polled frame is not acknowledged yet
+    boolean hasUnacked() {
+        return unacked > 0;
+    }
+
+    void append(Frame frame) throws IOException {
+        final ByteBuffer record = encode(frame);
+        final int length = record.remaining();
+        writeFully(record, writePosition);
+        writePosition += length;
+        size++;
+    }
+
+    // puts the frames before the unconsumed records (including the polled but unacknowledged ones), in the given order
+    // used on shutdown for the frames still in memory, they were accepted before the spilled ones
+    void prepend(Collection<Frame> frames) throws IOException {
+        if (frames.isEmpty()) {
+            return;
+        }
+        final List<ByteBuffer> records = new ArrayList<>(frames.size());
+        for (Frame frame : frames) {
+            records.add(encode(frame));
+        }
+        rewrite(records);
+        size += frames.size();
+    }
+
+    // returns null if there is nothing left, the frame stays in the file until ack() is called
+    Frame poll() throws IOException {
+        if (size == 0) {
+            return null;
+        }
+        final ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+        readFully(lengthBuffer, readPosition);
+        final ByteBuffer body = ByteBuffer.allocate(lengthBuffer.getInt(0));
+        readFully(body, readPosition + Integer.BYTES);
+        readPosition += Integer.BYTES + body.capacity();
+        size--;
+        unacked++;
+        final JsonNode node = JacksonUtil.getMapper().readTree(body.array());
+        return new Frame(node.get("s").asInt(), node.get("sn").asInt(), node.get("d"));
+    }
+
+    // the polled frames are processed, don't replay them on the next start
+    void ack() throws IOException {
+        if (unacked == 0) {
+            return;
+        }
+        unacked = 0;
+        ackedPosition = readPosition;
+        if (size == 0) {
+            // everything is consumed, reuse the file from the beginning
+            // the header is written first, so a crash in between never replays the consumed records
+            ackedPosition = readPosition = HEADER_SIZE;
+            writeHeader();
+            channel.truncate(HEADER_SIZE);
+            writePosition = HEADER_SIZE;
+        } else {
+            writeHeader();
+        }
+    }
+
+    private static ByteBuffer encode(Frame frame) throws IOException {
+        final ObjectNode node = JacksonUtil.createObjectNode();
+        node.put("s", frame.getType().getType());
+        node.put("sn", frame.getSN());
+        node.set("d", frame.getData());
+        final byte[] bytes = JacksonUtil.getMapper().writeValueAsBytes(node);
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+        buffer.putInt(bytes.length).put(bytes).flip();
+        return buffer;
+    }
+
+    // Writes [header][head records][records not acknowledged yet] to a temp file and swaps it in.
+    // The unacknowledged frames become unpolled again.
+    private void rewrite(List<ByteBuffer> head) throws IOException {
+        final File temp = new File(file.getPath() + TEMP_SUFFIX);
+        long position = HEADER_SIZE;
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(0, HEADER_SIZE);
+            writeFully(out, header, 0);
+            for (ByteBuffer record : head) {
+                final int length = record.remaining();
+                writeFully(out, record, position);
+                position += length;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            long copied = ackedPosition;
+            while (copied < writePosition) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), writePosition - copied));
+                readFully(buffer, copied);
+                buffer.flip();
+                final int chunk = buffer.remaining();
+                writeFully(out, buffer, position);
+                position += chunk;
+                copied += chunk;
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = open(file);
+        size += unacked;
+        unacked = 0;
+        ackedPosition = readPosition = HEADER_SIZE;
+        writePosition = position;
+    }
+
+    private void writeHeader() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(0, ackedPosition);
+        writeFully(channel, header, 0);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        final int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position() - start);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        writeFully(channel, buffer, position);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of spill file " + file);
+            }
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ackedPosition > HEADER_SIZE && ackedPosition < writePosition) {
+            // compact the unconsumed records to the beginning, so the file doesn't keep growing across runs
+            rewrite(List.of());
+        }
+        channel.force(true);
+        channel.close();
+    }
+}
@@ -18,13 +18,22 @@
 
 package snw.kookbc.impl.network.ws;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import okhttp3.Request;
 import okhttp3.WebSocket;
 import snw.jkook.util.Validate;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.SharedClientResources;
+import snw.kookbc.impl.metrics.MetricsRegistry;
 import snw.kookbc.impl.network.HttpAPIRoute;
+import snw.kookbc.impl.network.replay.GatewayRecorder;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 // The Connector. It will communicate with Kook WebSocket Server.
 public class Connector {
@@ -34,48 +43,88 @@ public class Connector {
     private WebSocket ws;
     private volatile boolean firstConnected = false; // sub-threads should not work on startup
     private volatile boolean connected = false;
+    private volatile CompletableFuture<Void> hello = new CompletableFuture<>(); // completed by the HELLO of the current WS
     private volatile boolean timeout = false;
     private volatile boolean pingOk = false;
     private volatile boolean requireReconnect = false;
     private final Object reconnectLock = new Object();
+    private final SharedClientResources sharedResources; // null if this client owns its threads
+    private final GatewayRecorder recorder; // null if gateway-record-file is not set
 
     public Connector(KBCClient kbcClient) {
         this.kbcClient = kbcClient;
         this.reconnectStrategy = new ReconnectStrategy();
-        new PingThread().start();
-        new Reconnector(kbcClient, reconnectLock, this).start();
+        this.sharedResources = kbcClient.getSharedResources();
+        this.recorder = openRecorder(kbcClient.getConfig().getString("gateway-record-file", ""));
+        registerMetrics(kbcClient.getMetrics());
+        if (sharedResources != null) {
+            // no dedicated threads per bot, the heartbeat is a task on the shared timer,
+            //  and the reconnect work is submitted to the shared pool on demand
+            new SharedHeartbeat().schedule(30);
+        } else {
+            new PingThread().start();
+            new Reconnector(kbcClient, reconnectLock, this).start();
+        }
+    }
+
+    private void registerMetrics(MetricsRegistry metrics) {
+        final String help = "Reconnect attempts to the gateway";
+        metrics.counter("kookbc_reconnects_total", help, reconnectStrategy::getSuccessfulReconnects, "result", "success");
+        metrics.counter("kookbc_reconnects_total", help, reconnectStrategy::getFailedReconnects, "result", "failure");
+        metrics.gauge("kookbc_gateway_connected", "1 if the gateway connection is established", () -> connected ? 1 : 0);
+    }
+
+    private GatewayRecorder openRecorder(String path) {
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        try {
+            final GatewayRecorder result = new GatewayRecorder(new File(path));
+            kbcClient.getCore().getLogger().info("网关消息将被录制到 {}", result.getFile().getAbsolutePath());
+            return result;
+        } catch (IOException e) {
+            kbcClient.getCore().getLogger().error("无法打开网关录制文件 {}，不会录制网关消息", path, e);
+            return null;
+        }
     }
 
     // should only be called on startup
     public void start() {
-        start0();
+        // the client has just fetched its own user data, no need to ask again for the online state
+        start0(kbcClient.getStartupSelfData());
         firstConnected = true;
     }
 
-    private void start0() {
+    private void start0(JsonNode self) {
         try {
             getGateway();
-            start1();
+            start1(self);
         } catch (Exception e) {
             kbcClient.getCore().getLogger().error("连接启动失败: {}", e.getMessage(), e);
             throw e; // 向上抛出以便 restart() 处理
         }
     }
 
-    private void start1() {
+    private void start1(JsonNode self) {
         do {
             connected = false;
             try {
+                if (self == null) {
+                    self = kbcClient.getNetworkClient().get(HttpAPIRoute.USER_ME.toFullURL());
+                }
                 // if self connected is true, call shutdownHttp()
-                if (kbcClient.getNetworkClient().get(HttpAPIRoute.USER_ME.toFullURL()).get("online").asBoolean()) {
+                if (self.get("online").asBoolean()) {
                     shutdownHttp();
                 }
             } catch (Exception e) {
                 kbcClient.getCore().getLogger().warn("检查在线状态失败（可能是网络问题），继续尝试连接: {}", e.getMessage());
             }
+            self = null; // fetch it again if this round fails
 
             int times = 0;
             do {
+                final CompletableFuture<Void> hello = new CompletableFuture<>();
+                this.hello = hello;
                 try {
                     ws = kbcClient.getNetworkClient().newWebSocket(
                             new Request.Builder()
@@ -83,14 +132,12 @@ public class Connector {
                                     .build(),
                             new WebSocketMessageProcessor(kbcClient, this)
                     );
-                    long ts = System.currentTimeMillis();
                     // 增加超时时间从 6 秒到 15 秒，适应网络波动
-                    while (System.currentTimeMillis() - ts < 15000L) {
-                        if (connected) {
-                            break;
-                        }
-                        Thread.sleep(100); // 避免忙等待
-                    }
+                    hello.get(15, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    kbcClient.getCore().getLogger().warn("等待 HELLO 超时 (第 {} 次)", times + 1);
+                } catch (ExecutionException e) {
+                    kbcClient.getCore().getLogger().warn("WebSocket 连接尝试失败 (第 {} 次): {}", times + 1, e.getCause().getMessage());
                 } catch (Exception e) {
                     kbcClient.getCore().getLogger().warn("WebSocket 连接尝试失败 (第 {} 次): {}", times + 1, e.getMessage());
                 }
@@ -118,6 +165,11 @@ public class Connector {
     }
 
     private void getGateway() {
+        final String fixedLink = kbcClient.getConfig().getString("gateway-url", "");
+        if (fixedLink != null && !fixedLink.isEmpty()) { // e.g. a local stand-in gateway, the API is not asked
+            wsLink = fixedLink;
+            return;
+        }
         try {
             wsLink = kbcClient.getNetworkClient().get(HttpAPIRoute.GATEWAY.toFullURL()).get("url").asText();
             kbcClient.getCore().getLogger().debug("成功获取 WebSocket Gateway: {}", wsLink);
@@ -140,6 +192,21 @@ public class Connector {
         }
     }
 
+    public GatewayRecorder getRecorder() {
+        return recorder;
+    }
+
+    // should only be called when the network system stops, the recorder is kept across reconnects
+    public void closeRecorder() {
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                kbcClient.getCore().getLogger().error("关闭网关录制文件时发生异常", e);
+            }
+        }
+    }
+
     public void shutdownHttp() {
         try {
             kbcClient.getCore().getLogger().debug("已调用 HTTP Bot 离线 API，响应: {}", kbcClient.getNetworkClient().postContent(HttpAPIRoute.USER_BOT_OFFLINE.toFullURL(), "", ""));
@@ -179,7 +246,7 @@ public class Connector {
         // 尝试重连
         try {
             kbcClient.getCore().getLogger().info("开始重连...");
-            start0();
+            start0(null);
             reconnectStrategy.onConnectionSuccess();
         } catch (Exception e) {
             kbcClient.getCore().getLogger().error("重连过程中发生异常", e);
@@ -191,6 +258,9 @@ public class Connector {
 
     public void setConnected(boolean connected) {
         this.connected = connected;
+        if (connected) {
+            hello.complete(null);
+        }
     }
 
     public boolean isTimeout() {
@@ -235,17 +305,48 @@ public class Connector {
     }
 
     public void requestReconnect() {
+        // no effect if HELLO has been received, otherwise start1 gives up this attempt without waiting for the timeout
+        hello.completeExceptionally(new IOException("Connection closed before HELLO"));
         if (!requireReconnect) {
             synchronized (reconnectLock) {
                 if (!requireReconnect) {
                     requireReconnect = true;
                     connected = false;
-                    reconnectLock.notifyAll();
+                    if (sharedResources != null) {
+                        submitReconnect();
+                    } else {
+                        reconnectLock.notifyAll();
+                    }
                 }
             }
         }
     }
 
+    // the shared-mode version of Reconnector loop body
+    private void submitReconnect() {
+        if (!firstConnected) {
+            // same as Reconnector, the request made on startup is ignored
+            reconnectOk();
+            return;
+        }
+        sharedResources.getReconnectExecutor().execute(() -> {
+            try {
+                if (!kbcClient.isRunning()) {
+                    return;
+                }
+                if (!isConnected()) {
+                    kbcClient.getCore().getLogger().info("检测到断线，开始重连流程");
+                    restart();
+                    kbcClient.getCore().getLogger().info("重连流程完成");
+                }
+            } catch (Exception e) {
+                kbcClient.getCore().getLogger().error("重连过程中发生未捕获异常", e);
+            } finally {
+                reconnectOk();
+            }
+        });
+    }
+
     public KBCClient getParent() {
         return kbcClient;
     }
@@ -317,4 +418,57 @@ public class Connector {
             if (!kbcClient.isRunning()) throw new InterruptedException();
         }
     }
+
+    // Same logic as PingThread, but split into steps on the shared timer,
+    //  so it does not hold a thread while waiting.
+    protected class SharedHeartbeat implements Runnable {
+        private int retries = -1; // -1 means the next step is a regular PING
+
+        private void schedule(int sec) {
+            if (!kbcClient.isRunning()) {
+                return;
+            }
+            sharedResources.getHeartbeatTimer().schedule(this, sec, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (!kbcClient.isRunning()) {
+                return;
+            }
+            try {
+                schedule(step());
+            } catch (Throwable e) {
+                kbcClient.getCore().getLogger().error("PING task terminated by critical exception.", e);
+            }
+        }
+
+        // returns the delay before the next step in seconds
+        private int step() {
+            if (retries == -1) {
+                if (!connected) {
+                    return 30;
+                }
+                ping();
+                retries = 0;
+                return 6;
+            }
+            if (retries == 0 && !isTimeout()) {
+                retries = -1;
+                return 30;
+            }
+            if (retries > 0 && isPingOk()) {
+                retries = -1;
+                return 30;
+            }
+            if (retries < 2) {
+                ping();
+                return ++retries == 1 ? 2 : 4;
+            }
+            retries = -1;
+            kbcClient.getCore().getLogger().warn("PING failed. Attempting to reconnect.");
+            requestReconnect();
+            return 30;
+        }
+    }
 }
@@ -42,6 +42,7 @@ public class OkhttpWebSocketNetworkSystem implements WebSocketNetworkSystem {
     public void stop() {
         if (this.connector != null) {
             this.connector.shutdown();
+            this.connector.closeRecorder();
         }
     }
 
@@ -18,7 +18,6 @@
 
 package snw.kookbc.impl.network.ws;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
@@ -28,12 +27,13 @@ import org.jetbrains.annotations.Nullable;
 import snw.kookbc.impl.KBCClient;
 import snw.kookbc.impl.network.Frame;
 import snw.kookbc.impl.network.ListenerFactory;
+import snw.kookbc.impl.network.replay.GatewayRecorder;
 import snw.kookbc.interfaces.network.FrameHandler;
-import snw.kookbc.util.JacksonUtil;
 
 import java.io.IOException;
 import java.net.ProtocolException;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.zip.DataFormatException;
 
 import static snw.kookbc.util.Util.decompressDeflate;
@@ -42,12 +42,20 @@ public class WebSocketMessageProcessor extends WebSocketListener {
     private final KBCClient client;
     private final Connector connector;
     private final FrameHandler listener;
+    private final GatewayRecorder recorder; // null if not recording
 
     @SuppressWarnings("deprecation")
     public WebSocketMessageProcessor(KBCClient client, Connector connector) {
+        this(client, connector, ListenerFactory.getListener(client, connector)::executeEvent);
+    }
+
+    // decoded frames go to the provided handler instead of the SN-ordered listener,
+    //  used by the benchmarks to measure decoding alone
+    public WebSocketMessageProcessor(KBCClient client, Connector connector, FrameHandler listener) {
         this.client = client;
         this.connector = connector;
-        this.listener = ListenerFactory.getListener(client, connector)::executeEvent;
+        this.listener = listener;
+        this.recorder = connector != null ? connector.getRecorder() : null;
     }
 
     @Override
@@ -60,17 +68,10 @@ public class WebSocketMessageProcessor extends WebSocketListener {
     @Override
     public void onMessage(@NotNull WebSocket webSocket, @NotNull String text) {
         super.onMessage(webSocket, text);
+        final byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+        record(encoded, false);
         try {
-            JsonNode object = JacksonUtil.parse(text);
-            JsonNode sNode = object.get("s");
-            JsonNode snNode = object.get("sn");
-            JsonNode dNode = object.get("d");
-
-            int s = sNode.asInt();
-            int sn = snNode != null ? snNode.asInt() : -1;
-
-            Frame frame = new Frame(s, sn, dNode);
-            listener.executeEvent(frame);
+            listener.executeEvent(Frame.decode(encoded));
         } catch (Exception e) {
             client.getCore().getLogger().error("处理 WebSocket 消息时发生异常: {}, 原始消息: {}", e.getMessage(), text, e);
             // 不触发重连，因为可能只是单个消息格式错误
@@ -81,32 +82,34 @@ public class WebSocketMessageProcessor extends WebSocketListener {
     @Override
     public void onMessage(@NotNull WebSocket webSocket, @NotNull ByteString bytes) {
         super.onMessage(webSocket, bytes);
-        String res = null;
+        final byte[] raw = bytes.toByteArray();
+        record(raw, true);
+        final byte[] res;
         try {
-            res = new String(decompressDeflate(bytes.toByteArray()));
-            JsonNode object = JacksonUtil.parse(res);
-            JsonNode sNode = object.get("s");
-            JsonNode snNode = object.get("sn");
-            JsonNode dNode = object.get("d");
-
-            int s = sNode.asInt();
-            int sn = snNode != null ? snNode.asInt() : -1;
-
-            Frame frame = new Frame(s, sn, dNode);
-            listener.executeEvent(frame);
+            res = decompressDeflate(raw);
         } catch (DataFormatException | IOException e) {
             client.getCore().getLogger().error("解压缩 WebSocket 数据失败: {}, 数据长度: {} 字节", e.getMessage(), bytes.size(), e);
             // 不触发重连，因为可能只是单个消息损坏
+            return;
+        }
+        try {
+            listener.executeEvent(Frame.decode(res));
         } catch (Exception e) {
-            if (res != null) {
-                client.getCore().getLogger().error("处理压缩 WebSocket 消息时发生异常: {}, 原始消息: {}", e.getMessage(), res, e);
-            } else {
-                client.getCore().getLogger().error("处理压缩 WebSocket 消息时发生异常: {}", e.getMessage(), e);
-            }
+            client.getCore().getLogger().error("处理压缩 WebSocket 消息时发生异常: {}, 原始消息: {}", e.getMessage(), new String(res, StandardCharsets.UTF_8), e);
             // 不触发重连，因为可能只是单个消息格式错误
         }
     }
 
+    private void record(byte[] payload, boolean compressed) {
+        if (recorder != null) {
+            try {
+                recorder.record(payload, compressed);
+            } catch (IOException e) {
+                client.getCore().getLogger().warn("录制网关消息失败: {}", e.getMessage());
+            }
+        }
+    }
+
     @Override
     public void onFailure(@NotNull WebSocket webSocket, @NotNull Throwable t, @Nullable Response response) {
         super.onFailure(webSocket, t, response);
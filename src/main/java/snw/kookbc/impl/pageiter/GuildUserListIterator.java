@@ -18,11 +18,16 @@
 
 package snw.kookbc.impl.pageiter;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import snw.jkook.entity.User;
+import snw.jkook.util.Meta;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.entity.builder.StreamingDecoder;
 import snw.kookbc.impl.network.HttpAPIRoute;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -70,6 +75,57 @@ public class GuildUserListIterator extends PageIteratorImpl<Set<User>> {
         return base;
     }
 
+    // The member list is one of the largest responses, so users are decoded from the byte stream directly
+    @Override
+    protected boolean requestPage(String url) {
+        final Boolean hasData = client.getNetworkClient().get(url, this::readPage);
+        if (hasData == null) { // no "data" in the response
+            pageLoaded(-1, null);
+            return false;
+        }
+        return hasData;
+    }
+
+    private boolean readPage(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            pageLoaded(-1, null);
+            return false;
+        }
+        Set<User> users = null;
+        int itemCount = -1;
+        Meta meta = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            final JsonToken token = parser.nextToken();
+            if ("items".equals(name) && token == JsonToken.START_ARRAY) {
+                users = new HashSet<>();
+                itemCount = 0;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    itemCount++;
+                    final StreamingDecoder.UserFields user = parser.currentToken() == JsonToken.START_OBJECT
+                            ? StreamingDecoder.readUser(parser) : null;
+                    if (user != null) {
+                        // 使用完整的用户数据,避免额外的 HTTP 请求
+                        users.add(client.getStorage().getUser(user.getId(), user));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if ("meta".equals(name) && token == JsonToken.START_OBJECT) {
+                meta = readMeta(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        final boolean hasData = users != null && !users.isEmpty();
+        if (hasData) {
+            object = users;
+        }
+        pageLoaded(itemCount, meta);
+        return hasData;
+    }
+
     @Override
     protected void processElements(JsonNode node) {
         object = new HashSet<>(node.size());
@@ -18,13 +18,17 @@
 
 package snw.kookbc.impl.pageiter;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Range;
 import snw.jkook.util.Meta;
 import snw.jkook.util.PageIterator;
 import snw.jkook.util.Validate;
 import snw.kookbc.impl.KBCClient;
 
+import java.io.IOException;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -52,10 +56,21 @@ public abstract class PageIteratorImpl<E> implements PageIterator<E> {
             executedOnce = true;
         }
         String reqUrl = getRequestURL();
+        return requestPage(reqUrl + (reqUrl.contains("?") ? "&" : "?") + "page=" + currentPage.get() + "&page_size=" + getPageSize());
+    }
+
+    /**
+     * 请求一页数据，处理其中的数据项，并调用 {@link #pageLoaded(int, Meta)} 。
+     *
+     * <p>默认实现将响应构建为树后交给 {@link #processElements(JsonNode)} ，
+     * 子类可以覆盖此方法，直接从响应的字节流中解码数据项。
+     *
+     * @param url 带分页参数的请求 URL
+     * @return 此页是否有数据
+     */
+    protected boolean requestPage(String url) {
         // 使用Jackson API获得更好的性能
-        JsonNode object = client.getNetworkClient().get(
-                reqUrl + (reqUrl.contains("?") ? "&" : "?") + "page=" + currentPage.get() + "&page_size=" + getPageSize()
-        );
+        JsonNode object = client.getNetworkClient().get(url);
 
         JsonNode meta = object.get("meta");
         JsonNode items = object.get("items");
@@ -67,28 +82,70 @@ public abstract class PageIteratorImpl<E> implements PageIterator<E> {
             hasData = true;
         }
 
-        // 然后判断是否还有下一页
-        if (meta != null && !meta.isNull()) {
+        pageLoaded(items != null && items.isArray() ? items.size() : -1,
+                meta != null && !meta.isNull() ? new MetaImpl(meta.get("page").asInt(),
+                        meta.get("page_total").asInt(),
+                        meta.get("page_size").asInt(),
+                        meta.get("total").asInt()) : null);
+
+        // 返回当前是否有数据（不是下一页是否有数据）
+        return hasData;
+    }
+
+    /**
+     * 根据已请求的一页数据判断是否还有下一页。
+     *
+     * @param itemCount 此页数据项的数量，响应中没有数据项数组时为 -1
+     * @param meta      此页的分页信息，可以为 {@code null}
+     */
+    protected final void pageLoaded(int itemCount, @Nullable Meta meta) {
+        if (meta != null) {
             // 有 meta 字段：使用分页信息判断是否有下一页
-            optionalMeta = Optional.of(new MetaImpl(meta.get("page").asInt(),
-                    meta.get("page_total").asInt(),
-                    meta.get("page_size").asInt(),
-                    meta.get("total").asInt()));
-            next = currentPage.getAndAdd(1) <= optionalMeta.get().getPageTotal();
-        } else {
+            optionalMeta = Optional.of(meta);
+            next = currentPage.getAndAdd(1) <= meta.getPageTotal();
+        } else if (itemCount >= 0) {
             // 无 meta 字段：根据返回的 items 数量判断是否有下一页
             // 如果返回的 items 数量等于 page_size，可能还有下一页
-            if (items != null && items.isArray()) {
-                int itemCount = items.size();
-                next = itemCount >= pageSizePerRequest;
-                currentPage.incrementAndGet();
-            } else {
-                next = false;
-            }
+            next = itemCount >= pageSizePerRequest;
+            currentPage.incrementAndGet();
+        } else {
+            next = false;
         }
+    }
 
-        // 返回当前是否有数据（不是下一页是否有数据）
-        return hasData;
+    /**
+     * 读取分页信息对象。
+     *
+     * @param parser 位于 {@code meta} 对象的 {@link JsonToken#START_OBJECT} 的解析器，返回时位于对应的 {@link JsonToken#END_OBJECT}
+     * @return 分页信息
+     * @throws IOException 数据不是合法的 JSON 时抛出
+     */
+    protected static Meta readMeta(JsonParser parser) throws IOException {
+        int page = 0;
+        int pageTotal = 0;
+        int pageSize = 0;
+        int total = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "page":
+                    page = parser.getValueAsInt();
+                    break;
+                case "page_total":
+                    pageTotal = parser.getValueAsInt();
+                    break;
+                case "page_size":
+                    pageSize = parser.getValueAsInt();
+                    break;
+                case "total":
+                    total = parser.getValueAsInt();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new MetaImpl(page, pageTotal, pageSize, total);
     }
 
     @Override
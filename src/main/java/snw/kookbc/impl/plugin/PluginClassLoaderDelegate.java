@@ -31,16 +31,7 @@ public final class PluginClassLoaderDelegate extends ClassLoader {
 
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
-        for (SimplePluginClassLoader l : SimplePluginClassLoader.INSTANCES) {
-            if (l == null) {
-                continue;
-            }
-            try {
-                return l.findClass0(name, true);
-            } catch (ClassNotFoundException ignored) {
-            }
-        }
-        throw new ClassNotFoundException(name);
+        return SimplePluginClassLoader.findInPlugins(name, null);
     }
 
 }
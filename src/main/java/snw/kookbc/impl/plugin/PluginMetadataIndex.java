@@ -0,0 +1,197 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.impl.plugin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.io.ByteStreams;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import snw.kookbc.util.JacksonUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * 插件元数据索引。
+ * <p>
+ * 记录插件目录中每个 jar 的 plugin.yml 内容（或者它没有 plugin.yml 这一事实），以文件的大小与修改时间判断是否仍然有效。
+ * 文件未变化时直接使用索引中的内容，无需再次打开 jar 。
+ * <p>
+ * 本类是线程安全的，可以在多个线程中同时查询。索引只在调用 {@link #save()} 时写回磁盘。
+ */
+public final class PluginMetadataIndex {
+    private static final int VERSION = 1;
+    private static final String PLUGIN_YML = "plugin.yml";
+
+    private final File file;
+    private final Logger logger;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile boolean dirty;
+
+    public PluginMetadataIndex(File file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+        load();
+    }
+
+    /**
+     * 获取 jar 中 plugin.yml 的内容。
+     *
+     * @param jar 插件文件
+     * @return plugin.yml 的内容，若文件不是 jar 或其中没有 plugin.yml 则返回 {@code null}
+     * @throws IOException 读取 jar 失败
+     */
+    public @Nullable byte[] getPluginYml(File jar) throws IOException {
+        final String key = jar.getAbsolutePath();
+        final long size = jar.length();
+        final long modified = jar.lastModified();
+        final Entry cached = entries.get(key);
+        if (cached != null && cached.size == size && cached.modified == modified) {
+            hits.increment();
+            return cached.pluginYml;
+        }
+        misses.increment();
+        final byte[] content = read(jar);
+        entries.put(key, new Entry(size, modified, content));
+        dirty = true;
+        return content;
+    }
+
+    // drop the entries of files that are gone
+    public void retainOnly(Collection<File> files) {
+        final Set<String> keep = new HashSet<>();
+        for (File f : files) {
+            keep.add(f.getAbsolutePath());
+        }
+        for (Iterator<String> iterator = entries.keySet().iterator(); iterator.hasNext(); ) {
+            if (!keep.contains(iterator.next())) {
+                iterator.remove();
+                dirty = true;
+            }
+        }
+    }
+
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+        final ObjectNode root = JacksonUtil.getMapper().createObjectNode();
+        root.put("version", VERSION);
+        final ObjectNode files = root.putObject("files");
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            final ObjectNode node = files.putObject(e.getKey());
+            node.put("size", e.getValue().size);
+            node.put("modified", e.getValue().modified);
+            if (e.getValue().pluginYml != null) {
+                node.put("plugin-yml", new String(e.getValue().pluginYml, StandardCharsets.UTF_8));
+            } else {
+                node.putNull("plugin-yml");
+            }
+        }
+        try {
+            final File parent = file.getAbsoluteFile().getParentFile();
+            Files.createDirectories(parent.toPath());
+            final File temp = new File(parent, file.getName() + ".tmp");
+            JacksonUtil.getMapper().writeValue(temp, root);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+        } catch (IOException e) {
+            logger.warn("无法保存插件元数据索引 {}", file, e);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            final JsonNode root = JacksonUtil.getMapper().readTree(file);
+            if (root.path("version").asInt() != VERSION) {
+                return; // rebuilt on next save
+            }
+            final Iterator<Map.Entry<String, JsonNode>> fields = root.path("files").fields();
+            while (fields.hasNext()) {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                final JsonNode node = field.getValue();
+                final JsonNode yml = node.get("plugin-yml");
+                entries.put(field.getKey(), new Entry(
+                        node.path("size").asLong(-1),
+                        node.path("modified").asLong(-1),
+                        yml == null || yml.isNull() ? null : yml.asText().getBytes(StandardCharsets.UTF_8)
+                ));
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("无法读取插件元数据索引 {}，将重新扫描所有插件", file, e);
+            entries.clear();
+        }
+    }
+
+    private static @Nullable byte[] read(File jar) throws IOException {
+        if (!jar.getName().endsWith(".jar")) {
+            return null;
+        }
+        try (JarFile jarFile = new JarFile(jar)) {
+            final JarEntry entry = jarFile.getJarEntry(PLUGIN_YML);
+            if (entry == null) {
+                return null;
+            }
+            try (InputStream stream = jarFile.getInputStream(entry)) {
+                return ByteStreams.toByteArray(stream);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        @Nullable
+        private final byte[] pluginYml;
+
+        private Entry(long size, long modified, @Nullable byte[] pluginYml) {
+            this.size = size;
+            this.modified = modified;
+            this.pluginYml = pluginYml;
+        }
+    }
+}
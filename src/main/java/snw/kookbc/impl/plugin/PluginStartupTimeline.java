@@ -0,0 +1,103 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.impl.plugin;
+
+import org.slf4j.Logger;
+import snw.jkook.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 插件启动时间线。
+ * <p>
+ * 记录每个插件 {@code onLoad} 与启用（包括 {@code reloadConfig} 与 {@code onEnable}）开始的时刻与耗时，
+ * 以及它所在的依赖层与执行线程，在启动完成后输出，用于找出拖慢启动的插件。
+ * <p>
+ * 本类是线程安全的，插件可以在多个线程中同时记录。
+ */
+public final class PluginStartupTimeline {
+    private final long origin = System.nanoTime();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    // the layer is -1 if plugins are enabled one by one
+    public void loaded(Plugin plugin, int layer, long start) {
+        final Entry entry = entry(plugin, layer);
+        entry.loadStart = start - origin;
+        entry.loadNanos = System.nanoTime() - start;
+        entry.thread = Thread.currentThread().getName();
+    }
+
+    public void enabled(Plugin plugin, int layer, long start) {
+        final Entry entry = entry(plugin, layer);
+        entry.enableStart = start - origin;
+        entry.enableNanos = System.nanoTime() - start;
+        entry.thread = Thread.currentThread().getName();
+    }
+
+    public void report(Logger logger) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        final List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingInt((Entry e) -> e.layer).thenComparingLong(e -> e.loadStart));
+        logger.info("插件启动时间线 (共 {} 个插件, 耗时 {} ms):", sorted.size(), millis(System.nanoTime() - origin));
+        for (Entry e : sorted) {
+            logger.info("  {}{}: 加载 +{} ms 用时 {} ms, 启用 +{} ms 用时 {} ms ({})",
+                    e.layer < 0 ? "" : "[第 " + e.layer + " 层] ", e.name,
+                    millis(e.loadStart), millis(e.loadNanos),
+                    e.enableStart < 0 ? "-" : millis(e.enableStart), e.enableStart < 0 ? "-" : millis(e.enableNanos),
+                    e.thread);
+        }
+    }
+
+    private Entry entry(Plugin plugin, int layer) {
+        final String name = plugin.getDescription().getName();
+        return entries.computeIfAbsent(name, k -> new Entry(name, layer));
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static final class Entry {
+        private final String name;
+        private final int layer;
+        // each field is written by one thread only and read after the phase is joined
+        private long loadStart;
+        private long loadNanos;
+        private long enableStart = -1;
+        private long enableNanos;
+        private String thread;
+
+        private Entry(String name, int layer) {
+            this.name = name;
+            this.layer = layer;
+        }
+    }
+}
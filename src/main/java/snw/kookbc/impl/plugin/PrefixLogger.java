@@ -22,12 +22,19 @@ import org.slf4j.Logger;
 import org.slf4j.Marker;
 
 // A SLF4J Logger implementation that added a prefix on every log message
+// The prefixed messages are only built if the level is enabled, and they are cached by the identity of the
+//  original message, so the (usually constant) message patterns are not concatenated again on every call.
+// Slots are replaced by a CLOCK-like rule: a hit marks the entry, a miss on a marked entry only clears the mark,
+//  and a miss on an unmarked entry replaces it. So patterns that keep recurring win their slots over the one-off
+//  messages logged first (e.g. during startup), and messages built per call don't push them out.
 public final class PrefixLogger implements Logger {
+    private static final int CACHE_SIZE = 256; // must be a power of 2
     private final String prefix;
     private final Logger logger;
+    private final Entry[] cache = new Entry[CACHE_SIZE];
 
     public PrefixLogger(String prefix, Logger logger) {
-        this.prefix = "[" + prefix + "]";
+        this.prefix = "[" + prefix + "] ";
         this.logger = logger;
     }
 
@@ -43,27 +50,37 @@ public final class PrefixLogger implements Logger {
 
     @Override
     public void trace(String s) {
-        logger.trace(format(s));
+        if (logger.isTraceEnabled()) {
+            logger.trace(format(s));
+        }
     }
 
     @Override
     public void trace(String s, Object o) {
-        logger.trace(format(s), o);
+        if (logger.isTraceEnabled()) {
+            logger.trace(format(s), o);
+        }
     }
 
     @Override
     public void trace(String s, Object o, Object o1) {
-        logger.trace(format(s), o, o1);
+        if (logger.isTraceEnabled()) {
+            logger.trace(format(s), o, o1);
+        }
     }
 
     @Override
     public void trace(String s, Object... objects) {
-        logger.trace(format(s), objects);
+        if (logger.isTraceEnabled()) {
+            logger.trace(format(s), objects);
+        }
     }
 
     @Override
     public void trace(String s, Throwable throwable) {
-        logger.trace(format(s), throwable);
+        if (logger.isTraceEnabled()) {
+            logger.trace(format(s), throwable);
+        }
     }
 
     @Override
@@ -73,27 +90,37 @@ public final class PrefixLogger implements Logger {
 
     @Override
     public void trace(Marker marker, String s) {
-        logger.trace(marker, format(s));
+        if (logger.isTraceEnabled(marker)) {
+            logger.trace(marker, format(s));
+        }
     }
 
     @Override
     public void trace(Marker marker, String s, Object o) {
-        logger.trace(marker, format(s), o);
+        if (logger.isTraceEnabled(marker)) {
+            logger.trace(marker, format(s), o);
+        }
     }
 
     @Override
     public void trace(Marker marker, String s, Object o, Object o1) {
-        logger.trace(marker, format(s), o, o1);
+        if (logger.isTraceEnabled(marker)) {
+            logger.trace(marker, format(s), o, o1);
+        }
     }
 
     @Override
     public void trace(Marker marker, String s, Object... objects) {
-        logger.trace(marker, format(s), objects);
+        if (logger.isTraceEnabled(marker)) {
+            logger.trace(marker, format(s), objects);
+        }
     }
 
     @Override
     public void trace(Marker marker, String s, Throwable throwable) {
-        logger.trace(marker, format(s), throwable);
+        if (logger.isTraceEnabled(marker)) {
+            logger.trace(marker, format(s), throwable);
+        }
     }
 
     @Override
@@ -103,27 +130,37 @@ public final class PrefixLogger implements Logger {
 
     @Override
     public void debug(String s) {
-        logger.debug(format(s));
+        if (logger.isDebugEnabled()) {
+            logger.debug(format(s));
+        }
     }
 
     @Override
     public void debug(String s, Object o) {
-        logger.debug(format(s), o);
+        if (logger.isDebugEnabled()) {
+            logger.debug(format(s), o);
+        }
     }
 
     @Override
     public void debug(String s, Object o, Object o1) {
-        logger.debug(format(s), o, o1);
+        if (logger.isDebugEnabled()) {
+            logger.debug(format(s), o, o1);
+        }
     }
 
     @Override
     public void debug(String s, Object... objects) {
-        logger.debug(format(s), objects);
+        if (logger.isDebugEnabled()) {
+            logger.debug(format(s), objects);
+        }
     }
 
     @Override
     public void debug(String s, Throwable throwable) {
-        logger.debug(format(s), throwable);
+        if (logger.isDebugEnabled()) {
+            logger.debug(format(s), throwable);
+        }
     }
 
     @Override
@@ -133,27 +170,37 @@ public final class PrefixLogger implements Logger {
 
     @Override
     public void debug(Marker marker, String s) {
-        logger.debug(marker, format(s));
+        if (logger.isDebugEnabled(marker)) {
+            logger.debug(marker, format(s));
+        }
     }
 
     @Override
     public void debug(Marker marker, String s, Object o) {
-        logger.debug(marker, format(s), o);
+        if (logger.isDebugEnabled(marker)) {
+            logger.debug(marker, format(s), o);
+        }
     }
 
     @Override
     public void debug(Marker marker, String s, Object o, Object o1) {
-        logger.debug(marker, format(s), o, o1);
+        if (logger.isDebugEnabled(marker)) {
+            logger.debug(marker, format(s), o, o1);
+        }
     }
 
     @Override
     public void debug(Marker marker, String s, Object... objects) {
-        logger.debug(marker, format(s), objects);
+        if (logger.isDebugEnabled(marker)) {
+            logger.debug(marker, format(s), objects);
+        }
     }
 
     @Override
     public void debug(Marker marker, String s, Throwable throwable) {
-        logger.debug(marker, format(s), throwable);
+        if (logger.isDebugEnabled(marker)) {
+            logger.debug(marker, format(s), throwable);
+        }
     }
 
     @Override
@@ -163,27 +210,37 @@ public final class PrefixLogger implements Logger {
 
     @Override
     public void info(String s) {
-        logger.info(format(s));
+        if (logger.isInfoEnabled()) {
+            logger.info(format(s));
+        }
     }
 
     @Override
     public void info(String s, Object o) {
-        logger.info(format(s), o);
+        if (logger.isInfoEnabled()) {
+            logger.info(format(s), o);
+        }
     }
 
     @Override
     public void info(String s, Object o, Object o1) {
-        logger.info(format(s), o, o1);
+        if (logger.isInfoEnabled()) {
+            logger.info(format(s), o, o1);
+        }
     }
 
     @Override
     public void info(String s, Object... objects) {
-        logger.info(format(s), objects);
+        if (logger.isInfoEnabled()) {
+            logger.info(format(s), objects);
+        }
     }
 
     @Override
     public void info(String s, Throwable throwable) {
-        logger.info(format(s), throwable);
+        if (logger.isInfoEnabled()) {
+            logger.info(format(s), throwable);
+        }
     }
 
     @Override
@@ -193,27 +250,37 @@ public final class PrefixLogger implements Logger {
 
     @Override
     public void info(Marker marker, String s) {
-        logger.info(marker, format(s));
+        if (logger.isInfoEnabled(marker)) {
+            logger.info(marker, format(s));
+        }
     }
 
     @Override
     public void info(Marker marker, String s, Object o) {
-        logger.info(marker, format(s), o);
+        if (logger.isInfoEnabled(marker)) {
+            logger.info(marker, format(s), o);
+        }
     }
 
     @Override
     public void info(Marker marker, String s, Object o, Object o1) {
-        logger.info(marker, format(s), o, o1);
+        if (logger.isInfoEnabled(marker)) {
+            logger.info(marker, format(s), o, o1);
+        }
     }
 
     @Override
     public void info(Marker marker, String s, Object... objects) {
-        logger.info(marker, format(s), objects);
+        if (logger.isInfoEnabled(marker)) {
+            logger.info(marker, format(s), objects);
+        }
     }
 
     @Override
     public void info(Marker marker, String s, Throwable throwable) {
-        logger.info(marker, format(s), throwable);
+        if (logger.isInfoEnabled(marker)) {
+            logger.info(marker, format(s), throwable);
+        }
     }
 
     @Override
@@ -223,27 +290,37 @@ public final class PrefixLogger implements Logger {
 
     @Override
     public void warn(String s) {
-        logger.warn(format(s));
+        if (logger.isWarnEnabled()) {
+            logger.warn(format(s));
+        }
     }
 
     @Override
     public void warn(String s, Object o) {
-        logger.warn(format(s), o);
+        if (logger.isWarnEnabled()) {
+            logger.warn(format(s), o);
+        }
     }
 
     @Override
     public void warn(String s, Object... objects) {
-        logger.warn(format(s), objects);
+        if (logger.isWarnEnabled()) {
+            logger.warn(format(s), objects);
+        }
     }
 
     @Override
     public void warn(String s, Object o, Object o1) {
-        logger.warn(format(s), o, o1);
+        if (logger.isWarnEnabled()) {
+            logger.warn(format(s), o, o1);
+        }
     }
 
     @Override
     public void warn(String s, Throwable throwable) {
-        logger.warn(format(s), throwable);
+        if (logger.isWarnEnabled()) {
+            logger.warn(format(s), throwable);
+        }
     }
 
     @Override
@@ -253,27 +330,37 @@ public final class PrefixLogger implements Logger {
 
     @Override
     public void warn(Marker marker, String s) {
-        logger.warn(marker, format(s));
+        if (logger.isWarnEnabled(marker)) {
+            logger.warn(marker, format(s));
+        }
     }
 
     @Override
     public void warn(Marker marker, String s, Object o) {
-        logger.warn(marker, format(s), o);
+        if (logger.isWarnEnabled(marker)) {
+            logger.warn(marker, format(s), o);
+        }
     }
 
     @Override
     public void warn(Marker marker, String s, Object o, Object o1) {
-        logger.warn(marker, format(s), o, o1);
+        if (logger.isWarnEnabled(marker)) {
+            logger.warn(marker, format(s), o, o1);
+        }
     }
 
     @Override
     public void warn(Marker marker, String s, Object... objects) {
-        logger.warn(marker, format(s), objects);
+        if (logger.isWarnEnabled(marker)) {
+            logger.warn(marker, format(s), objects);
+        }
     }
 
     @Override
     public void warn(Marker marker, String s, Throwable throwable) {
-        logger.warn(marker, format(s), throwable);
+        if (logger.isWarnEnabled(marker)) {
+            logger.warn(marker, format(s), throwable);
+        }
     }
 
     @Override
@@ -283,27 +370,37 @@ public final class PrefixLogger implements Logger {
 
     @Override
     public void error(String s) {
-        logger.error(format(s));
+        if (logger.isErrorEnabled()) {
+            logger.error(format(s));
+        }
     }
 
     @Override
     public void error(String s, Object o) {
-        logger.error(format(s), o);
+        if (logger.isErrorEnabled()) {
+            logger.error(format(s), o);
+        }
     }
 
     @Override
     public void error(String s, Object o, Object o1) {
-        logger.error(format(s), o, o1);
+        if (logger.isErrorEnabled()) {
+            logger.error(format(s), o, o1);
+        }
     }
 
     @Override
     public void error(String s, Object... objects) {
-        logger.error(format(s), objects);
+        if (logger.isErrorEnabled()) {
+            logger.error(format(s), objects);
+        }
     }
 
     @Override
     public void error(String s, Throwable throwable) {
-        logger.error(format(s), throwable);
+        if (logger.isErrorEnabled()) {
+            logger.error(format(s), throwable);
+        }
     }
 
     @Override
@@ -313,30 +410,67 @@ public final class PrefixLogger implements Logger {
 
     @Override
     public void error(Marker marker, String s) {
-        logger.error(marker, format(s));
+        if (logger.isErrorEnabled(marker)) {
+            logger.error(marker, format(s));
+        }
     }
 
     @Override
     public void error(Marker marker, String s, Object o) {
-        logger.error(marker, format(s), o);
+        if (logger.isErrorEnabled(marker)) {
+            logger.error(marker, format(s), o);
+        }
     }
 
     @Override
     public void error(Marker marker, String s, Object o, Object o1) {
-        logger.error(marker, format(s), o, o1);
+        if (logger.isErrorEnabled(marker)) {
+            logger.error(marker, format(s), o, o1);
+        }
     }
 
     @Override
     public void error(Marker marker, String s, Object... objects) {
-        logger.error(marker, format(s), objects);
+        if (logger.isErrorEnabled(marker)) {
+            logger.error(marker, format(s), objects);
+        }
     }
 
     @Override
     public void error(Marker marker, String s, Throwable throwable) {
-        logger.error(marker, format(s), throwable);
+        if (logger.isErrorEnabled(marker)) {
+            logger.error(marker, format(s), throwable);
+        }
     }
 
     private String format(String s) {
-        return prefix + " " + s;
+        final int slot = System.identityHashCode(s) & (CACHE_SIZE - 1);
+        final Entry entry = cache[slot]; // racy, but message and formatted are final
+        if (entry != null) {
+            if (entry.message == s) {
+                if (!entry.referenced) {
+                    entry.referenced = true; // only written once per sweep, the hot path only reads it
+                }
+                return entry.formatted;
+            }
+            if (entry.referenced) {
+                entry.referenced = false; // second chance
+                return prefix + s;
+            }
+        }
+        final String result = prefix + s;
+        cache[slot] = new Entry(s, result); // racing threads may replace each other's entry, either is fine
+        return result;
+    }
+
+    private static final class Entry {
+        final String message;
+        final String formatted;
+        boolean referenced; // a lost update only delays an eviction
+
+        Entry(String message, String formatted) {
+            this.message = message;
+            this.formatted = formatted;
+        }
     }
 }
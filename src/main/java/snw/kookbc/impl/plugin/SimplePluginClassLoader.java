@@ -34,6 +34,7 @@ import snw.kookbc.impl.launch.AccessClassLoader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -41,9 +42,14 @@ import java.security.CodeSigner;
 import java.security.CodeSource;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -51,8 +57,18 @@ import java.util.jar.Manifest;
 // The Plugin ClassLoader.
 // Call close method on unused instances to ensure the instance will be fully destroyed.
 public class SimplePluginClassLoader extends PluginClassLoader {
-    public static final Collection<SimplePluginClassLoader> INSTANCES = Collections.newSetFromMap(new WeakHashMap<>());
+    public static final Collection<SimplePluginClassLoader> INSTANCES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    // package name -> loaders whose jar contains classes of that package
+    // weak like INSTANCES, so the loaders that are never closed don't leak, the cleared references are dropped on lookup
+    private static final Map<String, List<WeakReference<SimplePluginClassLoader>>> PACKAGE_INDEX = new ConcurrentHashMap<>();
+    // loaders that cannot be indexed (e.g. the plugin is not a jar), they are always asked
+    private static final Set<SimplePluginClassLoader> UNINDEXED = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    // false if a superclass is not parallel capable, getClassLoadingLock(name) returns the whole loader then
+    private static final boolean PARALLEL_CAPABLE;
     private final Map<String, Class<?>> cache = new ConcurrentHashMap<>();
+    // classes known to be absent from this plugin, only filled after the plugin file is known
+    private final Set<String> missing = ConcurrentHashMap.newKeySet();
+    private final Set<String> indexedPackages = new HashSet<>();
     private final KBCClient client;
     @Nullable
     private final AccessClassLoader parentClassLoader;
@@ -62,7 +78,7 @@ public class SimplePluginClassLoader extends PluginClassLoader {
     private Manifest manifest;
 
     static {
-        ClassLoader.registerAsParallelCapable();
+        PARALLEL_CAPABLE = ClassLoader.registerAsParallelCapable();
     }
 
     public SimplePluginClassLoader(KBCClient client, @Nullable AccessClassLoader parent) {
@@ -120,6 +136,9 @@ public class SimplePluginClassLoader extends PluginClassLoader {
             if (file.getName().endsWith(".jar")) {
                 this.jarFile = new JarFile(file);
                 this.manifest = jarFile.getManifest();
+                index();
+            } else {
+                UNINDEXED.add(this);
             }
             Class<?> loadClass = this.loadClass(mainClassName, true);
             Class<? extends Plugin> main = loadClass.asSubclass(Plugin.class);
@@ -143,8 +162,9 @@ public class SimplePluginClassLoader extends PluginClassLoader {
     }
 
     public final Class<?> findClass0(String name, boolean dontCallOther) throws ClassNotFoundException {
-        if (cache.containsKey(name)) {
-            return cache.get(name);
+        final Class<?> cached = cache.get(name);
+        if (cached != null) {
+            return cached;
         }
         if (parentClassLoader != null && (name.startsWith("snw.kookbc.") || name.startsWith("snw.jkook."))) {
             Class<?> clazz = parentClassLoader.findClass(name);
@@ -152,55 +172,18 @@ public class SimplePluginClassLoader extends PluginClassLoader {
             return clazz;
         }
         Throwable throwable = null;
-        try {
-            String path = name.replace('.', '/').concat(".class");
-            Class<?> result = null;
-            if (jarFile != null) {
-                JarEntry entry = jarFile.getJarEntry(path);
-                if (entry != null) {
-                    try (InputStream is = jarFile.getInputStream(entry)) {
-                        byte[] classBytes = ByteStreams.toByteArray(is);
-
-                        int dot = name.lastIndexOf('.');
-                        if (dot != -1) {
-                            String pkgName = name.substring(0, dot);
-                            if (this.getPackage(pkgName) == null) {
-                                try {
-                                    if (this.manifest != null) {
-                                        this.definePackage(pkgName, this.manifest, this.url);
-                                    } else {
-                                        this.definePackage(pkgName, null, null, null, null, null, null, null);
-                                    }
-                                } catch (IllegalArgumentException var20) {
-                                    if (this.getPackage(pkgName) == null) {
-                                        throw new IllegalStateException("Cannot find package " + pkgName);
-                                    }
-                                }
-                            }
-                        }
-
-
-                        CodeSigner[] signers = entry.getCodeSigners();
-                        CodeSource source = new CodeSource(getUrl(), signers);
-                        result = this.defineClass(name, classBytes, 0, classBytes.length, source);
-                    } catch (Exception e) {
-                        throwable = e;
-                        throw throwable;
-                    }
-                }
-            }
-            if (result == null) {
-                result = super.findClass(name);
-            }
-            if (result != null) {
+        if (!missing.contains(name)) {
+            try {
+                final Class<?> result = findLocalLocked(name);
                 cache.put(name, result);
                 return result;
-            }
-        } catch (Throwable error) {
-            if (throwable != null) {
-                throwable.addSuppressed(error);
-            } else {
-                throwable = error;
+            } catch (ClassNotFoundException e) {
+                if (file != null) {
+                    missing.add(name);
+                }
+                throwable = e;
+            } catch (Throwable e) {
+                throwable = e;
             }
         }
 
@@ -219,41 +202,159 @@ public class SimplePluginClassLoader extends PluginClassLoader {
         }
     }
 
+    // Other loaders call findClass0 directly, so the lock of loadClass is not always held.
+    // defineClass resolves the supertypes, which may be delegated to other plugin loaders while the lock is held.
+    // Per-name locks follow the supertype graph and can't form a cycle, but a whole-loader lock (if a superclass
+    //  is not parallel capable) could deadlock two plugins using each other, so no lock is taken then, and
+    //  a concurrent definition of the same class is resolved in findLocal instead.
+    private Class<?> findLocalLocked(String name) throws Exception {
+        if (!PARALLEL_CAPABLE) {
+            return findLocal(name);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            return findLocal(name);
+        }
+    }
+
+    private Class<?> findLocal(String name) throws Exception {
+        final Class<?> loaded = findLoadedClass(name);
+        if (loaded != null) {
+            return loaded; // defined by another thread while we were waiting for the lock
+        }
+        if (jarFile != null) {
+            String path = name.replace('.', '/').concat(".class");
+            JarEntry entry = jarFile.getJarEntry(path);
+            if (entry != null) {
+                try (InputStream is = jarFile.getInputStream(entry)) {
+                    byte[] classBytes = ByteStreams.toByteArray(is);
+
+                    int dot = name.lastIndexOf('.');
+                    if (dot != -1) {
+                        String pkgName = name.substring(0, dot);
+                        if (this.getPackage(pkgName) == null) {
+                            try {
+                                if (this.manifest != null) {
+                                    this.definePackage(pkgName, this.manifest, this.url);
+                                } else {
+                                    this.definePackage(pkgName, null, null, null, null, null, null, null);
+                                }
+                            } catch (IllegalArgumentException var20) {
+                                if (this.getPackage(pkgName) == null) {
+                                    throw new IllegalStateException("Cannot find package " + pkgName);
+                                }
+                            }
+                        }
+                    }
+
+
+                    CodeSigner[] signers = entry.getCodeSigners();
+                    CodeSource source = new CodeSource(getUrl(), signers);
+                    try {
+                        return this.defineClass(name, classBytes, 0, classBytes.length, source);
+                    } catch (LinkageError e) {
+                        // defined by another thread meanwhile, only possible without the class loading lock
+                        final Class<?> defined = findLoadedClass(name);
+                        if (defined != null) {
+                            return defined;
+                        }
+                        throw e;
+                    }
+                }
+            }
+        }
+        return super.findClass(name);
+    }
+
     protected Class<?> loadFromOther(String name) throws ClassNotFoundException {
-        try {
-            Class<?> clazz = parentClassLoader.findClass(name);
-            if (clazz != null) {
-                return clazz;
+        if (parentClassLoader != null) {
+            try {
+                Class<?> clazz = parentClassLoader.findClass(name);
+                if (clazz != null) {
+                    return clazz;
+                }
+            } catch (ClassNotFoundException ignored) {
             }
-        } catch (ClassNotFoundException ignored) {
         }
-        for (SimplePluginClassLoader classLoader : INSTANCES) {
-            if (classLoader == null) {
-                // Suggested by ChatGPT:
-                // The keys in a WeakHashMap are held through weak references,
-                // which may be garbage collected when no strong references to them exist.
-                // If null checks are not performed while traversing the key set,
-                // it may lead to encountering null keys that have already been garbage
-                // collected,
-                // resulting in a NullPointerException.
-                // Therefore, when traversing the key set of a WeakHashMap,
-                // it is necessary to perform a null check first and process only non-null keys.
-                continue;
+        return findInPlugins(name, this);
+    }
+
+    // Looks up the class in the plugin loaders that may contain it, use true to prevent stack over flow
+    static Class<?> findInPlugins(String name, @Nullable SimplePluginClassLoader except) throws ClassNotFoundException {
+        final int dot = name.lastIndexOf('.');
+        final String pkgName = dot == -1 ? "" : name.substring(0, dot);
+        final List<WeakReference<SimplePluginClassLoader>> owners = PACKAGE_INDEX.get(pkgName);
+        if (owners != null) {
+            for (WeakReference<SimplePluginClassLoader> owner : owners) {
+                final SimplePluginClassLoader classLoader = owner.get();
+                if (classLoader == null) {
+                    // never closed, collected meanwhile
+                    PACKAGE_INDEX.computeIfPresent(pkgName, (k, current) -> {
+                        current.remove(owner);
+                        return current.isEmpty() ? null : current;
+                    });
+                    continue;
+                }
+                if (classLoader == except) {
+                    continue;
+                }
+                try {
+                    return classLoader.findClass0(name, true);
+                } catch (ClassNotFoundException ignored) {
+                }
             }
-            if (classLoader == this) {
+        }
+        // copied, so the monitor of the set is not held while other loaders are asked
+        for (SimplePluginClassLoader classLoader : UNINDEXED.toArray(new SimplePluginClassLoader[0])) {
+            if (classLoader == except) {
                 continue;
             }
             try {
-                return classLoader.findClass0(name, true); // use true to prevent stack over flow
+                return classLoader.findClass0(name, true);
             } catch (ClassNotFoundException ignored) {
             }
         }
         throw new ClassNotFoundException(name);
     }
 
+    // record the packages of this jar, so other plugins find our classes with a single lookup
+    private void index() {
+        final Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            final String entryName = entries.nextElement().getName();
+            if (!entryName.endsWith(".class") || entryName.startsWith("META-INF/")) {
+                continue;
+            }
+            final int slash = entryName.lastIndexOf('/');
+            final String pkgName = slash == -1 ? "" : entryName.substring(0, slash).replace('/', '.');
+            if (indexedPackages.add(pkgName)) {
+                // inside compute, so it can't race with the removal of an emptied list
+                PACKAGE_INDEX.compute(pkgName, (k, owners) -> {
+                    final List<WeakReference<SimplePluginClassLoader>> result = owners != null ? owners : new CopyOnWriteArrayList<>();
+                    result.add(new WeakReference<>(this));
+                    return result;
+                });
+            }
+        }
+    }
+
+    private void unindex() {
+        UNINDEXED.remove(this);
+        for (String pkgName : indexedPackages) {
+            PACKAGE_INDEX.computeIfPresent(pkgName, (k, owners) -> {
+                owners.removeIf(owner -> {
+                    final SimplePluginClassLoader classLoader = owner.get();
+                    return classLoader == null || classLoader == this;
+                });
+                return owners.isEmpty() ? null : owners;
+            });
+        }
+        indexedPackages.clear();
+    }
+
     @Override
     public void close() throws IOException {
         INSTANCES.remove(this);
+        unindex();
         for (Class<?> clazz : cache.values()) {
             if (clazz.getClassLoader() == this && ConfigurationSerializable.class.isAssignableFrom(clazz)) {
                 @SuppressWarnings("unchecked") final Class<? extends ConfigurationSerializable> s = (Class<? extends ConfigurationSerializable>) clazz;
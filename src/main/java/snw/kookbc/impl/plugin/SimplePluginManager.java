@@ -29,12 +29,15 @@ import snw.kookbc.impl.command.ConsoleCommandSenderImpl;
 import snw.kookbc.impl.launch.AccessClassLoader;
 import snw.kookbc.launcher.Launcher;
 import snw.kookbc.util.DependencyListBasedPluginDescriptionComparator;
+import snw.kookbc.util.Util;
 import snw.kookbc.util.VirtualThreadUtil;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -53,6 +56,8 @@ public class SimplePluginManager implements PluginManager {
     private final Map<Predicate<File>, Function<ClassLoader, PluginLoader>> loaderMap = new LinkedHashMap<>();
     private final Map<Predicate<File>, Supplier<PluginDescriptionResolver>> pluginDescriptionResolverMap
             = new LinkedHashMap<>();
+    private final Supplier<PluginDescriptionResolver> standardResolver = () -> PluginClassLoader.PluginDotYMLResolver.INSTANCE;
+    private PluginMetadataIndex metadataIndex;
 
     static {
         STANDARD_PLUGIN_CHECKER = f -> {
@@ -74,7 +79,7 @@ public class SimplePluginManager implements PluginManager {
         this.client = client;
         this.logger = logger;
         this.registerPluginLoader(STANDARD_PLUGIN_CHECKER, this::createPluginLoader); // ensure overrides will apply
-        this.registerPluginDescriptionResolver(STANDARD_PLUGIN_CHECKER, () -> PluginClassLoader.PluginDotYMLResolver.INSTANCE);
+        this.registerPluginDescriptionResolver(STANDARD_PLUGIN_CHECKER, standardResolver);
     }
 
     public void setClient(KBCClient client) {
@@ -157,13 +162,28 @@ public class SimplePluginManager implements PluginManager {
         File[] files = directory.listFiles(File::isFile);
         if (files != null) {
             final LinkedHashMap<PluginDescription, File> orderMap = new LinkedHashMap<>();
+            // opening the jars and parsing plugin.yml is independent per file, do it concurrently
+            final PluginMetadataIndex index = getMetadataIndex();
+            final List<CompletableFuture<PluginDescription>> descriptions = new ArrayList<>(files.length);
             for (File file : files) {
-                final PluginDescriptionResolver resolver = lookUpPluginDescriptionResolverForFile(file);
-                if (resolver == null) {
+                descriptions.add(CompletableFuture.supplyAsync(() -> describe(file, index), VirtualThreadUtil.getPluginExecutor()));
+            }
+            for (int i = 0; i < files.length; i++) {
+                final PluginDescription description;
+                try {
+                    description = descriptions.get(i).join();
+                } catch (CompletionException e) {
+                    logger.error("无法读取文件 {} 中的插件描述", files[i], e.getCause());
                     continue;
                 }
-                final PluginDescription description = resolver.resolve(file);
-                orderMap.put(description, file);
+                if (description != null) {
+                    orderMap.put(description, files[i]);
+                }
+            }
+            if (index != null) {
+                index.retainOnly(Arrays.asList(files));
+                index.save();
+                logger.debug("插件元数据索引: 命中 {} 个文件, 扫描 {} 个文件", index.getHitCount(), index.getMissCount());
             }
             final LinkedList<Map.Entry<PluginDescription, File>> orders = new LinkedList<>(orderMap.entrySet());
             orders.sort((o1, o2) -> DependencyListBasedPluginDescriptionComparator.INSTANCE
@@ -204,6 +224,42 @@ public class SimplePluginManager implements PluginManager {
         return new Plugin[0];
     }
 
+    // null if the file is not a plugin file
+    private @Nullable PluginDescription describe(File file, @Nullable PluginMetadataIndex index) {
+        // the index only knows how the standard resolver works, unless someone replaced it
+        if (index != null && pluginDescriptionResolverMap.get(STANDARD_PLUGIN_CHECKER) == standardResolver) {
+            final byte[] pluginYml;
+            try {
+                pluginYml = index.getPluginYml(file);
+            } catch (IOException e) {
+                throw new InvalidPluginException(e);
+            }
+            if (pluginYml != null) {
+                return Util.createDescription(new ByteArrayInputStream(pluginYml));
+            }
+        }
+        final PluginDescriptionResolver resolver = lookUpPluginDescriptionResolverForFile(file);
+        if (resolver == null) {
+            return null;
+        }
+        return resolver.resolve(file);
+    }
+
+    // null if disabled in configuration
+    protected @Nullable PluginMetadataIndex getMetadataIndex() {
+        if (metadataIndex == null) {
+            if (client == null) {
+                return null;
+            }
+            final String path = client.getConfig().getString("plugin-index-file", "cache/plugin-index.json");
+            if (path == null || path.isEmpty()) {
+                return null;
+            }
+            metadataIndex = new PluginMetadataIndex(new File(path), logger);
+        }
+        return metadataIndex;
+    }
+
     @Override
     public void disablePlugins() {
         for (Plugin plugin : plugins) {
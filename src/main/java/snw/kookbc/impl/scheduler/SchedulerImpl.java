@@ -26,24 +26,54 @@ import snw.kookbc.impl.KBCClient;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static snw.kookbc.util.Util.ensurePluginEnabled;
 import static snw.kookbc.util.Util.pluginNotNull;
+import static snw.kookbc.util.VirtualThreadUtil.newVirtualThreadExecutor;
 import static snw.kookbc.util.VirtualThreadUtil.newVirtualThreadScheduledExecutor;
 
 public class SchedulerImpl implements Scheduler {
     private final KBCClient client;
     public final ScheduledExecutorService pool;
+    private final boolean ownsPool;
     private final AtomicInteger ids = new AtomicInteger(1);
     private final Map<Integer, TaskImpl> scheduledTasks = new ConcurrentHashMap<>();
+    // the same tasks indexed by their owner, so cancelTasks(Plugin) does not scan all the tasks
+    private final Map<Plugin, Set<TaskImpl>> tasksByPlugin = new ConcurrentHashMap<>();
+    private final TimingWheel wheel; // null if the delayed tasks are scheduled on the pool
+    private final ExecutorService wheelDispatcher;
     private boolean rejectAfterPluginInitTasks = false;
     private final Map<Integer, AfterPluginInitTask> scheduledAfterPluginInitTasks = new HashMap<>();
 
     public SchedulerImpl(KBCClient client) {
         this.client = client;
         this.pool = newVirtualThreadScheduledExecutor("Scheduler-Thread");
+        this.ownsPool = true;
+        if ("timing-wheel".equalsIgnoreCase(client.getConfig().getString("scheduler-backend", "executor"))) {
+            this.wheelDispatcher = newVirtualThreadExecutor("Scheduler-Task-");
+            this.wheel = new TimingWheel(
+                    "Scheduler-Timing-Wheel",
+                    Math.max(1L, client.getConfig().getLong("scheduler-tick-duration", 10L)),
+                    TimeUnit.MILLISECONDS,
+                    512,
+                    wheelDispatcher
+            );
+        } else {
+            this.wheelDispatcher = null;
+            this.wheel = null;
+        }
+    }
+
+    // Use a pool shared with other clients, it won't be shut down when this scheduler shuts down.
+    public SchedulerImpl(KBCClient client, ScheduledExecutorService sharedPool) {
+        this.client = client;
+        this.pool = sharedPool;
+        this.ownsPool = false;
+        this.wheelDispatcher = null;
+        this.wheel = null;
     }
 
     public SchedulerImpl(KBCClient client, ThreadFactory factory) {
@@ -53,6 +83,9 @@ public class SchedulerImpl implements Scheduler {
     public SchedulerImpl(KBCClient client, int corePoolSize, ThreadFactory factory) {
         this.client = client;
         this.pool = newVirtualThreadScheduledExecutor(corePoolSize, "Scheduler-Thread-#");
+        this.ownsPool = true;
+        this.wheelDispatcher = null;
+        this.wheel = null;
     }
 
 
@@ -60,27 +93,30 @@ public class SchedulerImpl implements Scheduler {
     public Task runTask(Plugin plugin, Runnable runnable) {
         ensurePluginEnabled(plugin);
         int id = nextId();
-        TaskImpl task = new TaskImpl(this, pool.submit(wrap(runnable, id, false)), id, plugin);
-        scheduledTasks.put(id, task);
-        return task;
+        WrappedTask wrapped = wrap(runnable, id, false);
+        return track(new TaskImpl(this, pool.submit(wrapped), id, plugin), wrapped);
     }
 
     @Override
     public Task runTaskLater(Plugin plugin, Runnable runnable, long delay) {
         ensurePluginEnabled(plugin);
         int id = nextId();
-        TaskImpl task = new TaskImpl(this, pool.schedule(wrap(runnable, id, false), delay, TimeUnit.MILLISECONDS), id, plugin);
-        scheduledTasks.put(id, task);
-        return task;
+        WrappedTask wrapped = wrap(runnable, id, false);
+        Future<?> future = wheel != null
+                ? wheel.schedule(wrapped, delay, TimeUnit.MILLISECONDS)
+                : pool.schedule(wrapped, delay, TimeUnit.MILLISECONDS);
+        return track(new TaskImpl(this, future, id, plugin), wrapped);
     }
 
     @Override
     public Task runTaskTimer(Plugin plugin, Runnable runnable, long delay, long period) {
         ensurePluginEnabled(plugin);
         int id = nextId();
-        TaskImpl task = new TaskImpl(this, pool.scheduleAtFixedRate(wrap(runnable, id, true), delay, period, TimeUnit.MILLISECONDS), id, plugin);
-        scheduledTasks.put(id, task);
-        return task;
+        WrappedTask wrapped = wrap(runnable, id, true);
+        Future<?> future = wheel != null
+                ? wheel.scheduleAtFixedRate(wrapped, delay, period, TimeUnit.MILLISECONDS)
+                : pool.scheduleAtFixedRate(wrapped, delay, period, TimeUnit.MILLISECONDS);
+        return track(new TaskImpl(this, future, id, plugin), wrapped);
     }
 
     @Override
@@ -105,7 +141,10 @@ public class SchedulerImpl implements Scheduler {
             if (scheduledAfterPluginInitTasks.containsKey(taskId)) {
                 scheduledAfterPluginInitTasks.remove(taskId).cancel();
             } else {
-                scheduledTasks.remove(taskId).cancel0();
+                TaskImpl task = untrack(taskId);
+                if (task != null) {
+                    task.cancel0();
+                }
             }
         }
     }
@@ -113,13 +152,46 @@ public class SchedulerImpl implements Scheduler {
     @Override
     public void cancelTasks(Plugin plugin) {
         pluginNotNull(plugin);
-        for (TaskImpl task : scheduledTasks.values()) {
-            if (task.getPlugin() == plugin) {
+        Set<TaskImpl> tasks = tasksByPlugin.get(plugin);
+        if (tasks != null) {
+            for (TaskImpl task : tasks) {
                 cancelTask(task.getTaskId());
             }
         }
     }
 
+    // the amount of tasks that are scheduled but not finished
+    public int getScheduledTaskCount() {
+        return scheduledTasks.size();
+    }
+
+    private TaskImpl track(TaskImpl task, WrappedTask wrapped) {
+        scheduledTasks.put(task.getTaskId(), task);
+        // added inside compute, so it can't race with the removal of an emptied set in untrack
+        tasksByPlugin.compute(task.getPlugin(), (plugin, tasks) -> {
+            final Set<TaskImpl> result = tasks != null ? tasks : ConcurrentHashMap.newKeySet();
+            result.add(task);
+            return result;
+        });
+        if (wrapped.finished) {
+            // it finished before we track it, so the removal in the wrapper found nothing
+            untrack(task.getTaskId());
+        }
+        return task;
+    }
+
+    private TaskImpl untrack(int id) {
+        TaskImpl task = scheduledTasks.remove(id);
+        if (task != null) {
+            // drop the set with its last task, so disabled or reloaded plugins don't keep an entry
+            tasksByPlugin.computeIfPresent(task.getPlugin(), (plugin, tasks) -> {
+                tasks.remove(task);
+                return tasks.isEmpty() ? null : tasks;
+            });
+        }
+        return task;
+    }
+
     private int nextId() {
         int id;
         do {
@@ -129,19 +201,36 @@ public class SchedulerImpl implements Scheduler {
         return id;
     }
 
-    private Runnable wrap(Runnable runnable, int id, boolean isRepeat) {
+    private WrappedTask wrap(Runnable runnable, int id, boolean isRepeat) {
         Validate.notNull(runnable, "The runnable is null");
-        return () -> {
+        return new WrappedTask(runnable, id, isRepeat);
+    }
+
+    private final class WrappedTask implements Runnable {
+        private final Runnable runnable;
+        private final int id;
+        private final boolean isRepeat;
+        private volatile boolean finished;
+
+        private WrappedTask(Runnable runnable, int id, boolean isRepeat) {
+            this.runnable = runnable;
+            this.id = id;
+            this.isRepeat = isRepeat;
+        }
+
+        @Override
+        public void run() {
             try {
                 runnable.run();
             } catch (Throwable e) {
                 client.getCore().getLogger().warn("任务 #{} 抛出意外异常", id, e);
             } finally {
                 if (!isRepeat) { // if this task should be repeated until it cancel itself...
-                    scheduledTasks.remove(id);
+                    finished = true;
+                    untrack(id);
                 }
             }
-        };
+        }
     }
 
     public void runAfterPluginInitTasks() {
@@ -157,7 +246,11 @@ public class SchedulerImpl implements Scheduler {
 
     public void shutdown() {
         scheduledTasks.keySet().forEach(this::cancelTask);
-        if (!pool.isShutdown()) {
+        if (wheel != null) {
+            wheel.close();
+            wheelDispatcher.shutdown();
+        }
+        if (ownsPool && !pool.isShutdown()) {
             pool.shutdown();
             try {
                 //noinspection ResultOfMethodCallIgnored
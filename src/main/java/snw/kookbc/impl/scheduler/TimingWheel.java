@@ -0,0 +1,377 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.scheduler;
+
+import snw.jkook.util.Validate;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 哈希时间轮定时器。
+ *
+ * <p>与 {@link java.util.concurrent.ScheduledThreadPoolExecutor} 的堆相比:
+ * <ul>
+ *     <li>调度与取消都是 O(1)，调用方只是把任务放入无锁队列，由时间轮线程在下一个 tick 统一处理</li>
+ *     <li>每个 tick 只检查一个槽位，同一 tick 到期的任务会被批量派发到 dispatcher（通常是虚拟线程执行器）</li>
+ *     <li>每个任务只占用一个小对象，适合大量长延迟的定时器（例如每个用户的冷却时间）</li>
+ * </ul>
+ *
+ * <p>代价是精度: 任务最多会晚一个 tick 执行。
+ * 周期任务按固定速率执行，但同一任务不会并发执行，上一次运行结束后才会安排下一次。
+ */
+public final class TimingWheel implements AutoCloseable {
+    private static final int MAX_TRANSFER_PER_TICK = 100_000; // avoid starving the expired tasks
+    private final long tickNanos;
+    private final Slot[] wheel;
+    private final int mask;
+    private final Executor dispatcher;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final LongAdder pending = new LongAdder();
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param name          时间轮线程名称
+     * @param tickDuration  每个 tick 的时长
+     * @param unit          tickDuration 的单位
+     * @param ticksPerWheel 槽位数量，会向上取整为 2 的幂
+     * @param dispatcher    执行到期任务的执行器
+     */
+    public TimingWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel, Executor dispatcher) {
+        Validate.isTrue(tickDuration > 0, "tickDuration must be positive");
+        Validate.isTrue(ticksPerWheel > 0 && ticksPerWheel <= (1 << 30), "ticksPerWheel out of range");
+        Validate.notNull(dispatcher);
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(ticksPerWheel - 1 == 0 ? 1 : (ticksPerWheel - 1) << 1);
+        this.wheel = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.dispatcher = dispatcher;
+        this.startTime = System.nanoTime();
+        this.worker = Thread.ofPlatform().name(name).daemon().unstarted(this::work);
+        this.worker.start();
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(new Timeout(this, task, elapsed() + unit.toNanos(Math.max(0, delay)), 0));
+    }
+
+    public Timeout scheduleAtFixedRate(Runnable task, long delay, long period, TimeUnit unit) {
+        Validate.isTrue(period > 0, "period must be positive");
+        return add(new Timeout(this, task, elapsed() + unit.toNanos(Math.max(0, delay)), unit.toNanos(period)));
+    }
+
+    // the amount of timers waiting for their deadline
+    public long getPendingCount() {
+        return pending.sum();
+    }
+
+    // stop the wheel, the timers that have not expired yet are cancelled
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Timeout add(Timeout timeout) {
+        Validate.notNull(timeout.task, "The runnable is null");
+        if (!running) {
+            throw new IllegalStateException("The timing wheel has been closed");
+        }
+        pending.increment();
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    private long elapsed() {
+        return System.nanoTime() - startTime;
+    }
+
+    private void work() {
+        while (running) {
+            final long deadline = waitForNextTick();
+            if (deadline < 0) {
+                break;
+            }
+            removeCancelled();
+            transferIncoming();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+        // cancel everything left, so the owners can see the state
+        for (Slot slot : wheel) {
+            slot.clear();
+        }
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            timeout.cancel(false);
+        }
+    }
+
+    // returns the elapsed time of this tick, or -1 if interrupted by close()
+    private long waitForNextTick() {
+        final long deadline = tickNanos * (tick + 1);
+        while (true) {
+            final long current = elapsed();
+            final long sleepMillis = (deadline - current + 999_999) / 1_000_000;
+            if (sleepMillis <= 0) {
+                return current;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.slot != null) {
+                timeout.slot.remove(timeout);
+            }
+        }
+    }
+
+    private void transferIncoming() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            final Timeout timeout = incoming.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state != Timeout.WAITING) {
+                continue; // cancelled before we see it
+            }
+            final long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            final long ticks = Math.max(calculated, tick); // never schedule into the past
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expired(Timeout timeout) {
+        pending.decrement();
+        dispatcher.execute(timeout);
+    }
+
+    // Only accessed by the worker thread.
+    private static final class Slot {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.slot = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    if (timeout.markRunning()) {
+                        timeout.wheel.expired(timeout);
+                    }
+                } else if (timeout.state == Timeout.CANCELLED) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.slot = null;
+        }
+
+        void clear() {
+            Timeout timeout;
+            while ((timeout = head) != null) {
+                remove(timeout);
+                timeout.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * 表示时间轮中的一个定时任务。
+     */
+    public static final class Timeout implements Future<Void>, Runnable {
+        private static final int WAITING = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int CANCELLED = 3;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private final long period; // 0 if this is not a repeating task
+        private long deadline; // relative to startTime of the wheel
+        private volatile int state = WAITING;
+
+        // the following fields are only accessed by the worker thread
+        private long remainingRounds;
+        private Slot slot;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, Runnable task, long deadline, long period) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        private boolean markRunning() {
+            return STATE.compareAndSet(this, WAITING, RUNNING);
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                if (period > 0) {
+                    if (STATE.compareAndSet(this, RUNNING, WAITING)) {
+                        // fixed rate, but catch up at once if we are late
+                        deadline = Math.max(deadline + period, wheel.elapsed());
+                        if (wheel.running) {
+                            wheel.pending.increment();
+                            wheel.incoming.add(this);
+                        } else {
+                            cancel(false);
+                        }
+                    }
+                } else {
+                    STATE.compareAndSet(this, RUNNING, DONE);
+                }
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            while (true) {
+                final int current = state;
+                if (current == DONE || current == CANCELLED) {
+                    return false;
+                }
+                if (STATE.compareAndSet(this, current, CANCELLED)) {
+                    if (current == WAITING) {
+                        wheel.pending.decrement();
+                        wheel.cancelled.add(this); // unlink it on the next tick
+                    }
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            final int current = state;
+            return current == DONE || current == CANCELLED;
+        }
+
+        @Override
+        public Void get() throws InterruptedException {
+            synchronized (this) {
+                while (!isDone()) {
+                    wait();
+                }
+            }
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            return null;
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            final long end = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this) {
+                while (!isDone()) {
+                    final long remaining = end - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new TimeoutException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            return null;
+        }
+    }
+}
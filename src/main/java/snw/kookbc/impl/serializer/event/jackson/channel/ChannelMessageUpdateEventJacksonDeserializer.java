@@ -59,6 +59,7 @@ public class ChannelMessageUpdateEventJacksonDeserializer extends BaseJacksonEve
         final Message message = client.getStorage().getMessage(event.getMessageId());
         if (message != null) {
             ((MessageImpl) message).setComponent0(new MarkdownComponent(event.getContent()));
+            client.getStorage().addMessage(message); // refresh the off-heap record
         }
     }
 }
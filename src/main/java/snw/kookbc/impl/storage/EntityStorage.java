@@ -22,6 +22,7 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.fasterxml.jackson.databind.JsonNode;
+import org.jetbrains.annotations.Nullable;
 import snw.jkook.entity.*;
 import snw.jkook.entity.channel.Channel;
 import snw.jkook.message.Message;
@@ -30,11 +31,14 @@ import snw.kookbc.impl.entity.CustomEmojiImpl;
 import snw.kookbc.impl.entity.GuildImpl;
 import snw.kookbc.impl.entity.RoleImpl;
 import snw.kookbc.impl.entity.UserImpl;
+import snw.kookbc.impl.entity.builder.MessageBuilder;
+import snw.kookbc.impl.entity.builder.StreamingDecoder;
 import snw.kookbc.impl.entity.channel.ChannelImpl;
+import snw.kookbc.impl.metrics.MetricsRegistry;
 import snw.kookbc.impl.network.HttpAPIRoute;
 
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -47,30 +51,47 @@ public class EntityStorage {
     private final KBCClient client;
 
     // See the notes of these member variables in the constructor.
-    private final LoadingCache<String, User> users;
-    private final LoadingCache<String, Guild> guilds;
-    private final Cache<String, Channel> channels;
+    // Numeric IDs are stored as Long keys, see IdCodec
+    private final LoadingCache<Object, User> users;
+    private final LoadingCache<Object, Guild> guilds;
+    private final Cache<Object, Channel> channels;
 
     // The following data types can be loaded manually, but it costs too many
     // network resource.
     // So we won't remove them if the memory is enough.
-    private final Cache<String, Role> roles;
+    private final Cache<RoleKey, Role> roles;
     private final Cache<String, CustomEmoji> emojis;
     private final Cache<String, Message> msgs;
-    private final Cache<String, Reaction> reactions;
+    // null if disabled, msgs only holds the messages still in use then
+    @Nullable
+    private final OffHeapMessageStore msgStore;
+    // the messages that can't be encoded for msgStore (e.g. templates), null if msgStore is disabled
+    @Nullable
+    private final Cache<String, Message> heapMsgs;
+    private final Cache<ReactionKey, Reaction> reactions;
     private final Cache<Integer, Game> games;
 
     private final UncheckedFunction<String, Channel> channelLoader;
 
     public EntityStorage(KBCClient client) {
         this.client = client;
-        this.users = softRef().build(id -> new UserImpl(this.client, id));
-        this.guilds = weakRef().build(id -> new GuildImpl(this.client, id));
+        this.users = softRef().recordStats().build(key -> new UserImpl(this.client, IdCodec.toId(key)));
+        this.guilds = weakRef().recordStats().build(key -> new GuildImpl(this.client, IdCodec.toId(key)));
         this.channels = weakRef().build(); // key: channel ID
-        this.msgs = softRef().build(); // key: msg id
-        this.roles = softRef().build(); // key format: GUILD_ID#ROLE_ID
+        final long msgStoreSize = client.getConfig().getLong("message-store-size", 64L) << 20;
+        if (msgStoreSize > 0) {
+            // the messages in use are kept as they are, so plugins see the same instance
+            this.msgStore = new OffHeapMessageStore(msgStoreSize, MessageBuilder.RECORD_DICTIONARY);
+            this.msgs = Caffeine.newBuilder().weakValues().build(); // key: msg id
+            this.heapMsgs = softRef().build(); // key: msg id
+        } else {
+            this.msgStore = null;
+            this.msgs = softRef().build(); // key: msg id
+            this.heapMsgs = null;
+        }
+        this.roles = softRef().build(); // key: guild ID + role ID
         this.emojis = softRef().build(); // key: emoji ID
-        this.reactions = softRef().build(); // key format: MSG_ID#EMOJI_ID#SENDER_ID
+        this.reactions = softRef().build(); // key: msg ID + emoji ID + sender ID
         this.games = softRef().build(); // key: game id
 
         // fixme we stuck there: we don't know the exact type of channel,
@@ -80,6 +101,31 @@ public class EntityStorage {
         this.channelLoader = funcWithRetry(id -> client.getEntityBuilder().buildChannel(
                 client.getNetworkClient().get(
                         String.format("%s?target_id=%s", HttpAPIRoute.CHANNEL_INFO.toFullURL(), id))));
+        registerMetrics(client.getMetrics());
+    }
+
+    private void registerMetrics(MetricsRegistry metrics) {
+        final String sizeHelp = "Estimated entries in the entity cache";
+        metrics.gauge("kookbc_entity_cache_size", sizeHelp, users::estimatedSize, "cache", "users");
+        metrics.gauge("kookbc_entity_cache_size", sizeHelp, guilds::estimatedSize, "cache", "guilds");
+        metrics.gauge("kookbc_entity_cache_size", sizeHelp, channels::estimatedSize, "cache", "channels");
+        metrics.gauge("kookbc_entity_cache_size", sizeHelp, msgs::estimatedSize, "cache", "messages");
+        metrics.gauge("kookbc_entity_cache_size", sizeHelp, roles::estimatedSize, "cache", "roles");
+        metrics.gauge("kookbc_entity_cache_size", sizeHelp, emojis::estimatedSize, "cache", "emojis");
+        // only the loading caches record stats, others are filled by events
+        final String hitHelp = "Hit ratio of the entity cache";
+        metrics.gauge("kookbc_entity_cache_hit_ratio", hitHelp, () -> users.stats().hitRate(), "cache", "users");
+        metrics.gauge("kookbc_entity_cache_hit_ratio", hitHelp, () -> guilds.stats().hitRate(), "cache", "guilds");
+        final OffHeapMessageStore store = msgStore;
+        if (store != null) {
+            metrics.gauge("kookbc_entity_cache_size", sizeHelp, heapMsgs::estimatedSize, "cache", "messages_heap");
+            final String bytesHelp = "Direct memory of the off-heap message store";
+            metrics.gauge("kookbc_message_store_bytes", bytesHelp, store::getCapacity, "kind", "capacity");
+            metrics.gauge("kookbc_message_store_bytes", bytesHelp, store::getAllocatedBytes, "kind", "allocated");
+            metrics.gauge("kookbc_message_store_entries", "Messages in the off-heap message store", store::size);
+            metrics.gauge("kookbc_message_store_compression_ratio", "Compressed size / raw size of the stored messages", store::getCompressionRatio);
+            metrics.counter("kookbc_message_store_evictions_total", "Messages evicted from the off-heap message store", store::getEvictions);
+        }
     }
 
     public Game getGame(int id) {
@@ -87,20 +133,42 @@ public class EntityStorage {
     }
 
     public Message getMessage(String id) {
-        return msgs.getIfPresent(id);
+        final Message result = msgs.getIfPresent(id);
+        if (result != null || msgStore == null) {
+            return result;
+        }
+        final Message onHeap = heapMsgs.getIfPresent(id);
+        if (onHeap != null) {
+            return onHeap;
+        }
+        final byte[] record = msgStore.get(id);
+        if (record == null) {
+            return null;
+        }
+        final Message message;
+        try {
+            message = client.getMessageBuilder().decodeRecord(record);
+        } catch (Exception e) {
+            client.getCore().getLogger().debug("无法从堆外存储还原消息 {}", id, e);
+            msgStore.remove(id);
+            return null;
+        }
+        // another thread may have rehydrated it too, keep a single instance
+        final Message existing = msgs.asMap().putIfAbsent(id, message);
+        return existing != null ? existing : message;
     }
 
     public User getUser(String id) {
-        return users.get(id);
+        return users.get(IdCodec.key(id));
     }
 
     public Guild getGuild(String id) {
-        return guilds.get(id);
+        return guilds.get(IdCodec.key(id));
     }
 
     @Deprecated // always construct if not found, don't use if possible
     public Channel getChannel(String id) {
-        Channel result = channels.getIfPresent(id);
+        Channel result = channels.getIfPresent(IdCodec.key(id));
         if (result == null) {
             try {
                 result = channelLoader.apply(id);
@@ -117,25 +185,47 @@ public class EntityStorage {
     }
 
     public Role getRole(Guild guild, int id) {
-        return roles.getIfPresent(guild.getId() + "#" + id);
+        return roles.getIfPresent(new RoleKey(guild.getId(), id));
     }
 
     /**
      * @deprecated This can only find cached ones
      */
     public List<Role> getRoles(Guild guild) {
-        return roles.asMap().values().stream().filter(e -> Objects.equals(e.getGuild().getId(), guild.getId())).collect(Collectors.toList());
+        final Object guildKey = IdCodec.key(guild.getId());
+        return roles.asMap().entrySet().stream()
+                .filter(e -> e.getKey().guild.equals(guildKey))
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
     }
 
     public CustomEmoji getEmoji(String id) {
         return emojis.getIfPresent(id);
     }
 
+    // null if the off-heap message store is disabled by "message-store-size"
+    @Nullable
+    public OffHeapMessageStore getMessageStore() {
+        return msgStore;
+    }
+
     // ===== Jackson API - 高性能版本 =====
 
     public User getUser(String id, JsonNode def) {
         // use getIfPresent, because the def should not be wasted
-        User result = users.getIfPresent(id);
+        User result = users.getIfPresent(IdCodec.key(id));
+        if (result == null) {
+            result = client.getEntityBuilder().buildUser(def);
+            addUser(result);
+        } else {
+            ((UserImpl) result).update(def);
+        }
+        return result;
+    }
+
+    // same as getUser(String, JsonNode), for users decoded by StreamingDecoder
+    public User getUser(String id, StreamingDecoder.UserFields def) {
+        User result = users.getIfPresent(IdCodec.key(id));
         if (result == null) {
             result = client.getEntityBuilder().buildUser(def);
             addUser(result);
@@ -146,7 +236,7 @@ public class EntityStorage {
     }
 
     public Guild getGuild(String id, JsonNode def) {
-        Guild result = guilds.getIfPresent(id);
+        Guild result = guilds.getIfPresent(IdCodec.key(id));
         if (result == null) {
             result = client.getEntityBuilder().buildGuild(def);
             addGuild(result);
@@ -157,7 +247,7 @@ public class EntityStorage {
     }
 
     public Channel getChannel(String id, JsonNode def) {
-        Channel result = channels.getIfPresent(id);
+        Channel result = channels.getIfPresent(IdCodec.key(id));
         if (result == null) {
             result = client.getEntityBuilder().buildChannel(def);
             addChannel(result);
@@ -191,7 +281,7 @@ public class EntityStorage {
     }
 
     public Reaction getReaction(String msgId, CustomEmoji emoji, User sender) {
-        return reactions.getIfPresent(msgId + "#" + emoji.getId() + "#" + sender.getId());
+        return reactions.getIfPresent(new ReactionKey(msgId, emoji.getId(), sender.getId()));
     }
 
     public void addGame(Game game) {
@@ -199,12 +289,21 @@ public class EntityStorage {
     }
 
     public void addReaction(Reaction reaction) {
-        reactions.put(reaction.getMessageId() + "#" + reaction.getEmoji().getId() + "#" + reaction.getSender().getId(),
-                reaction);
+        reactions.put(new ReactionKey(reaction), reaction);
     }
 
     public void addMessage(Message message) {
         msgs.put(message.getId(), message);
+        if (msgStore != null) {
+            final byte[] record = client.getMessageBuilder().encodeRecord(message);
+            if (record != null && msgStore.put(message.getId(), record)) {
+                heapMsgs.invalidate(message.getId());
+            } else {
+                // soft-cached like when the store is disabled, msgs only holds it while it is in use
+                heapMsgs.put(message.getId(), message);
+                msgStore.remove(message.getId()); // don't return an outdated record later
+            }
+        }
     }
 
     public void addEmoji(CustomEmoji emoji) {
@@ -212,42 +311,45 @@ public class EntityStorage {
     }
 
     public void addUser(User user) {
-        users.put(user.getId(), user);
+        users.put(IdCodec.key(user.getId()), user);
     }
 
     public void addGuild(Guild guild) {
-        guilds.put(guild.getId(), guild);
+        guilds.put(IdCodec.key(guild.getId()), guild);
     }
 
     public void addChannel(Channel channel) {
-        channels.put(channel.getId(), channel);
+        channels.put(IdCodec.key(channel.getId()), channel);
     }
 
     public void addRole(Guild guild, Role role) {
-        roles.put(guild.getId() + "#" + role.getId(), role);
+        roles.put(new RoleKey(guild.getId(), role.getId()), role);
     }
 
     public void removeReaction(Reaction reaction) {
-        reactions.invalidate(
-                reaction.getMessageId() + "#" + reaction.getEmoji().getId() + "#" + reaction.getSender().getId());
+        reactions.invalidate(new ReactionKey(reaction));
     }
 
     // Only called when the message is invalid
     public void removeMessage(String id) {
         msgs.invalidate(id);
-        reactions.asMap().keySet().removeIf(i -> i.startsWith(id));
+        if (msgStore != null) {
+            heapMsgs.invalidate(id);
+            msgStore.remove(id);
+        }
+        reactions.asMap().keySet().removeIf(i -> i.msgId.equals(id));
     }
 
     public void removeChannel(String id) {
-        channels.invalidate(id);
+        channels.invalidate(IdCodec.key(id));
     }
 
     public void removeGuild(String id) {
-        guilds.invalidate(id);
+        guilds.invalidate(IdCodec.key(id));
     }
 
     public void removeRole(Role role) {
-        roles.invalidate(role.getGuild().getId() + "#" + role.getId());
+        roles.invalidate(new RoleKey(role.getGuild().getId(), role.getId()));
     }
 
     public void removeEmoji(CustomEmoji emoji) {
@@ -283,8 +385,7 @@ public class EntityStorage {
         channels.asMap().values()
                 .stream()
                 .filter(i -> i.getGuild() == guild)
-                .map(i -> ((ChannelImpl) i).getOverwrittenUserPermissions0())
-                .forEach(i -> i.removeIf(o -> o.getUser() == user));
+                .forEach(i -> ((ChannelImpl) i).removeUserPermissionOverwrite(user));
     }
 
     // ===== 虚拟线程异步 API =====
@@ -472,6 +573,60 @@ public class EntityStorage {
         }
     }
 
+
+    // replaces the "GUILD_ID#ROLE_ID" strings, no concatenation on lookups
+    private static final class RoleKey {
+        private final Object guild;
+        private final int role;
+
+        RoleKey(String guildId, int role) {
+            this.guild = IdCodec.key(guildId);
+            this.role = role;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RoleKey)) return false;
+            final RoleKey that = (RoleKey) o;
+            return role == that.role && guild.equals(that.guild);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * guild.hashCode() + role;
+        }
+    }
+
+    // replaces the "MSG_ID#EMOJI_ID#SENDER_ID" strings, message IDs are UUIDs so they stay strings
+    private static final class ReactionKey {
+        private final String msgId;
+        private final Object emoji;
+        private final Object sender;
+
+        ReactionKey(Reaction reaction) {
+            this(reaction.getMessageId(), reaction.getEmoji().getId(), reaction.getSender().getId());
+        }
+
+        ReactionKey(String msgId, String emojiId, String senderId) {
+            this.msgId = msgId;
+            this.emoji = IdCodec.key(emojiId);
+            this.sender = IdCodec.key(senderId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ReactionKey)) return false;
+            final ReactionKey that = (ReactionKey) o;
+            return msgId.equals(that.msgId) && emoji.equals(that.emoji) && sender.equals(that.sender);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * msgId.hashCode() + emoji.hashCode()) + sender.hashCode();
+        }
+    }
 }
 
 interface UncheckedFunction<K, V> {
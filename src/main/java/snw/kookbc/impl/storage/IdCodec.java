@@ -0,0 +1,77 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.storage;
+
+/**
+ * KOOK 实体 ID 与缓存键之间的转换。
+ *
+ * <p>用户、服务器、频道与角色的 ID 都是十进制数字字符串，作为缓存键时被转换为 {@link Long} ，
+ * 查找时的哈希与比较不再需要逐字符进行，键本身也比字符串小得多。
+ * 无法无损转换的 ID（如消息的 UUID ，或带有前导零的数字）保持为字符串，两种键永远不会相等。
+ */
+public final class IdCodec {
+    // any 18-digit decimal number fits in a long
+    private static final int MAX_DIGITS = 18;
+
+    private IdCodec() {
+    }
+
+    /**
+     * 获取 ID 对应的缓存键。
+     *
+     * @param id 实体 ID
+     * @return 数字 ID 对应的 {@link Long} ，其他 ID 原样返回
+     */
+    public static Object key(String id) {
+        final long value = parse(id);
+        return value >= 0 ? (Object) value : id;
+    }
+
+    /**
+     * 将 ID 解析为非负整数。
+     *
+     * @param id 实体 ID
+     * @return 解析结果，ID 不是规范的十进制数字（空串、含非数字字符、有前导零或过长）时返回 -1
+     */
+    public static long parse(String id) {
+        final int length = id.length();
+        if (length == 0 || length > MAX_DIGITS || (length > 1 && id.charAt(0) == '0')) {
+            return -1;
+        }
+        long result = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * 获取缓存键对应的 ID ，是 {@link #key(String)} 的逆操作。
+     *
+     * @param key 缓存键
+     * @return 实体 ID
+     */
+    public static String toId(Object key) {
+        return key.toString(); // Long#toString gives the canonical form accepted by parse
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.storage;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 堆外的消息记录存储。
+ *
+ * <p>记录被压缩后追加写入固定大小的直接内存块 ({@link ByteBuffer#allocateDirect(int)}) 中，堆上只保留 ID 到位置的索引。
+ * 所有块都写满后，最早写入的块被整体清空并复用，其中的记录随之淘汰，因此占用的直接内存不会超过容量。
+ *
+ * <p>同一 ID 再次写入时，旧记录只是不再被索引，其空间在所在的块被复用时才会回收。
+ */
+public final class OffHeapMessageStore {
+    private static final int HEADER = 8; // raw length + compressed length
+    private static final int MAX_SLAB_SIZE = 4 << 20;
+
+    private final ByteBuffer[] slabs;
+    private final int slabSize;
+    // value: generation of the slab (high 32 bits) | offset in the slab (low 32 bits)
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    // guards the slabs, readers only hold it while copying a record out
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock deflaterLock = new ReentrantLock();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final byte[] deflateBuffer = new byte[8192];
+    @Nullable
+    private final byte[] dictionary;
+
+    // the number of slabs ever started, the slab of generation g is slabs[g % slabs.length]
+    private long generation = 0;
+    private int position = 0;
+
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param capacity   最多占用的直接内存字节数
+     * @param dictionary 压缩使用的预设字典，应包含记录中常见的片段。单条记录通常很短，没有字典时几乎无法压缩
+     */
+    public OffHeapMessageStore(long capacity, byte @Nullable [] dictionary) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        this.slabSize = (int) Math.min(capacity, MAX_SLAB_SIZE);
+        this.slabs = new ByteBuffer[(int) Math.max(capacity / slabSize, 1)];
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * 写入一条记录。
+     *
+     * @param id     消息 ID
+     * @param record 未压缩的记录
+     * @return 是否写入成功，记录压缩后仍大于一个块时返回 {@code false}
+     */
+    public boolean put(String id, byte[] record) {
+        final byte[] compressed = deflate(record);
+        final int size = HEADER + compressed.length;
+        if (size > slabSize) {
+            index.remove(id); // the stored one is outdated now
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            if (slabs[0] == null || position + size > slabSize) {
+                nextSlab();
+            }
+            final ByteBuffer slab = slabs[(int) (generation % slabs.length)];
+            slab.putInt(position, record.length);
+            slab.putInt(position + 4, compressed.length);
+            slab.put(position + HEADER, compressed);
+            index.put(id, (generation << 32) | position);
+            position += size;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        rawBytes.addAndGet(record.length);
+        compressedBytes.addAndGet(compressed.length);
+        return true;
+    }
+
+    /**
+     * 读取一条记录。
+     *
+     * @param id 消息 ID
+     * @return 未压缩的记录，不存在或已被淘汰时返回 {@code null}
+     */
+    @Nullable
+    public byte[] get(String id) {
+        final Long location = index.get(id);
+        if (location == null) {
+            return null;
+        }
+        final long slabGeneration = location >>> 32;
+        final int offset = (int) location.longValue();
+        final int rawLength;
+        final byte[] compressed;
+        lock.readLock().lock();
+        try {
+            if (slabGeneration <= generation - slabs.length) {
+                return null; // evicted, the index entry is being removed
+            }
+            final ByteBuffer slab = slabs[(int) (slabGeneration % slabs.length)];
+            rawLength = slab.getInt(offset);
+            compressed = new byte[slab.getInt(offset + 4)];
+            slab.get(offset + HEADER, compressed);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return inflate(compressed, rawLength);
+    }
+
+    public void remove(String id) {
+        index.remove(id);
+    }
+
+    // called with the write lock held
+    private void nextSlab() {
+        if (slabs[0] != null) {
+            generation++;
+        }
+        final int slot = (int) (generation % slabs.length);
+        if (slabs[slot] == null) {
+            slabs[slot] = ByteBuffer.allocateDirect(slabSize); // allocated on demand, so small workloads use less
+        } else {
+            final long evicted = generation - slabs.length;
+            final int before = index.size();
+            index.values().removeIf(location -> (location >>> 32) == evicted);
+            evictions.addAndGet(Math.max(before - index.size(), 0));
+        }
+        position = 0;
+    }
+
+    private byte[] deflate(byte[] record) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(record.length / 2 + 16);
+        deflaterLock.lock();
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary); // dropped by reset()
+            }
+            deflater.setInput(record);
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(deflateBuffer, 0, deflater.deflate(deflateBuffer));
+            }
+            deflater.reset();
+        } finally {
+            deflaterLock.unlock();
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] inflate(byte[] compressed, int rawLength) {
+        final Inflater inflater = new Inflater(true);
+        try {
+            if (dictionary != null) {
+                inflater.setDictionary(dictionary); // raw streams don't ask for it, so it is set upfront
+            }
+            inflater.setInput(compressed);
+            final byte[] result = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength) {
+                final int n = inflater.inflate(result, read, rawLength - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Corrupted message record");
+                }
+                read += n;
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted message record", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // ===== 统计 =====
+
+    public int size() {
+        return index.size();
+    }
+
+    public long getCapacity() {
+        return (long) slabSize * slabs.length;
+    }
+
+    // direct memory allocated so far
+    public long getAllocatedBytes() {
+        lock.readLock().lock();
+        try {
+            return slabs[0] == null ? 0 : (long) slabSize * Math.min(generation + 1, slabs.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // compressed size / raw size of all records written, 0 if none
+    public double getCompressionRatio() {
+        final long raw = rawBytes.get();
+        return raw == 0 ? 0 : (double) compressedBytes.get() / raw;
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
@@ -27,4 +27,9 @@ public interface WebhookNetworkSystem extends NetworkSystem {
         return true;
     }
 
+    // Called on the ordered event path after an event is processed.
+    // Implementations should persist the SN cheaply (e.g. batched), and restore it on start.
+    default void saveSN(int sn) {
+    }
+
 }
@@ -0,0 +1,171 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.launcher;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import snw.jkook.JKook;
+import snw.jkook.config.file.YamlConfiguration;
+import snw.kookbc.impl.CoreImpl;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.SharedClientResources;
+import snw.kookbc.impl.command.CommandManagerImpl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 在同一个 JVM 中运行多个 Bot 的宿主。
+ *
+ * <p>所有 Bot 共享同一份 {@link SharedClientResources}：
+ * <ul>
+ *     <li>HTTP 连接池与 Dispatcher</li>
+ *     <li>心跳定时器与重连线程池（每个 Bot 不再各自持有两条平台线程）</li>
+ *     <li>插件调度器线程池</li>
+ *     <li>事件执行器（每个 Bot 一条公平通道，单个 Bot 的事件洪峰不会饿死其他 Bot）</li>
+ * </ul>
+ *
+ * <p>限制：JKook 的 {@code JKook.getCore()} 是全局静态单例，只有第一个加入的 Bot 会被设置为全局 Core。
+ * 多 Bot 模式下，插件应通过 {@code Plugin#getCore()} 获取自己所属的 Core，而不是静态方法。
+ *
+ * <p>每次 {@link #addBot} 都会在构建与启动前后测量堆内存占用（在 GC 之后），
+ * 通过 {@link #getMemoryReport()} 查看每个 Bot 的近似内存成本。
+ */
+@SuppressWarnings("unused")
+public class MultiBotHost implements AutoCloseable {
+    private final SharedClientResources resources;
+    private final List<Bot> bots = Collections.synchronizedList(new ArrayList<>());
+
+    public MultiBotHost() {
+        this(new SharedClientResources());
+    }
+
+    public MultiBotHost(@NotNull SharedClientResources resources) {
+        this.resources = resources;
+    }
+
+    public synchronized KBCClient addBot(@NotNull YamlConfiguration config, @Nullable String token, @Nullable Logger logger, @Nullable File pluginsFolder) {
+        long before = usedHeap();
+        HostedLauncher launcher = new HostedLauncher(config, token, logger, pluginsFolder, bots.isEmpty());
+        KBCClient client = launcher.getClient();
+        client.start();
+        long after = usedHeap();
+        bots.add(new Bot(client, Math.max(0, after - before)));
+        return client;
+    }
+
+    public List<KBCClient> getClients() {
+        synchronized (bots) {
+            List<KBCClient> result = new ArrayList<>(bots.size());
+            for (Bot bot : bots) {
+                result.add(bot.client);
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+
+    public SharedClientResources getResources() {
+        return resources;
+    }
+
+    public String getMemoryReport() {
+        StringBuilder builder = new StringBuilder();
+        long total = 0;
+        synchronized (bots) {
+            builder.append(String.format("=== 多 Bot 内存统计 (%d 个 Bot) ===%n", bots.size()));
+            for (int i = 0; i < bots.size(); i++) {
+                Bot bot = bots.get(i);
+                total += bot.heapCost;
+                builder.append(String.format("#%d: %.2f MB%n", i + 1, bot.heapCost / 1024.0 / 1024.0));
+            }
+            if (!bots.isEmpty()) {
+                builder.append(String.format("平均每个 Bot: %.2f MB%n", total / (double) bots.size() / 1024.0 / 1024.0));
+            }
+        }
+        builder.append(String.format("当前堆占用: %.2f MB", usedHeap() / 1024.0 / 1024.0));
+        return builder.toString();
+    }
+
+    // stop all the bots, then release the shared resources
+    @Override
+    public void close() {
+        synchronized (bots) {
+            for (Bot bot : bots) {
+                try {
+                    bot.client.shutdown();
+                } catch (Exception e) {
+                    bot.client.getCore().getLogger().error("停止 Bot 时发生异常", e);
+                }
+            }
+            bots.clear();
+        }
+        resources.close();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static final class Bot {
+        private final KBCClient client;
+        private final long heapCost;
+
+        private Bot(KBCClient client, long heapCost) {
+            this.client = client;
+            this.heapCost = heapCost;
+        }
+    }
+
+    private class HostedLauncher extends EmbeddedLauncher {
+        private final boolean setGlobalCore;
+
+        HostedLauncher(YamlConfiguration config, String token, Logger logger, File pluginsFolder, boolean setGlobalCore) {
+            super(config, token, logger, pluginsFolder);
+            this.setGlobalCore = setGlobalCore;
+        }
+
+        @Override
+        protected void build() {
+            if (logger != null) {
+                core = new CoreImpl(logger);
+            } else {
+                core = new CoreImpl();
+            }
+            if (setGlobalCore) {
+                JKook.setCore(core);
+            }
+
+            if (token == null || token.isEmpty()) {
+                String configToken = config.getString("token");
+                if (configToken != null && !configToken.isEmpty()) {
+                    token = configToken;
+                } else {
+                    throw new IllegalArgumentException("Token is not set");
+                }
+            }
+            client = new KBCClient(core, config, pluginsFolder, token, CommandManagerImpl::new,
+                    null, null, null, null, null, null, resources);
+        }
+    }
+}
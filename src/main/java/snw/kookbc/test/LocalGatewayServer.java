@@ -0,0 +1,434 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import snw.kookbc.util.JacksonUtil;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.zip.Deflater;
+
+/**
+ * {@link LocalKookServer} 的网关部分，一个只实现了 KOOK 网关所需功能的 WebSocket 服务器。
+ *
+ * <p>JLHttp 不支持协议升级，因此这里直接在 {@link ServerSocket} 上实现 RFC 6455 的握手与帧格式（不支持分片与扩展）。
+ * 连接建立后发送 HELLO，响应 PING 与 RESUME，并按 {@link #setEventsPerSecond(int)} 推送合成事件。
+ * 与 KOOK 一样，URL 中 {@code compress=1}（默认）时使用 deflate 压缩的二进制帧。
+ */
+public class LocalGatewayServer implements AutoCloseable {
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+    // accept() failing again and again (e.g. out of file descriptors) is retried with a growing delay
+    private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+    private static final Logger logger = LoggerFactory.getLogger(LocalGatewayServer.class);
+
+    private final ServerSocket serverSocket;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final LongAdder sentEvents = new LongAdder();
+    private volatile int eventsPerSecond;
+    private volatile IntFunction<JsonNode> eventGenerator = LocalGatewayServer::channelMessage;
+    private volatile boolean closed;
+
+    // 0 for a random free port
+    public LocalGatewayServer(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread.ofPlatform().name("Local-Gateway-Acceptor").daemon().start(this::acceptLoop);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getURL(boolean compress) {
+        return "ws://127.0.0.1:" + getPort() + "/gateway?compress=" + (compress ? 1 : 0);
+    }
+
+    // synthetic EVENT frames pushed to every connection per second, 0 to stop
+    public void setEventsPerSecond(int eventsPerSecond) {
+        this.eventsPerSecond = Math.max(0, eventsPerSecond);
+    }
+
+    // builds the "d" object of the EVENT frame with the provided SN, channel messages by default
+    public void setEventGenerator(IntFunction<JsonNode> eventGenerator) {
+        this.eventGenerator = eventGenerator;
+    }
+
+    // push an EVENT frame to every connection now
+    public void sendEvent(JsonNode data) {
+        for (Connection connection : connections) {
+            connection.sendEvent(sn -> data);
+        }
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public long getSentEventCount() {
+        return sentEvents.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    private void acceptLoop() {
+        long backoff = 0;
+        int failures = 0;
+        while (!closed) {
+            try {
+                final Socket socket = serverSocket.accept();
+                backoff = 0;
+                failures = 0;
+                Thread.ofVirtual().name("Local-Gateway-Connection").start(() -> new Connection(socket).run());
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                failures++;
+                backoff = Math.min(Math.max(MIN_ACCEPT_BACKOFF_MILLIS, backoff * 2), MAX_ACCEPT_BACKOFF_MILLIS);
+                logger.warn("本地网关接受连接失败 (连续 {} 次)，{} ms 后重试", failures, backoff, e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    static ObjectNode channelMessage(int sn) {
+        final ObjectNode author = JacksonUtil.createObjectNode()
+                .put("id", LocalKookServer.USER_ID)
+                .put("username", "LocalUser")
+                .put("identify_num", "0001")
+                .put("online", true)
+                .put("bot", false)
+                .put("status", 1)
+                .put("avatar", "")
+                .put("vip_avatar", "")
+                .put("is_vip", false);
+        final ObjectNode extra = JacksonUtil.createObjectNode()
+                .put("type", 9)
+                .put("channel_type", 1)
+                .put("guild_id", LocalKookServer.GUILD_ID)
+                .put("channel_name", "local");
+        extra.set("author", author);
+        final ObjectNode data = JacksonUtil.createObjectNode()
+                .put("channel_type", "GROUP")
+                .put("type", 9)
+                .put("target_id", LocalKookServer.CHANNEL_ID)
+                .put("author_id", LocalKookServer.USER_ID)
+                .put("content", "synthetic message #" + sn)
+                .put("msg_id", UUID.randomUUID().toString())
+                .put("msg_timestamp", System.currentTimeMillis())
+                .put("nonce", "");
+        data.set("extra", extra);
+        return data;
+    }
+
+    private final class Connection {
+        private final Socket socket;
+        private final String sessionId = UUID.randomUUID().toString();
+        // virtual threads are pinned while holding a monitor, so a lock is used for writing
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private int sn; // guarded by writeLock
+        private boolean compress = true;
+        private OutputStream out;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        void run() {
+            connections.add(this);
+            try (socket) {
+                final InputStream in = new BufferedInputStream(socket.getInputStream());
+                out = socket.getOutputStream();
+                if (!handshake(in)) {
+                    return;
+                }
+                final ObjectNode hello = JacksonUtil.createObjectNode().put("code", 0).put("session_id", sessionId);
+                send(1, -1, hello);
+                Thread.ofVirtual().name("Local-Gateway-Emitter").start(this::emitLoop);
+                readLoop(in);
+            } catch (EOFException | SocketException ignored) {
+                // the client is gone
+            } catch (IOException e) {
+                logger.warn("本地网关连接 {} 异常关闭", sessionId, e);
+            } finally {
+                connections.remove(this);
+            }
+        }
+
+        private boolean handshake(InputStream in) throws IOException {
+            final String[] lines = readHead(in).split("\r\n");
+            String key = null;
+            for (int i = 1; i < lines.length; i++) {
+                final int colon = lines[i].indexOf(':');
+                if (colon > 0 && lines[i].substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                    key = lines[i].substring(colon + 1).trim();
+                }
+            }
+            compress = !lines[0].toLowerCase(Locale.ROOT).contains("compress=0");
+            if (key == null) {
+                out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                return false;
+            }
+            final String response = "HTTP/1.1 101 Switching Protocols\r\n" +
+                    "Upgrade: websocket\r\n" +
+                    "Connection: Upgrade\r\n" +
+                    "Sec-WebSocket-Accept: " + accept(key) + "\r\n\r\n";
+            out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            return true;
+        }
+
+        private void emitLoop() {
+            final long begin = System.nanoTime();
+            long emitted = 0;
+            try {
+                while (!socket.isClosed()) {
+                    final int rate = eventsPerSecond;
+                    if (rate == 0) {
+                        TimeUnit.MILLISECONDS.sleep(100);
+                        continue;
+                    }
+                    final long delay = begin + emitted * TimeUnit.SECONDS.toNanos(1) / rate - System.nanoTime();
+                    if (delay > 0) {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    }
+                    sendEvent(eventGenerator);
+                    emitted++;
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        private void readLoop(InputStream in) throws IOException {
+            while (true) {
+                final int head = readByte(in);
+                final int opcode = head & 0x0F;
+                final byte[] payload = readPayload(in);
+                switch (opcode) {
+                    case OP_TEXT:
+                        final JsonNode frame = JacksonUtil.parse(new String(payload, StandardCharsets.UTF_8));
+                        final int s = frame.get("s").asInt();
+                        if (s == 2) { // PING
+                            send(3, -1, null);
+                        } else if (s == 4) { // RESUME
+                            send(6, -1, JacksonUtil.createObjectNode().put("session_id", sessionId));
+                        }
+                        break;
+                    case OP_PING:
+                        writeFrame(OP_PONG, payload);
+                        break;
+                    case OP_CLOSE:
+                        writeFrame(OP_CLOSE, payload);
+                        return;
+                    default:
+                        break; // binary messages are not sent by the client
+                }
+            }
+        }
+
+        void sendEvent(IntFunction<JsonNode> generator) {
+            writeLock.lock(); // keep the SN order on the wire
+            try {
+                final int next = ++sn;
+                send(0, next, generator.apply(next));
+                sentEvents.increment();
+            } catch (IOException ignored) {
+                // the read loop will notice it
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void send(int s, int sn, JsonNode d) throws IOException {
+            final ObjectNode frame = JacksonUtil.createObjectNode().put("s", s);
+            if (sn >= 0) {
+                frame.put("sn", sn);
+            }
+            if (d != null) {
+                frame.set("d", d);
+            }
+            final byte[] json = JacksonUtil.getMapper().writeValueAsBytes(frame);
+            if (compress) {
+                writeFrame(OP_BINARY, deflate(json));
+            } else {
+                writeFrame(OP_TEXT, json);
+            }
+        }
+
+        // server frames are never masked
+        private void writeFrame(int opcode, byte[] payload) throws IOException {
+            final ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length + 10);
+            frame.write(0x80 | opcode);
+            if (payload.length < 126) {
+                frame.write(payload.length);
+            } else if (payload.length <= 0xFFFF) {
+                frame.write(126);
+                frame.write(payload.length >>> 8);
+                frame.write(payload.length);
+            } else {
+                frame.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    frame.write((int) ((long) payload.length >>> shift));
+                }
+            }
+            frame.write(payload);
+            writeLock.lock();
+            try {
+                out.write(frame.toByteArray());
+                out.flush();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        final ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int matched = 0; // of "\r\n\r\n"
+        while (matched < 4) {
+            final int b = readByte(in);
+            head.write(b);
+            matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : (b == '\r' ? 1 : 0);
+            if (head.size() > 16 * 1024) {
+                throw new IOException("The handshake request is too large");
+            }
+        }
+        return head.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    // client frames are always masked
+    private static byte[] readPayload(InputStream in) throws IOException {
+        final int second = readByte(in);
+        long length = second & 0x7F;
+        if (length == 126) {
+            length = (readByte(in) << 8) | readByte(in);
+        } else if (length == 127) {
+            length = 0;
+            for (int i = 0; i < 8; i++) {
+                length = (length << 8) | readByte(in);
+            }
+        }
+        if (length > 16 * 1024 * 1024) {
+            throw new IOException("The frame is too large: " + length);
+        }
+        final byte[] mask = new byte[4];
+        if ((second & 0x80) != 0) {
+            readFully(in, mask);
+        }
+        final byte[] payload = new byte[(int) length];
+        readFully(in, payload);
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] ^= mask[i & 3];
+        }
+        return payload;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        final int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            final int n = in.read(buffer, read, buffer.length - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+    }
+
+    private static String accept(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest((key + ACCEPT_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-1 is always available", e);
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        final Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            final byte[] buf = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
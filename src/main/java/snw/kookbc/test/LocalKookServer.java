@@ -0,0 +1,376 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.freeutils.httpserver.HTTPServer;
+import snw.kookbc.impl.network.HttpAPIRoute;
+import snw.kookbc.util.JacksonUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import static snw.kookbc.util.VirtualThreadUtil.newVirtualThreadExecutor;
+
+/**
+ * 用于端到端压测的本地 KOOK 替身服务器，不需要真实的 Token，也不会访问 KOOK。
+ *
+ * <ul>
+ *     <li>HTTP API：基于 JLHttp，接受 {@link HttpAPIRoute} 中的全部路由并返回合成数据。
+ *     每个路由按 KOOK 的方式分桶限速，返回 {@code X-Rate-Limit-*} 响应头，额度用完后返回 429</li>
+ *     <li>网关：{@link LocalGatewayServer}，地址由 {@code /gateway/index} 返回</li>
+ *     <li>可以注入固定延迟、随机抖动与错误率</li>
+ * </ul>
+ *
+ * <p>把 kbc.yml 中的 {@code api-base-url} 设为 {@link #getBaseURL()} 即可让 KookBC 连接到这里。
+ * 也可以直接运行 {@link #main(String[])} 启动一个独立的实例。
+ */
+public class LocalKookServer implements AutoCloseable {
+    public static final String BOT_ID = "1000000001";
+    public static final String USER_ID = "1000000002";
+    public static final String GUILD_ID = "2000000001";
+    public static final String CHANNEL_ID = "3000000001";
+    private static final String API_PREFIX = "/api";
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private final int port;
+    private final HTTPServer server;
+    private final LocalGatewayServer gateway;
+    private final Map<String, RateLimitWindow> buckets = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder limitedRequests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double errorRate;
+    private volatile int rateLimit = 120;
+    private volatile int rateLimitResetSeconds = 60;
+    private volatile int listSize = 100;
+
+    // 0 for random free ports
+    public LocalKookServer(int port, int gatewayPort) throws IOException {
+        this.port = port == 0 ? findFreePort() : port;
+        this.gateway = new LocalGatewayServer(gatewayPort);
+        this.server = new HTTPServer(this.port);
+        this.server.setExecutor(newVirtualThreadExecutor("Local-Kook-API"));
+        this.server.getVirtualHost(null).addContext(API_PREFIX, this::serve, "GET", "POST");
+    }
+
+    public LocalKookServer start() throws IOException {
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop();
+        gateway.close();
+    }
+
+    // use as "api-base-url" in kbc.yml
+    public String getBaseURL() {
+        return "http://127.0.0.1:" + port + API_PREFIX;
+    }
+
+    public LocalGatewayServer getGateway() {
+        return gateway;
+    }
+
+    // every request waits latency + random(0, jitter) before being answered
+    public void setLatency(long latency, long jitter, TimeUnit unit) {
+        this.latencyMillis = unit.toMillis(latency);
+        this.jitterMillis = unit.toMillis(jitter);
+    }
+
+    // the part of the requests answered with HTTP 500, 0.0 to 1.0
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    // per route bucket, like "message/create"
+    public void setRateLimit(int limit, int resetSeconds) {
+        this.rateLimit = limit;
+        this.rateLimitResetSeconds = resetSeconds;
+        buckets.clear();
+    }
+
+    // the total items returned by the paged list routes
+    public void setListSize(int listSize) {
+        this.listSize = listSize;
+    }
+
+    public String getStats() {
+        return String.format("请求 %d 次，其中限速 %d 次，注入错误 %d 次；网关连接 %d 个，已推送事件 %d 个",
+                requests.sum(), limitedRequests.sum(), failedRequests.sum(),
+                gateway.getConnectionCount(), gateway.getSentEventCount());
+    }
+
+    private int serve(HTTPServer.Request request, HTTPServer.Response response) throws IOException {
+        requests.increment();
+        final String path = request.getPath();
+        final HttpAPIRoute route = path.startsWith(API_PREFIX) ? HttpAPIRoute.value(path.substring(API_PREFIX.length())) : null;
+        if (route == null || route == HttpAPIRoute.BASE_URL) {
+            send(response, 404, result(404, "接口不存在", null), rateLimit, 0, "unknown");
+            return 0;
+        }
+        simulateLatency();
+
+        final String bucket = route.getRoute().substring("/v3/".length());
+        final RateLimitWindow window = buckets.computeIfAbsent(bucket, b -> new RateLimitWindow());
+        final int remaining;
+        final int reset;
+        synchronized (window) {
+            final long now = System.currentTimeMillis();
+            if (now >= window.resetAt) {
+                window.remaining = rateLimit;
+                window.resetAt = now + TimeUnit.SECONDS.toMillis(rateLimitResetSeconds);
+            }
+            remaining = window.remaining > 0 ? --window.remaining : -1;
+            reset = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(window.resetAt - now + 999));
+        }
+        if (remaining < 0) {
+            limitedRequests.increment();
+            send(response, 429, result(429, "请求过于频繁", null), 0, reset, bucket);
+        } else if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            failedRequests.increment();
+            send(response, 500, result(500, "服务器内部错误 (模拟)", null), remaining, reset, bucket);
+        } else {
+            send(response, 200, result(0, "操作成功", data(route, request.getParams())), remaining, reset, bucket);
+        }
+        return 0;
+    }
+
+    private void simulateLatency() {
+        final long jitter = jitterMillis;
+        final long delay = latencyMillis + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void send(HTTPServer.Response response, int status, ObjectNode body,
+                      int remaining, int reset, String bucket) throws IOException {
+        final byte[] content = JacksonUtil.getMapper().writeValueAsBytes(body);
+        response.getHeaders().add("X-Rate-Limit-Limit", String.valueOf(rateLimit));
+        response.getHeaders().add("X-Rate-Limit-Remaining", String.valueOf(remaining));
+        response.getHeaders().add("X-Rate-Limit-Reset", String.valueOf(reset));
+        response.getHeaders().add("X-Rate-Limit-Bucket", bucket);
+        response.sendHeaders(status, content.length, -1L, null, CONTENT_TYPE, null);
+        final OutputStream out = response.getBody();
+        if (out != null) {
+            out.write(content);
+        }
+    }
+
+    private static ObjectNode result(int code, String message, JsonNode data) {
+        final ObjectNode result = JacksonUtil.createObjectNode().put("code", code).put("message", message);
+        if (data != null) {
+            result.set("data", data);
+        } else {
+            result.putArray("data");
+        }
+        return result;
+    }
+
+    private JsonNode data(HttpAPIRoute route, Map<String, String> params) {
+        switch (route) {
+            case GATEWAY:
+                return JacksonUtil.createObjectNode().put("url", gateway.getURL(!"0".equals(params.get("compress"))));
+            case USER_ME:
+                // offline, so the client won't call /user/offline before connecting
+                return user(BOT_ID, "LocalBot", true).put("online", false);
+            case USER_WHO:
+                return user(params.getOrDefault("user_id", USER_ID), "LocalUser", false);
+            case GUILD_INFO:
+                return guild(params.getOrDefault("guild_id", GUILD_ID));
+            case CHANNEL_INFO:
+                return channel(params.getOrDefault("target_id", CHANNEL_ID));
+            case CHANNEL_MESSAGE_SEND:
+            case USER_CHAT_MESSAGE_CREATE:
+                return JacksonUtil.createObjectNode()
+                        .put("msg_id", UUID.randomUUID().toString())
+                        .put("msg_timestamp", System.currentTimeMillis())
+                        .put("nonce", "");
+            case GUILD_JOINED_LIST:
+                return page(params, i -> guild(String.valueOf(Long.parseLong(GUILD_ID) + i)));
+            case GUILD_USERS:
+                return page(params, i -> user(String.valueOf(Long.parseLong(USER_ID) + i), "LocalUser" + i, false));
+            case CHANNEL_LIST:
+                return page(params, i -> channel(String.valueOf(Long.parseLong(CHANNEL_ID) + i)));
+            default:
+                return JacksonUtil.createObjectNode();
+        }
+    }
+
+    private ObjectNode page(Map<String, String> params, IntFunction<ObjectNode> item) {
+        final int page = Math.max(1, parseInt(params.get("page"), 1));
+        final int pageSize = Math.max(1, parseInt(params.get("page_size"), 50));
+        final int total = listSize;
+        final ObjectNode result = JacksonUtil.createObjectNode();
+        final ArrayNode items = result.putArray("items");
+        for (int i = (page - 1) * pageSize; i < Math.min(total, page * pageSize); i++) {
+            items.add(item.apply(i));
+        }
+        result.putObject("meta")
+                .put("page", page)
+                .put("page_total", (total + pageSize - 1) / pageSize)
+                .put("page_size", pageSize)
+                .put("total", total);
+        result.putObject("sort");
+        return result;
+    }
+
+    private static ObjectNode user(String id, String name, boolean bot) {
+        final ObjectNode user = JacksonUtil.createObjectNode()
+                .put("id", id)
+                .put("username", name)
+                .put("nickname", name)
+                .put("identify_num", "0001")
+                .put("online", true)
+                .put("bot", bot)
+                .put("status", 1)
+                .put("avatar", "")
+                .put("vip_avatar", "")
+                .put("is_vip", false)
+                .put("mobile_verified", true);
+        user.putArray("roles");
+        return user;
+    }
+
+    private static ObjectNode guild(String id) {
+        final ObjectNode guild = JacksonUtil.createObjectNode()
+                .put("id", id)
+                .put("name", "Local Guild " + id)
+                .put("topic", "")
+                .put("user_id", USER_ID)
+                .put("master_id", USER_ID)
+                .put("icon", "")
+                .put("notify_type", 2)
+                .put("region", "beijing")
+                .put("enable_open", false)
+                .put("open_id", "0")
+                .put("default_channel_id", CHANNEL_ID)
+                .put("welcome_channel_id", "0");
+        guild.putArray("roles");
+        guild.putArray("channels");
+        return guild;
+    }
+
+    private static ObjectNode channel(String id) {
+        final ObjectNode channel = JacksonUtil.createObjectNode()
+                .put("id", id)
+                .put("guild_id", GUILD_ID)
+                .put("user_id", USER_ID)
+                .put("parent_id", "")
+                .put("name", "local-" + id)
+                .put("topic", "")
+                .put("type", 1)
+                .put("level", 100)
+                .put("slow_mode", 0)
+                .put("is_category", false)
+                .put("permission_sync", 1);
+        channel.putArray("permission_overwrites");
+        channel.putArray("permission_users");
+        return channel;
+    }
+
+    private static int parseInt(String value, int def) {
+        try {
+            return value == null ? def : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static final class RateLimitWindow {
+        private int remaining;
+        private long resetAt; // epoch millis
+    }
+
+    // Usage: LocalKookServer [port] [gateway-port] [key=value...]
+    // keys: events-per-second, latency, jitter (milliseconds), error-rate, rate-limit, rate-limit-reset, list-size
+    public static void main(String[] args) throws Exception {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 8090;
+        final int gatewayPort = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        final LocalKookServer server = new LocalKookServer(port, gatewayPort);
+        long latency = 0;
+        long jitter = 0;
+        int limit = 120;
+        int reset = 60;
+        for (int i = 2; i < args.length; i++) {
+            final String[] option = args[i].split("=", 2);
+            final String value = option.length > 1 ? option[1] : "";
+            switch (option[0]) {
+                case "events-per-second":
+                    server.getGateway().setEventsPerSecond(Integer.parseInt(value));
+                    break;
+                case "latency":
+                    latency = Long.parseLong(value);
+                    break;
+                case "jitter":
+                    jitter = Long.parseLong(value);
+                    break;
+                case "error-rate":
+                    server.setErrorRate(Double.parseDouble(value));
+                    break;
+                case "rate-limit":
+                    limit = Integer.parseInt(value);
+                    break;
+                case "rate-limit-reset":
+                    reset = Integer.parseInt(value);
+                    break;
+                case "list-size":
+                    server.setListSize(Integer.parseInt(value));
+                    break;
+                default:
+                    System.out.println("未知选项: " + args[i]);
+            }
+        }
+        server.setLatency(latency, jitter, TimeUnit.MILLISECONDS);
+        server.setRateLimit(limit, reset);
+        server.start();
+        System.out.println("本地 KOOK 服务器已启动");
+        System.out.println("api-base-url: " + server.getBaseURL());
+        System.out.println("网关: " + server.getGateway().getURL(true));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(server.getStats())));
+        Thread.currentThread().join(); // until killed
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AsyncAppender;
+import org.apache.logging.log4j.core.config.AppenderRef;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 将 Log4j2 的根日志记录器切换为异步输出。
+ * <p>
+ * 根日志记录器原有的所有 Appender（如控制台与日志文件）会被一个 {@link AsyncAppender} 包装，
+ * 各自的级别与过滤器保持不变。日志事件先进入容量固定的队列，再由 Log4j2 的后台线程写出，
+ * 因此调用日志方法的线程不再等待终端或磁盘 I/O。队列满时调用者会等待，日志不会被丢弃。
+ * <p>
+ * 同一 JVM 中的所有 Bot 共享日志配置，因此只有第一次调用有效。
+ */
+public final class AsyncLogging {
+    public static final String APPENDER_NAME = "KookBCAsync";
+
+    /**
+     * 启用异步日志。
+     *
+     * @param bufferSize 队列容量（日志事件数）
+     * @return 若启用成功则返回 {@code true} ，若日志实现不是 Log4j2 或已经启用过则返回 {@code false}
+     */
+    public static synchronized boolean enable(int bufferSize) {
+        if (!(LogManager.getContext(false) instanceof LoggerContext)) {
+            return false; // not backed by log4j-core, e.g. embedded with another SLF4J binding
+        }
+        final LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        final Configuration configuration = context.getConfiguration();
+        if (configuration.getAppender(APPENDER_NAME) != null) {
+            return false;
+        }
+        final LoggerConfig root = configuration.getRootLogger();
+        final List<AppenderRef> refs = new ArrayList<>(root.getAppenderRefs());
+        if (refs.isEmpty()) {
+            return false;
+        }
+
+        final AsyncAppender async = AsyncAppender.newBuilder()
+                .setName(APPENDER_NAME)
+                .setConfiguration(configuration)
+                // keep the level of every reference, e.g. the console follows log4j2.log.level
+                .setAppenderRefs(refs.toArray(new AppenderRef[0]))
+                .setBufferSize(bufferSize)
+                .setBlocking(true)
+                .setIncludeLocation(false)
+                .build();
+        async.start();
+        configuration.addAppender(async);
+        for (AppenderRef ref : refs) {
+            root.removeAppender(ref.getRef());
+        }
+        root.addAppender(async, null, null);
+        context.updateLoggers();
+        return true;
+    }
+
+    private AsyncLogging() {
+    }
+}
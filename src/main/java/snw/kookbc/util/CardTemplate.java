@@ -0,0 +1,224 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.util;
+
+import snw.jkook.message.component.BaseComponent;
+import snw.jkook.message.component.card.CardComponent;
+import snw.jkook.message.component.card.MultipleCardComponent;
+import snw.jkook.util.Validate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译的卡片消息模板。
+ *
+ * <p>许多卡片的结构总是相同的，只有少数文本会变化。对这样的卡片，可以先用 {@link #slot(String)}
+ * 作为会变化的文本构建一次卡片，再使用 {@link #compile(BaseComponent)} 将其编译为模板。
+ * 编译时卡片只会被序列化一次，结果被切分为已经转义好的 JSON 片段与具名的插槽，
+ * 之后的 {@link #render} 只需拼接这些片段与转义后的插槽值，不再构建卡片对象，也不再经过 Jackson 。
+ *
+ * <p>插槽可以是某个文本的一部分（如 {@code "第 " + slot("page") + " 页"}），同名插槽可以出现多次。
+ * 插槽只能用于字符串类型的字段，主题、按钮事件类型等结构上的差异需要编译为不同的模板。
+ *
+ * <p>模板是不可变的，可以在多个线程中同时使用。
+ */
+public final class CardTemplate {
+    // private use characters, never escaped by Jackson, so they are found as is in the serialized card
+    private static final char SLOT_START = '\uE000';
+    private static final char SLOT_END = '\uE001';
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final String[] segments; // segments.length == slots.length + 1
+    private final int[] slots; // slot index of the value between segments[i] and segments[i + 1]
+    private final List<String> slotNames;
+    private final int fixedLength;
+
+    private CardTemplate(String[] segments, int[] slots, List<String> slotNames) {
+        this.segments = segments;
+        this.slots = slots;
+        this.slotNames = slotNames;
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        this.fixedLength = length;
+    }
+
+    /**
+     * 返回代表一个插槽的占位文本，用于构建模板卡片。
+     *
+     * @param name 插槽名称
+     * @return 占位文本
+     */
+    public static String slot(String name) {
+        Validate.notNull(name);
+        Validate.isTrue(name.indexOf(SLOT_START) == -1 && name.indexOf(SLOT_END) == -1, "Invalid slot name");
+        return SLOT_START + name + SLOT_END;
+    }
+
+    /**
+     * 编译模板。
+     *
+     * @param card 使用 {@link #slot(String)} 作为可变文本的卡片，可以是 {@link CardComponent} 或 {@link MultipleCardComponent}
+     * @return 模板
+     */
+    public static CardTemplate compile(BaseComponent card) {
+        Validate.isTrue(card instanceof CardComponent || card instanceof MultipleCardComponent, "Only cards can be compiled");
+        final String json = JacksonCardUtil.toJson(card);
+        final List<String> segments = new ArrayList<>();
+        final List<Integer> slots = new ArrayList<>();
+        final Map<String, Integer> names = new LinkedHashMap<>();
+        int from = 0;
+        int start;
+        while ((start = json.indexOf(SLOT_START, from)) != -1) {
+            final int end = json.indexOf(SLOT_END, start);
+            if (end == -1) {
+                throw new IllegalArgumentException("Unterminated slot in the card");
+            }
+            segments.add(json.substring(from, start));
+            final String name = json.substring(start + 1, end);
+            slots.add(names.computeIfAbsent(name, k -> names.size()));
+            from = end + 1;
+        }
+        segments.add(json.substring(from));
+        final int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+        return new CardTemplate(segments.toArray(new String[0]), slotArray,
+                Collections.unmodifiableList(new ArrayList<>(names.keySet())));
+    }
+
+    /**
+     * 获取插槽名称，顺序为其在卡片中第一次出现的顺序，也是 {@link #render(String...)} 的参数顺序。
+     *
+     * @return 插槽名称
+     */
+    public List<String> getSlotNames() {
+        return slotNames;
+    }
+
+    /**
+     * 按插槽顺序填入插槽值，生成卡片。
+     *
+     * @param values 插槽值，顺序与 {@link #getSlotNames()} 相同
+     * @return 卡片
+     */
+    public Rendered render(String... values) {
+        Validate.isTrue(values.length == slotNames.size(),
+                "Expected " + slotNames.size() + " slot values, got " + values.length);
+        int length = fixedLength;
+        for (int slot : slots) {
+            length += values[slot].length();
+        }
+        final StringBuilder builder = new StringBuilder(length + 16);
+        for (int i = 0; i < slots.length; i++) {
+            builder.append(segments[i]);
+            appendEscaped(builder, values[slots[i]]);
+        }
+        builder.append(segments[slots.length]);
+        return new Rendered(builder.toString());
+    }
+
+    /**
+     * 按插槽名称填入插槽值，生成卡片。
+     *
+     * @param values 插槽名称与值，必须包含所有插槽
+     * @return 卡片
+     */
+    public Rendered render(Map<String, ?> values) {
+        final String[] array = new String[slotNames.size()];
+        for (int i = 0; i < array.length; i++) {
+            final Object value = values.get(slotNames.get(i));
+            if (value == null) {
+                throw new IllegalArgumentException("Missing value of slot: " + slotNames.get(i));
+            }
+            array[i] = value.toString();
+        }
+        return render(array);
+    }
+
+    // the same escaping as Jackson does by default
+    private static void appendEscaped(StringBuilder builder, String value) {
+        int last = 0;
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            builder.append(value, last, i);
+            last = i + 1;
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\b':
+                    builder.append("\\b");
+                    break;
+                case '\f':
+                    builder.append("\\f");
+                    break;
+                default:
+                    builder.append("\\u00");
+                    builder.append(HEX[c >> 4]);
+                    builder.append(HEX[c & 0xF]);
+            }
+        }
+        builder.append(value, last, length);
+    }
+
+    /**
+     * 由模板生成的卡片，可以像其他卡片一样发送或用于更新消息。
+     *
+     * <p>它只保存序列化后的 JSON ，收到的消息中的卡片仍然会被解析为 {@link MultipleCardComponent} 。
+     */
+    public static final class Rendered implements BaseComponent {
+        private final String json;
+
+        private Rendered(String json) {
+            this.json = json;
+        }
+
+        public String toJson() {
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return json;
+        }
+    }
+}
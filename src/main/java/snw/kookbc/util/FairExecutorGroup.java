@@ -0,0 +1,193 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 公平共享执行器组
+ *
+ * <p>多个使用方 (例如同一 JVM 中的多个 Bot) 共享同一个底层执行器，
+ * 每个使用方拥有一条独立的 {@link Lane}，每条 Lane 同时运行的任务数有上限，
+ * 超出的任务在该 Lane 内部排队，因此单个繁忙的使用方无法占满共享资源。
+ *
+ * <p>关闭某条 Lane 不会影响共享执行器和其他 Lane。
+ */
+public final class FairExecutorGroup {
+    private final ExecutorService delegate;
+    private final int maxConcurrencyPerLane;
+
+    /**
+     * @param delegate              共享的底层执行器
+     * @param maxConcurrencyPerLane 每条 Lane 同时运行的最大任务数
+     */
+    public FairExecutorGroup(ExecutorService delegate, int maxConcurrencyPerLane) {
+        this.delegate = delegate;
+        this.maxConcurrencyPerLane = Math.max(1, maxConcurrencyPerLane);
+    }
+
+    public Lane newLane(String name) {
+        return new Lane(name);
+    }
+
+    public ExecutorService getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 关闭底层执行器，应在所有 Lane 的使用方停止后调用
+     */
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    public final class Lane extends AbstractExecutorService {
+        private final String name;
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final Object terminationLock = new Object();
+        private volatile boolean shutdown;
+
+        private Lane(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getQueuedCount() {
+            return pending.size();
+        }
+
+        public int getRunningCount() {
+            return running.get();
+        }
+
+        public long getCompletedCount() {
+            return completed.get();
+        }
+
+        @Override
+        public void execute(@NotNull Runnable command) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Lane " + name + " has been shut down");
+            }
+            pending.add(command);
+            drain();
+        }
+
+        private void drain() {
+            while (!pending.isEmpty()) {
+                final int current = running.get();
+                if (current >= maxConcurrencyPerLane) {
+                    return; // a finishing task will drain again
+                }
+                if (!running.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+                final Runnable task = pending.poll();
+                if (task == null) {
+                    release();
+                    continue;
+                }
+                try {
+                    delegate.execute(() -> {
+                        try {
+                            task.run();
+                        } finally {
+                            completed.incrementAndGet();
+                            release();
+                            drain();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    release();
+                    throw e;
+                }
+            }
+        }
+
+        private void release() {
+            if (running.decrementAndGet() == 0 && isTerminated()) {
+                synchronized (terminationLock) {
+                    terminationLock.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+            synchronized (terminationLock) {
+                terminationLock.notifyAll();
+            }
+        }
+
+        @NotNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown();
+            final List<Runnable> dropped = new ArrayList<>();
+            Runnable task;
+            while ((task = pending.poll()) != null) {
+                dropped.add(task);
+            }
+            return dropped;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && running.get() == 0 && pending.isEmpty();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (terminationLock) {
+                while (!isTerminated()) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+                }
+                return true;
+            }
+        }
+    }
+}
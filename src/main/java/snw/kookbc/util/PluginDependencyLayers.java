@@ -0,0 +1,85 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package snw.kookbc.util;
+
+import snw.jkook.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按依赖关系把插件分层。
+ * <p>
+ * 第 0 层的插件不依赖（包括软依赖）列表中的任何其他插件，第 n 层的插件只依赖前 n 层中的插件，
+ * 因此同一层中的插件可以同时加载与启用。不在列表中的依赖会被忽略，由启用时的依赖检查处理。
+ * <p>
+ * 若依赖关系成环，环上的插件（以及依赖它们的插件）会按原有顺序各自单独成层，即退化为逐个启用。
+ */
+public final class PluginDependencyLayers {
+
+    public static List<List<Plugin>> compute(List<Plugin> plugins) {
+        final Map<String, Plugin> byName = new HashMap<>();
+        for (Plugin plugin : plugins) {
+            byName.put(plugin.getDescription().getName(), plugin);
+        }
+
+        final Map<Plugin, Integer> layerOf = new HashMap<>();
+        final Set<Plugin> remaining = new LinkedHashSet<>(plugins);
+        final List<List<Plugin>> layers = new ArrayList<>();
+        while (!remaining.isEmpty()) {
+            final List<Plugin> layer = new ArrayList<>();
+            for (Plugin plugin : remaining) {
+                if (ready(plugin, byName, layerOf)) {
+                    layer.add(plugin);
+                }
+            }
+            if (layer.isEmpty()) {
+                // a cycle, keep the order we were given for the rest
+                layer.add(remaining.iterator().next());
+            }
+            for (Plugin plugin : layer) {
+                layerOf.put(plugin, layers.size());
+                remaining.remove(plugin);
+            }
+            layers.add(layer);
+        }
+        return layers;
+    }
+
+    // true if all dependencies present in the list are already placed in a previous layer
+    private static boolean ready(Plugin plugin, Map<String, Plugin> byName, Map<Plugin, Integer> layerOf) {
+        for (List<String> names : List.of(plugin.getDescription().getDepend(), plugin.getDescription().getSoftDepend())) {
+            for (String name : names) {
+                final Plugin dependency = byName.get(name);
+                if (dependency != null && dependency != plugin && !layerOf.containsKey(dependency)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private PluginDependencyLayers() {
+    }
+}